@@ -22,6 +22,7 @@ import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.JoinListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.LeaveListener;
 import com.nexmo.sdk.conversation.client.event.ConversationListener;
+import com.nexmo.sdk.conversation.client.event.EventPageListener;
 import com.nexmo.sdk.conversation.client.event.ImageListener;
 import com.nexmo.sdk.conversation.client.event.ImageSeenReceiptListener;
 import com.nexmo.sdk.conversation.client.event.MemberInvitedListener;
@@ -31,10 +32,13 @@ import com.nexmo.sdk.conversation.client.event.TextSeenReceiptListener;
 import com.nexmo.sdk.conversation.client.event.SignalingChannelListener;
 import com.nexmo.sdk.conversation.client.event.TextListener;
 import com.nexmo.sdk.conversation.client.event.MemberTypingListener;
+import com.nexmo.sdk.conversation.core.client.EventArchive;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * A container that you use to manage communications between Members,
@@ -86,12 +90,17 @@ import java.util.List;
 public class Conversation implements Parcelable {
     private static final String TAG = Conversation.class.getSimpleName();
 
-    //TODO v2.0 key value map based on memberId to fast up the search
-    private List<Member> members = new ArrayList<>();
-    private List<Text> messages = new ArrayList<>();
-    private List<Image> images = new ArrayList<>();
+    private final MemberList members;
+    private final MessageStore<Text> messages;
+    private final MessageStore<Image> images;
+    // events older than the in-memory window, moved to the event archive.
+    private volatile int archivedMessages;
+    private volatile int archivedImages;
+    // a batch of the oldest events is being archived, they stay in memory until it is committed.
+    private boolean archivingMessages;
+    private boolean archivingImages;
     //self as member of the conversation
-    private Member self;
+    private volatile Member self;
     @Expose
     @SerializedName("name")
     private String name;
@@ -100,16 +109,20 @@ public class Conversation implements Parcelable {
     private String conversationId;
     @Expose
     @SerializedName("member_id")
-    private String memberId; //if memberId is not set, the conversation is not joined
+    private volatile String memberId; //if memberId is not set, the conversation is not joined
     @Expose
     @SerializedName("sequence_number")
-    private String lastEventId; // last known event conversationId, used for paginated access.
+    private volatile String lastEventId; // last known event conversationId, used for paginated access.
     private Date creationDate;
 
     protected Conversation() {
+        this.members = new MemberList();
+        this.messages = new MessageStore<>();
+        this.images = new MessageStore<>();
     }
 
     public Conversation(final String name) {
+        this();
         this.name = name;
     }
 
@@ -138,16 +151,16 @@ public class Conversation implements Parcelable {
 
     public Conversation(final String name, final String conversationId, final String memberId, final List<Text> messages, final List<Member> members, final Date creation_time, final String lastEventId) {
         this(name, conversationId, memberId, creation_time, lastEventId);
-        this.messages = messages;
-        this.members = members;
+        this.messages.replaceAll(messages);
+        this.members.replaceAll(members);
     }
 
     public Conversation(final String name, final String conversationId, final Member member, final List<Text> messages,
                         final List<Image> images, final List<Member> members, final Date creation_time, final String lastEventId) {
         this(name, conversationId);
-        this.messages = messages;
-        this.images = images;
-        this.members = members;
+        this.messages.replaceAll(messages);
+        this.images.replaceAll(images);
+        this.members.replaceAll(members);
         this.creationDate = creation_time;
         if (member != null){
             this.memberId = member.getMemberId();
@@ -156,10 +169,25 @@ public class Conversation implements Parcelable {
         this.lastEventId = lastEventId;
     }
 
+    /**
+     * Take a snapshot of a conversation: the members and events it holds right now.
+     *
+     * <p>The snapshot shares the immutable state of the original, so taking it does not depend on the
+     * size of the conversation, and it can be read from any thread without locking.</p>
+     */
     public Conversation(Conversation conversation) {
-        this(conversation.getName(), conversation.getConversationId(), conversation.getSelf(),
-                conversation.getMessages(), conversation.getImages(), conversation.getMembers(),
-                conversation.getCreationDate(), conversation.getLastEventId());
+        this.name = conversation.getName();
+        this.conversationId = conversation.getConversationId();
+        this.self = conversation.getSelf();
+        if (this.self != null)
+            this.memberId = this.self.getMemberId();
+        this.creationDate = conversation.getCreationDate();
+        this.lastEventId = conversation.getLastEventId();
+        this.members = new MemberList(conversation.members);
+        this.messages = new MessageStore<>(conversation.messages);
+        this.images = new MessageStore<>(conversation.images);
+        this.archivedMessages = conversation.archivedMessages;
+        this.archivedImages = conversation.archivedImages;
     }
 
     /**
@@ -445,7 +473,8 @@ public class Conversation implements Parcelable {
         if (textSendListener != null) {
             if (this.getConversationId() == null)
                 textSendListener.onError(ConversationListener.MISSING_CONVERSATION, "Missing conversation");
-            else if (ConversationClient.get().getSignallingChannel().isLoggedIn() != null)
+            // while the connection is down the text is queued, and sent once the user is logged in again.
+            else if (ConversationClient.get().getSignallingChannel().isLoggedIn() != null || ConversationClient.get().getMyUser() != null)
                 ConversationClient.get().getSignallingChannel().sendText(this, message, textSendListener);
             else
                 textSendListener.onError(SignalingChannelListener.MISSING_USER, "No user is logged in");
@@ -480,7 +509,7 @@ public class Conversation implements Parcelable {
             Log.d(TAG, "ImageSendListener is mandatory");
         else if (this.conversationId == null)
             imageSendListener.onError(ConversationListener.MISSING_CONVERSATION, "Missing conversation");
-        else if (ConversationClient.get().getSignallingChannel().isLoggedIn() != null)
+        else if (ConversationClient.get().getSignallingChannel().isLoggedIn() != null || ConversationClient.get().getMyUser() != null)
             ConversationClient.get().getSignallingChannel().sendImage(this, imagePath, imageSendListener);
         else
             imageSendListener.onError(SignalingChannelListener.MISSING_USER, "No user is logged in");
@@ -559,33 +588,39 @@ public class Conversation implements Parcelable {
     }
 
     public Member getMember(final String member_id) {
-        for (Member member : this.members) {
-            if (member.getMemberId().equals(member_id))
-                return member;
-        }
-        return null;
+        return this.members.get(member_id);
     }
 
     public Member getMember(final User user) {
-        for (Member member : this.members) {
-            if (member.getUser_id().equals(user.getUserId()))
-                return member;
-        }
-        return null;
+        return (user != null ? this.members.getByUserId(user.getUserId()) : null);
     }
 
+    /**
+     * Get a text event by its position in the conversation history, oldest first.
+     * Texts older than the in-memory window are read from the local cache, on the calling thread:
+     * avoid reading them from the main thread, {@link Conversation#getMessagesBefore(String, int, EventPageListener)} reads a page in the background.
+     */
     public Text getMessageByIndex(int index) {
-        if (this.messages.size() >= index)
-            return this.messages.get(index);
-        return null;
+        int archived = this.archivedMessages;
+        if (index >= archived)
+            return this.messages.get(index - archived);
+
+        EventArchive archive = getEventArchive();
+        return (archive != null && index >= 0 ? archive.readText(this, index) : null);
     }
 
+    /**
+     * Get a text event by id. Texts older than the in-memory window are read from the local cache, on the calling thread:
+     * avoid reading them from the main thread.
+     */
     public Text getMessage(final String message_id) {
-        for (Text message : this.messages) {
-            if (message.getId().equals(message_id))
-                return message;
+        Text message = this.messages.get(message_id);
+        if (message == null && this.archivedMessages > 0) {
+            EventArchive archive = getEventArchive();
+            if (archive != null)
+                message = archive.readText(this, message_id);
         }
-        return null;
+        return message;
     }
 
     public String getConversationId() {
@@ -593,69 +628,395 @@ public class Conversation implements Parcelable {
     }
 
     public void addMember(Member member) {
+        this.members.add(member);
+    }
+
+    public void setMembers(List<Member> members) {
+        this.members.replaceAll(members);
+    }
+
+    /**
+     * Replace the member that has the same member id, or add it if it is not part of this conversation yet.
+     * Members are not modified in place, a change of state is published as an updated copy.
+     */
+    public void updateMember(Member member) {
         synchronized(this) {
-            this.members.add(member);
+            this.members.update(member);
+            if (member != null && this.self != null && TextUtils.equals(this.self.getMemberId(), member.getMemberId()))
+                this.self = member;
         }
     }
 
-    public void setMembers(List<Member> members) {
+    /**
+     * Set how many texts and images of this conversation are older than the in-memory ones, and kept in the local cache only.
+     * {@link Conversation#getMessageByIndex(int)} counts these texts first.
+     */
+    public void setArchivedEvents(int messages, int images) {
         synchronized(this) {
-            this.members = members;
+            this.archivedMessages = Math.max(0, messages);
+            this.archivedImages = Math.max(0, images);
         }
     }
 
+    /**
+     * @return The number of texts older than the in-memory window, read from the local cache on demand.
+     *         The whole text history spans this many texts plus the ones of {@link Conversation#getMessages()}.
+     */
+    public int getArchivedMessageCount() {
+        return this.archivedMessages;
+    }
+
+    /**
+     * @return The number of images older than the in-memory window, read from the local cache on demand.
+     */
+    public int getArchivedImageCount() {
+        return this.archivedImages;
+    }
+
     public void setMessages(List<Text> messages) {
+        List<Text> evicted;
         synchronized(this) {
-            clearMessages();
-            this.messages = messages;
+            EventArchive archive = getEventArchive();
+            if (archive != null)
+                archive.clearTexts(this);
+            this.archivedMessages = 0;
+            this.messages.replaceAll(messages);
+            evicted = trimMessages();
         }
+        archiveMessages(evicted);
     }
 
     public void setImages(List<Image> images) {
+        List<Image> evicted;
         synchronized(this) {
-            clearImages();
-            this.images = images;
+            EventArchive archive = getEventArchive();
+            if (archive != null)
+                archive.clearImages(this);
+            this.archivedImages = 0;
+            this.images.replaceAll(images);
+            evicted = trimImages();
         }
+        archiveImages(evicted);
     }
 
+    /**
+     * Add a text event at its position in time.
+     * A text with an id that is already known is ignored.
+     */
     public void addMessage(Text message) {
+        List<Text> evicted;
         synchronized(this) {
-            this.messages.add(message);
+            if (!this.messages.add(message))
+                return;
+            evicted = trimMessages();
         }
+        archiveMessages(evicted);
     }
 
-    public void addImageEvent(Image image) {
+    /**
+     * Add an image event at its position in time.
+     * An image with an id that is already known is ignored.
+     *
+     * @return true if the image was added, false if its id was already known.
+     */
+    public boolean addImageEvent(Image image) {
+        List<Image> evicted;
         synchronized(this) {
-            this.images.add(image);
+            if (!this.images.add(image))
+                return false;
+            evicted = trimImages();
         }
+        archiveImages(evicted);
+        return true;
     }
 
+    // the window is trimmed by a batch of a quarter of its size, so the archive is not written on every event.
+    // called under the lock: the batch to archive, or null. One batch is archived at a time.
+    private List<Text> trimMessages() {
+        int window = getEventWindow();
+        int size = this.messages.size();
+        if (this.archivingMessages || window <= 0 || size <= window + window / 4 || getEventArchive() == null)
+            return null;
+
+        this.archivingMessages = true;
+        return this.messages.oldest(size - window);
+    }
+
+    private List<Image> trimImages() {
+        int window = getEventWindow();
+        int size = this.images.size();
+        if (this.archivingImages || window <= 0 || size <= window + window / 4 || getEventArchive() == null)
+            return null;
+
+        this.archivingImages = true;
+        return this.images.oldest(size - window);
+    }
+
+    // called outside of the lock: the batch is written asynchronously, and evicted from memory once committed.
+    private void archiveMessages(final List<Text> evicted) {
+        if (evicted == null)
+            return;
+
+        EventArchive archive = getEventArchive();
+        if (archive == null) {
+            synchronized(this) {
+                this.archivingMessages = false;
+            }
+            return;
+        }
+        archive.archive(this, evicted, Collections.<Image>emptyList(), new EventArchive.ArchiveListener() {
+            @Override
+            public void onArchived(boolean archived) {
+                List<Text> next = null;
+                synchronized(Conversation.this) {
+                    Conversation.this.archivingMessages = false;
+                    // a failed batch is retried with the next event, not in a loop.
+                    if (archived) {
+                        int committed = archivedHead(Conversation.this.messages, evicted);
+                        Conversation.this.messages.evictOldest(committed);
+                        Conversation.this.archivedMessages += committed;
+                        next = trimMessages();
+                    }
+                }
+                archiveMessages(next);
+            }
+        });
+    }
+
+    private void archiveImages(final List<Image> evicted) {
+        if (evicted == null)
+            return;
+
+        EventArchive archive = getEventArchive();
+        if (archive == null) {
+            synchronized(this) {
+                this.archivingImages = false;
+            }
+            return;
+        }
+        archive.archive(this, Collections.<Text>emptyList(), evicted, new EventArchive.ArchiveListener() {
+            @Override
+            public void onArchived(boolean archived) {
+                List<Image> next = null;
+                synchronized(Conversation.this) {
+                    Conversation.this.archivingImages = false;
+                    if (archived) {
+                        int committed = archivedHead(Conversation.this.images, evicted);
+                        Conversation.this.images.evictOldest(committed);
+                        Conversation.this.archivedImages += committed;
+                        next = trimImages();
+                    }
+                }
+                archiveImages(next);
+            }
+        });
+    }
+
+    // the events were replaced or added meanwhile: only the archived instances still at the head of the window are evicted.
+    private static <T extends Text> int archivedHead(MessageStore<T> store, List<T> archived) {
+        List<T> oldest = store.oldest(archived.size());
+        int head = 0;
+        while (head < oldest.size() && oldest.get(head) == archived.get(head))
+            head++;
+        return head;
+    }
+
+    private static int getEventWindow() {
+        ConversationClient client = ConversationClient.get();
+        return (client != null ? client.getEventWindow() : 0);
+    }
+
+    private static EventArchive getEventArchive() {
+        ConversationClient client = ConversationClient.get();
+        return (client != null && client.getSignallingChannel() != null ? client.getSignallingChannel().getEventArchive() : null);
+    }
+
+    /**
+     * @return A copy of the text events of the in-memory window, oldest first: changing it does not change the conversation.
+     *         Older texts are available through {@link Conversation#getMessageByIndex(int)}.
+     */
     public List<Text> getMessages() {
-        return this.messages;
+        return new ArrayList<>(this.messages.list());
     }
 
-    public Text findText(final String id) {
-        for (Text text : this.messages)
-            if (text.getId().equals(id))
-                return text;
+    /**
+     * Get a page of the text events of the in-memory window.
+     *
+     * @param from The oldest timestamp to include, or null to start from the first text.
+     * @param to   The timestamp to stop at, excluded, or null to include the latest text.
+     * @return The text events in that range, oldest first. The list is immutable.
+     */
+    public List<Text> getMessages(Date from, Date to) {
+        return this.messages.range(from, to);
+    }
+
+    /**
+     * Get a page of the text history before a known text, from the local cache.
+     * Paging by event rather than by position is not affected by the texts added meanwhile.
+     * The page is read on the calling thread, once the pending cache writes are applied:
+     * from the main thread, use {@link Conversation#getMessagesBefore(String, int, EventPageListener)}.
+     *
+     * @param eventId The id of the text to page from, excluded, or null to get the most recent texts.
+     * @param count   The maximum number of texts to get.
+     * @return The texts before this one, oldest first, or an empty list if the text is not cached.
+     *         The texts of the in-memory window are returned as such. The list is immutable.
+     */
+    public List<Text> getMessagesBefore(String eventId, int count) {
+        EventArchive archive = getEventArchive();
+        return (archive != null && count > 0 ? inMemory(this.messages, archive.readTextsBefore(this, eventId, count)) : Collections.<Text>emptyList());
+    }
 
-        return null;
+    /**
+     * Get a page of the text history after a known text, from the local cache, on the calling thread.
+     *
+     * @param eventId The id of the text to page from, excluded, or null to get the oldest texts.
+     * @param count   The maximum number of texts to get.
+     * @return The texts after this one, oldest first, or an empty list if the text is not cached.
+     *         The texts of the in-memory window are returned as such. The list is immutable.
+     */
+    public List<Text> getMessagesAfter(String eventId, int count) {
+        EventArchive archive = getEventArchive();
+        return (archive != null && count > 0 ? inMemory(this.messages, archive.readTextsAfter(this, eventId, count)) : Collections.<Text>emptyList());
     }
 
-    public Image findImage(final String id) {
-        for (Image image : this.images)
-            if (image.getId().equals(id))
-                return image;
+    /**
+     * Get a page of the image history before a known image, from the local cache, on the calling thread.
+     *
+     * @param eventId The id of the image to page from, excluded, or null to get the most recent images.
+     * @param count   The maximum number of images to get.
+     * @return The images before this one, oldest first, or an empty list if the image is not cached. The list is immutable.
+     */
+    public List<Image> getImagesBefore(String eventId, int count) {
+        EventArchive archive = getEventArchive();
+        return (archive != null && count > 0 ? inMemory(this.images, archive.readImagesBefore(this, eventId, count)) : Collections.<Image>emptyList());
+    }
 
-        return null;
+    /**
+     * Get a page of the image history after a known image, from the local cache, on the calling thread.
+     *
+     * @param eventId The id of the image to page from, excluded, or null to get the oldest images.
+     * @param count   The maximum number of images to get.
+     * @return The images after this one, oldest first, or an empty list if the image is not cached. The list is immutable.
+     */
+    public List<Image> getImagesAfter(String eventId, int count) {
+        EventArchive archive = getEventArchive();
+        return (archive != null && count > 0 ? inMemory(this.images, archive.readImagesAfter(this, eventId, count)) : Collections.<Image>emptyList());
     }
 
+    /**
+     * Get a page of the text history before a known text, from the local cache, in the background.
+     *
+     * @param eventId The id of the text to page from, excluded, or null to get the most recent texts.
+     * @param count   The maximum number of texts to get.
+     * @param pageListener Given the texts before this one, as {@link Conversation#getMessagesBefore(String, int)} returns them.
+     */
+    public void getMessagesBefore(final String eventId, final int count, EventPageListener<Text> pageListener) {
+        readEvents(new Callable<List<Text>>() {
+            @Override
+            public List<Text> call() {
+                return getMessagesBefore(eventId, count);
+            }
+        }, pageListener);
+    }
+
+    /**
+     * Get a page of the text history after a known text, from the local cache, in the background.
+     *
+     * @see Conversation#getMessagesAfter(String, int)
+     */
+    public void getMessagesAfter(final String eventId, final int count, EventPageListener<Text> pageListener) {
+        readEvents(new Callable<List<Text>>() {
+            @Override
+            public List<Text> call() {
+                return getMessagesAfter(eventId, count);
+            }
+        }, pageListener);
+    }
+
+    /**
+     * Get a page of the image history before a known image, from the local cache, in the background.
+     *
+     * @see Conversation#getImagesBefore(String, int)
+     */
+    public void getImagesBefore(final String eventId, final int count, EventPageListener<Image> pageListener) {
+        readEvents(new Callable<List<Image>>() {
+            @Override
+            public List<Image> call() {
+                return getImagesBefore(eventId, count);
+            }
+        }, pageListener);
+    }
+
+    /**
+     * Get a page of the image history after a known image, from the local cache, in the background.
+     *
+     * @see Conversation#getImagesAfter(String, int)
+     */
+    public void getImagesAfter(final String eventId, final int count, EventPageListener<Image> pageListener) {
+        readEvents(new Callable<List<Image>>() {
+            @Override
+            public List<Image> call() {
+                return getImagesAfter(eventId, count);
+            }
+        }, pageListener);
+    }
+
+    private <T extends Text> void readEvents(Callable<List<T>> page, EventPageListener<T> pageListener) {
+        if (pageListener == null)
+            Log.d(TAG, "EventPageListener is mandatory");
+        else if (TextUtils.isEmpty(this.conversationId))
+            pageListener.onError(ConversationGenericListener.MISSING_PARAMS, "This conversation does not have an id.");
+        else if (ConversationClient.get() == null || ConversationClient.get().getSignallingChannel() == null)
+            pageListener.onEvents(Collections.<T>emptyList());
+        else
+            ConversationClient.get().getSignallingChannel().readEvents(this.conversationId, page, pageListener);
+    }
+
+    // the cache holds the events of the window too: prefer their in-memory instances, with their receipts and bitmaps.
+    private static <T extends Text> List<T> inMemory(MessageStore<T> store, List<T> cached) {
+        for (int i = 0; i < cached.size(); i++) {
+            T known = store.get(cached.get(i).getId());
+            if (known != null)
+                cached.set(i, known);
+        }
+        return Collections.unmodifiableList(cached);
+    }
+
+    /**
+     * Find a text event of the in-memory window, use {@link Conversation#getMessage(String)} to include older texts.
+     */
+    public Text findText(final String id) {
+        return this.messages.get(id);
+    }
+
+    public Image findImage(final String id) {
+        return this.images.get(id);
+    }
+
+    /**
+     * @return A copy of the image events of the in-memory window, oldest first: changing it does not change the conversation.
+     */
     public List<Image> getImages() {
-        return this.images;
+        return new ArrayList<>(this.images.list());
+    }
+
+    /**
+     * Get a page of the image events of the in-memory window.
+     *
+     * @param from The oldest timestamp to include, or null to start from the first image.
+     * @param to   The timestamp to stop at, excluded, or null to include the latest image.
+     * @return The image events in that range, oldest first. The list is immutable.
+     */
+    public List<Image> getImages(Date from, Date to) {
+        return this.images.range(from, to);
     }
 
+    /**
+     * @return A copy of the current members: changing it does not change the conversation.
+     *         Call {@link Conversation#update(ConversationListener)} to refresh them.
+     */
     public List<Member> getMembers() {
-        return this.members;
+        return new ArrayList<>(this.members.list());
     }
 
     public Member getSelf() {
@@ -682,30 +1043,24 @@ public class Conversation implements Parcelable {
     }
 
     protected  void clearMessages() {
-        synchronized(this) {
-            if (this.messages != null) {
-                this.messages.clear();
-                this.messages = new ArrayList<>();
-                //clear images as well
-            }
-        }
+        this.messages.clear();
     }
 
     protected void clearImages() {
-        synchronized(this) {
-            if (this.images != null) {
-                this.images.clear();
-                this.images = new ArrayList<>();
-            }
-        }
+        this.images.clear();
     }
 
     protected Conversation(Parcel in) {
+        this();
         this.name = in.readString();
         this.conversationId = in.readString();
         this.memberId = in.readString();
-        in.readTypedList(this.members, Member.CREATOR);
-        in.readTypedList(this.messages, Text.CREATOR);
+        List<Member> members = new ArrayList<>();
+        in.readTypedList(members, Member.CREATOR);
+        this.members.replaceAll(members);
+        List<Text> messages = new ArrayList<>();
+        in.readTypedList(messages, Text.CREATOR);
+        this.messages.replaceAll(messages);
         //in.readTypedList(this.images, Image.CREATOR);
         //this.self = in.readParcelable(Member.class.getClassLoader());
         this.creationDate = (Date) in.readSerializable();
@@ -734,8 +1089,8 @@ public class Conversation implements Parcelable {
         dest.writeString(this.name);
         dest.writeString(this.conversationId);
         dest.writeString(this.getMemberId());
-        dest.writeTypedList(this.members);
-        dest.writeTypedList(this.messages);
+        dest.writeTypedList(this.members.list());
+        dest.writeTypedList(this.messages.list());
         //dest.writeTypedList(this.images);
         //dest.writeParcelable(this.self, 0);
         dest.writeSerializable(this.creationDate);
@@ -13,6 +13,7 @@ import android.util.Log;
 
 import com.bugsnag.android.Bugsnag;
 
+import com.nexmo.sdk.conversation.client.event.CachedConversationListListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.ConversationCreateListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.JoinListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.LoginListener;
@@ -22,15 +23,22 @@ import com.nexmo.sdk.conversation.client.event.CompletionListeners.PushEnableLis
 import com.nexmo.sdk.conversation.client.event.ConversationClientException;
 import com.nexmo.sdk.conversation.client.event.ConversationInvitedListener;
 import com.nexmo.sdk.conversation.client.event.ConversationListListener;
+import com.nexmo.sdk.conversation.client.event.ConversationListener;
+import com.nexmo.sdk.conversation.client.event.ImageListener;
 import com.nexmo.sdk.conversation.client.event.MemberInvitedListener;
 import com.nexmo.sdk.conversation.client.event.SignalingChannelListener;
+import com.nexmo.sdk.conversation.client.event.TextListener;
+import com.nexmo.sdk.conversation.client.event.TextSearchListener;
 import com.nexmo.sdk.conversation.client.event.network.NetworkingStateListener;
 import com.nexmo.sdk.conversation.client.event.network.NetworkingStateListener.NETWORK_STATE;
 
 import com.nexmo.sdk.conversation.config.Config;
+import com.nexmo.sdk.conversation.config.Defaults;
 import com.nexmo.sdk.conversation.core.client.ConversationSignalingChannel;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * You use a <i>ConversationClient</i> instance to utilise the services provided by Conversation API in your app.
@@ -161,7 +169,13 @@ public class ConversationClient implements Parcelable {
     private boolean explicitDisconnect = false;
     private ArrayList<NetworkingStateListener> networkingStateListeners = new ArrayList<>();
     // Indicates if the client should try to reconnect after the socket gets disconnected.
-    private boolean reconnectEnabled;
+    private boolean reconnectEnabled = true;
+    private long reconnectDelay = Defaults.RECONNECT_DELAY;
+    private long reconnectDelayMax = Defaults.RECONNECT_DELAY_MAX;
+    private double reconnectJitter = Defaults.RECONNECT_JITTER;
+    private int reconnectAttempts = Defaults.RECONNECT_ATTEMPTS;
+    private int eventWindow = Defaults.EVENT_WINDOW;
+    private boolean weakListeners = false;
 
     //push setting persisted
     private boolean pushEnabledForAllConversations;
@@ -180,6 +194,18 @@ public class ConversationClient implements Parcelable {
         this.environmentHost = environmentHost;
     }
 
+    private ConversationClient(final ConversationClientBuilder builder) {
+        this(builder.context, builder.environmentHost, builder.enableCrashReporting);
+        this.reconnectEnabled = builder.reconnectEnabled;
+        this.reconnectDelay = builder.reconnectDelay;
+        this.reconnectDelayMax = builder.reconnectDelayMax;
+        this.reconnectJitter = builder.reconnectJitter;
+        this.reconnectAttempts = builder.reconnectAttempts;
+        this.eventWindow = builder.eventWindow;
+        this.weakListeners = builder.weakListeners;
+        this.signalingChannel.setCallbackExecutor(builder.callbackExecutor, builder.callbacksOnMainThread);
+    }
+
     private ConversationClient(final Context context, final String environmentHost, final boolean enableCrashReporting) {
         this(context, environmentHost);
         if (enableCrashReporting) {
@@ -310,6 +336,8 @@ public class ConversationClient implements Parcelable {
                 this.loginListener.onUserAlreadyLoggedIn(new User(this.signalingChannel.isLoggedIn()));
             else if (this.signalingChannel.isConnecting()) //todo add CONNECTING state
                 this.loginListener.onError(LoginListener.CONNECT_ALREADY_IN_PROGRESS, "Already connecting");
+            else if (this.signalingChannel.getConnectionStatus() == NetworkingStateListener.NETWORK_STATE.RECONNECT)
+                this.loginListener.onError(LoginListener.CONNECT_ALREADY_IN_PROGRESS, "Already reconnecting");
             else if (TextUtils.isEmpty(token))
                 this.loginListener.onError(LoginListener.GENERIC_ERR, TAG + " onError: Missing params");
             else {
@@ -503,6 +531,72 @@ public class ConversationClient implements Parcelable {
             Log.d(TAG, "ConversationListListener is mandatory");
     }
 
+    /**
+     * Retrieve the conversation list known from the previous sessions, without waiting for the server.
+     *
+     * <p>The cached conversations, with their members, are dispatched first through
+     * {@link CachedConversationListListener#onConversationList(List)}. If a user is logged in, the list is then
+     * requested from the server and the differences are dispatched through
+     * {@link CachedConversationListListener#onConversationListChanged(List, List, List)}.
+     * Otherwise the cached list stands until {@link #getConversations(ConversationListListener)} is called.</p>
+     *
+     * @param cachedConversationListListener The listener in charge of dispatching the result.
+     */
+    public void getCachedConversations(CachedConversationListListener cachedConversationListListener) {
+        if (cachedConversationListListener != null)
+            this.signalingChannel.getCachedConversations(cachedConversationListListener, this.signalingChannel.isLoggedIn() != null);
+        else
+            Log.d(TAG, "CachedConversationListListener is mandatory");
+    }
+
+    /**
+     * Retrieve a conversation known from the previous sessions, with its most recent events, without waiting for the server.
+     *
+     * <p>The cached conversation is dispatched first through {@link ConversationListener#onConversationUpdated(Conversation)}.
+     * If a user is logged in, its members and the events after the cached ones are then requested from the server:
+     * the listener is updated again, and the new events are dispatched to the {@link TextListener}s and
+     * {@link ImageListener}s of the conversation.</p>
+     *
+     * @param conversationId       The conversation id.
+     * @param conversationListener The listener in charge of dispatching the result.
+     */
+    public void getCachedConversation(String conversationId, ConversationListener conversationListener) {
+        if (conversationListener == null)
+            Log.d(TAG, "ConversationListener is mandatory");
+        else if (TextUtils.isEmpty(conversationId))
+            conversationListener.onError(ConversationListener.MISSING_CONVERSATION, "Missing conversation");
+        else
+            this.signalingChannel.getCachedConversation(conversationId, conversationListener, this.signalingChannel.isLoggedIn() != null);
+    }
+
+    /**
+     * Search the texts of all the cached conversations, without any network request.
+     *
+     * <p>Each word of the query has to match the start of a word of the text, in any order.
+     * The results are ranked by relevance, then the most recent first.</p>
+     *
+     * @param query              The words to search.
+     * @param offset             The number of ranked results to skip, to get the next pages.
+     * @param limit              The maximum number of results.
+     * @param textSearchListener The listener in charge of dispatching the result.
+     */
+    public void searchTexts(String query, int offset, int limit, TextSearchListener textSearchListener) {
+        searchTexts(null, query, offset, limit, textSearchListener);
+    }
+
+    /**
+     * Search the cached texts of a conversation, without any network request.
+     *
+     * @param conversationId     The conversation to search, or null to search all of them.
+     * @see #searchTexts(String, int, int, TextSearchListener)
+     */
+    public void searchTexts(String conversationId, String query, int offset, int limit, TextSearchListener textSearchListener) {
+        if (textSearchListener != null)
+            this.signalingChannel.searchTexts(query, conversationId, offset, limit, textSearchListener);
+        else
+            Log.d(TAG, "TextSearchListener is mandatory");
+    }
+
     /**
      * Detach all attached listeners.
      * <p>Note: upon logout, this is done by default.</p>
@@ -525,6 +619,34 @@ public class ConversationClient implements Parcelable {
 
     public String getToken() { return this.token;}
 
+    public boolean isReconnectEnabled() {
+        return this.reconnectEnabled;
+    }
+
+    public long getReconnectDelay() {
+        return this.reconnectDelay;
+    }
+
+    public long getReconnectDelayMax() {
+        return this.reconnectDelayMax;
+    }
+
+    public double getReconnectJitter() {
+        return this.reconnectJitter;
+    }
+
+    public int getReconnectAttempts() {
+        return this.reconnectAttempts;
+    }
+
+    public int getEventWindow() {
+        return this.eventWindow;
+    }
+
+    public boolean hasWeakListeners() {
+        return this.weakListeners;
+    }
+
     /**
      * Returns the current version of the Nexmo Conversation SDK.
      *
@@ -590,7 +712,15 @@ public class ConversationClient implements Parcelable {
         private Context context;
         private String environmentHost = Config.ENDPOINT_PRODUCTION;
         private boolean enableCrashReporting; // by default false.
-        //private boolean reconectAuto; // automatically-reconnect policy when the socket gets disconnected.
+        private boolean reconnectEnabled = true; // automatically-reconnect policy when the socket gets disconnected.
+        private long reconnectDelay = Defaults.RECONNECT_DELAY;
+        private long reconnectDelayMax = Defaults.RECONNECT_DELAY_MAX;
+        private double reconnectJitter = Defaults.RECONNECT_JITTER;
+        private int reconnectAttempts = Defaults.RECONNECT_ATTEMPTS;
+        private int eventWindow = Defaults.EVENT_WINDOW;
+        private boolean weakListeners = false;
+        private Executor callbackExecutor; // by default the callbacks run on the socket and network threads.
+        private boolean callbacksOnMainThread = false;
 
         /**
          * Build a {@link ConversationClient}, based on the following mandatory params:
@@ -610,7 +740,7 @@ public class ConversationClient implements Parcelable {
             }
 
             if (mInstance == null)
-                mInstance = new ConversationClient(this.context, this.environmentHost, this.enableCrashReporting);
+                mInstance = new ConversationClient(this);
 
             return mInstance;
         }
@@ -630,6 +760,87 @@ public class ConversationClient implements Parcelable {
             return this;
         }
 
+        /**
+         * Reconnect automatically when the socket gets disconnected, and login again with the same token.
+         * Enabled by default.
+         */
+        public ConversationClientBuilder reconnect(boolean reconnectEnabled) {
+            this.reconnectEnabled = reconnectEnabled;
+            return this;
+        }
+
+        /**
+         * Exponential backoff between reconnection attempts.
+         *
+         * @param initialDelay The delay before the first attempt, in milliseconds. Doubled on each failed attempt.
+         * @param maxDelay     The upper bound of the delay, in milliseconds.
+         */
+        public ConversationClientBuilder reconnectBackoff(long initialDelay, long maxDelay) {
+            this.reconnectDelay = initialDelay;
+            this.reconnectDelayMax = Math.max(initialDelay, maxDelay);
+            return this;
+        }
+
+        /**
+         * Randomization of every reconnection delay, so that clients disconnected at the same time
+         * do not reconnect at the same time.
+         *
+         * @param jitter Between 0 (no randomization) and 1 (anywhere between 0 and twice the delay).
+         */
+        public ConversationClientBuilder reconnectJitter(double jitter) {
+            this.reconnectJitter = Math.min(1, Math.max(0, jitter));
+            return this;
+        }
+
+        /**
+         * Number of reconnection attempts before giving up, unlimited by default.
+         */
+        public ConversationClientBuilder reconnectAttempts(int attempts) {
+            this.reconnectAttempts = attempts;
+            return this;
+        }
+
+        /**
+         * Number of the most recent text events, and of image events, kept in memory for each conversation.
+         * Older events are moved to the local cache and read back from it when accessed.
+         *
+         * @param eventWindow The window size, or 0 to keep all the events in memory.
+         */
+        public ConversationClientBuilder eventWindow(int eventWindow) {
+            this.eventWindow = Math.max(0, eventWindow);
+            return this;
+        }
+
+        /**
+         * Hold the conversation listeners by weak references, so that a listener which is never removed,
+         * such as an Activity, can still be garbage collected. Disabled by default.
+         * When enabled, the application has to keep a reference to its listeners for as long as they are needed.
+         */
+        public ConversationClientBuilder weakListeners(boolean weakListeners) {
+            this.weakListeners = weakListeners;
+            return this;
+        }
+
+        /**
+         * Run the listener callbacks on this executor instead of the socket and network threads.
+         * The callbacks of a conversation run in order; the ones received in a burst are handed to the executor as one task.
+         */
+        public ConversationClientBuilder callbackExecutor(Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            this.callbacksOnMainThread = false;
+            return this;
+        }
+
+        /**
+         * Run the listener callbacks on the main thread. The callbacks of a conversation received
+         * during a frame are delivered together, with a single message posted to the main looper.
+         */
+        public ConversationClientBuilder callbacksOnMainThread() {
+            this.callbackExecutor = null;
+            this.callbacksOnMainThread = true;
+            return this;
+        }
+
     }
 
 }
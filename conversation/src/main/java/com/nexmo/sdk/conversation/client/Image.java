@@ -14,6 +14,8 @@ import com.nexmo.sdk.conversation.client.event.ConversationListener;
 import com.nexmo.sdk.conversation.client.event.ImageListener;
 import com.nexmo.sdk.conversation.client.event.SignalingChannelListener;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -67,8 +69,7 @@ public class Image extends Text implements Parcelable {
     }
 
     public Image(final String id, final Date timestamp) {
-        this.id = id;
-        this.timestamp = timestamp;
+        super(null, id, timestamp);
     }
 
     public Image(final String payload, final String id, final Date timestamp, final String url) {
@@ -88,7 +89,8 @@ public class Image extends Text implements Parcelable {
 
     public Image(final String payload, final String id, final Date timestamp, final String url, Member member, String deleteEventId, List<SeenReceipt> seenReceipts){
         this(payload, id, timestamp, url, member, deleteEventId);
-        this.seenReceiptList = seenReceipts;
+        if (seenReceipts != null && !seenReceipts.isEmpty())
+            this.seenReceiptList = Collections.unmodifiableList(new ArrayList<>(seenReceipts));
     }
 
     protected Image(Parcel in) {
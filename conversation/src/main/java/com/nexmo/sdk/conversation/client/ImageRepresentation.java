@@ -34,7 +34,7 @@ public class ImageRepresentation implements Parcelable {
     @Expose
     @SerializedName("size")
     public long size;
-    public Bitmap bitmap;
+    public volatile Bitmap bitmap;
 
     public ImageRepresentation(TYPE type, String id, String url, long size) {
         this.type = type;
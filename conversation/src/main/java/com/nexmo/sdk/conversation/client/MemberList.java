@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The members of a conversation, indexed by member id and by user id.
+ *
+ * <p>Every update publishes a new immutable state, so lookups never take a lock and a snapshot only shares
+ * the current state. Members are few and change rarely compared to events, an update copies the state.
+ * A member is never modified once it is in the list: a state change replaces it with an updated copy.</p>
+ */
+class MemberList {
+    private volatile State state = new State(Collections.<Member>emptyList());
+
+    MemberList() {
+    }
+
+    /**
+     * A snapshot of another member list. Later updates of either list are not seen by the other one.
+     */
+    MemberList(MemberList memberList) {
+        this.state = memberList.state;
+    }
+
+    /**
+     * Add a member, or replace the member with the same member id: the list keeps one member per member id.
+     */
+    synchronized void add(Member member) {
+        update(member);
+    }
+
+    /**
+     * Replace the member with the same member id, or add it if it is not known.
+     */
+    synchronized void update(Member member) {
+        if (member == null)
+            return;
+        List<Member> members = new ArrayList<>(this.state.members);
+        Member previous = this.state.byId.get(member.getMemberId());
+        int position = (previous != null ? members.indexOf(previous) : -1);
+        if (position >= 0)
+            members.set(position, member);
+        else
+            members.add(member);
+        this.state = new State(members);
+    }
+
+    /**
+     * Replace all the members at once, as many updates would: a member with the same member id as an earlier one
+     * replaces it at its position.
+     */
+    synchronized void replaceAll(List<Member> members) {
+        List<Member> copy = new ArrayList<>();
+        Map<String, Integer> positions = new HashMap<>();
+        if (members != null)
+            for (Member member : members) {
+                if (member == null)
+                    continue;
+                Integer position = (member.getMemberId() != null ? positions.get(member.getMemberId()) : null);
+                if (position != null)
+                    copy.set(position, member);
+                else {
+                    if (member.getMemberId() != null)
+                        positions.put(member.getMemberId(), copy.size());
+                    copy.add(member);
+                }
+            }
+        this.state = new State(copy);
+    }
+
+    Member get(String memberId) {
+        return (memberId != null ? this.state.byId.get(memberId) : null);
+    }
+
+    Member getByUserId(String userId) {
+        return (userId != null ? this.state.byUserId.get(userId) : null);
+    }
+
+    /**
+     * @return The current members. The list is immutable and does not see later updates.
+     */
+    List<Member> list() {
+        return this.state.members;
+    }
+
+    private static final class State {
+        final List<Member> members;
+        final Map<String, Member> byId = new HashMap<>();
+        final Map<String, Member> byUserId = new HashMap<>();
+
+        // member ids are unique, the first member wins when several share a user id.
+        State(List<Member> members) {
+            this.members = Collections.unmodifiableList(members);
+            for (Member member : members) {
+                if (member.getMemberId() != null)
+                    this.byId.put(member.getMemberId(), member);
+                if (member.getUser_id() != null && !this.byUserId.containsKey(member.getUser_id()))
+                    this.byUserId.put(member.getUser_id(), member);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The text or image events of a conversation, indexed by event id and ordered by timestamp.
+ *
+ * <p>Lookups and duplicate checks by id do not depend on the number of events.
+ * The events are kept in a balanced search tree ordered by timestamp, then by arrival, so an event
+ * arriving out of order is inserted at its position in O(log n), like the common case of an event newer
+ * than all the others. Events without a timestamp are kept at the end.</p>
+ *
+ * <p>The store is persistent: every update publishes a new immutable state, so readers never take a lock
+ * and a snapshot of the store, or of its list, only shares the current state.
+ * An insert only copies the path from the root to the new event, the rest of the tree is shared with the
+ * older states. The id index is shared too: each event is stamped with its arrival sequence, and a state only
+ * sees the events that arrived before it was published.</p>
+ */
+class MessageStore<T extends Text> {
+    private static final Comparator<Text> BY_TIMESTAMP = new Comparator<Text>() {
+        @Override
+        public int compare(Text lhs, Text rhs) {
+            long lhsTimestamp = lhs.getTimestampMillis();
+            long rhsTimestamp = rhs.getTimestampMillis();
+            if (lhsTimestamp == Text.NO_TIMESTAMP)
+                return (rhsTimestamp == Text.NO_TIMESTAMP ? 0 : 1);
+            if (rhsTimestamp == Text.NO_TIMESTAMP)
+                return -1;
+            return (lhsTimestamp < rhsTimestamp ? -1 : (lhsTimestamp == rhsTimestamp ? 0 : 1));
+        }
+    };
+
+    private volatile State<T> state;
+
+    MessageStore() {
+        this.state = new State<>(null, new Index<T>(0), 0);
+    }
+
+    MessageStore(List<? extends T> events) {
+        this();
+        replaceAll(events);
+    }
+
+    /**
+     * A snapshot of another store. Later updates of either store are not seen by the other one.
+     */
+    MessageStore(MessageStore<T> store) {
+        this.state = store.state;
+    }
+
+    /**
+     * Insert an event at its position. An event with an id that is already known is ignored.
+     *
+     * @return true if the event was added.
+     */
+    synchronized boolean add(T event) {
+        State<T> current = this.state;
+        if (event == null || current.contains(event.getId()))
+            return false;
+
+        this.state = current.with(event);
+        return true;
+    }
+
+    /**
+     * Replace all the events. When several events share an id, only the first one is kept.
+     */
+    synchronized void replaceAll(List<? extends T> events) {
+        List<T> unique = new ArrayList<>();
+        if (events != null) {
+            Set<String> ids = new HashSet<>();
+            for (T event : events)
+                if (event != null && (event.getId() == null || ids.add(event.getId())))
+                    unique.add(event);
+            // the history is received in order, the stable sort only checks it.
+            Collections.sort(unique, BY_TIMESTAMP);
+        }
+        this.state = State.of(unique);
+    }
+
+    /**
+     * @return The oldest events, at most count of them, oldest first.
+     */
+    List<T> oldest(int count) {
+        State<T> current = this.state;
+        return new StateList<>(current, 0, Math.max(0, Math.min(count, current.size())));
+    }
+
+    /**
+     * Drop the oldest events, at most count of them. The remaining events are indexed again in a new state.
+     */
+    synchronized void evictOldest(int count) {
+        State<T> current = this.state;
+        int evicted = Math.max(0, Math.min(count, current.size()));
+        if (evicted == 0)
+            return;
+
+        this.state = State.of(new ArrayList<>(new StateList<>(current, evicted, current.size())));
+    }
+
+    synchronized void clear() {
+        this.state = new State<>(null, new Index<T>(0), 0);
+    }
+
+    T get(String id) {
+        return this.state.get(id);
+    }
+
+    boolean contains(String id) {
+        return this.state.contains(id);
+    }
+
+    /**
+     * @return The event at this position, or null if it is out of range.
+     */
+    T get(int position) {
+        State<T> current = this.state;
+        return (position >= 0 && position < current.size() ? current.get(position) : null);
+    }
+
+    /**
+     * @return The events with a timestamp in [from, to), oldest first.
+     *         A null bound leaves that end of the range open.
+     */
+    List<T> range(Date from, Date to) {
+        State<T> current = this.state;
+        int start = (from != null ? current.lowerBound(from) : 0);
+        int end = (to != null ? current.lowerBound(to) : current.size());
+        return new StateList<>(current, start, Math.max(start, end));
+    }
+
+    /**
+     * @return The current events, oldest first. The list is immutable and does not see later updates.
+     */
+    List<T> list() {
+        State<T> current = this.state;
+        return new StateList<>(current, 0, current.size());
+    }
+
+    int size() {
+        return this.state.size();
+    }
+
+    // an event of the index, with the sequence it arrived at.
+    private static final class Entry<T extends Text> {
+        final T event;
+        final long sequence;
+
+        Entry(T event, long sequence) {
+            this.event = event;
+            this.sequence = sequence;
+        }
+    }
+
+    // the events by id, shared by the states that were derived by adding events.
+    private static final class Index<T extends Text> {
+        final Map<String, Entry<T>> entries = new ConcurrentHashMap<>();
+        // the next sequence, only the state that has seen all of them may add to this index.
+        final AtomicLong next;
+
+        Index(long next) {
+            this.next = new AtomicLong(next);
+        }
+    }
+
+    // a node of a treap: ordered by timestamp then arrival, and a heap by priority, which keeps it balanced.
+    private static final class Node<T extends Text> {
+        final T event;
+        final long sequence;
+        final int priority;
+        final Node<T> left;
+        final Node<T> right;
+        final int size;
+
+        Node(T event, long sequence, Node<T> left, Node<T> right) {
+            this(event, sequence, priority(sequence), left, right);
+        }
+
+        private Node(T event, long sequence, int priority, Node<T> left, Node<T> right) {
+            this.event = event;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + 1 + size(right);
+        }
+
+        Node<T> with(Node<T> left, Node<T> right) {
+            return new Node<>(this.event, this.sequence, this.priority, left, right);
+        }
+
+        static int size(Node<?> node) {
+            return (node != null ? node.size : 0);
+        }
+
+        // spreads the sequences, consecutive ones get unrelated priorities.
+        static int priority(long sequence) {
+            long mixed = sequence * 0x9E3779B97F4A7C15L;
+            mixed = (mixed ^ (mixed >>> 32)) * 0xD6E8FEB86659FD93L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+
+        // the newest arrival goes after the events with the same timestamp, so arrival order is kept between them.
+        static <T extends Text> Node<T> insert(Node<T> node, Node<T> leaf) {
+            if (node == null)
+                return leaf;
+
+            int order = BY_TIMESTAMP.compare(leaf.event, node.event);
+            if (order < 0 || (order == 0 && leaf.sequence < node.sequence)) {
+                Node<T> left = insert(node.left, leaf);
+                return (left.priority > node.priority ? left.with(left.left, node.with(left.right, node.right))
+                        : node.with(left, node.right));
+            }
+            Node<T> right = insert(node.right, leaf);
+            return (right.priority > node.priority ? right.with(node.with(node.left, right.left), right.right)
+                    : node.with(node.left, right));
+        }
+    }
+
+    private static final class State<T extends Text> {
+        final Node<T> root;
+        final Index<T> index;
+        // the events of the index that arrived before this sequence are part of this state.
+        final long limit;
+
+        State(Node<T> root, Index<T> index, long limit) {
+            this.root = root;
+            this.index = index;
+            this.limit = limit;
+        }
+
+        // a new index for events that are already in order.
+        static <T extends Text> State<T> of(List<T> events) {
+            Index<T> index = new Index<>(events.size());
+            Node<T> root = null;
+            for (int sequence = 0; sequence < events.size(); sequence++) {
+                T event = events.get(sequence);
+                if (event.getId() != null)
+                    index.entries.put(event.getId(), new Entry<>(event, sequence));
+                root = Node.insert(root, new Node<>(event, sequence, null, null));
+            }
+            return new State<>(root, index, events.size());
+        }
+
+        int size() {
+            return Node.size(this.root);
+        }
+
+        T get(String id) {
+            Entry<T> entry = (id != null ? this.index.entries.get(id) : null);
+            return (entry != null && entry.sequence < this.limit ? entry.event : null);
+        }
+
+        // events that arrived after this state was published are not part of it.
+        boolean contains(String id) {
+            return (get(id) != null);
+        }
+
+        State<T> with(T event) {
+            Index<T> index = this.index;
+            // a snapshot of this state was updated meanwhile: this state goes on with an index of its own.
+            if (!index.next.compareAndSet(this.limit, this.limit + 1)) {
+                index = new Index<>(this.limit + 1);
+                for (Map.Entry<String, Entry<T>> entry : this.index.entries.entrySet())
+                    if (entry.getValue().sequence < this.limit)
+                        index.entries.put(entry.getKey(), entry.getValue());
+            }
+            if (event.getId() != null)
+                index.entries.put(event.getId(), new Entry<>(event, this.limit));
+            return new State<>(Node.insert(this.root, new Node<>(event, this.limit, null, null)), index, this.limit + 1);
+        }
+
+        T get(int position) {
+            Node<T> node = this.root;
+            while (node != null) {
+                int left = Node.size(node.left);
+                if (position < left)
+                    node = node.left;
+                else if (position == left)
+                    return node.event;
+                else {
+                    position -= left + 1;
+                    node = node.right;
+                }
+            }
+            throw new IndexOutOfBoundsException("Position: " + position);
+        }
+
+        // the first event with a timestamp that is not older than this one; events without a timestamp are last.
+        int lowerBound(Date timestamp) {
+            long bound = timestamp.getTime();
+            int position = 0;
+            Node<T> node = this.root;
+            while (node != null) {
+                long current = node.event.getTimestampMillis();
+                if (current != Text.NO_TIMESTAMP && current < bound) {
+                    position += Node.size(node.left) + 1;
+                    node = node.right;
+                } else
+                    node = node.left;
+            }
+            return position;
+        }
+    }
+
+    // an immutable window over a state.
+    private static final class StateList<T extends Text> extends AbstractList<T> {
+        private final State<T> state;
+        private final int start;
+        private final int end;
+
+        StateList(State<T> state, int start, int end) {
+            this.state = state;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            return this.state.get(this.start + index);
+        }
+
+        @Override
+        public int size() {
+            return this.end - this.start;
+        }
+
+        // walks the tree in order instead of looking up every position.
+        @Override
+        public Iterator<T> iterator() {
+            final Deque<Node<T>> path = new ArrayDeque<>();
+            Node<T> node = (this.start < this.end ? this.state.root : null);
+            int position = this.start;
+            while (node != null) {
+                int left = Node.size(node.left);
+                if (position < left) {
+                    path.push(node);
+                    node = node.left;
+                } else if (position == left) {
+                    path.push(node);
+                    break;
+                } else {
+                    position -= left + 1;
+                    node = node.right;
+                }
+            }
+
+            return new Iterator<T>() {
+                private int remaining = size();
+
+                @Override
+                public boolean hasNext() {
+                    return this.remaining > 0;
+                }
+
+                @Override
+                public T next() {
+                    if (this.remaining <= 0)
+                        throw new NoSuchElementException();
+                    Node<T> next = path.pop();
+                    for (Node<T> child = next.right; child != null; child = child.left)
+                        path.push(child);
+                    this.remaining--;
+                    return next.event;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+}
@@ -18,12 +18,12 @@ public class SeenReceipt implements Parcelable {
     //TODO event itself: Text/Image
     private String event_id;
     private String member_id;
-    private Date timestamp;
+    private long timestamp = Text.NO_TIMESTAMP;
 
     public SeenReceipt(String event_id, String member_id, Date timestamp) {
         this.event_id = event_id;
         this.member_id = member_id;
-        this.timestamp = timestamp;
+        this.timestamp = (timestamp != null ? timestamp.getTime() : Text.NO_TIMESTAMP);
     }
 
     public String getMember_id() {
@@ -35,13 +35,13 @@ public class SeenReceipt implements Parcelable {
     }
 
     public Date getTimestamp() {
-        return this.timestamp;
+        return (this.timestamp != Text.NO_TIMESTAMP ? new Date(this.timestamp) : null);
     }
 
     protected SeenReceipt(Parcel in) {
         this.event_id = in.readString();
         this.member_id = in.readString();
-        this.timestamp = (Date) in.readSerializable();
+        this.timestamp = in.readLong();
     }
 
     public static final Creator<SeenReceipt> CREATOR = new Creator<SeenReceipt>() {
@@ -65,14 +65,14 @@ public class SeenReceipt implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(this.event_id);
         dest.writeString(this.member_id);
-        dest.writeSerializable(this.timestamp);
+        dest.writeLong(this.timestamp);
     }
 
     @Override
     public String toString() {
         return TAG + ".event id: " + (this.event_id != null ? this.event_id : "") +
                 ".memberId: " + (this.member_id != null ? this.member_id : "") +
-                ".timestamnp: " + (this.timestamp != null ? this.timestamp : "");
+                ".timestamnp: " + (this.timestamp != Text.NO_TIMESTAMP ? new Date(this.timestamp) : "");
     }
 
 }
@@ -15,10 +15,9 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Send a message to a Conversation and handle activity receipts.
@@ -38,17 +37,20 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class Text implements Parcelable {
     private static final String TAG = Text.class.getSimpleName();
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
     @Expose
     @SerializedName("text")
-    private String payload;
+    private volatile String payload;
     @Expose
     @SerializedName("id")
     protected String id;
-    protected String deleteEventId;
-    protected Date timestamp;
-    protected Member member;
-    protected List<SeenReceipt> seenReceiptList = new ArrayList<>();
-    private Map<Member, SeenReceipt> seenReceiptMap = new ConcurrentHashMap<>();
+    protected volatile String deleteEventId;
+    // epoch milliseconds, NO_TIMESTAMP if unknown; a Date is only created when asked for.
+    private long timestamp = NO_TIMESTAMP;
+    protected volatile Member member;
+    // allocated with the first receipt, most cached events never get one.
+    // copied on write, so readers iterate it without a lock while receipts keep arriving.
+    protected volatile List<SeenReceipt> seenReceiptList;
 
     protected Conversation conversation;
 
@@ -70,7 +72,7 @@ public class Text implements Parcelable {
     public Text(final String payload, final String id, final Date timestamp){
         this(payload);
         this.id = id;
-        this.timestamp = timestamp;
+        this.timestamp = (timestamp != null ? timestamp.getTime() : NO_TIMESTAMP);
     }
 
     public Text(final String payload, final String id, final Date timestamp, Member member){
@@ -85,7 +87,8 @@ public class Text implements Parcelable {
 
     public Text(final String payload, final String id, final Date timestamp, Member member, String deleteEventId, List<SeenReceipt> seenReceipts){
         this(payload, id, timestamp, member, deleteEventId);
-        this.seenReceiptList = seenReceipts;
+        if (seenReceipts != null && !seenReceipts.isEmpty())
+            this.seenReceiptList = Collections.unmodifiableList(new ArrayList<>(seenReceipts));
     }
 
     public Text(Text message) {
@@ -95,13 +98,12 @@ public class Text implements Parcelable {
     protected Text(Parcel in) {
         this.payload = in.readString();
         this.id = in.readString();
-        this.timestamp = (Date) in.readSerializable();
+        this.timestamp = in.readLong();
         this.member = in.readParcelable(Member.class.getClassLoader());
         this.deleteEventId = in.readString();
-        if (this.seenReceiptList != null)
-            in.readTypedList(this.seenReceiptList, SeenReceipt.CREATOR);
-//        if (this.seenReceiptMap != null)
-//            in.readArrayMapInternal(this.seenReceiptMap, SeenReceipt.CREATOR);
+        List<SeenReceipt> seenReceipts = in.createTypedArrayList(SeenReceipt.CREATOR);
+        if (seenReceipts != null && !seenReceipts.isEmpty())
+            this.seenReceiptList = Collections.unmodifiableList(seenReceipts);
     }
 
     public String getDeleteEventId() {
@@ -153,17 +155,33 @@ public class Text implements Parcelable {
     }
 
     public void addSeenReceipt(SeenReceipt seenReceipt) {
-        this.seenReceiptList.add(seenReceipt);
+        addSeenReceipts(Collections.singletonList(seenReceipt));
+    }
+
+    /**
+     * Add several seen receipts at once, the list of receipts is copied only once.
+     *
+     * @param seenReceipts The receipts to add, in order.
+     */
+    public synchronized void addSeenReceipts(List<SeenReceipt> seenReceipts) {
+        if (seenReceipts.isEmpty())
+            return;
+
+        List<SeenReceipt> merged = new ArrayList<>((this.seenReceiptList != null ? this.seenReceiptList.size() : 0) + seenReceipts.size());
+        if (this.seenReceiptList != null)
+            merged.addAll(this.seenReceiptList);
+        merged.addAll(seenReceipts);
+        this.seenReceiptList = Collections.unmodifiableList(merged);
     }
 
     /**
      * Get the list of seen receipts for this event.
      * Search the list for certain {@link SeenReceipt#getMember_id()} if needed.
      *
-     * @return A list of seen receipts.
+     * @return A list of seen receipts. The list is immutable and does not see later receipts.
      */
     public List<SeenReceipt> getSeenReceipts() {
-        return this.seenReceiptList;
+        return (this.seenReceiptList != null ? this.seenReceiptList : Collections.<SeenReceipt>emptyList());
     }
 
     /**
@@ -189,6 +207,13 @@ public class Text implements Parcelable {
      * @return The received timestamp.
      */
     public Date getTimestamp() {
+        return (this.timestamp != NO_TIMESTAMP ? new Date(this.timestamp) : null);
+    }
+
+    /**
+     * @return The timestamp in epoch milliseconds, or {@link Text#NO_TIMESTAMP}. Does not allocate.
+     */
+    long getTimestampMillis() {
         return this.timestamp;
     }
 
@@ -214,7 +239,7 @@ public class Text implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(this.payload);
         dest.writeString(this.id);
-        dest.writeSerializable(this.timestamp);
+        dest.writeLong(this.timestamp);
         dest.writeParcelable(this.member, 0);
         dest.writeString(this.deleteEventId);
         dest.writeTypedList(this.seenReceiptList);
@@ -223,7 +248,7 @@ public class Text implements Parcelable {
     @Override
     public String toString(){
         return TAG + " payload: " + (this.payload != null ? this.payload : "") + " .id: " + (this.id != null ? this.id : "") +
-                " .timestamp: " + (this.timestamp != null ? this.timestamp.toString() : "") +
+                " .timestamp: " + (this.timestamp != NO_TIMESTAMP ? new Date(this.timestamp).toString() : "") +
                 " .member: " + (this.member != null ? this.member.toString() : "");
     }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client.event;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.ConversationClient;
+
+import java.util.List;
+
+/**
+ * Retrieve the cached list of conversations, then the changes made since it was cached.
+ *
+ * <p>{@link #onConversationList(List)} is called first with the cached conversations.
+ * Once the list is received from the server, {@link #onConversationListChanged(List, List, List)}
+ * reports the differences, so that the rendered list can be patched instead of reloaded.</p>
+ *
+ * @see ConversationClient#getCachedConversations(CachedConversationListListener)
+ */
+public interface CachedConversationListListener extends ConversationListListener {
+
+    /**
+     * The conversation list received from the server differs from the cached one.
+     * Not called if both lists are the same.
+     *
+     * @param added   The conversations that were not cached.
+     * @param updated The cached conversations with a new name, new members or new events.
+     * @param removed The cached conversations that are no longer in the list.
+     */
+    void onConversationListChanged(List<Conversation> added, List<Conversation> updated, List<Conversation> removed);
+}
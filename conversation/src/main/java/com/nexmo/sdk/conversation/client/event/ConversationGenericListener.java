@@ -16,6 +16,8 @@ public interface ConversationGenericListener {
     int MISSING_USER = -2;
     /** This error generally occurs while mandatory params are missing.**/
     int MISSING_PARAMS = -3;
+    /** This error occurs when the Conversation service did not answer a request in time.**/
+    int REQUEST_TIMEOUT = -4;
 
     /**
      * A Conversation related request has encountered an error.
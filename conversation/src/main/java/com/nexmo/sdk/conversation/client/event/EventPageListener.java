@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client.event;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Text;
+
+import java.util.List;
+
+/**
+ * Retrieve a page of the cached text or image history of a conversation.
+ *
+ * @see Conversation#getMessagesBefore(String, int, EventPageListener)
+ */
+public interface EventPageListener<T extends Text> extends ConversationGenericListener {
+
+    /**
+     * @param events The events of the requested page, oldest first, or an empty list if the event to page from is not cached.
+     *               The events of the in-memory window are returned as such. The list is immutable.
+     */
+    void onEvents(List<T> events);
+}
@@ -21,11 +21,16 @@ import java.util.List;
  */
 public interface SignalingChannelListener extends ConversationGenericListener {
 
+    // session events
+    void onLoggedIn(User user);
+    void onLoggedOut(User user);
+    void onDisconnected();
+
     // on:success events
     void onCreate(String tid, String conversationID);
     void onJoin(String tid, Member member);
     void onLeft(String tid,  Date invited, Date joined, Date left);
-    void onConversations(List<Conversation> conversations);
+    void onConversations(String tid, List<Conversation> conversations);
     void onConversation(String tid, Conversation conversation);
     void onEventsHistory(String tid, List<Text> messages, List<Image> images, List<SeenReceipt> seenReceipts);
     void onTextSent(String tid, String textId, Date timestamp);
@@ -36,6 +41,12 @@ public interface SignalingChannelListener extends ConversationGenericListener {
     void onTypingOff(String tid);
     void onInvitationSent(String tid);
 
+    // on:error events, routed back to the pending request by tid
+    void onRequestError(String tid, String errMessage);
+
+    // the conversation a pending request belongs to, or null.
+    String getRequestConversationId(String tid);
+
     //incoming member events
     void onMemberJoined(String cid, String memberId, User user, Date joinedTimestamp);
     void onMemberInvited(String cid, String cname, Member invitedMember, String invitedByMemberId, String invitedByUsername);
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client.event;
+
+import com.nexmo.sdk.conversation.client.ConversationClient;
+import com.nexmo.sdk.conversation.client.Text;
+
+import java.util.List;
+
+/**
+ * Retrieve the cached texts matching a search query.
+ *
+ * @see ConversationClient#searchTexts(String, int, int, TextSearchListener)
+ */
+public interface TextSearchListener extends ConversationGenericListener {
+
+    /**
+     * @param query The search query.
+     * @param texts The matching texts of the requested page, the most relevant first.
+     *              A text of a conversation that is not loaded yet is attached to a conversation that only has its id.
+     */
+    void onSearchResults(String query, List<Text> texts);
+}
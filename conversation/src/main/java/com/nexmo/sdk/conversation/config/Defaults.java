@@ -13,5 +13,37 @@ public class Defaults {
     public static final int CONNECTION_TIMEOUT = 15 * 1000;
     public static final int CONNECTION_READ_TIMEOUT = 10 * 1000;
     public static final int MAX_ALLOWABLE_TIME_DELTA = 5 * 60 * 1000;
+    /** Time to wait for a 'success' or 'error' signal before a pending request is failed. */
+    public static final int REQUEST_TIMEOUT = 30 * 1000;
+    /** Resolution of the pending requests timing wheel. */
+    public static final int REQUEST_TIMEOUT_TICK = 1000;
+    /** Maximum number of outgoing text and image events waiting for an acknowledgement. */
+    public static final int OUTBOX_WINDOW = 8;
+    /** Number of times an outgoing event is sent, once and again after reconnections, before it is failed. */
+    public static final int OUTBOX_SEND_ATTEMPTS = 3;
+    /** Delay before the first reconnection attempt, doubled on every failed attempt. */
+    public static final long RECONNECT_DELAY = 1000;
+    /** Upper bound for the delay between reconnection attempts. */
+    public static final long RECONNECT_DELAY_MAX = 60 * 1000;
+    /** Randomization applied to every reconnection delay, between 0 (none) and 1 (from 0 to twice the delay). */
+    public static final double RECONNECT_JITTER = 0.5;
+    /** Number of reconnection attempts before giving up. */
+    public static final int RECONNECT_ATTEMPTS = Integer.MAX_VALUE;
+    /** Maximum number of conversations synced at the same time after a reconnection. */
+    public static final int SYNC_CONCURRENCY = 4;
+    /** Number of threads processing the incoming conversation signals. */
+    public static final int EVENT_WORKER_THREADS = 4;
+    /** Number of the most recent text events, and of image events, kept in memory for each conversation. */
+    public static final int EVENT_WINDOW = 500;
+    /** Maximum number of distinct conversation, member and user ids shared between decoded events. */
+    public static final int ID_INTERNER_CAPACITY = 4096;
+    /** Interval, in milliseconds, between two deliveries of the listener callbacks on the main thread. */
+    public static final long CALLBACK_FRAME_INTERVAL = 16;
+    /** Delay, in milliseconds, between a change of state and the cache write which persists it with the following ones. */
+    public static final long CACHE_WRITE_DELAY = 50;
+    /** Maximum number of cache writes applied in one transaction. */
+    public static final int CACHE_WRITE_BATCH = 500;
+    /** Maximum number of ranked results of a cached text search, the pages are served from them. */
+    public static final int SEARCH_MAX_RESULTS = 1000;
 
 }
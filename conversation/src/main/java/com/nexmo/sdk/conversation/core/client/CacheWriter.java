@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.SeenReceipt;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.core.client.request.SendMessageRequest;
+import com.nexmo.sdk.conversation.core.persistence.CacheDB;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence of the conversations, members and events to {@link CacheDB}.
+ *
+ * <p>Writes are queued by the threads that change the state and applied in order by a single writer thread.
+ * The writer waits a short delay after the first queued write, then applies the queue in batches,
+ * each batch in one transaction. Reads run on a reader thread once the writes queued before them are applied:
+ * the database is in write-ahead logging mode, so they do not wait for the writes queued after them.</p>
+ *
+ * <p>The cache is best effort: a write that fails is logged and dropped, the other writes of its batch are committed.</p>
+ */
+class CacheWriter {
+    private static final String TAG = CacheWriter.class.getSimpleName();
+
+    /**
+     * A change of the cache, applied in the transaction of its batch.
+     */
+    interface Write {
+        void apply(CacheDB cacheDB);
+    }
+
+    /**
+     * A write of state that is not a copy of the server's, such as the outgoing events: clearing the cache keeps it.
+     */
+    interface DurableWrite extends Write {
+    }
+
+    /**
+     * A write that is told whether it is committed: on the writer thread once its transaction ends,
+     * or on the caller of {@link CacheWriter#clear()} if it is dropped before.
+     */
+    interface TrackedWrite extends Write {
+        void completed(boolean committed);
+    }
+
+    private final CacheDB cacheDB;
+    private final long delay;
+    private final int batchSize;
+    private final ScheduledExecutorService writer;
+    private volatile Thread writerThread;
+    private final ExecutorService reader;
+    private final ArrayDeque<Write> queue = new ArrayDeque<>();
+    private boolean scheduled;
+
+    /**
+     * @param delay     How long the first write of a batch waits for others, in milliseconds.
+     * @param batchSize The maximum number of writes applied in one transaction.
+     */
+    CacheWriter(CacheDB cacheDB, long delay, int batchSize) {
+        this.cacheDB = cacheDB;
+        this.delay = delay;
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                writerThread = thread;
+                return thread;
+            }
+        });
+        this.reader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG + "-reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    void enqueue(Write write) {
+        synchronized(this.queue) {
+            this.queue.add(write);
+            if (this.scheduled)
+                return;
+            this.scheduled = true;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        this.writer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, this.delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a read on the reader thread, once the writes queued before it are applied.
+     */
+    void read(final Runnable task) {
+        this.reader.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * Run a task on the writer thread, once the writes queued before it are applied.
+     */
+    void execute(final Runnable task) {
+        this.writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * Apply the queued writes before returning, for a read that has to see them.
+     */
+    void flush() {
+        if (Thread.currentThread() == this.writerThread) {
+            drain();
+            return;
+        }
+
+        Future<?> flushed = this.writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+        try {
+            flushed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.d(TAG, "flush failed: " + e.toString());
+        }
+    }
+
+    /**
+     * Drop the writes that are not applied yet, except the {@link DurableWrite}s.
+     */
+    void clear() {
+        List<Write> dropped = new ArrayList<>();
+        synchronized(this.queue) {
+            Iterator<Write> iterator = this.queue.iterator();
+            while (iterator.hasNext()) {
+                Write write = iterator.next();
+                if (!(write instanceof DurableWrite)) {
+                    iterator.remove();
+                    dropped.add(write);
+                }
+            }
+        }
+        completed(dropped, false);
+    }
+
+    /**
+     * Persist a conversation list. The members it carries are added, the cached ones are replaced by {@link #saveMembers} only.
+     */
+    void saveConversations(List<Conversation> conversations) {
+        final List<Conversation> copy = new ArrayList<>(conversations);
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.ingestConversations(copy);
+            }
+        });
+    }
+
+    /**
+     * Persist the conversation itself: name, self member and last event id.
+     */
+    void saveConversation(final Conversation conversation) {
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.insertConversation(conversation);
+            }
+        });
+    }
+
+    void saveMembers(final String cid, final List<Member> members) {
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.replaceMembers(cid, members);
+            }
+        });
+    }
+
+    void saveMember(final String cid, final Member member) {
+        if (member == null)
+            return;
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.insertMembers(cid, Collections.singletonList(member));
+            }
+        });
+    }
+
+    void saveTexts(final String cid, List<Text> texts) {
+        if (texts.isEmpty())
+            return;
+        final List<Text> copy = new ArrayList<>(texts);
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.insertTextEvents(cid, copy);
+            }
+        });
+    }
+
+    void saveImages(final String cid, List<Image> images) {
+        if (images.isEmpty())
+            return;
+        final List<Image> copy = new ArrayList<>(images);
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.insertImageEvents(cid, copy);
+            }
+        });
+    }
+
+    /**
+     * Persist a page of events, with their seen receipts.
+     */
+    void saveEvents(final String cid, List<Text> texts, List<Image> images) {
+        if (texts.isEmpty() && images.isEmpty())
+            return;
+        final List<Text> textsCopy = new ArrayList<>(texts);
+        final List<Image> imagesCopy = new ArrayList<>(images);
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.ingestEvents(cid, textsCopy, imagesCopy);
+            }
+        });
+    }
+
+    void saveSeenReceipt(final SeenReceipt seenReceipt) {
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.insertSeenReceipts(Collections.singletonList(seenReceipt));
+            }
+        });
+    }
+
+    void updateTextPayload(final String cid, final String eventId, final String payload) {
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.updateTextPayload(cid, eventId, payload);
+            }
+        });
+    }
+
+    /**
+     * Persist an outgoing event of a user until it is acknowledged.
+     */
+    void saveOutboxEntry(final SendMessageRequest request, final String userId) {
+        enqueue(new DurableWrite() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.insertOutboxEntry(request, userId);
+            }
+        });
+    }
+
+    void deleteOutboxEntry(final String tid) {
+        enqueue(new DurableWrite() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.deleteOutboxEntry(tid);
+            }
+        });
+    }
+
+    void clearOutbox(final String userId) {
+        enqueue(new DurableWrite() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.deleteOutboxEntries(userId);
+            }
+        });
+    }
+
+    void clearTexts(final String cid) {
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.deleteTextEvents(cid);
+            }
+        });
+    }
+
+    void clearImages(final String cid) {
+        enqueue(new Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.deleteImageEvents(cid);
+            }
+        });
+    }
+
+    // runs on the writer thread only.
+    private void drain() {
+        try {
+            while (true) {
+                List<Write> batch = new ArrayList<>();
+                synchronized(this.queue) {
+                    while (batch.size() < this.batchSize && !this.queue.isEmpty())
+                        batch.add(this.queue.poll());
+                }
+                if (batch.isEmpty())
+                    return;
+                apply(batch);
+            }
+        } finally {
+            // whatever ended the drain, the writes queued meanwhile must not wait for one that is never scheduled.
+            boolean pending;
+            synchronized(this.queue) {
+                pending = !this.queue.isEmpty();
+                this.scheduled = pending;
+            }
+            if (pending)
+                schedule();
+        }
+    }
+
+    /**
+     * @return true if every write of the batch is committed.
+     */
+    private boolean apply(List<Write> batch) {
+        if (commit(batch)) {
+            completed(batch, true);
+            return true;
+        }
+        if (batch.size() == 1) {
+            completed(batch, false);
+            return false;
+        }
+
+        // a failed write rolls its batch back: apply the writes one by one, so that only the failed ones are dropped.
+        boolean committed = true;
+        for (Write write : batch)
+            committed &= apply(Collections.singletonList(write));
+        return committed;
+    }
+
+    private static void completed(List<Write> writes, boolean committed) {
+        for (Write write : writes)
+            if (write instanceof TrackedWrite)
+                try {
+                    ((TrackedWrite) write).completed(committed);
+                } catch (RuntimeException e) {
+                    Log.d(TAG, "completion of a write failed: " + e.toString());
+                }
+    }
+
+    // in one transaction, rolled back if any of the writes fails.
+    private boolean commit(List<Write> writes) {
+        try {
+            SQLiteDatabase db = this.cacheDB.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (Write write : writes)
+                    write.apply(this.cacheDB);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                // the texts written within this transaction are only visible to the searches now.
+                this.cacheDB.invalidateSearches();
+            }
+            return true;
+        } catch (RuntimeException e) {
+            Log.d(TAG, "batch of " + writes.size() + " writes failed: " + e.toString());
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers the listener callbacks on the thread chosen by the application.
+ *
+ * <p>Without an executor the callbacks run on the calling thread, the socket or network thread that received the event.
+ * With an executor, the callbacks of a conversation are queued, and the executor is handed one task at a time
+ * which runs the ones queued so far in order: a busy conversation does not post one task per event,
+ * and the callbacks queued while a task runs wait for the next one, so a burst is spread over frames.</p>
+ */
+class CallbackDispatcher {
+    private static final String TAG = CallbackDispatcher.class.getSimpleName();
+
+    private volatile Executor executor;
+    // pending callbacks of the conversations that have a task scheduled or running.
+    private final Map<String, ArrayDeque<Runnable>> pending = new HashMap<>();
+
+    /**
+     * @param executor The executor of the callbacks, or null to run them on the calling thread.
+     */
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * An executor of the main thread, which runs the tasks at the start of the next frame,
+     * so the callbacks of a conversation received during a frame are delivered together.
+     */
+    static Executor mainThread(final long frameInterval) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                long now = SystemClock.uptimeMillis();
+                handler.postAtTime(task, now - now % frameInterval + frameInterval);
+            }
+        };
+    }
+
+    void dispatch(final String cid, Runnable callback) {
+        Executor current = this.executor;
+        if (current == null) {
+            callback.run();
+            return;
+        }
+
+        synchronized(this.pending) {
+            ArrayDeque<Runnable> queue = this.pending.get(cid);
+            if (queue != null) {
+                // a task is scheduled for this conversation, it will run this callback.
+                queue.add(callback);
+                return;
+            }
+            queue = new ArrayDeque<>();
+            queue.add(callback);
+            this.pending.put(cid, queue);
+        }
+        current.execute(drainTask(cid));
+    }
+
+    void clear() {
+        synchronized(this.pending) {
+            for (ArrayDeque<Runnable> queue : this.pending.values())
+                queue.clear();
+        }
+    }
+
+    private Runnable drainTask(final String cid) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                drain(cid);
+            }
+        };
+    }
+
+    // runs the callbacks queued when the task starts; the ones dispatched meanwhile are handed to the executor again,
+    // on the main thread that is the next frame, so a continuous burst never holds the thread.
+    // The conversation keeps its queue until it is empty, so a callback dispatched meanwhile
+    // runs after the others rather than in a concurrent task.
+    private void drain(String cid) {
+        ArrayDeque<Runnable> batch;
+        synchronized(this.pending) {
+            batch = this.pending.get(cid);
+            if (batch == null || batch.isEmpty()) {
+                this.pending.remove(cid);
+                return;
+            }
+            this.pending.put(cid, new ArrayDeque<Runnable>());
+        }
+
+        for (Runnable callback : batch) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                Log.d(TAG, "callback failed for " + cid + ": " + e.toString());
+            }
+        }
+
+        synchronized(this.pending) {
+            ArrayDeque<Runnable> next = this.pending.get(cid);
+            if (next == null || next.isEmpty()) {
+                this.pending.remove(cid);
+                return;
+            }
+        }
+        Executor current = this.executor;
+        if (current != null)
+            current.execute(drainTask(cid));
+        else
+            drain(cid);
+    }
+
+}
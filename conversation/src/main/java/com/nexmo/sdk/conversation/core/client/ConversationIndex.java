@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The known conversations, in the order they were received, indexed by conversation id.
+ *
+ * <p>Lookups by id do not take any lock, so resolving the conversation of an incoming event
+ * costs the same for ten or ten thousand conversations. Updates keep the ordered list and the index in sync.</p>
+ */
+class ConversationIndex {
+    private final Map<String, Conversation> index = new ConcurrentHashMap<>();
+    private final List<Conversation> ordered = new ArrayList<>();
+
+    /**
+     * @return The conversation with this id, or null if it is not known.
+     */
+    Conversation get(String cid) {
+        return (cid != null ? this.index.get(cid) : null);
+    }
+
+    /**
+     * Add a conversation, or replace the known conversation with the same id, keeping its position.
+     */
+    void put(Conversation conversation) {
+        String cid = conversation.getConversationId();
+        if (cid == null)
+            return;
+
+        synchronized(this.ordered) {
+            Conversation previous = this.index.put(cid, conversation);
+            int position = (previous != null ? this.ordered.indexOf(previous) : -1);
+            if (position >= 0)
+                this.ordered.set(position, conversation);
+            else
+                this.ordered.add(conversation);
+        }
+    }
+
+    /**
+     * Replace the known conversations by the list received from the server, in its order.
+     * A listed conversation that is already known keeps its instance, with the events received meanwhile,
+     * and gets the self member of the list. The conversations that are not listed anymore are dropped.
+     * Lookups meanwhile find either the previous or the new state of each conversation, never none.
+     *
+     * @return The listed conversations, as they are known now.
+     */
+    List<Conversation> sync(List<Conversation> conversations) {
+        synchronized(this.ordered) {
+            List<Conversation> listed = new ArrayList<>(conversations.size());
+            Set<String> cids = new HashSet<>();
+            for (Conversation conversation : conversations) {
+                String cid = conversation.getConversationId();
+                if (cid == null || !cids.add(cid))
+                    continue;
+                Conversation known = this.index.get(cid);
+                if (known != null && conversation.getSelf() != null) {
+                    known.updateMember(conversation.getSelf());
+                    if (known.getSelf() == null)
+                        known.setSelf(conversation.getSelf());
+                }
+                Conversation current = (known != null ? known : conversation);
+                this.index.put(cid, current);
+                listed.add(current);
+            }
+            for (Conversation conversation : this.ordered)
+                if (!cids.contains(conversation.getConversationId()))
+                    this.index.remove(conversation.getConversationId());
+            this.ordered.clear();
+            this.ordered.addAll(listed);
+            return listed;
+        }
+    }
+
+    void clear() {
+        synchronized(this.ordered) {
+            this.ordered.clear();
+            this.index.clear();
+        }
+    }
+
+    /**
+     * @return A copy of the known conversations, in order.
+     */
+    List<Conversation> snapshot() {
+        synchronized(this.ordered) {
+            return new ArrayList<>(this.ordered);
+        }
+    }
+
+    int size() {
+        return this.index.size();
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Member;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between a cached conversation list and the one received from the server, by conversation id.
+ */
+class ConversationListDiff {
+    final List<Conversation> added;
+    final List<Conversation> updated;
+    final List<Conversation> removed;
+
+    private ConversationListDiff(List<Conversation> added, List<Conversation> updated, List<Conversation> removed) {
+        this.added = Collections.unmodifiableList(added);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removed = Collections.unmodifiableList(removed);
+    }
+
+    static ConversationListDiff compute(List<Conversation> cached, List<Conversation> fresh) {
+        Map<String, Conversation> cachedById = new HashMap<>(cached.size() * 2);
+        for (Conversation conversation : cached)
+            cachedById.put(conversation.getConversationId(), conversation);
+
+        List<Conversation> added = new ArrayList<>();
+        List<Conversation> updated = new ArrayList<>();
+        for (Conversation conversation : fresh) {
+            Conversation known = cachedById.remove(conversation.getConversationId());
+            if (known == null)
+                added.add(conversation);
+            else if (changed(known, conversation))
+                updated.add(conversation);
+        }
+        // the cached conversations left are not in the fresh list, keep them in cached order.
+        List<Conversation> removed = new ArrayList<>(cachedById.size());
+        for (Conversation conversation : cached)
+            if (cachedById.containsKey(conversation.getConversationId()))
+                removed.add(conversation);
+        return new ConversationListDiff(added, updated, removed);
+    }
+
+    boolean isEmpty() {
+        return this.added.isEmpty() && this.updated.isEmpty() && this.removed.isEmpty();
+    }
+
+    private static boolean changed(Conversation cached, Conversation fresh) {
+        if (!equal(cached.getName(), fresh.getName()) || !equal(cached.getLastEventId(), fresh.getLastEventId()))
+            return true;
+
+        // a conversation list only carries the self member, the other cached members are not compared.
+        for (Member member : fresh.getMembers()) {
+            Member known = cached.getMember(member.getMemberId());
+            if (known == null || known.getState() != member.getState())
+                return true;
+        }
+        return false;
+    }
+
+    // plain Java rather than TextUtils, so the diff also runs in the JVM unit tests.
+    private static boolean equal(String lhs, String rhs) {
+        return (lhs == null ? rhs == null : lhs.equals(rhs));
+    }
+
+}
@@ -10,8 +10,6 @@ import android.graphics.Bitmap;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.nexmo.sdk.conversation.client.Conversation;
 import com.nexmo.sdk.conversation.client.ConversationClient;
 import com.nexmo.sdk.conversation.client.Image;
@@ -20,6 +18,7 @@ import com.nexmo.sdk.conversation.client.Member;
 import com.nexmo.sdk.conversation.client.SeenReceipt;
 import com.nexmo.sdk.conversation.client.Text;
 import com.nexmo.sdk.conversation.client.User;
+import com.nexmo.sdk.conversation.client.event.CachedConversationListListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.ConversationCreateListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.EventDeleteListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.ImageSendListener;
@@ -34,6 +33,7 @@ import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 import com.nexmo.sdk.conversation.client.event.ConversationInvitedListener;
 import com.nexmo.sdk.conversation.client.event.ConversationListListener;
 import com.nexmo.sdk.conversation.client.event.ConversationListener;
+import com.nexmo.sdk.conversation.client.event.EventPageListener;
 import com.nexmo.sdk.conversation.client.event.ImageListener;
 import com.nexmo.sdk.conversation.client.event.ImageSeenReceiptListener;
 import com.nexmo.sdk.conversation.client.event.MemberInvitedListener;
@@ -42,11 +42,14 @@ import com.nexmo.sdk.conversation.client.event.MemberLeftListener;
 import com.nexmo.sdk.conversation.client.event.MemberTypingListener;
 import com.nexmo.sdk.conversation.client.event.SignalingChannelListener;
 import com.nexmo.sdk.conversation.client.event.TextListener;
+import com.nexmo.sdk.conversation.client.event.TextSearchListener;
 import com.nexmo.sdk.conversation.client.event.TextSeenReceiptListener;
 import com.nexmo.sdk.conversation.client.event.network.NetworkingStateListener;
+import com.nexmo.sdk.conversation.config.Defaults;
 import com.nexmo.sdk.conversation.core.client.request.CreateRequest;
 import com.nexmo.sdk.conversation.core.client.request.DeleteEventRequest;
 import com.nexmo.sdk.conversation.core.client.request.GetConversationRequest;
+import com.nexmo.sdk.conversation.core.client.request.GetConversationsRequest;
 import com.nexmo.sdk.conversation.core.client.request.InviteRequest;
 import com.nexmo.sdk.conversation.core.client.request.JoinRequest;
 import com.nexmo.sdk.conversation.core.client.request.LeaveRequest;
@@ -67,61 +70,96 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 import static com.nexmo.sdk.conversation.core.client.request.Request.TYPE.GET;
 import static com.nexmo.sdk.conversation.core.client.request.Request.TYPE.MARK_IMAGE_SEEN;
 
 /**will
  * ConversationSignalingChannel.
+ *
+ * <p>The events of a conversation are handled one at a time, in order, by the executor of its id.
+ * Updates of several fields of a conversation lock that conversation only, so conversations never wait
+ * for each other. Readers take no lock: members and events are published as immutable states.</p>
  */
 public class ConversationSignalingChannel implements SignalingChannelListener {
 
     private static final String TAG = ConversationSignalingChannel.class.getSimpleName();
+    // invitations to new conversations are not tied to a known conversation id.
+    private static final String ANY_CONVERSATION = "";
+    // the worker lane that drains the outbox, so the events are emitted in order whichever thread asks for it.
+    private static final String OUTBOX_LANE = "outbox:";
     private ConversationClient conversationClient;
     private SocketClient socketClient  = new SocketClient();
 
+    // listener callbacks, on the thread chosen by the application.
+    private final CallbackDispatcher callbacks = new CallbackDispatcher();
     // pending requests that await for 'success' or 'error' signals.
-    private Map<String, CreateRequest> createRequestMap = new ConcurrentHashMap<>();
-    private Map<String, PushSubscribeRequest> pushSubscribeRequestMap = new ConcurrentHashMap<>();
-    private Map<String, JoinRequest> joinRequestMap = new ConcurrentHashMap<>();
-    private Map<String, InviteRequest> inviteRequestMap = new ConcurrentHashMap<>();
-    private Map<String, LeaveRequest> leaveRequestMap = new ConcurrentHashMap<>();
-    private Map<String, GetConversationRequest> getConversationRequestMap = new ConcurrentHashMap<>();
-    private Map<String, GetConversationRequest> getTextEventRequestMap = new ConcurrentHashMap<>();
-    private ConversationListListener conversationListListener;
-    private Map<String, SendMessageRequest> sendMessageRequestMap = new ConcurrentHashMap<>();
-    //private Map<String, Imag> sendImageRequestMap = new ConcurrentHashMap<>();
-    private Map<String, MarkSeenRequest> markSeenRequestMap = new ConcurrentHashMap<>();
-    private Map<String, DeleteEventRequest> deleteTextRequestMap = new ConcurrentHashMap<>();
-    private Map<String, TypingIndicatorRequest> typingIndicatorRequestMap = new ConcurrentHashMap<>();
+    private PendingRequests pendingRequests = new PendingRequests(this.callbacks);
+    // outgoing text and image events, sent again after a reconnection until they are acknowledged or fail.
+    private Outbox outbox;
+    // incremental sync of the joined conversations once a session is resumed.
+    private EventsSync eventsSync = new EventsSync(new EventsSync.Fetcher() {
+        @Override
+        public String fetch(String cid, ConversationListener listener) {
+            return syncEvents(cid, listener);
+        }
+    }, Defaults.SYNC_CONCURRENCY);
 
     // list of joined/invited conversations.
-    private List<Conversation> conversationList = Collections.synchronizedList(new ArrayList<Conversation>());
+    // known conversations, indexed by id.
+    private final ConversationIndex conversations = new ConversationIndex();
     // array of member events /per conversation
-    private Map<String, ArrayList<MemberJoinedListener>> memberJoinedListenerMap = new ConcurrentHashMap<>();
-    private Map<String, ArrayList<MemberLeftListener>> memberLeftListenerMap = new ConcurrentHashMap<>();
-    private Map<String, ArrayList<MemberInvitedListener>> memberInvitedListenerMap = new ConcurrentHashMap<>();
-    private List<ConversationInvitedListener> conversationInvitesListeners = Collections.synchronizedList(new ArrayList<ConversationInvitedListener>());
-    private Map<String, ArrayList<TextListener>> textListenerMap = new ConcurrentHashMap<>();
-    private Map<String, ArrayList<ImageListener>> imageListenerMap = new ConcurrentHashMap<>();
-    private Map<String, ArrayList<MemberTypingListener>> textTypeListenerMap = new ConcurrentHashMap<>();
-    private Map<String, ArrayList<TextSeenReceiptListener>> seenReceiptListenerMap = new ConcurrentHashMap<>();
-    private Map<String, ArrayList<ImageSeenReceiptListener>> imageSeenReceiptListenerMap = new ConcurrentHashMap<>();
-
-
-    private CacheDB dbHelper;
-    private static GsonBuilder gsonBuilder = new GsonBuilder().excludeFieldsWithoutExposeAnnotation();
-    private static final Gson gson = gsonBuilder.create();
+    private final ListenerRegistry<MemberJoinedListener> memberJoinedListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<MemberLeftListener> memberLeftListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<MemberInvitedListener> memberInvitedListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<ConversationInvitedListener> conversationInvitedListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<TextListener> textListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<ImageListener> imageListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<MemberTypingListener> typingListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<TextSeenReceiptListener> textSeenReceiptListeners = new ListenerRegistry<>();
+    private final ListenerRegistry<ImageSeenReceiptListener> imageSeenReceiptListeners = new ListenerRegistry<>();
+
+
+    // the cache of the conversations, members and events, or null if there is no storage available.
+    private final CacheDB cacheDB;
+    // write-behind queue of the cache, every change of state is persisted through it.
+    private final CacheWriter cacheWriter;
+    private final EventArchive eventArchive;
 
     public ConversationSignalingChannel(ConversationClient conversationClient) {
         this.conversationClient = conversationClient;
-        // disable caching for beta 0.0.1
-        //this.dbHelper = CacheDB.getInstance(conversationClient.getContext());
+        this.cacheDB = (conversationClient.getContext() != null ? CacheDB.getInstance(conversationClient.getContext()) : null);
+        if (this.cacheDB != null) {
+            this.cacheWriter = new CacheWriter(this.cacheDB, Defaults.CACHE_WRITE_DELAY, Defaults.CACHE_WRITE_BATCH);
+            this.eventArchive = new EventArchive(this.cacheDB, this.cacheWriter);
+        } else {
+            this.cacheWriter = null;
+            this.eventArchive = null;
+        }
+        this.outbox = new Outbox(this.cacheDB, this.cacheWriter, Defaults.OUTBOX_WINDOW);
+    }
+
+    /**
+     * @param executor   The executor of the listener callbacks, or null to run them on the socket and network threads.
+     * @param mainThread Run the listener callbacks on the main thread, once per frame, instead of on the executor.
+     */
+    public void setCallbackExecutor(Executor executor, boolean mainThread) {
+        this.callbacks.setExecutor(mainThread ? CallbackDispatcher.mainThread(Defaults.CALLBACK_FRAME_INTERVAL) : executor);
+    }
+
+    /**
+     * @return The storage of the events evicted from memory, or null if there is no storage available.
+     */
+    public EventArchive getEventArchive() {
+        return this.eventArchive;
     }
 
     public void connect() {
@@ -160,8 +198,9 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
     public void enablePushNotifications(boolean enable, String cid, PushEnableListener pushEnableListener) {
         String tid = newTID();
         PushSubscribeRequest pushSubscribeRequest = new PushSubscribeRequest(Request.TYPE.PUSH_SUBSCRIBE, tid, cid, pushEnableListener);
-        this.pushSubscribeRequestMap.put(tid, pushSubscribeRequest);
+        this.pendingRequests.add(pushSubscribeRequest);
         this.socketClient.pushSubscribeToConversation(enable, pushSubscribeRequest);
+        this.pendingRequests.markSent(tid);
     }
 
     public void logout() {
@@ -175,8 +214,9 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
     public void newConversation(final String name, ConversationCreateListener listener) {
         String tid = newTID();
         CreateRequest createRequest = new CreateRequest(Request.TYPE.CREATE, tid, name, listener);
-        this.createRequestMap.put(tid, createRequest);
+        this.pendingRequests.add(createRequest);
         this.socketClient.newConversation(createRequest);
+        this.pendingRequests.markSent(tid);
     }
 
     public void joinConversation(String conversationId, JoinListener joinListener) {
@@ -188,8 +228,9 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                     conversationId,
                     joinListener);
 
-            this.joinRequestMap.put(tid, joinRequest);
+            this.pendingRequests.add(joinRequest);
             this.socketClient.joinConversation(joinRequest);
+            this.pendingRequests.markSent(tid);
         }
         else
             joinListener.onError(ConversationGenericListener.MISSING_USER, "No user is logged in");
@@ -206,140 +247,84 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                     memberId,
                     joinListener);
 
-            this.joinRequestMap.put(tid, joinRequest);
+            this.pendingRequests.add(joinRequest);
             this.socketClient.joinConversation(joinRequest);
+            this.pendingRequests.markSent(tid);
         }
         else
             joinListener.onError(ConversationGenericListener.MISSING_USER, "No user is logged in");
     }
 
     public void addConversationInvitedListener(ConversationInvitedListener conversationInvitedListener) {
-        this.conversationInvitesListeners.add(conversationInvitedListener);
+        this.conversationInvitedListeners.add(ANY_CONVERSATION, conversationInvitedListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeConversationInvitedListener(ConversationInvitedListener conversationInvitedListener) {
-        if (this.conversationInvitesListeners.contains(conversationInvitedListener))
-            this.conversationInvitesListeners.remove(conversationInvitedListener);
+        this.conversationInvitedListeners.remove(ANY_CONVERSATION, conversationInvitedListener);
     }
 
     public void addMemberJoinedListener(String cid, MemberJoinedListener memberJoinedListener){
-        if (this.memberJoinedListenerMap.containsKey(cid))
-            this.memberJoinedListenerMap.get(cid).add(memberJoinedListener);
-        else {
-            ArrayList<MemberJoinedListener> listeners = new ArrayList<>();
-            listeners.add(memberJoinedListener);
-            this.memberJoinedListenerMap.put(cid, listeners);
-        }
+        this.memberJoinedListeners.add(cid, memberJoinedListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeMemberJoinedListener(String cid, MemberJoinedListener memberJoinedListener) {
-        if (this.memberJoinedListenerMap.containsKey(cid))
-            this.memberJoinedListenerMap.get(cid).remove(memberJoinedListener); //make sure the array is not emptied
+        this.memberJoinedListeners.remove(cid, memberJoinedListener);
     }
 
     public void addMemberLeftListener(String cid, MemberLeftListener memberLeftListener) {
-        if (this.memberLeftListenerMap.containsKey(cid))
-            this.memberLeftListenerMap.get(cid).add(memberLeftListener);
-        else {
-            ArrayList<MemberLeftListener> listeners = new ArrayList<>();
-            listeners.add(memberLeftListener);
-            this.memberLeftListenerMap.put(cid, listeners);
-        }
+        this.memberLeftListeners.add(cid, memberLeftListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeMemberLeftListener(String cid, MemberLeftListener memberLeftListener) {
-        if (this.memberLeftListenerMap.containsKey(cid))
-            this.memberLeftListenerMap.get(cid).remove(memberLeftListener);
+        this.memberLeftListeners.remove(cid, memberLeftListener);
     }
 
     public void addMemberInvitedListener(String cid, MemberInvitedListener memberInvitedListener) {
-        if (this.memberInvitedListenerMap.containsKey(cid))
-            this.memberInvitedListenerMap.get(cid).add(memberInvitedListener);
-        else {
-            ArrayList<MemberInvitedListener> listeners = new ArrayList<>();
-            listeners.add(memberInvitedListener);
-            this.memberInvitedListenerMap.put(cid, listeners);
-        }
+        this.memberInvitedListeners.add(cid, memberInvitedListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeMemberInvitedListener(String cid, MemberInvitedListener memberInvitedListener) {
-        if (this.memberInvitedListenerMap.containsKey(cid))
-            this.memberInvitedListenerMap.get(cid).remove(memberInvitedListener);
+        this.memberInvitedListeners.remove(cid, memberInvitedListener);
     }
 
     public void addTextListener(String cid, TextListener textListener) {
-        if (this.textListenerMap.containsKey(cid))
-            this.textListenerMap.get(cid).add(textListener);
-        else {
-            ArrayList<TextListener> listeners = new ArrayList<>();
-            listeners.add(textListener);
-            this.textListenerMap.put(cid, listeners);
-        }
+        this.textListeners.add(cid, textListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeTextListener(String cid, TextListener textListener) {
-        if (this.textListenerMap.containsKey(cid))
-            this.textListenerMap.get(cid).remove(textListener); //make sure the array is not emptied
+        this.textListeners.remove(cid, textListener);
     }
 
     public void addImageListener(String cid, ImageListener imageListener) {
-        if (this.imageListenerMap.containsKey(cid))
-            this.imageListenerMap.get(cid).add(imageListener);
-        else {
-            ArrayList<ImageListener> listeners = new ArrayList<>();
-            listeners.add(imageListener);
-            this.imageListenerMap.put(cid, listeners);
-        }
+        this.imageListeners.add(cid, imageListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeImageListener(String cid, ImageListener imageListener) {
-        if (this.imageListenerMap.containsKey(cid))
-            this.imageListenerMap.get(cid).remove(imageListener); //make sure the array is not emptied
+        this.imageListeners.remove(cid, imageListener);
     }
 
     public void addTypeListener(String cid, MemberTypingListener textTypingListener) {
-        if (this.textTypeListenerMap.containsKey(cid))
-            this.textTypeListenerMap.get(cid).add(textTypingListener);
-        else {
-            ArrayList<MemberTypingListener> listeners = new ArrayList<>();
-            listeners.add(textTypingListener);
-            this.textTypeListenerMap.put(cid, listeners);
-        }
+        this.typingListeners.add(cid, textTypingListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeTypeListener(String cid, MemberTypingListener textTypingListener) {
-        if (this.textTypeListenerMap.containsKey(cid))
-            this.textTypeListenerMap.get(cid).remove(textTypingListener); //make sure the array is not emptied
+        this.typingListeners.remove(cid, textTypingListener);
     }
 
     public void addSeenListener(String cid, TextSeenReceiptListener textSeenReceiptListener) {
-        if (this.seenReceiptListenerMap.containsKey(cid))
-            this.seenReceiptListenerMap.get(cid).add(textSeenReceiptListener);
-        else {
-            ArrayList<TextSeenReceiptListener> listeners = new ArrayList<>();
-            listeners.add(textSeenReceiptListener);
-            this.seenReceiptListenerMap.put(cid, listeners);
-        }
+        this.textSeenReceiptListeners.add(cid, textSeenReceiptListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeSeenListener(String cid, TextSeenReceiptListener textSeenReceiptListener) {
-        if (this.seenReceiptListenerMap.containsKey(cid))
-            this.seenReceiptListenerMap.get(cid).remove(textSeenReceiptListener);
+        this.textSeenReceiptListeners.remove(cid, textSeenReceiptListener);
     }
 
     public void addSeenListener(String cid, ImageSeenReceiptListener imageSeenReceiptListener) {
-        if (this.imageSeenReceiptListenerMap.containsKey(cid))
-            this.imageSeenReceiptListenerMap.get(cid).add(imageSeenReceiptListener);
-        else {
-            ArrayList<ImageSeenReceiptListener> listeners = new ArrayList<>();
-            listeners.add(imageSeenReceiptListener);
-            this.imageSeenReceiptListenerMap.put(cid, listeners);
-        }
+        this.imageSeenReceiptListeners.add(cid, imageSeenReceiptListener, this.conversationClient.hasWeakListeners());
     }
 
     public void removeSeenListener(String cid, ImageSeenReceiptListener imageSeenReceiptListener) {
-        if (this.imageSeenReceiptListenerMap.containsKey(cid))
-            this.imageSeenReceiptListenerMap.get(cid).remove(imageSeenReceiptListener);
+        this.imageSeenReceiptListeners.remove(cid, imageSeenReceiptListener);
     }
 
     public void leaveConversation(String cid, String member_id, LeaveListener leaveListener) {
@@ -347,8 +332,9 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
         Conversation pendingConversation = findConversation(cid);
         if (pendingConversation != null) {
             LeaveRequest leaveRequest = new LeaveRequest(Request.TYPE.LEAVE, tid, cid, member_id, leaveListener);
-            this.leaveRequestMap.put(tid, leaveRequest);
+            this.pendingRequests.add(leaveRequest);
             this.socketClient.leaveConversation(leaveRequest);
+            this.pendingRequests.markSent(tid);
         } else
             Log.d(TAG, "missing conversation");
     }
@@ -356,65 +342,297 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
     public void invite(String conversationId, String username, InviteSendListener inviteSendListener) {
         String tid = newTID();
         InviteRequest inviteRequest = new InviteRequest(Request.TYPE.INVITE, tid, conversationId, username, inviteSendListener);
-        this.inviteRequestMap.put(tid, inviteRequest);
+        this.pendingRequests.add(inviteRequest);
         this.socketClient.invite(inviteRequest);
+        this.pendingRequests.markSent(tid);
     }
 
     // don't allow multiple retrievals just yet.
+    /**
+     * Request the conversation list. The known conversations are kept until the list is received,
+     * so the events received meanwhile still find their conversation.
+     */
     public void getConversations(ConversationListListener listListener) {
-        String tid = newTID();
-        this.conversationListListener = listListener;
-        this.conversationList.clear();
-        this.socketClient.getConversations(tid);
+        getConversations(new GetConversationsRequest(Request.TYPE.GET_CONVERSATIONS, newTID(), listListener));
     }
 
-    public void openCacheDb() throws SQLException {
-        if (dbHelper != null)
-            dbHelper.getWritableDatabase();
+    private void getConversations(GetConversationsRequest request) {
+        this.pendingRequests.add(request);
+        this.socketClient.getConversations(request.tid);
+        this.pendingRequests.markSent(request.tid);
     }
 
-    public void getCachedConversations(ConversationListListener listListener) {
-        this.conversationListListener = listListener;
-        //readDb
-    }
+    public void openCacheDb() throws SQLException {
+        if (this.cacheDB != null)
+            this.cacheDB.getWritableDatabase();
+    }
+
+    /**
+     * Read the cached conversations on the cache reader thread, after the pending writes,
+     * and dispatch them without waiting for the server.
+     *
+     * @param reconcile Request the conversation list from the server once the cached one is dispatched,
+     *                  and report the differences to the listener.
+     */
+    public void getCachedConversations(final CachedConversationListListener listListener, final boolean reconcile) {
+        if (this.cacheWriter == null) {
+            final List<Conversation> none = Collections.emptyList();
+            this.callbacks.dispatch(ANY_CONVERSATION, new Runnable() {
+                @Override
+                public void run() {
+                    listListener.onConversationList(none);
+                }
+            });
+            if (reconcile)
+                getConversations(new GetConversationsRequest(Request.TYPE.GET_CONVERSATIONS, newTID(), none, listListener));
+            return;
+        }
 
-    public void getCachedConversation(final String cid, ConversationListener conversationListener) {
-//        String tid = newTID();
-//        GetConversationRequest getConversationRequest = new GetConversationRequest(GET, tid, conversationId, null, null, conversationListener);
-//        this.getConversationRequestMap.put(tid, getConversationRequest);
-//        this.socketClient.getConversation(getConversationRequest);
+        this.cacheWriter.read(new Runnable() {
+            @Override
+            public void run() {
+                List<Conversation> cached;
+                try {
+                    cached = cacheDB.getCachedConversations();
+                } catch (SQLException e) {
+                    Log.d(TAG, "getCachedConversations failed: " + e.toString());
+                    cached = Collections.emptyList();
+                }
+                // conversations already synced with the server are more recent than their cached copy.
+                List<Conversation> conversationList = new ArrayList<>(cached.size());
+                for (Conversation conversation : cached) {
+                    Conversation known = findConversation(conversation.getConversationId());
+                    if (known == null) {
+                        conversations.put(conversation);
+                        eventArchive.restored(conversation);
+                    }
+                    conversationList.add(known != null ? known : conversation);
+                }
+                final List<Conversation> snapshot = Collections.unmodifiableList(conversationList);
+                callbacks.dispatch(ANY_CONVERSATION, new Runnable() {
+                    @Override
+                    public void run() {
+                        listListener.onConversationList(snapshot);
+                    }
+                });
+                if (reconcile)
+                    getConversations(new GetConversationsRequest(Request.TYPE.GET_CONVERSATIONS, newTID(), snapshot, listListener));
+            }
+        });
+    }
+
+    /**
+     * Read a cached conversation with its most recent events, and dispatch it without waiting for the server.
+     *
+     * @param reconcile Request the members and the new events from the server once the cached conversation
+     *                  is dispatched, the listener is then updated again, and the new events are received as usual.
+     */
+    public void getCachedConversation(final String cid, final ConversationListener conversationListener, final boolean reconcile) {
+        Conversation known = findConversation(cid);
+        if (known != null || this.cacheWriter == null) {
+            // a conversation synced with the server is more recent than its cached copy.
+            if (known != null)
+                postConversationUpdated(cid, conversationListener, new Conversation(known));
+            else
+                postMissingConversation(cid, conversationListener);
+            if (known != null && reconcile)
+                reconcile(cid, conversationListener);
+            return;
+        }
+
+        this.cacheWriter.read(new Runnable() {
+            @Override
+            public void run() {
+                Conversation cached;
+                try {
+                    int eventWindow = conversationClient.getEventWindow();
+                    cached = cacheDB.getCachedConversation(cid, eventWindow > 0 ? eventWindow : Defaults.EVENT_WINDOW);
+                } catch (SQLException e) {
+                    Log.d(TAG, "getCachedConversation failed for " + cid + ": " + e.toString());
+                    cached = null;
+                }
+                if (cached == null) {
+                    postMissingConversation(cid, conversationListener);
+                    return;
+                }
+
+                for (Text message : cached.getMessages())
+                    EventArchive.attach(cached, message);
+                for (Image image : cached.getImages())
+                    EventArchive.attach(cached, image);
+                Conversation known = findConversation(cid);
+                if (known == null) {
+                    conversations.put(cached);
+                    eventArchive.restored(cached);
+                }
+                postConversationUpdated(cid, conversationListener, new Conversation(known != null ? known : cached));
+                if (reconcile)
+                    reconcile(cid, conversationListener);
+            }
+        });
+    }
+
+    // refresh the members of a conversation, and merge in the events after its last known one.
+    private void reconcile(String cid, ConversationListener conversationListener) {
+        getConversation(cid, conversationListener);
+        syncEvents(cid, conversationListener);
+    }
+
+    /**
+     * Search the cached texts on the cache reader thread, after the pending writes.
+     *
+     * @param cid The conversation to search, or null to search all the cached conversations.
+     */
+    public void searchTexts(final String query, final String cid, final int offset, final int limit, final TextSearchListener searchListener) {
+        final String dispatchKey = (cid != null ? cid : ANY_CONVERSATION);
+        if (this.cacheWriter == null) {
+            this.callbacks.dispatch(dispatchKey, new Runnable() {
+                @Override
+                public void run() {
+                    searchListener.onSearchResults(query, Collections.<Text>emptyList());
+                }
+            });
+            return;
+        }
+
+        this.cacheWriter.read(new Runnable() {
+            @Override
+            public void run() {
+                List<Text> matches;
+                try {
+                    matches = cacheDB.searchTextEvents(query, cid, offset, limit);
+                } catch (SQLException e) {
+                    Log.d(TAG, "searchTexts failed: " + e.toString());
+                    postError(dispatchKey, searchListener, e.toString());
+                    return;
+                }
+                // attach the texts of the known conversations, as the very instances of the in-memory window when they are in it.
+                final List<Text> texts = new ArrayList<>(matches.size());
+                for (Text match : matches) {
+                    Conversation conversation = findConversation(match.getConversation().getConversationId());
+                    Text known = (conversation != null ? conversation.findText(match.getId()) : null);
+                    if (known != null)
+                        texts.add(known);
+                    else
+                        texts.add(conversation != null ? EventArchive.attach(conversation, match) : match);
+                }
+                callbacks.dispatch(dispatchKey, new Runnable() {
+                    @Override
+                    public void run() {
+                        searchListener.onSearchResults(query, Collections.unmodifiableList(texts));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Read a page of the cached events of a conversation on the cache reader thread, after the pending writes.
+     *
+     * @param page The read of the page, run on the reader thread.
+     */
+    public <T extends Text> void readEvents(final String cid, final Callable<List<T>> page, final EventPageListener<T> pageListener) {
+        if (this.cacheWriter == null) {
+            this.callbacks.dispatch(cid, new Runnable() {
+                @Override
+                public void run() {
+                    pageListener.onEvents(Collections.<T>emptyList());
+                }
+            });
+            return;
+        }
+
+        this.cacheWriter.read(new Runnable() {
+            @Override
+            public void run() {
+                final List<T> events;
+                try {
+                    events = page.call();
+                } catch (Exception e) {
+                    Log.d(TAG, "readEvents failed: " + e.toString());
+                    postError(cid, pageListener, e.toString());
+                    return;
+                }
+                callbacks.dispatch(cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        pageListener.onEvents(events);
+                    }
+                });
+            }
+        });
     }
 
     public boolean hasCachedConversations() {
-        if (dbHelper != null)
-            return dbHelper.hasConversations();
+        if (this.cacheDB != null)
+            return this.cacheDB.hasConversations();
 
         return false;
     }
 
     public boolean hasCachedConversation(final String cid) {
-        if (dbHelper != null)
-            return dbHelper.hasConversation(cid);
+        if (this.cacheDB != null)
+            return this.cacheDB.hasConversation(cid);
 
         return false;
     }
 
+    /**
+     * Drop the pending cache writes and the cached conversations, asynchronously.
+     * The events evicted from the memory of the known conversations are kept.
+     */
     public void clearCache() {
-        //async or not?
+        if (this.cacheWriter == null)
+            return;
+
+        this.cacheWriter.clear();
+        this.cacheWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cacheDB.clearDb(eventArchive.getTextsArchived(), eventArchive.getImagesArchived());
+                } catch (SQLException e) {
+                    Log.d(TAG, "clearCache failed: " + e.toString());
+                }
+            }
+        });
     }
 
     public void getConversation(final String conversationId, ConversationListener conversationListener) {
         String tid = newTID();
         GetConversationRequest getConversationRequest = new GetConversationRequest(GET, tid, conversationId, null, null, conversationListener);
-        this.getConversationRequestMap.put(tid, getConversationRequest);
+        this.pendingRequests.add(getConversationRequest);
         this.socketClient.getConversation(getConversationRequest);
+        this.pendingRequests.markSent(tid);
     }
 
     public void getMessages(final String cid, String startId, String endId, ConversationListener conversationListener) {
         String tid = newTID();
         GetConversationRequest getConversationRequest = new GetConversationRequest(GET, tid, cid, startId, endId, conversationListener);
-        this.getTextEventRequestMap.put(tid, getConversationRequest);
+        this.pendingRequests.add(getConversationRequest);
         this.socketClient.getMessages(getConversationRequest);
+        this.pendingRequests.markSent(tid);
+    }
+
+    /**
+     * Fetch the events after the last known event of a joined conversation, and merge them in.
+     *
+     * @return The tid of the request, or null if the conversation is not known.
+     */
+    String syncEvents(final String cid, ConversationListener conversationListener) {
+        Conversation conversation = findConversation(cid);
+        if (conversation == null) {
+            conversationListener.onError(ConversationListener.MISSING_CONVERSATION, "Missing conversation");
+            return null;
+        }
+
+        String tid = newTID();
+        GetConversationRequest getConversationRequest = new GetConversationRequest(GET, tid, cid, conversation.getLastEventId(), null, conversationListener);
+        getConversationRequest.incremental = true;
+        this.pendingRequests.add(getConversationRequest);
+        this.socketClient.getMessages(getConversationRequest);
+        this.pendingRequests.markSent(tid);
+        return tid;
     }
 
     public void sendText(Conversation conversation, final String message, TextSendListener listener) {
@@ -426,8 +644,8 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                 conversation.getMemberId(),
                 message,
                 listener);
-        this.sendMessageRequestMap.put(tid, sendMessageRequest);
-        this.socketClient.sendText(sendMessageRequest);
+        this.outbox.enqueue(sendMessageRequest);
+        drainOutbox();
     }
 
     // upload image to IPS, send image 'representations' to CAPI. download from media service once done.
@@ -441,14 +659,13 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                 conversation.getMemberId(),
                 imagePath,
                 listener);
-        this.sendMessageRequestMap.put(tid, sendMessageRequest);
 
         final com.squareup.okhttp.Callback uploadCallback = new com.squareup.okhttp.Callback() {
 
             @Override
             public void onFailure(com.squareup.okhttp.Request request, IOException e) {
                 Log.d(TAG, "onFailure upload " + e.toString());
-                listener.onError(GENERIC_ERR, e.toString());
+                postError(conversation.getConversationId(), listener, e.toString());
             }
 
             @Override
@@ -456,53 +673,95 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                 Log.d(TAG, "onResponse upload" + response.toString());
 
                 if (!response.isSuccessful()) {
-                    listener.onError(GENERIC_ERR, "Unexpected code " + response);
+                    postError(conversation.getConversationId(), listener, "Unexpected code " + response);
+                    response.body().close();
+                    return;
                 }
 
                 String jsonData = response.body().string();
-                JSONObject jsonBody=null, originalJson=null, mediumJson=null, thumbnailJson= null;
-                ImageRepresentation original=null, medium=null, thumbnail=null;
+                response.body().close();
                 try {
-                    jsonBody = new JSONObject(jsonData);
-                    originalJson = jsonBody.getJSONObject("original");
-                    original = gson.fromJson(originalJson.toString(), ImageRepresentation.class);
-                    original.type = ImageRepresentation.TYPE.ORIGINAL;
-                    Log.d(TAG, original.toString());
-
-                    mediumJson = jsonBody.getJSONObject("medium");
-                    medium = gson.fromJson(mediumJson.toString(), ImageRepresentation.class);
-                    medium.type = ImageRepresentation.TYPE.MEDIUM;
-                    Log.d(TAG, medium.toString());
-
-                    thumbnailJson = jsonBody.getJSONObject("thumbnail");
-                    thumbnail = gson.fromJson(thumbnailJson.toString(), ImageRepresentation.class);
-                    thumbnail.type = ImageRepresentation.TYPE.THUMBNAIL;
-                    Log.d(TAG, thumbnail.toString());
+                    updateImageRepresentations(sendMessageRequest, new JSONObject(jsonData));
                 } catch (JSONException e) {
                     e.printStackTrace();
-                    listener.onError(GENERIC_ERR, e.toString());
+                    postError(conversation.getConversationId(), listener, e.toString());
+                    return;
                 }
-                updateImageRepresentations(
-                        tid,
-                        original,
-                        medium,
-                        thumbnail);
 
-                socketClient.sendImage(sendMessageRequest, jsonBody);
-                response.body().close();
+                // the image is uploaded, only the 'representations' are queued for the Conversation service.
+                outbox.enqueue(sendMessageRequest);
+                drainOutbox();
             }};
 
         ImageUploader.uploadImage(sendMessageRequest, uploadCallback);
     }
 
-    private void updateImageRepresentations(String tid,
-                                            ImageRepresentation original,
-                                            ImageRepresentation medium,
-                                            ImageRepresentation thumbnail) {
-        SendMessageRequest sendMessageRequest = this.sendMessageRequestMap.get(tid);
+    private void updateImageRepresentations(SendMessageRequest sendMessageRequest, JSONObject jsonBody) throws JSONException {
+        ImageRepresentation original = EventDecoder.decodeRepresentation(jsonBody.getJSONObject("original"), ImageRepresentation.TYPE.ORIGINAL);
+        ImageRepresentation medium = EventDecoder.decodeRepresentation(jsonBody.getJSONObject("medium"), ImageRepresentation.TYPE.MEDIUM);
+        ImageRepresentation thumbnail = EventDecoder.decodeRepresentation(jsonBody.getJSONObject("thumbnail"), ImageRepresentation.TYPE.THUMBNAIL);
+
         sendMessageRequest.original = original;
         sendMessageRequest.medium = medium;
         sendMessageRequest.thumbnail = thumbnail;
+        sendMessageRequest.representations = jsonBody.toString();
+    }
+
+    /**
+     * Emit the queued text and image events, as long as the session is logged in.
+     * At most {@link Defaults#OUTBOX_WINDOW} events wait for an acknowledgement at any time,
+     * the next ones are emitted as the acknowledgements arrive.
+     * The window is taken and emitted on one worker lane, so concurrent drains cannot reorder the events.
+     */
+    private void drainOutbox() {
+        this.socketClient.execute(OUTBOX_LANE, new Runnable() {
+            @Override
+            public void run() {
+                emitOutbox();
+            }
+        });
+    }
+
+    // on the outbox lane only.
+    private void emitOutbox() {
+        if (getConnectionStatus() != NetworkingStateListener.NETWORK_STATE.CONNECTED || this.socketClient.self == null)
+            return;
+
+        for (SendMessageRequest request : this.outbox.nextWindow()) {
+            this.pendingRequests.add(request, failOnTimeout(request.tid));
+            if (request.type == Request.TYPE.SEND_IMAGE)
+                try {
+                    this.socketClient.sendImage(request, new JSONObject(request.representations));
+                } catch (JSONException e) {
+                    onRequestError(request.tid, e.toString());
+                    continue;
+                }
+            else
+                this.socketClient.sendText(request);
+            this.pendingRequests.markSent(request.tid);
+        }
+    }
+
+    // an event that is not acknowledged in time on a live connection may have been posted: sending it again could
+    // post it twice, it fails instead. The events sent after it are not held back.
+    private Runnable failOnTimeout(final String tid) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                SendMessageRequest request = outbox.complete(tid);
+                if (request != null) {
+                    postError(request.cid, request.getListener(), "The event was not acknowledged in time, it may not have been sent");
+                    drainOutbox();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The number of text and image events that were not acknowledged yet.
+     */
+    public int getOutboxSize() {
+        return this.outbox.size();
     }
 
     public void sendSeenEvent(Text text, MarkedAsSeenListener listener) {
@@ -512,8 +771,9 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                 text.getConversation().getMemberId(),
                 text.getId(),
                 listener);
-        this.markSeenRequestMap.put(tid, markSeenRequest);
+        this.pendingRequests.add(markSeenRequest);
         this.socketClient.sendSeenEvent(markSeenRequest);
+        this.pendingRequests.markSent(tid);
     }
 
     public void sendSeenEvent(Image image, MarkedAsSeenListener listener) {
@@ -523,44 +783,72 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                 image.getConversation().getMemberId(),
                 image.getId(),
                 listener);
-        this.markSeenRequestMap.put(tid, markSeenRequest);
+        this.pendingRequests.add(markSeenRequest);
         this.socketClient.sendSeenEvent(markSeenRequest);
+        this.pendingRequests.markSent(tid);
     }
 
     public void sendTypingIndicator(Conversation conversation, Member.TYPING_INDICATOR typingIndicator, TypingSendListener listener){
         String tid = newTID();
         TypingIndicatorRequest typingIndicatorRequest = new TypingIndicatorRequest(Request.TYPE.TYPING, tid, conversation.getConversationId(), conversation.getMemberId(), typingIndicator, listener);
-        this.typingIndicatorRequestMap.put(tid, typingIndicatorRequest);
+        this.pendingRequests.add(typingIndicatorRequest);
         this.socketClient.sendTypingIndicator(typingIndicatorRequest);
+        this.pendingRequests.markSent(tid);
     }
 
     public void deleteMessage(Conversation conversation, String messageId, EventDeleteListener listener) {
         String tid = newTID();
         DeleteEventRequest deleteEventRequest = new DeleteEventRequest(Request.TYPE.DELETE_EVENT, tid, conversation.getConversationId(), conversation.getMemberId(), messageId, listener);
-        this.deleteTextRequestMap.put(tid, deleteEventRequest);
+        this.pendingRequests.add(deleteEventRequest);
         this.socketClient.deleteEvent(deleteEventRequest);
+        this.pendingRequests.markSent(tid);
+    }
+
+    /**
+     * @return The number of requests that are still waiting for a 'success' or 'error' signal.
+     */
+    public int getPendingRequestCount() {
+        return this.pendingRequests.size();
+    }
+
+    /**
+     * @return The number of requests of a certain type that are still waiting for a 'success' or 'error' signal.
+     */
+    public int getPendingRequestCount(Request.TYPE type) {
+        return this.pendingRequests.count(type);
     }
 
     public void release() {
         this.socketClient.conversationList.clear();
-        this.createRequestMap.clear();
-        this.joinRequestMap.clear();
+        this.conversations.clear();
+        this.pendingRequests.clear();
+        this.outbox.clear();
+        this.eventsSync.clear();
+        this.callbacks.clear();
+        // the queued cache writes are still applied: they are part of the cache, not of the released session.
+        if (this.eventArchive != null)
+            this.eventArchive.reset();
         this.socketClient.release();
     }
 
     @Override
     public void onCreate(String tid, String conversationId) {
-        if (this.createRequestMap.containsKey(tid)) {
-            CreateRequest request = this.createRequestMap.get(tid);
-            request.conversationCreateListener.onConversationCreated(new Conversation(request.name, conversationId));
-            this.createRequestMap.remove(tid);
+        final CreateRequest request = this.pendingRequests.acknowledge(tid, CreateRequest.class);
+        if (request != null) {
+            final Conversation createdConversation = new Conversation(request.name, conversationId);
+            this.callbacks.dispatch(conversationId, new Runnable() {
+                @Override
+                public void run() {
+                    request.conversationCreateListener.onConversationCreated(createdConversation);
+                }
+            });
         }
     }
 
     @Override
-    public void onJoin(String tid, Member member) {
-        if (this.joinRequestMap.containsKey(tid)){
-            JoinRequest request = this.joinRequestMap.get(tid);
+    public void onJoin(String tid, final Member member) {
+        final JoinRequest request = this.pendingRequests.acknowledge(tid, JoinRequest.class);
+        if (request != null) {
             //at this point we do not store the pending invitations until we actually join. TODO
             Conversation joinedConversation;
 
@@ -570,11 +858,20 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                 joinedConversation = new Conversation(request.cName, request.cid);
             joinedConversation.setSelf(member);
             joinedConversation.addMember(member);
-            //pass a clone
-            request.joinListener.onConversationJoined(new Conversation(joinedConversation), new Member(member));
+            //pass a snapshot, members are never modified once added.
+            final Conversation snapshot = new Conversation(joinedConversation);
+            this.callbacks.dispatch(request.cid, new Runnable() {
+                @Override
+                public void run() {
+                    request.joinListener.onConversationJoined(snapshot, member);
+                }
+            });
 
-            this.conversationList.add(joinedConversation);
-            this.joinRequestMap.remove(tid);
+            this.conversations.put(joinedConversation);
+            if (this.cacheWriter != null) {
+                this.cacheWriter.saveConversation(joinedConversation);
+                this.cacheWriter.saveMember(request.cid, member);
+            }
         }
 
 //        Log.d(TAG, "onMemberJoined ");
@@ -603,50 +900,87 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
 
     @Override
     public void onLeft(String tid,  Date invited, Date joined, Date left) {
-        if (this.leaveRequestMap.containsKey(tid)) {
-            LeaveRequest request = this.leaveRequestMap.get(tid);
+        final LeaveRequest request = this.pendingRequests.acknowledge(tid, LeaveRequest.class);
+        if (request != null) {
             Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
                 Member member = pendingConversation.getMember(request.memberId);
                 //update Member with left timestamp
                 if (member != null)
-                    synchronized(this) {
-                        member.updateState(Member.STATE.LEFT, left);
-                    }
+                    saveMember(request.cid, updateMemberState(pendingConversation, member, Member.STATE.LEFT, left));
             }
-            request.leaveListener.onConversationLeft();
-            this.leaveRequestMap.remove(tid);
+            this.callbacks.dispatch(request.cid, new Runnable() {
+                @Override
+                public void run() {
+                    request.leaveListener.onConversationLeft();
+                }
+            });
         }
     }
 
     @Override
-    public void onConversations(List<Conversation> conversations) {
-        this.conversationList = conversations;
-        this.conversationListListener.onConversationList(new ArrayList<>(conversations));
-        // update DB after dispatching events
-        //CacheDB.getInstance(this.conversationClient.getContext()).insertConversations(conversations);
+    public void onConversations(String tid, List<Conversation> conversations) {
+        final GetConversationsRequest request = this.pendingRequests.acknowledge(tid, GetConversationsRequest.class);
+        final List<Conversation> conversationList = Collections.unmodifiableList(this.conversations.sync(conversations));
+        if (request != null && request.cachedListListener != null)
+            postConversationListChanged(request, conversations);
+        else if (request != null && request.conversationListListener != null)
+            this.callbacks.dispatch(ANY_CONVERSATION, new Runnable() {
+                @Override
+                public void run() {
+                    request.conversationListListener.onConversationList(conversationList);
+                }
+            });
+        if (this.cacheWriter != null)
+            this.cacheWriter.saveConversations(conversations);
+    }
+
+    // report the differences between the cached conversation list and the one received from the server,
+    // with the conversations as they are known now.
+    private void postConversationListChanged(final GetConversationsRequest request, List<Conversation> received) {
+        ConversationListDiff diff = ConversationListDiff.compute(request.cached, received);
+        if (diff.isEmpty())
+            return;
+
+        final List<Conversation> added = known(diff.added);
+        final List<Conversation> updated = known(diff.updated);
+        final List<Conversation> removed = diff.removed;
+        this.callbacks.dispatch(ANY_CONVERSATION, new Runnable() {
+            @Override
+            public void run() {
+                request.cachedListListener.onConversationListChanged(added, updated, removed);
+            }
+        });
+    }
+
+    private List<Conversation> known(List<Conversation> conversations) {
+        List<Conversation> known = new ArrayList<>(conversations.size());
+        for (Conversation conversation : conversations) {
+            Conversation current = findConversation(conversation.getConversationId());
+            known.add(current != null ? current : conversation);
+        }
+        return Collections.unmodifiableList(known);
     }
 
     @Override
     public void onConversation(String tid, Conversation conversation) {
-        if (this.getConversationRequestMap.containsKey(tid)) {
+        final GetConversationRequest request = this.pendingRequests.acknowledge(tid, GetConversationRequest.class);
+        if (request != null) {
             //update list instead, make sure does not overlap with onConversations;
 
             Conversation pendingConversation = findConversation(conversation.getConversationId());
             if (pendingConversation != null)
                 pendingConversation.setMembers(conversation.getMembers());
-            GetConversationRequest request = this.getConversationRequestMap.get(tid);
-            request.conversationListener.onConversationUpdated(new Conversation(conversation));
-            this.getConversationRequestMap.remove(tid);
-//            this.dbHelper.updateConversation(conversation);
+            postConversationUpdated(request, new Conversation(conversation));
+            if (this.cacheWriter != null)
+                this.cacheWriter.saveMembers(conversation.getConversationId(), conversation.getMembers());
         }
     }
 
-    //todo optimize this
     @Override
     public void onEventsHistory(String tid, List<Text> messages, List<Image> images, List<SeenReceipt> seenReceipts) {
-        if (this.getTextEventRequestMap.containsKey(tid)) {
-            GetConversationRequest request = this.getTextEventRequestMap.get(tid);
+        final GetConversationRequest request = this.pendingRequests.acknowledge(tid, GetConversationRequest.class);
+        if (request != null) {
             //update list, make sure does not overlap with onConversations;
             //update conversation entry, don't remove the members
             Conversation pendingConversation = findConversation(request.cid);
@@ -672,61 +1006,148 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                     downloadImageRepresentation(pendingConversation, image, image.getMedium());
                     downloadImageRepresentation(pendingConversation, image, image.getThumbnail());
                 }
-                for (SeenReceipt seenReceipt : seenReceipts) {
-                    for (Text message : messages) {
-                        if (message.getId().equals(seenReceipt.getEvent_id())) {
-                            message.addSeenReceipt(seenReceipt);
-                            break;
-                        }
-                    }
-                    for (Image image : images) {
-                        if (image.getId().equals(seenReceipt.getEvent_id())) {
-                            image.addSeenReceipt(seenReceipt);
-                            break;
-                        }
+                attachSeenReceipts(messages, images, seenReceipts);
+
+                if (request.incremental)
+                    mergeEvents(pendingConversation, messages, images);
+                else {
+                    synchronized(pendingConversation) {
+                        pendingConversation.setMessages(messages);
+                        pendingConversation.setImages(images);
                     }
+                    // the cached events were cleared by the archive, the page replaces them.
+                    if (this.cacheWriter != null)
+                        this.cacheWriter.saveEvents(request.cid, messages, images);
                 }
 
-                synchronized(this) {
-                    pendingConversation.setMessages(messages);
-                    pendingConversation.setImages(images);
-                }
-                request.conversationListener.onConversationUpdated(new Conversation(pendingConversation));
+                String lastEventId = latestEventId(messages, images);
+                if (lastEventId != null)
+                    pendingConversation.updateLastEventId(lastEventId);
+                if (this.cacheWriter != null)
+                    this.cacheWriter.saveConversation(pendingConversation);
+                postConversationUpdated(request, new Conversation(pendingConversation));
+            }
+            else
+                postMissingConversation(request.cid, request.conversationListener);
+        }
+    }
+
+    // join the receipts to the events of the page by id, a receipt goes to the first text and the first image with its event id.
+    // The receipts of an event are attached at once, in order, so the event copies its receipt list once.
+    static void attachSeenReceipts(List<Text> messages, List<Image> images, List<SeenReceipt> seenReceipts) {
+        if (seenReceipts.isEmpty())
+            return;
+
+        Map<String, List<SeenReceipt>> receiptsByEvent = new HashMap<>();
+        for (SeenReceipt seenReceipt : seenReceipts) {
+            List<SeenReceipt> receipts = receiptsByEvent.get(seenReceipt.getEvent_id());
+            if (receipts == null) {
+                receipts = new ArrayList<>();
+                receiptsByEvent.put(seenReceipt.getEvent_id(), receipts);
             }
-            this.getTextEventRequestMap.remove(tid);
+            receipts.add(seenReceipt);
+        }
+
+        Set<String> attached = new HashSet<>();
+        for (Text message : messages) {
+            List<SeenReceipt> receipts = receiptsByEvent.get(message.getId());
+            if (receipts != null && attached.add(message.getId()))
+                message.addSeenReceipts(receipts);
+        }
+        attached.clear();
+        for (Image image : images) {
+            List<SeenReceipt> receipts = receiptsByEvent.get(image.getId());
+            if (receipts != null && attached.add(image.getId()))
+                image.addSeenReceipts(receipts);
+        }
+    }
+
+    // add the events that are not known yet and dispatch them as incoming events.
+    private void mergeEvents(final Conversation conversation, List<Text> messages, List<Image> images) {
+        String cid = conversation.getConversationId();
+        final List<Text> mergedMessages = new ArrayList<>();
+        for (Text message : messages) {
+            if (containsMessage(conversation, message))
+                continue;
+            conversation.addMessage(message);
+            mergedMessages.add(message);
         }
+        final List<Image> mergedImages = new ArrayList<>();
+        for (Image image : images) {
+            if (containsImage(conversation, image))
+                continue;
+            conversation.addImageEvent(image);
+            mergedImages.add(image);
+        }
+        if (this.cacheWriter != null)
+            this.cacheWriter.saveEvents(cid, mergedMessages, mergedImages);
+
+        final List<TextListener> textListeners = this.textListeners.get(cid);
+        final List<ImageListener> imageListeners = this.imageListeners.get(cid);
+        if (textListeners.isEmpty() && imageListeners.isEmpty())
+            return;
+        this.callbacks.dispatch(cid, new Runnable() {
+            @Override
+            public void run() {
+                for (Text message : mergedMessages)
+                    for (int i = 0; i < textListeners.size(); i++)
+                        textListeners.get(i).onTextReceived(conversation, message);
+                for (Image image : mergedImages)
+                    for (int i = 0; i < imageListeners.size(); i++)
+                        imageListeners.get(i).onImageReceived(conversation, image);
+            }
+        });
+    }
+
+    // events are received in order, the latest one is the last text or the last image.
+    private static String latestEventId(List<Text> messages, List<Image> images) {
+        Text lastText = (messages.isEmpty() ? null : messages.get(messages.size() - 1));
+        Image lastImage = (images.isEmpty() ? null : images.get(images.size() - 1));
+        if (lastText == null)
+            return (lastImage != null ? lastImage.getId() : null);
+        if (lastImage == null || lastImage.getTimestamp() == null || lastText.getTimestamp() == null)
+            return lastText.getId();
+
+        return (lastImage.getTimestamp().after(lastText.getTimestamp()) ? lastImage.getId() : lastText.getId());
     }
 
     @Override
     public void onTextSent(String tid, String textId, Date timestamp) {
         Log.d(TAG, "onTextSent");
-        if (this.sendMessageRequestMap.containsKey(tid)) {
-            SendMessageRequest request = this.sendMessageRequestMap.get(tid);
-            Conversation pendingConversation = findConversation(request.cid);
+        final SendMessageRequest request = this.outbox.complete(tid);
+        this.pendingRequests.remove(tid);
+        if (request != null) {
+            final Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
-                Text incomingText = new Text(request.message, textId, timestamp, pendingConversation.getSelf());
-                synchronized(this){
+                final Text incomingText = new Text(request.message, textId, timestamp, pendingConversation.getSelf());
+                synchronized(pendingConversation) {
                     incomingText.setConversation(pendingConversation);
                     pendingConversation.addMessage(incomingText);
-                    incomingText.getMember();
                     pendingConversation.updateLastEventId(textId);
-                    //debug check the memberId
                 }
-                request.textSendListener.onTextSent(pendingConversation, incomingText);
+                saveEvent(pendingConversation, incomingText);
+                if (request.textSendListener != null)
+                    this.callbacks.dispatch(request.cid, new Runnable() {
+                        @Override
+                        public void run() {
+                            request.textSendListener.onTextSent(pendingConversation, incomingText);
+                        }
+                    });
             }
-            this.sendMessageRequestMap.remove(tid);
         }
+        drainOutbox();
     }
 
     @Override
     public void onImageSent(String tid, String imageId, Date timestamp) {
-        if (this.sendMessageRequestMap.containsKey(tid)) {
-            SendMessageRequest request = this.sendMessageRequestMap.get(tid);
-            Conversation pendingConversation = findConversation(request.cid);
+        final SendMessageRequest request = this.outbox.complete(tid);
+        this.pendingRequests.remove(tid);
+        if (request != null) {
+            final Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
                 //Image(final String payload, final String id, final Date timestamp, final String url) {
-                Image image = new Image(request.message, imageId, timestamp, request.message);
-                synchronized(this){
+                final Image image = new Image(request.message, imageId, timestamp, request.message);
+                synchronized(pendingConversation) {
                     image.setMember(pendingConversation.getSelf());
                     image.setConversation(pendingConversation);
                     image.addRepresentations(request.original, request.medium, request.thumbnail);
@@ -734,142 +1155,256 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
 
                     pendingConversation.updateLastEventId(imageId);
                 }
-                request.imageSendListener.onImageSent(pendingConversation, image);
+                saveEvent(pendingConversation, image);
+                if (request.imageSendListener != null)
+                    this.callbacks.dispatch(request.cid, new Runnable() {
+                        @Override
+                        public void run() {
+                            request.imageSendListener.onImageSent(pendingConversation, image);
+                        }
+                    });
             }
-            this.sendMessageRequestMap.remove(tid);
         }
+        drainOutbox();
     }
 
     @Override
     public void onTextRemoved(String tid, String eventId) {
         //remove payload from the text and upload conversation list.
-        if (this.deleteTextRequestMap.containsKey(tid)) {
-            DeleteEventRequest request = this.deleteTextRequestMap.get(tid);
-            Conversation pendingConversation = findConversation(request.cid);
+        final DeleteEventRequest request = this.pendingRequests.acknowledge(tid, DeleteEventRequest.class);
+        if (request != null) {
+            final Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
-                synchronized(this){
-                    pendingConversation.getMessage(request.messageId).setDeleteEventId(eventId);
-                }
-                request.eventDeleteListener.onDeleted(pendingConversation);
+                Text deletedText = pendingConversation.getMessage(request.messageId);
+                if (deletedText != null)
+                    deletedText.setDeleteEventId(eventId);
+                this.callbacks.dispatch(request.cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        request.eventDeleteListener.onDeleted(pendingConversation);
+                    }
+                });
             }
-            this.sendMessageRequestMap.remove(tid);
         }
     }
 
     @Override
     public void onMarkedAsSeen(String tid) {
-        if (this.markSeenRequestMap.containsKey(tid)) {
-            MarkSeenRequest request = this.markSeenRequestMap.get(tid);
-            Conversation pendingConversation = findConversation(request.cid);
+        final MarkSeenRequest request = this.pendingRequests.acknowledge(tid, MarkSeenRequest.class);
+        if (request != null) {
+            final Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
-                // update internal conversation object.setMessage(seen boolean)
-                synchronized(this){
-                    //pendingConversation.addMessage(incomingText);
-                }
-                request.listener.onMarkedAsSeen(pendingConversation);
+                this.callbacks.dispatch(request.cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        request.listener.onMarkedAsSeen(pendingConversation);
+                    }
+                });
             }
-            this.markSeenRequestMap.remove(tid);
         }
     }
 
     @Override
     public void onTypingOn(String tid) {
-        if (this.typingIndicatorRequestMap.containsKey(tid)) {
-            TypingIndicatorRequest request = this.typingIndicatorRequestMap.get(tid);
-            Conversation pendingConversation = findConversation(request.cid);
+        final TypingIndicatorRequest request = this.pendingRequests.acknowledge(tid, TypingIndicatorRequest.class);
+        if (request != null) {
+            final Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
-                synchronized(this) {
-                    pendingConversation.getMember(request.memberId).setTypingIndicator(Member.TYPING_INDICATOR.ON);
-                }
-                request.typingSendListener.onTypingSent(pendingConversation, Member.TYPING_INDICATOR.ON);
+                updateTypingIndicator(pendingConversation, pendingConversation.getMember(request.memberId), Member.TYPING_INDICATOR.ON);
+                this.callbacks.dispatch(request.cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        request.typingSendListener.onTypingSent(pendingConversation, Member.TYPING_INDICATOR.ON);
+                    }
+                });
             }
-            this.typingIndicatorRequestMap.remove(tid);
         }
     }
 
     @Override
     public void onTypingOff(String tid) {
-        if (this.typingIndicatorRequestMap.containsKey(tid)) {
-            TypingIndicatorRequest request = this.typingIndicatorRequestMap.get(tid);
-            Conversation pendingConversation = findConversation(request.cid);
+        final TypingIndicatorRequest request = this.pendingRequests.acknowledge(tid, TypingIndicatorRequest.class);
+        if (request != null) {
+            final Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
-                synchronized(this) {
-                    pendingConversation.getMember(request.memberId).setTypingIndicator(Member.TYPING_INDICATOR.OFF);
-                }
-                request.typingSendListener.onTypingSent(pendingConversation, Member.TYPING_INDICATOR.OFF);
+                updateTypingIndicator(pendingConversation, pendingConversation.getMember(request.memberId), Member.TYPING_INDICATOR.OFF);
+                this.callbacks.dispatch(request.cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        request.typingSendListener.onTypingSent(pendingConversation, Member.TYPING_INDICATOR.OFF);
+                    }
+                });
             }
-            this.typingIndicatorRequestMap.remove(tid);
         }
     }
 
     @Override
     public void onInvitationSent(String tid) {
-        if (this.inviteRequestMap.containsKey(tid)) {
-            InviteRequest request = this.inviteRequestMap.get(tid);
+        final InviteRequest request = this.pendingRequests.acknowledge(tid, InviteRequest.class);
+        if (request != null) {
             Conversation pendingConversation = findConversation(request.cid);
             if (pendingConversation != null) {
                 //todo set member invited.
-                request.inviteSendListener.onInviteSent(request.cid, request.user);
+                this.callbacks.dispatch(request.cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        request.inviteSendListener.onInviteSent(request.cid, request.user);
+                    }
+                });
+                }
+        }
+    }
+
+    @Override
+    public void onRequestError(String tid, String errMessage) {
+        Log.d(TAG, "onRequestError " + tid + " " + errMessage);
+        SendMessageRequest request = this.outbox.complete(tid);
+        if (request != null) {
+            this.pendingRequests.remove(tid);
+            // rejected by the Conversation service, retrying would not help.
+            postError(request.cid, request.getListener(), errMessage);
+            drainOutbox();
+        }
+        else
+            this.pendingRequests.fail(tid, errMessage);
+    }
+
+    @Override
+    public String getRequestConversationId(String tid) {
+        SendMessageRequest sendMessageRequest = this.outbox.get(tid);
+        if (sendMessageRequest != null)
+            return sendMessageRequest.cid;
+
+        Request request = this.pendingRequests.get(tid, Request.class);
+        return (request != null ? request.cid : null);
+    }
+
+    @Override
+    public void onLoggedIn(final User user) {
+        // the restore reads the storage, off the socket thread and ahead of the drains that follow.
+        this.socketClient.execute(OUTBOX_LANE, new Runnable() {
+            @Override
+            public void run() {
+                restoreOutbox(user.getUserId());
+                emitOutbox();
+            }
+        });
+
+        // the session was resumed, only fetch what changed while disconnected.
+        List<Conversation> joinedConversations = this.conversations.snapshot();
+        if (!joinedConversations.isEmpty())
+            this.eventsSync.sync(joinedConversations);
+    }
+
+    // on the outbox lane only.
+    private void restoreOutbox(String userId) {
+        for (SendMessageRequest request : this.outbox.restore(userId))
+            if (request.type == Request.TYPE.SEND_IMAGE && request.representations != null)
+                try {
+                    updateImageRepresentations(request, new JSONObject(request.representations));
+                } catch (JSONException e) {
+                    Log.d(TAG, "onLoggedIn cannot restore image " + request.tid);
                 }
-            this.inviteRequestMap.remove(tid);
+    }
+
+    @Override
+    public void onLoggedOut(User user) {
+        // the events of the user are not sent in the session of another one.
+        for (SendMessageRequest request : this.outbox.discard()) {
+            this.pendingRequests.remove(request.tid);
+            postError(request.cid, request.getListener(), "Logged out before the event was sent");
+        }
+    }
+
+    @Override
+    public void onDisconnected() {
+        // unacknowledged events are sent again once the session is back, their timeouts start over then.
+        // An event that keeps failing, such as one the connection drops on, is failed after a few attempts.
+        for (SendMessageRequest request : this.outbox.requeueInFlight()) {
+            this.pendingRequests.remove(request.tid);
+            if (request.attempts >= Defaults.OUTBOX_SEND_ATTEMPTS && this.outbox.complete(request.tid) != null)
+                postError(request.cid, request.getListener(), "The event was not acknowledged after " + request.attempts + " attempts");
         }
+        // the syncs in flight are not answered by the next session: they start over once it is logged in.
+        for (String tid : this.eventsSync.reset())
+            this.pendingRequests.remove(tid);
     }
 
     // update internal state regardless of listeners being set
     @Override
     public void onMemberJoined(String cid, String memberId, User user, Date joinedTimestamp) {
         Log.d(TAG, "onMemberJoined ");
-        Conversation pendingConversation = findConversation(cid);
+        final Conversation pendingConversation = findConversation(cid);
         if(pendingConversation != null) {
             //update member state and join date.
             Member member = pendingConversation.getMember(memberId);
             if(member != null)
-                synchronized(this) {
-                    member.updateState(Member.STATE.JOINED, joinedTimestamp);
-                }
+                member = updateMemberState(pendingConversation, member, Member.STATE.JOINED, joinedTimestamp);
             else {
                 member = new Member(user.getUserId(), user.getName(), memberId, joinedTimestamp, null, null, Member.STATE.JOINED);
                 pendingConversation.addMember(member);
             }
-
-            if (this.memberJoinedListenerMap.containsKey(pendingConversation.getConversationId())) {
-                List<MemberJoinedListener> listeners = this.memberJoinedListenerMap.get(cid);
-                for (MemberJoinedListener listener : listeners)
-                    listener.onJoined(pendingConversation, new Member(member));
-            }
+            saveMember(cid, member);
+
+            final Member joinedMember = member;
+            final List<MemberJoinedListener> listeners = this.memberJoinedListeners.get(cid);
+            if (!listeners.isEmpty())
+                this.callbacks.dispatch(cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < listeners.size(); i++)
+                            listeners.get(i).onJoined(pendingConversation, joinedMember);
+                    }
+                });
         }
     }
 
     @Override
-    public void onMemberInvited(String cid, String cName, Member invitedMember, String invitedByMemberId, String invitedByUsername) {
+    public void onMemberInvited(String cid, String cName, final Member invitedMember, final String invitedByMemberId, final String invitedByUsername) {
         Log.d(TAG, "onMemberInvited");
-        Conversation pendingConversation = findConversation(cid);
-        List<MemberInvitedListener> listeners = this.memberInvitedListenerMap.get(cid);
+        final Conversation pendingConversation = findConversation(cid);
 
         if (pendingConversation != null) {
             Log.d(TAG, "onMemberInvited to one of the conversations");
             //add new member
             pendingConversation.addMember(invitedMember);
-
-            if (this.memberInvitedListenerMap.containsKey(pendingConversation.getConversationId()))
-                for (MemberInvitedListener listener : listeners)
-                    listener.onMemberInvited(pendingConversation, new Member(invitedMember), invitedByMemberId, invitedByUsername);
+            saveMember(cid, invitedMember);
+
+            final List<MemberInvitedListener> listeners = this.memberInvitedListeners.get(cid);
+            if (!listeners.isEmpty())
+                this.callbacks.dispatch(cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < listeners.size(); i++)
+                            listeners.get(i).onMemberInvited(pendingConversation, invitedMember, invitedByMemberId, invitedByUsername);
+                    }
+                });
         } else {
             Log.d(TAG, "User received an invitation");
-            Conversation invitedConversation = new Conversation(cName, cid);
+            final Conversation invitedConversation = new Conversation(cName, cid);
             invitedConversation.addMember(invitedMember);
-            conversationList.add(invitedConversation);
+            this.conversations.put(invitedConversation);
+            if (this.cacheWriter != null) {
+                this.cacheWriter.saveConversation(invitedConversation);
+                this.cacheWriter.saveMember(cid, invitedMember);
+            }
 
-            for (ConversationInvitedListener listener : this.conversationInvitesListeners)
-                listener.onConversationInvited(invitedConversation, new Member(invitedMember), invitedByMemberId, invitedByUsername);
+            final List<ConversationInvitedListener> listeners = this.conversationInvitedListeners.get(ANY_CONVERSATION);
+            if (!listeners.isEmpty())
+                this.callbacks.dispatch(ANY_CONVERSATION, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < listeners.size(); i++)
+                            listeners.get(i).onConversationInvited(invitedConversation, invitedMember, invitedByMemberId, invitedByUsername);
+                    }
+                });
         }
     }
 
     @Override
     public void onMemberLeft(String cid, String memberId, User user, Date invited, Date joined, Date left) {
         Log.d(TAG, "onMemberLeft");
-        Conversation pendingConversation = findConversation(cid);
-        List<MemberLeftListener> listeners = this.memberLeftListenerMap.get(cid);
+        final Conversation pendingConversation = findConversation(cid);
 
         if (pendingConversation != null) {
             if (conversationClient != null) {
@@ -878,23 +1413,27 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
                 if (TextUtils.isEmpty(memberId)) {
                     member = pendingConversation.getMember(user);
                     if (member != null)
-                        synchronized(this) {
-                            member.updateState(Member.STATE.LEFT, left);
-                        }
+                        member = updateMemberState(pendingConversation, member, Member.STATE.LEFT, left);
                 }
                 else {
                     member = pendingConversation.getMember(memberId);
                     if (member != null)
-                        synchronized(this) {
-                            member.updateState(Member.STATE.LEFT, left);
-                        }
+                        member = updateMemberState(pendingConversation, member, Member.STATE.LEFT, left);
                     else
                         member = new Member(user.getUserId(), user.getName(), memberId, joined, invited, left, Member.STATE.LEFT);
                 }
 
-                if (this.memberLeftListenerMap.containsKey(pendingConversation.getConversationId()))
-                    for (MemberLeftListener listener : listeners)
-                        listener.onMemberLeft(pendingConversation, new Member(member));
+                saveMember(cid, member);
+                final Member leftMember = member;
+                final List<MemberLeftListener> listeners = this.memberLeftListeners.get(cid);
+                if (!listeners.isEmpty())
+                    this.callbacks.dispatch(cid, new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < listeners.size(); i++)
+                                listeners.get(i).onMemberLeft(pendingConversation, leftMember);
+                        }
+                    });
             }
         }
     }
@@ -910,37 +1449,41 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
     }
 
     @Override
-    public void onTextReceived(String cid, String memberId, Text text) {
-        Conversation pendingConversation = findConversation(cid);
+    public void onTextReceived(String cid, String memberId, final Text text) {
+        final Conversation pendingConversation = findConversation(cid);
         //avoid duplicate texts on same id.
         if (pendingConversation != null) {
-            if (!containsMessage(pendingConversation, text)) {
+            final Text knownText = pendingConversation.findText(text.getId());
+            if (knownText == null) {
                 // add the message
-                synchronized(this) {
+                synchronized(pendingConversation) {
                     text.setMember(pendingConversation.getMember(memberId));
                     pendingConversation.addMessage(text);
                     text.setConversation(pendingConversation);
                     pendingConversation.updateLastEventId(text.getId());
                 }
-                if (this.textListenerMap.containsKey(pendingConversation.getConversationId())) {
-                    List<TextListener> listeners = this.textListenerMap.get(cid);
-                    for (TextListener listener : listeners)
-                        listener.onTextReceived(pendingConversation, text);
-                }
+                saveEvent(pendingConversation, text);
+                final List<TextListener> listeners = this.textListeners.get(cid);
+                if (!listeners.isEmpty())
+                    this.callbacks.dispatch(cid, new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < listeners.size(); i++)
+                                listeners.get(i).onTextReceived(pendingConversation, text);
+                        }
+                    });
             }
             else {
                 Log.d(TAG, "onTextReceived for relayed-own text");
-                for (Text message: pendingConversation.getMessages()) {
-                    if (message.getId().equals(text.getId())) {
-                        //update fields
-                        if (this.textListenerMap.containsKey(pendingConversation.getConversationId())) {
-                            List<TextListener> listeners = this.textListenerMap.get(cid);
-                            for(TextListener listener : listeners)
-                                listener.onTextReceived(pendingConversation, message);
+                final List<TextListener> listeners = this.textListeners.get(cid);
+                if (!listeners.isEmpty())
+                    this.callbacks.dispatch(cid, new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < listeners.size(); i++)
+                                listeners.get(i).onTextReceived(pendingConversation, knownText);
                         }
-                        break;
-                    }
-                }
+                    });
             }
         }
         // else completely new event, conversations not synced yet.
@@ -950,64 +1493,87 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
     @Override
     public void onTextDeleted(String cid, String memberId, String eventId, Date timestamp) {
         // remove payload from the text and refresh conversation list.
-        Conversation pendingConversation = findConversation(cid);
+        final Conversation pendingConversation = findConversation(cid);
         if (pendingConversation != null) {
-            Text deletedMessage =  pendingConversation.getMessage(eventId);
-            if (deletedMessage != null)
-                synchronized(this) {
+            Text deletedMessage = pendingConversation.findText(eventId);
+            if (deletedMessage != null) {
+                //set date deleted. todo see if date created has to be kept.
+                deletedMessage.setPayload(null);
+                if (this.cacheWriter != null)
+                    this.cacheWriter.updateTextPayload(cid, eventId, null);
+            }
+            else if (this.eventArchive != null) {
+                // the text was evicted from memory.
+                this.eventArchive.deleteTextPayload(pendingConversation, eventId);
+                deletedMessage = this.eventArchive.readText(pendingConversation, eventId);
+                // read without waiting for the queued payload update.
+                if (deletedMessage != null)
                     deletedMessage.setPayload(null);
-                    //set date deleted. todo see if date created has to be kept.
-                }
+            }
 
             // notify all listeners
-            if (this.textListenerMap.containsKey(cid)) {
-                List<TextListener> listeners = this.textListenerMap.get(cid);
-                for (TextListener listener : listeners)
-                    listener.onTextDeleted(
-                            pendingConversation,
-                            deletedMessage,
-                            pendingConversation.getMember(memberId));
-            }
+            final Text deletedText = deletedMessage;
+            final Member deletedBy = pendingConversation.getMember(memberId);
+            final List<TextListener> listeners = this.textListeners.get(cid);
+            if (!listeners.isEmpty())
+                this.callbacks.dispatch(cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < listeners.size(); i++)
+                            listeners.get(i).onTextDeleted(
+                                    pendingConversation,
+                                    deletedText,
+                                    deletedBy);
+                    }
+                });
         }
     }
 
     @Override
-    public void onEventSeen(String cid, String memberId, String eventId, Request.TYPE type, Date timestamp) {
+    public void onEventSeen(String cid, final String memberId, String eventId, Request.TYPE type, Date timestamp) {
         //add seen receipt
-        Conversation pendingConversation = findConversation(cid);
+        final Conversation pendingConversation = findConversation(cid);
         if (pendingConversation != null) {
-            SeenReceipt seenReceipt = new SeenReceipt(eventId, memberId, timestamp);
+            final SeenReceipt seenReceipt = new SeenReceipt(eventId, memberId, timestamp);
 
             switch(type) {
                 case MARK_TEXT_SEEN: {
-                    Text seenMessage = pendingConversation.findText(eventId);
+                    final Text seenMessage = pendingConversation.findText(eventId);
 
                     if(seenMessage != null) {
-                        synchronized(this) {
-                            seenMessage.addSeenReceipt(seenReceipt);
-                        }
-
-                        if (this.seenReceiptListenerMap.containsKey(cid)) {
-                            List<TextSeenReceiptListener> listeners = this.seenReceiptListenerMap.get(cid);
-                            for (TextSeenReceiptListener listener : listeners)
-                                listener.onSeenReceipt(seenMessage, pendingConversation.getMember(memberId), seenReceipt);
-                        }
+                        seenMessage.addSeenReceipt(seenReceipt);
+                        if (this.cacheWriter != null)
+                            this.cacheWriter.saveSeenReceipt(seenReceipt);
+
+                        final List<TextSeenReceiptListener> listeners = this.textSeenReceiptListeners.get(cid);
+                        if (!listeners.isEmpty())
+                            this.callbacks.dispatch(cid, new Runnable() {
+                                @Override
+                                public void run() {
+                                    for (int i = 0; i < listeners.size(); i++)
+                                        listeners.get(i).onSeenReceipt(seenMessage, pendingConversation.getMember(memberId), seenReceipt);
+                                }
+                            });
                     }
                     break;
                 }
                 case MARK_IMAGE_SEEN:{
-                    Image seenMessage = pendingConversation.findImage(eventId);
+                    final Image seenMessage = pendingConversation.findImage(eventId);
 
                     if(seenMessage != null) {
-                        synchronized(this) {
-                            seenMessage.addSeenReceipt(seenReceipt);
-                        }
-
-                        if (this.imageSeenReceiptListenerMap.containsKey(cid)) {
-                            List<ImageSeenReceiptListener> listeners = this.imageSeenReceiptListenerMap.get(cid);
-                            for (ImageSeenReceiptListener listener : listeners)
-                                listener.onSeenReceipt(seenMessage, pendingConversation.getMember(memberId), seenReceipt);
-                        }
+                        seenMessage.addSeenReceipt(seenReceipt);
+                        if (this.cacheWriter != null)
+                            this.cacheWriter.saveSeenReceipt(seenReceipt);
+
+                        final List<ImageSeenReceiptListener> listeners = this.imageSeenReceiptListeners.get(cid);
+                        if (!listeners.isEmpty())
+                            this.callbacks.dispatch(cid, new Runnable() {
+                                @Override
+                                public void run() {
+                                    for (int i = 0; i < listeners.size(); i++)
+                                        listeners.get(i).onSeenReceipt(seenMessage, pendingConversation.getMember(memberId), seenReceipt);
+                                }
+                            });
                     }
                     break;
                 }
@@ -1016,32 +1582,37 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
     }
 
     @Override
-    public void onImageReceived(String cid, String memberId, Image image) {
+    public void onImageReceived(String cid, String memberId, final Image image) {
         Log.d(TAG, "onImageReceived");
-        Conversation pendingConversation = findConversation(cid);
-        //avoid duplicate texts on same id.
+        final Conversation pendingConversation = findConversation(cid);
+        //avoid duplicate images on same id.
         if (pendingConversation != null) {
-            //if (!containsImage(pendingConversation, image)) {
-                Log.d(TAG, "onImageReceived from someone else,add it");
-                //download representations
-                downloadImageRepresentation(pendingConversation, image, image.getOriginal());
-                downloadImageRepresentation(pendingConversation, image, image.getMedium());
-                downloadImageRepresentation(pendingConversation, image, image.getThumbnail());
-                // add the image message
-                synchronized(this) {
-                    image.setMember(pendingConversation.getMember(memberId));
-                    image.setConversation(pendingConversation);
-
-                    pendingConversation.addImageEvent(image);
-                    pendingConversation.updateLastEventId(image.getId());
+            // add the image message
+            synchronized(pendingConversation) {
+                image.setMember(pendingConversation.getMember(memberId));
+                image.setConversation(pendingConversation);
+
+                if (!pendingConversation.addImageEvent(image)) {
+                    Log.d(TAG, "onImageReceived for an already known image");
+                    return;
                 }
-            //} else
-                //Log.d(TAG, "Received own relayed image");
-            if (this.imageListenerMap.containsKey(cid)) {
-                List<ImageListener> listeners = this.imageListenerMap.get(cid);
-                for (ImageListener listener : listeners)
-                    listener.onImageReceived(pendingConversation, image);
+                pendingConversation.updateLastEventId(image.getId());
             }
+            Log.d(TAG, "onImageReceived from someone else,add it");
+            //download representations
+            downloadImageRepresentation(pendingConversation, image, image.getOriginal());
+            downloadImageRepresentation(pendingConversation, image, image.getMedium());
+            downloadImageRepresentation(pendingConversation, image, image.getThumbnail());
+            saveEvent(pendingConversation, image);
+            final List<ImageListener> listeners = this.imageListeners.get(cid);
+            if (!listeners.isEmpty())
+                this.callbacks.dispatch(cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < listeners.size(); i++)
+                            listeners.get(i).onImageReceived(pendingConversation, image);
+                    }
+                });
         }
         else Log.d(TAG, "onImageReceived for not-sync conversation");
     }
@@ -1055,12 +1626,16 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
             @Override
             public void onFailure(com.squareup.okhttp.Request request, IOException e) {
                 Log.d(TAG, "onFailure download " + e.toString());
-                if (imageListenerMap.containsKey(conversation.getConversationId())) {
-                    List<ImageListener> listeners = imageListenerMap.get(conversation.getConversationId());
-                    for (ImageListener listener : listeners)
-                        listener.onDownloadFailed(null, null);
-                    //Conversation conversation, Image image
-                }
+                final List<ImageListener> listeners = imageListeners.get(conversation.getConversationId());
+                if (!listeners.isEmpty())
+                    callbacks.dispatch(conversation.getConversationId(), new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < listeners.size(); i++)
+                                listeners.get(i).onDownloadFailed(null, null);
+                        }
+                    });
+                //Conversation conversation, Image image
             }
 
             @Override
@@ -1069,36 +1644,42 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
 
                 if (!response.isSuccessful()) {
                     //recoverable error.
-                    if (imageListenerMap.containsKey(conversation.getConversationId())) {
-                        List<ImageListener> listeners = imageListenerMap.get(conversation.getConversationId());
-                        for (ImageListener listener : listeners)
-                            listener.onDownloadFailed(null, null);
-                    }
+                    final List<ImageListener> listeners = imageListeners.get(conversation.getConversationId());
+                    if (!listeners.isEmpty())
+                        callbacks.dispatch(conversation.getConversationId(), new Runnable() {
+                            @Override
+                            public void run() {
+                                for (int i = 0; i < listeners.size(); i++)
+                                    listeners.get(i).onDownloadFailed(null, null);
+                            }
+                        });
                 }
 
                 Bitmap bitmap = ImageDownloader.decodeImage(response);
-                synchronized (this){
-                    switch(imageRepresentation.type) {
-                        case ORIGINAL: {
-                            image.getOriginal().bitmap = bitmap;
-                            break;
-                        }
-                        case MEDIUM: {
-                            image.getMedium().bitmap = bitmap;
-                            break;
-                        }
-                        case THUMBNAIL:{
-                            image.getThumbnail().bitmap = bitmap;
-                            break;
-                        }
+                switch(imageRepresentation.type) {
+                    case ORIGINAL: {
+                        image.getOriginal().bitmap = bitmap;
+                        break;
+                    }
+                    case MEDIUM: {
+                        image.getMedium().bitmap = bitmap;
+                        break;
+                    }
+                    case THUMBNAIL:{
+                        image.getThumbnail().bitmap = bitmap;
+                        break;
                     }
                 }
 
-                if (imageListenerMap.containsKey(conversation.getConversationId())) {
-                    List<ImageListener> listeners = imageListenerMap.get(conversation.getConversationId());
-                    for (ImageListener listener : listeners)
-                        listener.onImageDownloaded(conversation, image);
-                }
+                final List<ImageListener> listeners = imageListeners.get(conversation.getConversationId());
+                if (!listeners.isEmpty())
+                    callbacks.dispatch(conversation.getConversationId(), new Runnable() {
+                        @Override
+                        public void run() {
+                            for (int i = 0; i < listeners.size(); i++)
+                                listeners.get(i).onImageDownloaded(conversation, image);
+                        }
+                    });
                 response.body().close();
             }};
 
@@ -1107,28 +1688,23 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
 
     @Override
     public void onPushSubscribedToConversation(String tid) {
-        if (this.pushSubscribeRequestMap.containsKey(tid)) {
-            PushSubscribeRequest request = this.pushSubscribeRequestMap.get(tid);
-            request.pushEnableListener.onSuccess();
-
-            this.pushSubscribeRequestMap.remove(tid);
+        final PushSubscribeRequest request = this.pendingRequests.acknowledge(tid, PushSubscribeRequest.class);
+        if (request != null) {
+            this.callbacks.dispatch(request.cid, new Runnable() {
+                @Override
+                public void run() {
+                    request.pushEnableListener.onSuccess();
+                }
+            });
         }
     }
 
     private boolean containsMessage(Conversation conversation, Text text) {
-        for (Text message: conversation.getMessages()) {
-            if (message.getId().equals(text.getId()))
-                return true;
-        }
-        return false;
+        return (conversation.findText(text.getId()) != null);
     }
 
     private boolean containsImage(Conversation conversation, Image image) {
-        for (Image message: conversation.getImages()) {
-            if (message.getId().equals(image.getId()))
-                return true;
-        }
-        return false;
+        return (conversation.findImage(image.getId()) != null);
     }
 
     @Override
@@ -1137,44 +1713,103 @@ public class ConversationSignalingChannel implements SignalingChannelListener {
     }
 
     private Conversation findConversation(final String cid) {
-        synchronized(this.conversationList) {
-            Iterator i = this.conversationList.iterator();
-            while (i.hasNext()){
-                Conversation conversation = (Conversation) i.next();
-                if (conversation.getConversationId().equals(cid))
-                    return conversation;
+        return this.conversations.get(cid);
+    }
+
+    private void postConversationUpdated(GetConversationRequest request, Conversation snapshot) {
+        postConversationUpdated(request.cid, request.conversationListener, snapshot);
+    }
+
+    private void postConversationUpdated(String cid, final ConversationListener listener, final Conversation snapshot) {
+        this.callbacks.dispatch(cid, new Runnable() {
+            @Override
+            public void run() {
+                listener.onConversationUpdated(snapshot);
             }
-        }
+        });
+    }
+
+    private void postMissingConversation(String cid, final ConversationListener listener) {
+        this.callbacks.dispatch(cid, new Runnable() {
+            @Override
+            public void run() {
+                listener.onError(ConversationListener.MISSING_CONVERSATION, "Missing conversation");
+            }
+        });
+    }
 
-        return null;
+    private void postError(String cid, final ConversationGenericListener listener, final String errMessage) {
+        if (listener == null)
+            return;
+        this.callbacks.dispatch(cid, new Runnable() {
+            @Override
+            public void run() {
+                listener.onError(GENERIC_ERR, errMessage);
+            }
+        });
     }
 
-    private void dispatchMemberTypeEvent(String cid, String memberId, Member.TYPING_INDICATOR typing_indicator){
-        Conversation pendingConversation = findConversation(cid);
+    private void dispatchMemberTypeEvent(String cid, String memberId, final Member.TYPING_INDICATOR typing_indicator){
+        final Conversation pendingConversation = findConversation(cid);
         if (pendingConversation != null) {
             //set member
-            Member typingMember = pendingConversation.getMember(memberId);
-            if(typingMember != null)
-                typingMember.setTypingIndicator(typing_indicator);
+            final Member typingMember = updateTypingIndicator(pendingConversation, pendingConversation.getMember(memberId), typing_indicator);
+
+            final List<MemberTypingListener> listeners = this.typingListeners.get(cid);
+            if (!listeners.isEmpty())
+                this.callbacks.dispatch(cid, new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < listeners.size(); i++)
+                            listeners.get(i).onTyping(pendingConversation, typingMember, typing_indicator);
+                    }
+                });
+        } //else dispatch an internal error report to bugsnag
+    }
 
+    // members handed out are shared, a change is published as an updated copy.
+    // persist a new or updated member of a conversation.
+    private void saveMember(String cid, Member member) {
+        if (this.cacheWriter != null)
+            this.cacheWriter.saveMember(cid, member);
+    }
 
-            if (this.textTypeListenerMap.containsKey(cid)) {
-                List<MemberTypingListener> listeners = this.textTypeListenerMap.get(cid);
-                for(MemberTypingListener listener : listeners)
-                    listener.onTyping(pendingConversation, new Member(typingMember), typing_indicator);
-            }
-        } //else dispatch an internal error report to bugsnag
+    // persist an event added to a conversation, along with the new last event id of the conversation.
+    private void saveEvent(Conversation conversation, Text event) {
+        if (this.cacheWriter == null)
+            return;
+        if (event instanceof Image)
+            this.cacheWriter.saveImages(conversation.getConversationId(), Collections.singletonList((Image) event));
+        else
+            this.cacheWriter.saveTexts(conversation.getConversationId(), Collections.singletonList(event));
+        this.cacheWriter.saveConversation(conversation);
+    }
+
+    private static Member updateMemberState(Conversation conversation, Member member, Member.STATE state, Date date) {
+        Member updated = new Member(member);
+        updated.updateState(state, date);
+        conversation.updateMember(updated);
+        return updated;
+    }
+
+    private static Member updateTypingIndicator(Conversation conversation, Member member, Member.TYPING_INDICATOR typingIndicator) {
+        if (member == null)
+            return null;
+        Member updated = new Member(member);
+        updated.setTypingIndicator(typingIndicator);
+        conversation.updateMember(updated);
+        return updated;
     }
 
     public void removeAllListeners() {
-        this.memberJoinedListenerMap.clear();
-        this.memberLeftListenerMap.clear();
-        this.memberInvitedListenerMap.clear();
-        this.conversationInvitesListeners.clear();
-        this.textListenerMap.clear();
-        this.imageListenerMap.clear();
-        this.textTypeListenerMap.clear();
-        this.seenReceiptListenerMap.clear();
-        this.imageSeenReceiptListenerMap.clear();
+        this.memberJoinedListeners.clear();
+        this.memberLeftListeners.clear();
+        this.memberInvitedListeners.clear();
+        this.conversationInvitedListeners.clear();
+        this.textListeners.clear();
+        this.imageListeners.clear();
+        this.typingListeners.clear();
+        this.textSeenReceiptListeners.clear();
+        this.imageSeenReceiptListeners.clear();
     }
 }
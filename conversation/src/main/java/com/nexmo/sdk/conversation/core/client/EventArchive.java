@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import android.database.SQLException;
+import android.util.Log;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.core.persistence.CacheDB;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The text and image events evicted from the in-memory window of their conversation, kept in {@link CacheDB}.
+ *
+ * <p>Events read back are attached to their conversation, and to the sender if it is a known member.
+ * Changes go through the {@link CacheWriter}, in order with the other cache writes, and archiving does not wait for them.
+ * Events are evicted only once their write is committed, so reading an evicted event does not wait for the queued writes.
+ * A page also holds the cached events of the window, it is read after the queued writes.
+ * Reads run on the calling thread. Storage failures are logged.</p>
+ */
+public class EventArchive {
+    private static final String TAG = EventArchive.class.getSimpleName();
+
+    /**
+     * Told whether archived events are committed, on the cache writer thread.
+     */
+    public interface ArchiveListener {
+        /**
+         * @param archived true if the events are committed and can be evicted from memory;
+         *                 false if the write failed or was dropped, the events are to be kept in memory.
+         */
+        void onArchived(boolean archived);
+    }
+
+    private final CacheDB cacheDB;
+    private final CacheWriter cacheWriter;
+    // the conversations that have texts or images evicted from memory, kept by a cache clear.
+    private final Set<String> textsArchived = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> imagesArchived = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    EventArchive(CacheDB cacheDB, CacheWriter cacheWriter) {
+        this.cacheDB = cacheDB;
+        this.cacheWriter = cacheWriter;
+    }
+
+    /**
+     * Queue the write of the events, after the cache writes queued before them, without waiting for it.
+     *
+     * @param listener Told once the write is committed, or failed.
+     */
+    public void archive(Conversation conversation, List<Text> texts, List<Image> images, final ArchiveListener listener) {
+        final String cid = conversation.getConversationId();
+        final List<Text> textsCopy = new ArrayList<>(texts);
+        final List<Image> imagesCopy = new ArrayList<>(images);
+        this.cacheWriter.enqueue(new CacheWriter.TrackedWrite() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.ingestEvents(cid, textsCopy, imagesCopy);
+            }
+
+            @Override
+            public void completed(boolean committed) {
+                if (committed) {
+                    if (!textsCopy.isEmpty())
+                        textsArchived.add(cid);
+                    if (!imagesCopy.isEmpty())
+                        imagesArchived.add(cid);
+                }
+                listener.onArchived(committed);
+            }
+        });
+    }
+
+    /**
+     * @return The conversations whose texts are partly evicted from memory: their cached texts must be kept.
+     */
+    Set<String> getTextsArchived() {
+        return new HashSet<>(this.textsArchived);
+    }
+
+    /**
+     * @return The conversations whose images are partly evicted from memory: their cached images must be kept.
+     */
+    Set<String> getImagesArchived() {
+        return new HashSet<>(this.imagesArchived);
+    }
+
+    /**
+     * A conversation was read from the cache with only its most recent events in memory: its older cached events must be kept.
+     */
+    void restored(Conversation conversation) {
+        if (conversation.getArchivedMessageCount() > 0)
+            this.textsArchived.add(conversation.getConversationId());
+        if (conversation.getArchivedImageCount() > 0)
+            this.imagesArchived.add(conversation.getConversationId());
+    }
+
+    /**
+     * The conversations are dropped from memory, none of their events needs to be kept anymore.
+     */
+    void reset() {
+        this.textsArchived.clear();
+        this.imagesArchived.clear();
+    }
+
+    public Text readText(Conversation conversation, String eventId) {
+        try {
+            return attach(conversation, this.cacheDB.readTextEvent(conversation.getConversationId(), eventId));
+        } catch (SQLException e) {
+            Log.d(TAG, "readText failed for " + eventId + ": " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @param position The position among the archived texts of the conversation, oldest first.
+     */
+    public Text readText(Conversation conversation, int position) {
+        try {
+            return attach(conversation, this.cacheDB.readTextEvent(conversation.getConversationId(), position));
+        } catch (SQLException e) {
+            Log.d(TAG, "readText failed at " + position + ": " + e.toString());
+            return null;
+        }
+    }
+
+    public Image readImage(Conversation conversation, String eventId) {
+        try {
+            return attach(conversation, this.cacheDB.readImageEvent(conversation.getConversationId(), eventId));
+        } catch (SQLException e) {
+            Log.d(TAG, "readImage failed for " + eventId + ": " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @param position The position among the archived images of the conversation, oldest first.
+     */
+    public Image readImage(Conversation conversation, int position) {
+        try {
+            return attach(conversation, this.cacheDB.readImageEvent(conversation.getConversationId(), position));
+        } catch (SQLException e) {
+            Log.d(TAG, "readImage failed at " + position + ": " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @param eventId The text to page from, excluded, or null to start from the most recent text.
+     * @return At most count texts of the conversation before this one, oldest first.
+     */
+    public List<Text> readTextsBefore(Conversation conversation, String eventId, int count) {
+        try {
+            this.cacheWriter.flush();
+            return attach(conversation, this.cacheDB.readTextEventsBefore(conversation.getConversationId(), eventId, count));
+        } catch (SQLException e) {
+            Log.d(TAG, "readTextsBefore failed for " + eventId + ": " + e.toString());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param eventId The text to page from, excluded, or null to start from the oldest text.
+     * @return At most count texts of the conversation after this one, oldest first.
+     */
+    public List<Text> readTextsAfter(Conversation conversation, String eventId, int count) {
+        try {
+            this.cacheWriter.flush();
+            return attach(conversation, this.cacheDB.readTextEventsAfter(conversation.getConversationId(), eventId, count));
+        } catch (SQLException e) {
+            Log.d(TAG, "readTextsAfter failed for " + eventId + ": " + e.toString());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param eventId The image to page from, excluded, or null to start from the most recent image.
+     * @return At most count images of the conversation before this one, oldest first.
+     */
+    public List<Image> readImagesBefore(Conversation conversation, String eventId, int count) {
+        try {
+            this.cacheWriter.flush();
+            return attach(conversation, this.cacheDB.readImageEventsBefore(conversation.getConversationId(), eventId, count));
+        } catch (SQLException e) {
+            Log.d(TAG, "readImagesBefore failed for " + eventId + ": " + e.toString());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param eventId The image to page from, excluded, or null to start from the oldest image.
+     * @return At most count images of the conversation after this one, oldest first.
+     */
+    public List<Image> readImagesAfter(Conversation conversation, String eventId, int count) {
+        try {
+            this.cacheWriter.flush();
+            return attach(conversation, this.cacheDB.readImageEventsAfter(conversation.getConversationId(), eventId, count));
+        } catch (SQLException e) {
+            Log.d(TAG, "readImagesAfter failed for " + eventId + ": " + e.toString());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * An archived text was deleted: drop its payload.
+     */
+    public void deleteTextPayload(Conversation conversation, String eventId) {
+        this.cacheWriter.updateTextPayload(conversation.getConversationId(), eventId, null);
+    }
+
+    /**
+     * The texts of the conversation were replaced, drop the archived ones.
+     */
+    public void clearTexts(Conversation conversation) {
+        this.textsArchived.remove(conversation.getConversationId());
+        this.cacheWriter.clearTexts(conversation.getConversationId());
+    }
+
+    /**
+     * The images of the conversation were replaced, drop the archived ones.
+     */
+    public void clearImages(Conversation conversation) {
+        this.imagesArchived.remove(conversation.getConversationId());
+        this.cacheWriter.clearImages(conversation.getConversationId());
+    }
+
+    private static <T extends Text> List<T> attach(Conversation conversation, List<T> events) {
+        for (T event : events)
+            attach(conversation, event);
+        return events;
+    }
+
+    static <T extends Text> T attach(Conversation conversation, T event) {
+        if (event == null)
+            return null;
+        event.setConversation(conversation);
+        Member sender = conversation.getMember(event.getMember().getMemberId());
+        if (sender != null)
+            event.setMember(sender);
+        return event;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.ImageRepresentation;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.client.User;
+import com.nexmo.sdk.conversation.common.util.DateUtil;
+import com.nexmo.sdk.conversation.config.Defaults;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * Builds the SDK objects straight from the already parsed signal payloads.
+ *
+ * <p>The socket delivers every signal as a {@link JSONObject}, reading its fields directly avoids
+ * serializing each payload back to a string only to parse it again with Gson.
+ * Field names match the {@link com.google.gson.annotations.SerializedName} of the decoded objects.</p>
+ */
+final class EventDecoder {
+    // conversation, member and user ids repeat across events, decoded ids share one instance.
+    private static final IdInterner IDS = new IdInterner(Defaults.ID_INTERNER_CAPACITY);
+
+    private EventDecoder() {
+    }
+
+    static User decodeUser(JSONObject json) {
+        return new User(optId(json, "user_id"), optString(json, "name"));
+    }
+
+    static Member decodeMember(JSONObject json) {
+        return new Member(optId(json, "user_id"), optString(json, "name"), optId(json, "member_id"));
+    }
+
+    /**
+     * Decode the conversation info, without members or events.
+     */
+    static Conversation decodeConversation(JSONObject json, Date creationDate) {
+        return new Conversation(
+                optString(json, "name"),
+                optId(json, "id"),
+                optId(json, "member_id"),
+                creationDate,
+                optString(json, "sequence_number"));
+    }
+
+    /**
+     * Decode a text event: the id and timestamp are read from the event, the payload from its body.
+     */
+    static Text decodeText(JSONObject event, Member member) throws JSONException {
+        JSONObject body = event.getJSONObject("body");
+        return new Text(optString(body, "text"), event.getString("id"), decodeTimestamp(event, "timestamp"), member);
+    }
+
+    /**
+     * Decode the 'original', 'medium' and 'thumbnail' representations and attach them to the image.
+     *
+     * @throws JSONException if any of the representations is missing.
+     */
+    static void decodeRepresentations(JSONObject representations, Image image) throws JSONException {
+        image.addRepresentations(
+                decodeRepresentation(representations.getJSONObject("original"), ImageRepresentation.TYPE.ORIGINAL),
+                decodeRepresentation(representations.getJSONObject("medium"), ImageRepresentation.TYPE.MEDIUM),
+                decodeRepresentation(representations.getJSONObject("thumbnail"), ImageRepresentation.TYPE.THUMBNAIL));
+    }
+
+    static ImageRepresentation decodeRepresentation(JSONObject json, ImageRepresentation.TYPE type) {
+        return new ImageRepresentation(type, optString(json, "id"), optString(json, "url"), json.optLong("size"));
+    }
+
+    /**
+     * @return The ISO-8601 timestamp stored under this key, or null if it is missing or malformed.
+     */
+    static Date decodeTimestamp(JSONObject json, String key) {
+        String timestamp = optString(json, key);
+        if (timestamp == null)
+            return null;
+        try {
+            return DateUtil.formatIso8601DateString(timestamp);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The canonical instance of the conversation, member or user id stored under this key.
+     * @throws JSONException if the id is missing.
+     */
+    static String getId(JSONObject json, String key) throws JSONException {
+        return IDS.intern(json.getString(key));
+    }
+
+    /**
+     * @return The canonical instance of the id stored under this key, or null if it is missing.
+     */
+    static String optId(JSONObject json, String key) {
+        return IDS.intern(optString(json, key));
+    }
+
+    // like Gson, a missing or null field is decoded as null.
+    static String optString(JSONObject json, String key) {
+        return (json.isNull(key) ? null : json.optString(key));
+    }
+
+}
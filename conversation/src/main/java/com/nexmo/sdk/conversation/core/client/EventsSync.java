@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import android.util.Log;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.event.ConversationListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Incremental sync of the text and image events of the joined conversations, used when the session is resumed.
+ *
+ * <p>Each conversation only fetches the events after its last known event id, and the result is merged
+ * into the existing conversation. At most a fixed number of conversations are synced at the same time,
+ * the next one starts as soon as one completes or fails.</p>
+ */
+class EventsSync {
+    private static final String TAG = EventsSync.class.getSimpleName();
+
+    /**
+     * Sends the request that fetches the events of a conversation after its last known one.
+     */
+    interface Fetcher {
+        /**
+         * @return The tid of the request sent, or null if none was sent: the listener has then been told why.
+         */
+        String fetch(String cid, ConversationListener listener);
+    }
+
+    // a sync in flight, completed once: a sync dropped on disconnection no longer counts when it completes.
+    private final class Sync implements ConversationListener {
+        final String cid;
+        volatile String tid;
+
+        Sync(String cid) {
+            this.cid = cid;
+        }
+
+        @Override
+        public void onConversationUpdated(Conversation conversation) {
+            completed(this);
+        }
+
+        @Override
+        public void onError(int errCode, String errMessage) {
+            Log.d(TAG, "sync of " + this.cid + " failed: " + errMessage);
+            completed(this);
+        }
+    }
+
+    private final Fetcher fetcher;
+    private final int concurrency;
+    private final Set<String> queued = new LinkedHashSet<>();
+    private final Set<Sync> inFlight = new HashSet<>();
+
+    EventsSync(Fetcher fetcher, int concurrency) {
+        this.fetcher = fetcher;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Queue the conversations for an incremental sync. A conversation that is already queued is not queued twice.
+     */
+    void sync(Collection<Conversation> conversations) {
+        synchronized(this) {
+            for (Conversation conversation : conversations)
+                this.queued.add(conversation.getConversationId());
+        }
+        next();
+    }
+
+    /**
+     * Drop the queued conversations. Syncs in progress complete normally.
+     */
+    synchronized void clear() {
+        this.queued.clear();
+    }
+
+    /**
+     * Drop the queued conversations and forget the syncs in progress, when the session that would answer them is gone.
+     * Their completions are ignored from now on, so the syncs of the next session start right away.
+     *
+     * @return The tids of the requests of the dropped syncs, to stop waiting for their answers.
+     */
+    synchronized List<String> reset() {
+        List<String> tids = new ArrayList<>(this.inFlight.size());
+        for (Sync sync : this.inFlight)
+            if (sync.tid != null)
+                tids.add(sync.tid);
+        this.queued.clear();
+        this.inFlight.clear();
+        return tids;
+    }
+
+    /**
+     * @return The number of syncs in progress.
+     */
+    synchronized int inFlight() {
+        return this.inFlight.size();
+    }
+
+    private void completed(Sync sync) {
+        synchronized(this) {
+            if (!this.inFlight.remove(sync))
+                return;
+        }
+        next();
+    }
+
+    private void next() {
+        List<Sync> next = new ArrayList<>();
+        synchronized(this) {
+            Iterator<String> iterator = this.queued.iterator();
+            while (this.inFlight.size() < this.concurrency && iterator.hasNext()) {
+                Sync sync = new Sync(iterator.next());
+                iterator.remove();
+                this.inFlight.add(sync);
+                next.add(sync);
+            }
+        }
+
+        // emit outside of the lock, the completion may be dispatched on this thread.
+        for (Sync sync : next)
+            sync.tid = this.fetcher.fetch(sync.cid, sync);
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded table of canonical id instances, so the same conversation, member or user id decoded
+ * from many events is kept once in memory.
+ *
+ * <p>When the table is full it is emptied and filled again with the ids in use, instead of tracking recency:
+ * ids that are still referenced stay valid, they are only no longer shared with the ids decoded afterwards.</p>
+ */
+class IdInterner {
+    private final int capacity;
+    private final ConcurrentHashMap<String, String> ids = new ConcurrentHashMap<>();
+
+    IdInterner(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @return The canonical instance equal to this id, or null if the id is null.
+     */
+    String intern(String id) {
+        if (id == null)
+            return null;
+
+        String known = this.ids.get(id);
+        if (known != null)
+            return known;
+
+        if (this.ids.size() >= this.capacity)
+            this.ids.clear();
+        known = this.ids.putIfAbsent(id, id);
+        return (known != null ? known : id);
+    }
+
+    int size() {
+        return this.ids.size();
+    }
+
+}
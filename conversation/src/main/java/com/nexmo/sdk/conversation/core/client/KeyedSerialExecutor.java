@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a pool of worker threads, serially per key.
+ *
+ * <p>Tasks that share a key run one after the other, in submission order; tasks with different keys run in parallel.
+ * Each key only holds a worker for one task at a time, so a busy key cannot starve the others.
+ * The worker threads are started by the first task, and stop on {@link KeyedSerialExecutor#shutdown()}.</p>
+ */
+class KeyedSerialExecutor {
+    private static final String TAG = KeyedSerialExecutor.class.getSimpleName();
+
+    private final int threads;
+    private final AtomicInteger count = new AtomicInteger();
+    // the current pool, created by the first task after a shutdown. Guarded by the queues.
+    private ExecutorService workers;
+    // the pool stops once the queued tasks have run, unless new tasks are executed meanwhile. Guarded by the queues.
+    private boolean stopping;
+    // pending tasks of the keys that currently have a task running.
+    private final Map<String, ArrayDeque<Runnable>> queues = new HashMap<>();
+
+    KeyedSerialExecutor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Stop the worker threads once the tasks executed so far have run. A task executed afterwards starts new ones.
+     */
+    void shutdown() {
+        synchronized(this.queues) {
+            this.stopping = true;
+            stopIfIdle();
+        }
+    }
+
+    // holding the queues.
+    private void stopIfIdle() {
+        if (this.stopping && this.queues.isEmpty()) {
+            if (this.workers != null)
+                this.workers.shutdown();
+            this.workers = null;
+            this.stopping = false;
+        }
+    }
+
+    void execute(final String key, Runnable task) {
+        synchronized(this.queues) {
+            this.stopping = false;
+            ArrayDeque<Runnable> queue = this.queues.get(key);
+            if (queue != null) {
+                // a task with this key is running, it will schedule this one.
+                queue.add(task);
+                return;
+            }
+            this.queues.put(key, new ArrayDeque<Runnable>());
+        }
+        submit(key, task);
+    }
+
+    private void submit(final String key, final Runnable task) {
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.d(TAG, "task failed for " + key + ": " + e.toString());
+                } finally {
+                    scheduleNext(key);
+                }
+            }
+        };
+        synchronized(this.queues) {
+            if (this.workers == null)
+                this.workers = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, TAG + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            this.workers.execute(worker);
+        }
+    }
+
+    private void scheduleNext(String key) {
+        Runnable next;
+        synchronized(this.queues) {
+            ArrayDeque<Runnable> queue = this.queues.get(key);
+            next = (queue != null ? queue.poll() : null);
+            if (next == null) {
+                this.queues.remove(key);
+                stopIfIdle();
+                return;
+            }
+        }
+        submit(key, next);
+    }
+
+}
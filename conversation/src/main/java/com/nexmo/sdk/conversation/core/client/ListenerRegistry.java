@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The listeners of one type of event, per conversation id.
+ *
+ * <p>Registering or removing a listener publishes a new immutable list, so events are dispatched
+ * to a snapshot without a lock, while listeners are added or removed from other threads.
+ * Snapshots are random access lists: dispatching by index allocates nothing.
+ * A conversation is forgotten as soon as its last listener is removed.</p>
+ *
+ * <p>A listener can be held by a weak reference, so that an Activity which never removes its listeners
+ * can still be collected. Its collected listeners are pruned when its events are dispatched.</p>
+ */
+class ListenerRegistry<L> {
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    synchronized void add(String cid, L listener, boolean weak) {
+        if (cid == null || listener == null)
+            return;
+
+        Entry current = this.entries.get(cid);
+        List<Object> references = new ArrayList<>(current != null ? current.references.size() + 1 : 1);
+        if (current != null)
+            references.addAll(current.references);
+        references.add(weak ? new WeakReference<>(listener) : listener);
+        this.entries.put(cid, new Entry(references));
+    }
+
+    /**
+     * Remove the first registration of this listener, and the collected ones.
+     */
+    synchronized void remove(String cid, L listener) {
+        Entry current = (cid != null ? this.entries.get(cid) : null);
+        if (current == null)
+            return;
+
+        List<Object> references = new ArrayList<>(current.references.size());
+        boolean removed = false;
+        for (Object reference : current.references) {
+            L registered = dereference(reference);
+            if (registered == null)
+                continue;
+            if (!removed && registered.equals(listener))
+                removed = true;
+            else
+                references.add(reference);
+        }
+        publish(cid, references);
+    }
+
+    /**
+     * @return The listeners of this conversation, in registration order.
+     *         The list is immutable and does not see later registrations.
+     */
+    @SuppressWarnings("unchecked")
+    List<L> get(String cid) {
+        Entry current = (cid != null ? this.entries.get(cid) : null);
+        if (current == null)
+            return Collections.emptyList();
+        if (!current.weak)
+            return (List<L>) (List<?>) current.references;
+
+        List<L> listeners = new ArrayList<>(current.references.size());
+        for (Object reference : current.references) {
+            L listener = dereference(reference);
+            if (listener != null)
+                listeners.add(listener);
+        }
+        if (listeners.size() < current.references.size())
+            prune(cid, current);
+        return Collections.unmodifiableList(listeners);
+    }
+
+    /**
+     * @return The number of conversations with at least one listener.
+     */
+    int size() {
+        return this.entries.size();
+    }
+
+    synchronized void clear() {
+        this.entries.clear();
+    }
+
+    private synchronized void prune(String cid, Entry pruned) {
+        // a listener was registered or removed meanwhile, it pruned the collected ones as well.
+        if (this.entries.get(cid) != pruned)
+            return;
+
+        List<Object> references = new ArrayList<>(pruned.references.size());
+        for (Object reference : pruned.references)
+            if (dereference(reference) != null)
+                references.add(reference);
+        publish(cid, references);
+    }
+
+    private void publish(String cid, List<Object> references) {
+        if (references.isEmpty())
+            this.entries.remove(cid);
+        else
+            this.entries.put(cid, new Entry(references));
+    }
+
+    @SuppressWarnings("unchecked")
+    private L dereference(Object reference) {
+        return (reference instanceof WeakReference ? ((WeakReference<L>) reference).get() : (L) reference);
+    }
+
+    private static final class Entry {
+        // listeners, or weak references to them, in registration order.
+        final List<Object> references;
+        // true if some of the references are weak, the list has to be dereferenced on dispatch.
+        final boolean weak;
+
+        Entry(List<Object> references) {
+            this.references = Collections.unmodifiableList(references);
+            boolean weak = false;
+            for (Object reference : references)
+                weak |= (reference instanceof WeakReference);
+            this.weak = weak;
+        }
+    }
+
+}
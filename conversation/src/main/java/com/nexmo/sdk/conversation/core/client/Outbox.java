@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import android.database.SQLException;
+import android.util.Log;
+
+import com.nexmo.sdk.conversation.core.client.request.SendMessageRequest;
+import com.nexmo.sdk.conversation.core.persistence.CacheDB;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outgoing text and image events, kept until the Conversation service acknowledges them.
+ *
+ * <p>Events are queued in the order they were sent and drained through a window of in-flight events,
+ * so a burst of messages does not wait for one round trip per message.
+ * When the connection drops, the in-flight events go back to the head of the queue, in order, and are sent again
+ * with the same tid once the session is back. The Conversation service is not known to deduplicate events by tid:
+ * an event that reached it just before the connection dropped is posted twice, rather than lost.
+ * An event that is not acknowledged in time on a live connection has most likely reached it, so it is not sent again,
+ * it is completed as failed. Acknowledgements for a tid that is no longer known are ignored.</p>
+ *
+ * <p>Every queued event is persisted in {@link CacheDB} along with the user who sent it, so it survives a process restart
+ * and is only restored in a session of that user.
+ * The event is written through the {@link CacheWriter} queue, so queueing it does not wait for the database;
+ * the writes are applied in the order the events are queued and completed.</p>
+ */
+class Outbox {
+    private static final String TAG = Outbox.class.getSimpleName();
+
+    private final CacheDB cacheDB;
+    private final CacheWriter cacheWriter;
+    private final int window;
+    private LinkedHashMap<String, SendMessageRequest> queued = new LinkedHashMap<>();
+    private final LinkedHashMap<String, SendMessageRequest> inFlight = new LinkedHashMap<>();
+    private boolean restored;
+    // the user of the session the events are sent in, null until the first session starts.
+    private String userId;
+
+    /**
+     * @param cacheDB     The persistent storage, or null to keep the outbox in memory only.
+     * @param cacheWriter The write queue of the persistent storage, or null to keep the outbox in memory only.
+     * @param window      The maximum number of events waiting for an acknowledgement.
+     */
+    Outbox(CacheDB cacheDB, CacheWriter cacheWriter, int window) {
+        this.cacheDB = cacheDB;
+        this.cacheWriter = cacheWriter;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * A session of a user starts: load their events that were not acknowledged before the process was restarted.
+     * Only the first call for a user reads the storage. The events of another user are dropped from memory,
+     * they stay persisted for the next session of that user.
+     *
+     * @return The restored events, which need their listeners and representations set up again.
+     */
+    List<SendMessageRequest> restore(final String userId) {
+        List<SendMessageRequest> restoredRequests = new ArrayList<>();
+        synchronized(this) {
+            if (this.restored && userId.equals(this.userId))
+                return restoredRequests;
+
+            if (this.userId == null) {
+                // the events queued before the first session are persisted for this user.
+                if (this.cacheWriter != null) {
+                    for (SendMessageRequest request : this.inFlight.values())
+                        this.cacheWriter.saveOutboxEntry(request, userId);
+                    for (SendMessageRequest request : this.queued.values())
+                        this.cacheWriter.saveOutboxEntry(request, userId);
+                }
+            } else if (!userId.equals(this.userId)) {
+                this.inFlight.clear();
+                this.queued.clear();
+            }
+            this.userId = userId;
+            this.restored = true;
+            if (this.cacheDB == null)
+                return restoredRequests;
+        }
+
+        // read without holding the outbox, so queueing events does not wait for the storage meanwhile.
+        List<SendMessageRequest> persisted;
+        try {
+            // the entries queued for writing are read back too.
+            if (this.cacheWriter != null)
+                this.cacheWriter.flush();
+            persisted = this.cacheDB.readOutbox(userId);
+        } catch (SQLException e) {
+            Log.d(TAG, "restore failed: " + e.toString());
+            return restoredRequests;
+        }
+
+        synchronized(this) {
+            for (SendMessageRequest request : persisted)
+                if (!contains(request.tid))
+                    restoredRequests.add(request);
+
+            // events queued before the restore were sent later, keep them behind the restored ones.
+            if (!restoredRequests.isEmpty()) {
+                LinkedHashMap<String, SendMessageRequest> ordered = new LinkedHashMap<>();
+                for (SendMessageRequest request : restoredRequests)
+                    ordered.put(request.tid, request);
+                ordered.putAll(this.queued);
+                this.queued = ordered;
+            }
+        }
+        return restoredRequests;
+    }
+
+    /**
+     * Queue and persist an outgoing event. An event that is already queued is ignored.
+     */
+    synchronized void enqueue(SendMessageRequest request) {
+        if (contains(request.tid))
+            return;
+
+        this.queued.put(request.tid, request);
+        // before the first session, the event is persisted once its user is known.
+        if (this.cacheWriter != null && this.userId != null)
+            this.cacheWriter.saveOutboxEntry(request, this.userId);
+    }
+
+    /**
+     * Move as many queued events as the window allows to the in-flight state, and count their attempts.
+     *
+     * @return The events that should be emitted now, in order.
+     */
+    synchronized List<SendMessageRequest> nextWindow() {
+        List<SendMessageRequest> next = new ArrayList<>();
+        Iterator<Map.Entry<String, SendMessageRequest>> iterator = this.queued.entrySet().iterator();
+        while (this.inFlight.size() < this.window && iterator.hasNext()) {
+            SendMessageRequest request = iterator.next().getValue();
+            iterator.remove();
+            this.inFlight.put(request.tid, request);
+            request.attempts++;
+            next.add(request);
+        }
+        return next;
+    }
+
+    /**
+     * The event was acknowledged, or rejected, by the Conversation service.
+     *
+     * @return The completed event, or null if the tid is unknown or was already completed.
+     */
+    synchronized SendMessageRequest complete(String tid) {
+        SendMessageRequest request = this.inFlight.remove(tid);
+        if (request == null)
+            request = this.queued.remove(tid);
+        if (request != null && this.cacheWriter != null)
+            this.cacheWriter.deleteOutboxEntry(tid);
+        return request;
+    }
+
+    /**
+     * The connection was lost: in-flight events are queued again ahead of the others, they will be retried.
+     *
+     * @return The events that were in flight.
+     */
+    synchronized List<SendMessageRequest> requeueInFlight() {
+        List<SendMessageRequest> requeued = new ArrayList<>(this.inFlight.values());
+        if (requeued.isEmpty())
+            return requeued;
+
+        LinkedHashMap<String, SendMessageRequest> ordered = new LinkedHashMap<>(this.inFlight);
+        ordered.putAll(this.queued);
+        this.queued = ordered;
+        this.inFlight.clear();
+        return requeued;
+    }
+
+    synchronized SendMessageRequest get(String tid) {
+        SendMessageRequest request = this.inFlight.get(tid);
+        return (request != null ? request : this.queued.get(tid));
+    }
+
+    synchronized boolean contains(String tid) {
+        return this.inFlight.containsKey(tid) || this.queued.containsKey(tid);
+    }
+
+    synchronized int size() {
+        return this.inFlight.size() + this.queued.size();
+    }
+
+    /**
+     * The user of the session logged out: drop their events, in memory and persisted.
+     *
+     * @return The dropped events.
+     */
+    synchronized List<SendMessageRequest> discard() {
+        List<SendMessageRequest> dropped = new ArrayList<>(this.inFlight.values());
+        dropped.addAll(this.queued.values());
+        this.inFlight.clear();
+        this.queued.clear();
+        if (this.cacheWriter != null && this.userId != null)
+            this.cacheWriter.clearOutbox(this.userId);
+        this.userId = null;
+        this.restored = false;
+        return dropped;
+    }
+
+    /**
+     * Drop the in-memory events. The persisted ones are kept for the next session of their user.
+     */
+    synchronized void clear() {
+        this.inFlight.clear();
+        this.queued.clear();
+        this.restored = false;
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import android.util.Log;
+
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
+import com.nexmo.sdk.conversation.config.Defaults;
+import com.nexmo.sdk.conversation.core.client.request.Request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the requests that await for 'success' or 'error' signals, keyed by tid.
+ *
+ * <p>Requests are expired on a timing wheel: each slot holds the tids due in that tick, so one tick only
+ * visits the requests that may expire, regardless of how many are outstanding.
+ * The wheel only ticks while there are outstanding requests.</p>
+ *
+ * <p>All the registries tick on one shared daemon thread, so releasing a channel and creating a new one
+ * does not leave a thread behind.</p>
+ */
+class PendingRequests {
+    private static final String TAG = PendingRequests.class.getSimpleName();
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private final Map<String, Request> requests = new ConcurrentHashMap<>();
+    // what to do instead of failing the listener, for the requests that are completed elsewhere once they time out.
+    private final Map<String, Runnable> timeoutHandlers = new ConcurrentHashMap<>();
+    private final List<Set<String>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final long timeoutTicks;
+    private final long tickDuration;
+    private final CallbackDispatcher callbacks;
+    private ScheduledFuture<?> ticking;
+    private volatile long currentTick;
+
+    PendingRequests(CallbackDispatcher callbacks) {
+        this(callbacks, Defaults.REQUEST_TIMEOUT, Defaults.REQUEST_TIMEOUT_TICK);
+    }
+
+    PendingRequests(CallbackDispatcher callbacks, long timeout, long tickDuration) {
+        this.callbacks = callbacks;
+        this.tickDuration = tickDuration;
+        this.timeoutTicks = Math.max(1, (timeout + tickDuration - 1) / tickDuration);
+        for (int slot = 0; slot < WHEEL_SIZE; slot++)
+            this.wheel.add(Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+    }
+
+    /**
+     * Track a new request, in {@link Request.STATE#PENDING} state.
+     */
+    void add(Request request) {
+        request.state = Request.STATE.PENDING;
+        this.requests.put(request.tid, request);
+        schedule(request);
+        startTicking();
+    }
+
+    /**
+     * Track a new request, in {@link Request.STATE#PENDING} state, that is handled by a task of its own once it times out.
+     * Its listener is not failed then.
+     */
+    void add(Request request, Runnable onTimeout) {
+        this.timeoutHandlers.put(request.tid, onTimeout);
+        add(request);
+    }
+
+    /**
+     * The request was emitted, its timeout starts over from now.
+     */
+    void markSent(String tid) {
+        Request request = this.requests.get(tid);
+        if (request != null) {
+            unschedule(request);
+            request.state = Request.STATE.SENT;
+            schedule(request);
+        }
+    }
+
+    /**
+     * Look up an outstanding request without completing it.
+     *
+     * @return The request, or null if it is unknown, of another type, or already completed.
+     */
+    <T extends Request> T get(String tid, Class<T> type) {
+        Request request = this.requests.get(tid);
+        return (type.isInstance(request) ? type.cast(request) : null);
+    }
+
+    /**
+     * A 'success' signal was received for this tid.
+     *
+     * @return The acknowledged request, or null if it is unknown, of another type, or already completed.
+     */
+    <T extends Request> T acknowledge(String tid, Class<T> type) {
+        Request request = this.requests.get(tid);
+        if (!type.isInstance(request) || !this.requests.remove(tid, request))
+            return null;
+
+        unschedule(request);
+        this.timeoutHandlers.remove(tid);
+        request.state = Request.STATE.ACKED;
+        return type.cast(request);
+    }
+
+    /**
+     * Stop tracking a request that is completed elsewhere, without notifying its listener.
+     */
+    void remove(String tid) {
+        Request request = this.requests.remove(tid);
+        this.timeoutHandlers.remove(tid);
+        if (request != null)
+            unschedule(request);
+    }
+
+    /**
+     * An 'error' signal was received for this tid, fail the request listener.
+     */
+    void fail(String tid, String errMessage) {
+        complete(this.requests.remove(tid), Request.STATE.FAILED, ConversationGenericListener.GENERIC_ERR, errMessage);
+    }
+
+    /**
+     * Number of outstanding requests.
+     */
+    int size() {
+        return this.requests.size();
+    }
+
+    /**
+     * Number of outstanding requests of a certain type.
+     */
+    int count(Request.TYPE type) {
+        int count = 0;
+        for (Request request : this.requests.values())
+            if (request.type == type)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Number of outstanding requests in a certain state.
+     */
+    int count(Request.STATE state) {
+        int count = 0;
+        for (Request request : this.requests.values())
+            if (request.state == state)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Drop all outstanding requests without notifying their listeners.
+     */
+    void clear() {
+        this.requests.clear();
+        this.timeoutHandlers.clear();
+        for (Set<String> slot : this.wheel)
+            slot.clear();
+        stopTicking();
+    }
+
+    private void complete(Request request, Request.STATE state, final int errCode, final String errMessage) {
+        if (request == null)
+            return;
+
+        unschedule(request);
+        this.timeoutHandlers.remove(request.tid);
+        request.state = state;
+        final ConversationGenericListener listener = request.getListener();
+        if (listener != null)
+            this.callbacks.dispatch(request.cid, new Runnable() {
+                @Override
+                public void run() {
+                    listener.onError(errCode, errMessage);
+                }
+            });
+    }
+
+    private void schedule(Request request) {
+        request.deadlineTick = this.currentTick + this.timeoutTicks;
+        this.wheel.get((int) (request.deadlineTick & WHEEL_MASK)).add(request.tid);
+    }
+
+    private void unschedule(Request request) {
+        this.wheel.get((int) (request.deadlineTick & WHEEL_MASK)).remove(request.tid);
+    }
+
+    private synchronized void startTicking() {
+        if (this.ticking == null)
+            this.ticking = Ticker.TIMER.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    tick();
+                }
+            }, this.tickDuration, this.tickDuration, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopTicking() {
+        if (this.ticking != null) {
+            this.ticking.cancel(false);
+            this.ticking = null;
+        }
+    }
+
+    // a failing handler must not cancel the ticks.
+    private static void runTimeoutHandler(Runnable onTimeout, String tid) {
+        try {
+            onTimeout.run();
+        } catch (RuntimeException e) {
+            Log.d(TAG, "Timeout handler failed for " + tid + ": " + e.toString());
+        }
+    }
+
+    // created on the first tick, shared by every registry.
+    private static final class Ticker {
+        static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private void tick() {
+        long tick = ++this.currentTick;
+        Set<String> slot = this.wheel.get((int) (tick & WHEEL_MASK));
+        for (String tid : slot) {
+            Request request = this.requests.get(tid);
+            if (request == null)
+                slot.remove(tid);
+            else if (request.deadlineTick <= tick && this.requests.remove(tid, request)) {
+                Log.d(TAG, "Request timed out: " + request.type + " " + tid);
+                Runnable onTimeout = this.timeoutHandlers.remove(tid);
+                if (onTimeout != null) {
+                    unschedule(request);
+                    request.state = Request.STATE.TIMED_OUT;
+                    runTimeoutHandler(onTimeout, tid);
+                }
+                else
+                    complete(request, Request.STATE.TIMED_OUT, ConversationGenericListener.REQUEST_TIMEOUT, "Request timed out");
+            }
+            // else due in a later round of the wheel.
+        }
+
+        synchronized(this) {
+            if (this.requests.isEmpty())
+                stopTicking();
+        }
+    }
+
+}
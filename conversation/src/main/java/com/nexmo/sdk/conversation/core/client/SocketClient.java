@@ -8,13 +8,10 @@ package com.nexmo.sdk.conversation.core.client;
 import android.text.TextUtils;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import com.nexmo.sdk.conversation.client.Conversation;
 import com.nexmo.sdk.conversation.client.ConversationClient;
 import com.nexmo.sdk.conversation.client.Image;
-import com.nexmo.sdk.conversation.client.ImageRepresentation;
 import com.nexmo.sdk.conversation.client.SeenReceipt;
 import com.nexmo.sdk.conversation.client.event.network.NetworkingStateListener;
 import com.nexmo.sdk.conversation.client.Member;
@@ -24,6 +21,7 @@ import com.nexmo.sdk.conversation.client.event.CompletionListeners.LoginListener
 import com.nexmo.sdk.conversation.client.event.SignalingChannelListener;
 import com.nexmo.sdk.conversation.common.util.DateUtil;
 import com.nexmo.sdk.conversation.config.Config;
+import com.nexmo.sdk.conversation.config.Defaults;
 import com.nexmo.sdk.conversation.core.client.request.CreateRequest;
 import com.nexmo.sdk.conversation.core.client.request.DeleteEventRequest;
 import com.nexmo.sdk.conversation.core.client.request.GetConversationRequest;
@@ -46,7 +44,9 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import io.socket.client.IO;
@@ -141,8 +141,6 @@ class SocketClient {
     static final String PUSH_REGISTER_ERROR = "push:register:error";
     static final String PUSH_UNREGISTER_ERROR = "push:unregister:error";
 
-    private static GsonBuilder gsonBuilder = new GsonBuilder().excludeFieldsWithoutExposeAnnotation();
-    private static final Gson gson = gsonBuilder.create();
     /**
      * There is one connect/login attempt in progress that blocks.
      **/
@@ -151,7 +149,11 @@ class SocketClient {
     private ConversationClient conversationClient;
     private SignalingChannelListener signalingChannelListener;
 
-    User self;
+    // processes the conversation signals off the socket thread, in order per conversation.
+    private final KeyedSerialExecutor eventExecutor = new KeyedSerialExecutor(Defaults.EVENT_WORKER_THREADS);
+
+    // set on login, cleared on disconnect by the socket thread: the workers read it once per signal.
+    volatile User self;
     List<Conversation> conversationList = Collections.synchronizedList(new ArrayList<Conversation>());
 
     SocketClient() {
@@ -169,7 +171,13 @@ class SocketClient {
        IO.Options options = new IO.Options();
        options.forceNew = true;
        options.path = "/rtc/";
-       options.reconnection = false;
+       // reconnect with an exponential backoff, randomized so that many clients do not reconnect at once.
+       // the session is resumed on EVENT_CONNECT by logging in again with the cached token.
+       options.reconnection = conversationClient.isReconnectEnabled();
+       options.reconnectionAttempts = conversationClient.getReconnectAttempts();
+       options.reconnectionDelay = conversationClient.getReconnectDelay();
+       options.reconnectionDelayMax = conversationClient.getReconnectDelayMax();
+       options.randomizationFactor = conversationClient.getReconnectJitter();
        this.conversationClient = conversationClient;
 
         Log.d(TAG, "Connect to " + connectionUrl);
@@ -185,8 +193,126 @@ class SocketClient {
        this.socket.on(Socket.EVENT_RECONNECT_ERROR, onReconnectError);
        this.socket.on(Socket.EVENT_RECONNECT_FAILED, onReconnectFailed);
        this.socket.on(Socket.EVENT_RECONNECT_ATTEMPT, onReconnectAttempt);
+
+       listenForAcknowledgements();
    }
 
+    /**
+     * Register one permanent listener per success/error signal.
+     * Every reply carries the 'rid' of the request it answers, which is the tid the request was emitted with,
+     * so the pending request is found by id instead of relying on per-request socket.once() handlers.
+     */
+    private void listenForAcknowledgements() {
+        this.socket.on(LOGIN_SUCCESS, onLogin);
+        this.socket.on(LOGOUT_SUCCESS, onLogout);
+        this.socket.on(INVALID_TOKEN, onInvalidToken);
+        this.socket.on(EXPIRED_TOKEN, onExpiredToken);
+        this.socket.on(SESSION_INVALID, onInvalidSession);
+        this.socket.on(SESSION_TERMINATED, onSessionTerminated);
+        this.socket.on(SESSION_ERROR, onSessionError);
+        this.socket.on(MESSAGE_ERROR, onMessageError);
+
+        this.socket.on(PUSH_REGISTER_SUCCESS, onPushRegistered);
+        this.socket.on(PUSH_REGISTER_ERROR, onPushRegisterErr);
+        this.socket.on(PUSH_UNREGISTER_SUCCESS, onPushUnregistered);
+        this.socket.on(PUSH_UNREGISTER_ERROR, onPushUnregisterErr);
+        this.socket.on(PUSH_SUBSCRIBE_SUCCESS, onPushSubscribed);
+        this.socket.on(PUSH_UNSUBSCRIBE_SUCCESS, onPushUnsubscribed);
+
+        this.socket.on(CONVERSATION_NEW_SUCCESS, onWorker(onNewConversation));
+        this.socket.on(CONVERSATION_JOIN_SUCCESS, onWorker(onJoinConversation));
+        this.socket.on(CONVERSATION_LEAVE_SUCCESS, onWorker(onKickedSuccess));
+        this.socket.on(INVITE_SUCCESS, onWorker(onInvite));
+        this.socket.on(CONVERSATION_GET_SUCCESS, onWorker(onConversation));
+        this.socket.on(CONVERSATIONS_GET_SUCCESS, onWorker(onConversations));
+        this.socket.on(CONVERSATION_GET_MESSAGES_SUCCESS, onWorker(onConversationMessages));
+
+        this.socket.on(TEXT_MESSAGE_SUCCESS, onWorker(onTextSent));
+        this.socket.on(IMAGE_MESSAGE_SUCCESS, onWorker(onImageSent));
+        this.socket.on(EVENT_DELETE_SUCCESS, onWorker(onTextDeletedSuccess));
+        this.socket.on(TEXT_SEEN_SUCCESS, onWorker(onSeenSuccess));
+        this.socket.on(IMAGE_SEEN_SUCCESS, onWorker(onSeenSuccess));
+        this.socket.on(TEXT_TYPE_ON_SUCCESS, onWorker(onTypeOnSuccess));
+        this.socket.on(TEXT_TYPE_OFF_SUCCESS, onWorker(onTypeOffSuccess));
+
+        //request errors are routed back to the pending request by rid.
+        this.socket.on(CONVERSATION_ERROR, onWorker(onConversationError));
+        this.socket.on(CONVERSATION_NEW_ERROR, onWorker(onNewConversationError));
+        this.socket.on(EVENT_ERROR, onWorker(onEventError));
+    }
+
+    /**
+     * Listen for the incoming member, text, image and typing events once logged in.
+     * Logging in again after a reconnect must not register the same listener twice.
+     */
+    private void listenForIncomingEvents() {
+        listenOnce(CONVERSATION_MEMBER_JOINED, onMemberJoined);
+        listenOnce(MEMBER_LEFT, onMemberLeft);
+        listenOnce(MEMBER_INVITED, onMemberInvited);
+
+        listenOnce(EVENT_DELETE, onTextDeleted);
+        listenOnce(TEXT_MESSAGE, onText);
+        listenOnce(TEXT_SEEN, onTextSeen);
+
+        listenOnce(IMAGE_MESSAGE, onImage);
+        listenOnce(IMAGE_SEEN, onImageSeen);
+
+        listenOnce(TEXT_TYPE_ON, onTypeOn);
+        listenOnce(TEXT_TYPE_OFF, onTypeOff);
+    }
+
+    private void listenOnce(String event, Emitter.Listener listener) {
+        this.socket.off(event);
+        this.socket.on(event, onWorker(listener));
+    }
+
+    /**
+     * Process a signal off the socket thread, so a slow listener does not hold back the other conversations.
+     * Signals of the same conversation are processed in order: incoming events by their 'cid',
+     * acknowledgements and errors by the conversation of the request they answer.
+     */
+    private Emitter.Listener onWorker(final Emitter.Listener listener) {
+        return new Emitter.Listener() {
+            @Override
+            public void call(final Object... args) {
+                eventExecutor.execute(conversationKey(args), new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.call(args);
+                    }
+                });
+            }
+        };
+    }
+
+    // the session was lost before the answer to this request was processed.
+    private void failLoggedOut(String rid) {
+        Log.d(TAG, "No user is logged in to process " + rid);
+        this.signalingChannelListener.onRequestError(rid, "No user is logged in");
+    }
+
+    /**
+     * Run a task on the worker lane of a key, in order with the other tasks and signals of that lane.
+     */
+    void execute(String key, Runnable task) {
+        this.eventExecutor.execute(key, task);
+    }
+
+    private String conversationKey(Object... args) {
+        if (args.length > 0 && args[0] instanceof JSONObject) {
+            JSONObject data = (JSONObject) args[0];
+            if (data.has("cid"))
+                return data.optString("cid");
+            if (data.has("rid") && this.signalingChannelListener != null) {
+                String cid = this.signalingChannelListener.getRequestConversationId(data.optString("rid"));
+                if (cid != null)
+                    return cid;
+            }
+        }
+        // signals that are not bound to a conversation share one ordered lane.
+        return "";
+    }
+
      private void login() {
         JSONObject loginObj = new JSONObject();
         try {
@@ -204,13 +330,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.on(LOGIN_SUCCESS, onLogin);
-        this.socket.once(INVALID_TOKEN, onInvalidToken);
-        this.socket.once(EXPIRED_TOKEN, onExpiredToken);
-        this.socket.once(SESSION_INVALID, onInvalidSession);
-        this.socket.once(SESSION_TERMINATED, onSessionTerminated);
-        this.socket.once(SESSION_ERROR, onSessionError);
-        this.socket.once(MESSAGE_ERROR, onMessageError);
         this.socket.emit(LOGIN_REQUEST, loginObj);
     }
 
@@ -227,8 +346,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.on(PUSH_REGISTER_SUCCESS, onPushRegistered);
-        this.socket.on(PUSH_REGISTER_ERROR, onPushRegisterErr);
         this.socket.emit(PUSH_REGISTER, registerObj);
     }
 
@@ -245,8 +362,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(PUSH_UNREGISTER_SUCCESS, onPushUnregistered);
-        this.socket.once(PUSH_UNREGISTER_ERROR, onPushUnregisterErr);
         this.socket.emit(PUSH_UNREGISTER, unregisterObj);
     }
 
@@ -267,9 +382,6 @@ class SocketClient {
             this.socket.emit(PUSH_SUBSCRIBE, subscribeObj);
         else
             this.socket.emit(PUSH_UNSUBSCRIBE, subscribeObj);
-
-        this.socket.once(PUSH_SUBSCRIBE_SUCCESS, onPushSubscribed);
-        this.socket.once(PUSH_UNSUBSCRIBE_SUCCESS, onPushUnsubscribed);
     }
 
     void logout() {
@@ -281,7 +393,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(LOGOUT_SUCCESS, onLogout);
         this.socket.emit(LOGOUT_REQUEST, logoutObj);
     }
 
@@ -298,7 +409,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(CONVERSATION_NEW_SUCCESS, onNewConversation);
         this.socket.emit(CONVERSATION_NEW_REQUEST, convObj);
     }
 
@@ -318,7 +428,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(CONVERSATION_JOIN_SUCCESS, onJoinConversation);
         this.socket.emit(CONVERSATION_JOIN_REQUEST, convObj);
     }
 
@@ -336,7 +445,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(CONVERSATION_LEAVE_SUCCESS, onKickedSuccess);
         this.socket.emit(CONVERSATION_LEAVE, convObj);
     }
 
@@ -354,7 +462,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(INVITE_SUCCESS, onInvite);
         this.socket.emit(INVITE_REQUEST, inviteObject);
     }
 
@@ -369,7 +476,6 @@ class SocketClient {
         }
 
         Log.d("getConversation ", getObject.toString());
-        this.socket.once(CONVERSATION_GET_SUCCESS, onConversation);
         this.socket.emit(CONVERSATION_GET_REQUEST, getObject);
     }
 
@@ -382,7 +488,6 @@ class SocketClient {
         }
 
         Log.d("getConversations ", getObject.toString());
-        this.socket.once(CONVERSATIONS_GET_SUCCESS, onConversations);
         this.socket.emit(CONVERSATIONS_GET_REQUEST, getObject);
     }
 
@@ -402,13 +507,10 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        if (markSeenRequest.type.equals(Request.TYPE.MARK_TEXT_SEEN)) {
-            this.socket.once(TEXT_SEEN_SUCCESS, onSeenSuccess);
+        if (markSeenRequest.type.equals(Request.TYPE.MARK_TEXT_SEEN))
             this.socket.emit(TEXT_SEEN, convObj);
-        } else if(markSeenRequest.type.equals(Request.TYPE.MARK_IMAGE_SEEN)) {
-            this.socket.once(IMAGE_SEEN_SUCCESS, onSeenSuccess);
+        else if(markSeenRequest.type.equals(Request.TYPE.MARK_IMAGE_SEEN))
             this.socket.emit(IMAGE_SEEN, convObj);
-        }
     }
 
     void sendTypingIndicator(TypingIndicatorRequest typingIndicatorRequest) {
@@ -425,8 +527,6 @@ class SocketClient {
         } catch (JSONException e) {
             e.printStackTrace();
         }
-        this.socket.once(TEXT_TYPE_ON_SUCCESS, onTypeOnSuccess);
-        this.socket.once(TEXT_TYPE_OFF_SUCCESS, onTypeOffSuccess);
         this.socket.emit(typingIndicatorRequest.typingIndicator == Member.TYPING_INDICATOR.ON ? TEXT_TYPE_ON : TEXT_TYPE_OFF, typeObject);
     }
 
@@ -444,7 +544,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(EVENT_DELETE_SUCCESS, onTextDeletedSuccess);
         this.socket.emit(EVENT_DELETE, requestObj);
     }
 
@@ -463,7 +562,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(TEXT_MESSAGE_SUCCESS, onTextSent);
         this.socket.emit(TEXT_MESSAGE, textObject);
     }
 
@@ -483,7 +581,6 @@ class SocketClient {
             e.printStackTrace();
         }
 
-        this.socket.once(IMAGE_MESSAGE_SUCCESS, onImageSent);
         this.socket.emit(IMAGE_MESSAGE, imageObject);
     }
 
@@ -506,16 +603,18 @@ class SocketClient {
         }
 
         Log.d("SENDING get texts : ", getObject.toString());
-        this.socket.once(CONVERSATION_GET_MESSAGES_SUCCESS, onConversationMessages);
         this.socket.emit(CONVERSATION_GET_MESSAGES, getObject);
     }
 
     void release(){
-        if (this.socket != null && this.socket.connected()){
+        // disconnect even while reconnecting, so no reconnection is scheduled afterwards.
+        if (this.socket != null){
             this.socket.disconnect();
             this.socket.off();
             updateConnectStatus(NetworkingStateListener.NETWORK_STATE.DISCONNECTED);
         }
+        // the worker threads end once the signals received so far are handled, the next session starts new ones.
+        this.eventExecutor.shutdown();
     }
 
     private void updateConnectStatus(NetworkingStateListener.NETWORK_STATE status){
@@ -542,7 +641,7 @@ class SocketClient {
             Log.d("onLogin ", data.toString());
             try {
                 JSONObject body = data.getJSONObject("body");
-                self = gson.fromJson(body.toString(), User.class);
+                self = EventDecoder.decodeUser(body);
                 Log.d(TAG, "USER: " + self.toString());
 
                 LoginListener loginListener = conversationClient.getLoginListener();
@@ -554,34 +653,11 @@ class SocketClient {
             } catch (JSONException e) {
                 Log.d(TAG, "onLogin exception: " + e.toString());
             }
-            //listen for new members once joined.
-            socket.on(CONVERSATION_MEMBER_JOINED, onMemberJoined);
-
-            //listen for kicks
-            socket.on(MEMBER_LEFT, onMemberLeft);
-
-            //listen for invites
-            socket.on(MEMBER_INVITED, onMemberInvited);
-
-            //listen for text messages once joined.
-            socket.on(EVENT_DELETE, onTextDeleted);
-            socket.on(TEXT_MESSAGE, onText);
-
-            //listen for text seen events.
-            socket.on(TEXT_SEEN, onTextSeen);
-
-            //listen for image events
-            socket.on(IMAGE_MESSAGE, onImage);
-            socket.on(IMAGE_SEEN, onImageSeen);
+            listenForIncomingEvents();
 
-            //listen to typing
-            socket.on(TEXT_TYPE_ON, onTypeOn);
-            socket.on(TEXT_TYPE_OFF, onTypeOff);
-
-            //listen for generic conversation errors.
-            socket.on(CONVERSATION_ERROR, onConversationError);
-            socket.on(CONVERSATION_NEW_ERROR, onNewConversationError);
-            socket.on(EVENT_ERROR, onEventError);
+            //the session is ready, send what was queued while logged out.
+            if (self != null)
+                signalingChannelListener.onLoggedIn(self);
         }
     };
 
@@ -592,6 +668,8 @@ class SocketClient {
             Log.d("onLogout ", data.toString());
 
             conversationClient.setMyUser(null);
+            if (self != null)
+                signalingChannelListener.onLoggedOut(self);
             conversationClient.getLogoutListener().onLogout(new User(self));
             conversationClient.detachAllListeners();
             release();
@@ -672,8 +750,8 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onDeleted ", data.toString());
             try {
-                String from = data.getString("from");
-                String cid = data.getString("cid");
+                String from = EventDecoder.getId(data, "from");
+                String cid = EventDecoder.getId(data, "cid");
                 Date timestamp = null;
                 try {
                     timestamp = DateUtil.formatIso8601DateString(data.getString("timestamp"));
@@ -694,18 +772,10 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onText ", data.toString());
             try {
-                String cid = data.getString("cid");
+                String cid = EventDecoder.getId(data, "cid");
 
-                JSONObject body = data.getJSONObject("body");
-                Text incomingMessage = gson.fromJson(body.toString(), Text.class);
-                Date timestamp = null;
-                try {
-                    timestamp = DateUtil.formatIso8601DateString(data.getString("timestamp"));
-                } catch (ParseException e) {
-                    e.printStackTrace();
-                }
-                String senderId = data.getString("from");
-                incomingMessage = new Text(incomingMessage.getPayload(), data.getString("id"), timestamp);
+                Text incomingMessage = EventDecoder.decodeText(data, null);
+                String senderId = EventDecoder.getId(data, "from");
                 signalingChannelListener.onTextReceived(cid, senderId, incomingMessage);
             } catch (JSONException e) {
             }
@@ -718,8 +788,8 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onImage ", data.toString());
             try {
-                String cid = data.getString("cid");
-                String senderId = data.getString("from");
+                String cid = EventDecoder.getId(data, "cid");
+                String senderId = EventDecoder.getId(data, "from");
                 String id = data.getString("id");
                 Date timestamp = null;
                 try {
@@ -728,28 +798,10 @@ class SocketClient {
                 }
 
                 JSONObject body = data.getJSONObject("body");
-                JSONObject representations = body.getJSONObject("representations");
-                JSONObject originalJson=null, mediumJson=null, thumbnailJson= null;
-                ImageRepresentation original=null, medium=null, thumbnail=null;
-
-                originalJson = representations.getJSONObject("original");
-                original = gson.fromJson(originalJson.toString(), ImageRepresentation.class);
-                original.type = ImageRepresentation.TYPE.ORIGINAL;
-                Log.d(TAG, original.toString());
-
-                mediumJson = representations.getJSONObject("medium");
-                medium = gson.fromJson(mediumJson.toString(), ImageRepresentation.class);
-                medium.type = ImageRepresentation.TYPE.MEDIUM;
-                Log.d(TAG, medium.toString());
-
-                thumbnailJson = representations.getJSONObject("thumbnail");
-                thumbnail = gson.fromJson(thumbnailJson.toString(), ImageRepresentation.class);
-                thumbnail.type = ImageRepresentation.TYPE.THUMBNAIL;
-                Log.d(TAG, thumbnail.toString());
 
                 // retrieve 3 Images, dev can download any of them.: Image.downloadBitmap()
                 Image incomingMessage = new Image(id, timestamp);
-                incomingMessage.addRepresentations(original, medium, thumbnail);
+                EventDecoder.decodeRepresentations(body.getJSONObject("representations"), incomingMessage);
 
                 Log.d(TAG, "onImageReceived " + cid);
                 signalingChannelListener.onImageReceived(cid, senderId, incomingMessage);
@@ -814,8 +866,8 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onTypeOn received ", data.toString());
             try {
-                String cid = data.getString("cid");
-                String memberId = data.getString("from");
+                String cid = EventDecoder.getId(data, "cid");
+                String memberId = EventDecoder.getId(data, "from");
 
                 signalingChannelListener.onTypingOnReceived(cid, memberId);
             } catch (JSONException e) {
@@ -830,8 +882,8 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onTypeOn received ", data.toString());
             try {
-                String cid = data.getString("cid");
-                String memberId = data.getString("from");
+                String cid = EventDecoder.getId(data, "cid");
+                String memberId = EventDecoder.getId(data, "from");
 
                 signalingChannelListener.onTypingOffReceived(cid, memberId);
             } catch (JSONException e) {
@@ -862,8 +914,8 @@ class SocketClient {
 
     private void parseSeenReceipt(JSONObject data, Request.TYPE eventType) {
         try {
-            String cid = data.getString("cid");
-            String memberId = data.getString("from");
+            String cid = EventDecoder.getId(data, "cid");
+            String memberId = EventDecoder.getId(data, "from");
             Date timestamp = null;
             try {
                 timestamp = DateUtil.formatIso8601DateString(data.getString("timestamp"));
@@ -912,14 +964,8 @@ class SocketClient {
                 String rid = data.getString("rid");
                 if (!TextUtils.isEmpty(rid)) {
                     JSONObject body = data.getJSONObject("body");
-                    Text incomingMessage = gson.fromJson(body.toString(), Text.class);
-                    Date timestamp = null;
-                    try {
-                        timestamp = DateUtil.formatIso8601DateString(body.getString("timestamp"));
-                    } catch (ParseException e) {
-                        e.printStackTrace();
-                    }
-                    signalingChannelListener.onTextSent(rid, incomingMessage.getId(), timestamp);
+                    Date timestamp = EventDecoder.decodeTimestamp(body, "timestamp");
+                    signalingChannelListener.onTextSent(rid, EventDecoder.optString(body, "id"), timestamp);
                 }
             } catch (JSONException e) {
                 e.printStackTrace();
@@ -954,8 +1000,9 @@ class SocketClient {
     private Emitter.Listener onNewConversationError = new Emitter.Listener() {
         @Override
         public void call(Object... args) {
-            Log.d(TAG, "onNewConversationError: error");
-            //todo trigger generic errors
+            JSONObject data = (JSONObject) args[0];
+            Log.d("onNewConversationError ", data.toString());
+            parseRequestError(data, CONVERSATION_NEW_ERROR);
         }
     };
 
@@ -983,8 +1030,8 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onInvitation received ", data.toString());
             try {
-                String cid = data.getString("cid");
-                String senderMemberId = data.getString("from");
+                String cid = EventDecoder.getId(data, "cid");
+                String senderMemberId = EventDecoder.getId(data, "from");
 
                 JSONObject body = data.getJSONObject("body");
                 String cName = body.getString("cname");
@@ -998,7 +1045,7 @@ class SocketClient {
                     e.printStackTrace();
                 }
                 JSONObject user = body.getJSONObject("user");
-                Member invitedMember = new Member(user.getString("user_id"), user.getString("user_name"), user.getString("member_id"), null, null, timestamp, Member.STATE.INVITED);
+                Member invitedMember = new Member(EventDecoder.getId(user, "user_id"), user.getString("user_name"), EventDecoder.getId(user, "member_id"), null, null, timestamp, Member.STATE.INVITED);
 
                 signalingChannelListener.onMemberInvited(cid, cName, invitedMember, senderMemberId, senderUsername);
             } catch (JSONException e) {
@@ -1013,8 +1060,8 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onMemberLeft ", data.toString());
             try {
-                String cid = data.getString("cid");
-                String memberId = data.getString("from");
+                String cid = EventDecoder.getId(data, "cid");
+                String memberId = EventDecoder.getId(data, "from");
 
                 JSONObject body = data.getJSONObject("body");
                 JSONObject timestamp = body.getJSONObject("timestamp");
@@ -1044,8 +1091,8 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onMemberJoined ", data.toString());
             try {
-                String from = data.getString("from");
-                String cid = data.getString("cid");
+                String from = EventDecoder.getId(data, "from");
+                String cid = EventDecoder.getId(data, "cid");
 
                 JSONObject body = data.getJSONObject("body");
                 JSONObject userObject = body.getJSONObject("user");
@@ -1071,6 +1118,7 @@ class SocketClient {
             //unknown conversation id
             JSONObject data = (JSONObject) args[0];
             Log.d("onConversationError ", data.toString());
+            parseRequestError(data, CONVERSATION_ERROR);
         }
     };
 
@@ -1082,28 +1130,30 @@ class SocketClient {
             try {
                 String rid = data.getString("rid");
                 if (!TextUtils.isEmpty(rid)) {
+                    final User self = SocketClient.this.self;
+                    if (self == null) {
+                        failLoggedOut(rid);
+                        return;
+                    }
                     JSONObject body = data.getJSONObject("body");
 
-                    Conversation conversation = gson.fromJson(body.toString(), Conversation.class);
-                    Date timestamp = null;
-                    try {
-                        timestamp = DateUtil.formatIso8601DateString(body.getJSONObject("timestamp").getString("created"));
-                    } catch (ParseException e) {
-                        e.printStackTrace();
-                    }
-                    conversation = new Conversation(conversation.getName(), conversation.getConversationId(), conversation.getMemberId(), timestamp, conversation.getLastEventId());
+                    Date timestamp = EventDecoder.decodeTimestamp(body.getJSONObject("timestamp"), "created");
+                    Conversation conversation = EventDecoder.decodeConversation(body, timestamp);
 
                     JSONArray membersArray = body.getJSONArray("members");
+                    // the members are set at once, adding them one at a time copies the list each time.
+                    List<Member> members = new ArrayList<>(membersArray.length());
                     for (int index=0 ; index < membersArray.length(); index++) {
                         JSONObject m = membersArray.getJSONObject(index);
-                        Member member = gson.fromJson(m.toString(), Member.class);
+                        Member member = EventDecoder.decodeMember(m);
                         member.setState(Member.state(m.getString("state")));
                         //todo the service will have to return the related date as well, and senderId for INVITED state.
-                        conversation.addMember(member);
+                        members.add(member);
                         //search for self.user_id among all the members
                         if (member.getUser_id().equals(self.getUserId()))
                             conversation.setSelf(member);
                     }
+                    conversation.setMembers(members);
                     signalingChannelListener.onConversation(rid, conversation);
                 }
             } catch (JSONException e) {
@@ -1116,10 +1166,12 @@ class SocketClient {
         @Override
         public void call(Object... args) {
             JSONObject data = (JSONObject) args[0];
-            Log.d("onConversationMessages ", data.toString());
             List<Text> messages = new ArrayList<>();
             List<Image> images = new ArrayList<>();
             List<SeenReceipt> seenReceipts = new ArrayList<>();
+            // one placeholder per sender, and the receipts of the page share the id instances of its events.
+            Map<String, Member> senders = new HashMap<>();
+            Map<String, String> eventIds = new HashMap<>();
 
             try {
                 String rid = data.getString("rid");
@@ -1127,10 +1179,11 @@ class SocketClient {
                     JSONArray messagesArray = data.getJSONArray("body");
                     for(int index = 0; index < messagesArray.length(); index++) {
                         JSONObject messageObject = messagesArray.getJSONObject(index);
+                        String type = messageObject.getString("type");
 
-                        if(messageObject.getString("type").equals("text")) {
-                            Log.d(TAG, "Text event " + messageObject);
+                        if(type.equals("text")) {
                             String textId = messageObject.getString("id");
+                            eventIds.put(textId, textId);
 
                             JSONObject body = messageObject.getJSONObject("body");
                             String payload = null;
@@ -1147,12 +1200,12 @@ class SocketClient {
 
                             if (timestampDeleted != null)
                                 Log.d(TAG, "history - text deleted at time: " + timestampDeleted.toString());
-                            Member member = new Member(messageObject.getString("from"));
+                            Member member = historySender(senders, messageObject);
                             Text message = new Text(payload, textId, timestamp, member);
                             messages.add(message);
-                        } else if(messageObject.getString("type").equals("image")) {
-                            Log.d(TAG, "Image event " + messageObject);
+                        } else if(type.equals("image")) {
                             String id = messageObject.getString("id");
+                            eventIds.put(id, id);
                             JSONObject body = messageObject.getJSONObject("body");
 
                             try {
@@ -1162,28 +1215,9 @@ class SocketClient {
                                 } catch (ParseException exc) {
                                 }
 
-                                JSONObject representations = body.getJSONObject("representations");
-                                JSONObject originalJson=null, mediumJson=null, thumbnailJson= null;
-                                ImageRepresentation original=null, medium=null, thumbnail=null;
-
-                                originalJson = representations.getJSONObject("original");
-                                original = gson.fromJson(originalJson.toString(), ImageRepresentation.class);
-                                original.type = ImageRepresentation.TYPE.ORIGINAL;
-                                Log.d(TAG, original.toString());
-
-                                mediumJson = representations.getJSONObject("medium");
-                                medium = gson.fromJson(mediumJson.toString(), ImageRepresentation.class);
-                                medium.type = ImageRepresentation.TYPE.MEDIUM;
-                                Log.d(TAG, medium.toString());
-
-                                thumbnailJson = representations.getJSONObject("thumbnail");
-                                thumbnail = gson.fromJson(thumbnailJson.toString(), ImageRepresentation.class);
-                                thumbnail.type = ImageRepresentation.TYPE.THUMBNAIL;
-                                Log.d(TAG, thumbnail.toString());
-
-                                Member member = new Member(messageObject.getString("from"));
+                                Member member = historySender(senders, messageObject);
                                 Image incomingMessage = new Image(null, id, timestamp, null, member);
-                                incomingMessage.addRepresentations(original, medium, thumbnail);
+                                EventDecoder.decodeRepresentations(body.getJSONObject("representations"), incomingMessage);
 
                                 images.add(incomingMessage);
                             } catch (JSONException e) {
@@ -1191,11 +1225,8 @@ class SocketClient {
                                 // or deleted images
                             }
                         }
-                        else if(messageObject.getString("type").equals("text:seen") ||
-                                messageObject.getString("type").equals("image:seen")) {
-                            Log.d(TAG, "Seen event " + messageObject);
-
-                            String senderId = messageObject.getString("from");
+                        else if(type.equals("text:seen") || type.equals("image:seen")) {
+                            String senderId = EventDecoder.getId(messageObject, "from");
                             Date timestamp = null;
                             try {
                                 timestamp = DateUtil.formatIso8601DateString(messageObject.getString("timestamp"));
@@ -1209,13 +1240,16 @@ class SocketClient {
                             else if (body.has("message_id"))
                                 eventId = body.getString("message_id");
 
+                            if (eventIds.containsKey(eventId))
+                                eventId = eventIds.get(eventId);
                             SeenReceipt seenReceipt = new SeenReceipt(eventId, senderId, timestamp);
                             seenReceipts.add(seenReceipt);
                         }
-                        else if(messageObject.getString("type").equals("event:delete"))
+                        else if(type.equals("event:delete"))
                             Log.d(TAG, "event:deleted " + messageObject);
                     }
-                    Log.d(TAG, "onMessages.conversation: " + messages.toString());
+                    Log.d(TAG, "onMessages.conversation: " + messages.size() + " texts, " + images.size() +
+                            " images, " + seenReceipts.size() + " seen receipts");
                     signalingChannelListener.onEventsHistory(rid, messages, images, seenReceipts);
                 }
             } catch (JSONException e) {
@@ -1224,6 +1258,17 @@ class SocketClient {
         }
     };
 
+    // the sender of a history event, shared by all the events of the page sent by the same member.
+    static Member historySender(Map<String, Member> senders, JSONObject event) throws JSONException {
+        String memberId = EventDecoder.getId(event, "from");
+        Member sender = senders.get(memberId);
+        if (sender == null) {
+            sender = new Member(memberId);
+            senders.put(memberId, sender);
+        }
+        return sender;
+    }
+
     private Emitter.Listener onInvite = new Emitter.Listener() {
         @Override
         public void call(Object... args) {
@@ -1248,6 +1293,11 @@ class SocketClient {
             try {
                 String rid = data.getString("rid");
                 if (!TextUtils.isEmpty(rid)) {
+                    final User self = SocketClient.this.self;
+                    if (self == null) {
+                        failLoggedOut(rid);
+                        return;
+                    }
                     JSONObject body = data.getJSONObject("body");
 
                     //ignore invalid signals from unknown users.
@@ -1308,19 +1358,25 @@ class SocketClient {
             JSONObject data = (JSONObject) args[0];
             Log.d("onConversations ", data.toString());
             try {
+                String rid = data.getString("rid");
+                final User self = SocketClient.this.self;
+                if (self == null) {
+                    failLoggedOut(rid);
+                    return;
+                }
                 JSONArray conversations = data.getJSONArray("body");
                 List<Conversation> conversationList = new ArrayList<>();
 
                 for (int index=0 ; index < conversations.length(); index++) {
                     JSONObject c = conversations.getJSONObject(index);
-                    Conversation conversation = gson.fromJson(c.toString(), Conversation.class);
+                    Conversation conversation = EventDecoder.decodeConversation(c, null);
                     Member member = new Member(self.getUserId(), self.getName(), conversation.getMemberId(), Member.state(c.getString("state")));
                     conversation.addMember(member);
                     conversation.setSelf(member);
                     Log.d("conversation: ", conversation.toString() + ".for member_id " + conversation.getSelf().toString());
                     conversationList.add(conversation);
                 }
-                signalingChannelListener.onConversations(conversationList);
+                signalingChannelListener.onConversations(rid, conversationList);
             } catch (JSONException e) {
 
                 e.printStackTrace();
@@ -1332,9 +1388,11 @@ class SocketClient {
     private Emitter.Listener onInvalidToken = new Emitter.Listener() {
         @Override
         public void call(Object... args) {
-            updateConnectStatus(NetworkingStateListener.NETWORK_STATE.DISCONNECTED);
+            // the cached token would be rejected again on every reconnection.
+            release();
 
-            conversationClient.getLoginListener().onTokenInvalid();
+            if (conversationClient.getLoginListener() != null)
+                conversationClient.getLoginListener().onTokenInvalid();
         }
     };
 
@@ -1376,9 +1434,11 @@ class SocketClient {
         @Override
         public void call(Object... args) {
             Log.d(SocketClient.TAG, "onExpiredToken: " + args.toString());
-            updateConnectStatus(NetworkingStateListener.NETWORK_STATE.DISCONNECTED);
+            // the cached token would be rejected again on every reconnection.
+            release();
 
-            conversationClient.getLoginListener().onTokenExpired();
+            if (conversationClient.getLoginListener() != null)
+                conversationClient.getLoginListener().onTokenExpired();
         }
     };
 
@@ -1387,9 +1447,26 @@ class SocketClient {
         public void call(Object... args) {
             JSONObject data = (JSONObject) args[0];
             Log.d("onEventError ", data.toString());
+            parseRequestError(data, EVENT_ERROR);
         }
     };
 
+    // error signals carry the 'rid' of the failed request, let the pending request fail its listener.
+    private void parseRequestError(JSONObject data, String errorEvent) {
+        String rid = data.optString("rid");
+        if (TextUtils.isEmpty(rid))
+            return;
+
+        String errMessage = errorEvent;
+        JSONObject body = data.optJSONObject("body");
+        if (body != null && body.has("description"))
+            errMessage = body.optString("description");
+        else if (data.has("type"))
+            errMessage = data.optString("type");
+
+        signalingChannelListener.onRequestError(rid, errMessage);
+    }
+
     private Emitter.Listener onMessageError = new Emitter.Listener() {
         @Override
         public void call(Object... args) {
@@ -1422,7 +1499,9 @@ class SocketClient {
         @Override
         public void call(Object... args) {
             Log.d(SocketClient.TAG, "onReconnect: " + args.toString());
-            updateConnectStatus(NetworkingStateListener.NETWORK_STATE.RECONNECT);
+            // EVENT_CONNECT may already have been received for this reconnection.
+            if (getConnectionStatus() != NetworkingStateListener.NETWORK_STATE.CONNECTED)
+                updateConnectStatus(NetworkingStateListener.NETWORK_STATE.RECONNECT);
 
             notifyConnectionListeners(NetworkingStateListener.NETWORK_STATE.RECONNECT);
         }
@@ -1482,11 +1561,12 @@ class SocketClient {
         public void call(Object... args) {
             Log.d(SocketClient.TAG, "on Disconnected");
             updateConnectStatus(NetworkingStateListener.NETWORK_STATE.DISCONNECTED);
-            conversationList.clear();
+            // keep the joined conversations, they are synced incrementally once the session is resumed.
 
             notifyConnectionListeners(NetworkingStateListener.NETWORK_STATE.DISCONNECTED);
             //remove user info
             self = null;
+            signalingChannelListener.onDisconnected();
         }
     };
 
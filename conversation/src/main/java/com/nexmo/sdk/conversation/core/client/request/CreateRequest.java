@@ -6,6 +6,7 @@
 package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.ConversationCreateListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  * Conversation create request.
@@ -23,4 +24,9 @@ public class CreateRequest extends Request {
         this.name = name;
         this.conversationCreateListener = listener;
     }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.conversationCreateListener;
+    }
 }
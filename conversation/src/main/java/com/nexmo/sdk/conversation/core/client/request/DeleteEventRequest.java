@@ -6,12 +6,12 @@
 package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.EventDeleteListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  *
  */
 public class DeleteEventRequest extends Request {
-    public String cid;
     public String messageId;
     public String memberId;
     public EventDeleteListener eventDeleteListener;
@@ -27,4 +27,9 @@ public class DeleteEventRequest extends Request {
         this.messageId = messageId;
         this.eventDeleteListener = listener;
     }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.eventDeleteListener;
+    }
 }
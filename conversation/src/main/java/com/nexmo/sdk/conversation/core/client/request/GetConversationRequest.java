@@ -5,15 +5,17 @@
  */
 package com.nexmo.sdk.conversation.core.client.request;
 
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 import com.nexmo.sdk.conversation.client.event.ConversationListener;
 
 /**
  * Get conversation details request.
  */
 public class GetConversationRequest extends Request{
-    public String cid;
     public String startId;
     public String endId;
+    // merge the events into the known ones, instead of replacing them.
+    public boolean incremental;
     public ConversationListener conversationListener;
 
     public GetConversationRequest(TYPE type, String tid) {
@@ -27,4 +29,9 @@ public class GetConversationRequest extends Request{
         this.endId = endId;
         this.conversationListener = conversationListener;
     }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.conversationListener;
+    }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client.request;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.event.CachedConversationListListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
+import com.nexmo.sdk.conversation.client.event.ConversationListListener;
+
+import java.util.List;
+
+/**
+ * Get conversation list request.
+ */
+public class GetConversationsRequest extends Request {
+    public ConversationListListener conversationListListener;
+    // reconcile a cached list instead: report its differences with the received one.
+    public List<Conversation> cached;
+    public CachedConversationListListener cachedListListener;
+
+    public GetConversationsRequest(TYPE type, String tid) {
+        super(type, tid);
+    }
+
+    public GetConversationsRequest(TYPE type, String tid, ConversationListListener listener) {
+        this(type, tid);
+        this.conversationListListener = listener;
+    }
+
+    public GetConversationsRequest(TYPE type, String tid, List<Conversation> cached, CachedConversationListListener listener) {
+        this(type, tid);
+        this.cached = cached;
+        this.cachedListListener = listener;
+    }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        return (this.cachedListListener != null ? this.cachedListListener : this.conversationListListener);
+    }
+}
@@ -6,12 +6,12 @@
 package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.InviteSendListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  * Invite request.
  */
 public class InviteRequest extends Request{
-    public String cid;
     public String user;
     public InviteSendListener inviteSendListener;
 
@@ -26,4 +26,8 @@ public class InviteRequest extends Request{
         this.inviteSendListener = inviteSendListener;
     }
 
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.inviteSendListener;
+    }
 }
@@ -6,12 +6,12 @@
 package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.JoinListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  * Join conversation request.
  */
 public class JoinRequest extends Request {
-    public String cid;
     public String cName;
     public String memberId;
     public JoinListener joinListener;
@@ -35,4 +35,9 @@ public class JoinRequest extends Request {
         this(type, tid, cid, cName, joinListener);
         this.memberId = memberId;
     }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.joinListener;
+    }
 }
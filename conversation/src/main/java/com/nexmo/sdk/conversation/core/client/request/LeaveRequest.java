@@ -6,12 +6,12 @@
 package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.LeaveListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  * Leave conversation request.
  */
 public class LeaveRequest extends Request {
-    public String cid;
     public String memberId;
     public LeaveListener leaveListener;
 
@@ -25,4 +25,9 @@ public class LeaveRequest extends Request {
         this.memberId = memberId;
         this.leaveListener = leaveListener;
     }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.leaveListener;
+    }
 }
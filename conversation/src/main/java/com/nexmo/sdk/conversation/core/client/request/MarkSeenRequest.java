@@ -6,12 +6,12 @@
 package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.MarkedAsSeenListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  * Mark as seen request,
  */
 public class MarkSeenRequest extends Request {
-    public String cid;
     public String memberId;
     public String eventId;
     public MarkedAsSeenListener listener;
@@ -28,4 +28,8 @@ public class MarkSeenRequest extends Request {
         this.listener = listener;
     }
 
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.listener;
+    }
 }
@@ -6,11 +6,11 @@
 package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.PushEnableListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  */
 public class PushSubscribeRequest extends Request{
-    public String cid;
     public PushEnableListener pushEnableListener;
 
     public PushSubscribeRequest(TYPE type, String tid) {
@@ -22,4 +22,9 @@ public class PushSubscribeRequest extends Request{
         this.cid = cid;
         this.pushEnableListener = pushEnableListener;
     }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.pushEnableListener;
+    }
 }
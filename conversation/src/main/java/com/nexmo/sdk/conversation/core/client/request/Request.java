@@ -5,6 +5,8 @@
  */
 package com.nexmo.sdk.conversation.core.client.request;
 
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
+
 /**
  * Base request class.
  */
@@ -16,6 +18,7 @@ public class Request {
         INVITE,
         LEAVE,
         GET,
+        GET_CONVERSATIONS,
         SEND_TEXT,
         SEND_IMAGE,
         DELETE_EVENT,
@@ -26,12 +29,37 @@ public class Request {
 
     }
 
+    /**
+     * Lifecycle of a request awaiting a 'success' or 'error' signal.
+     */
+    public enum STATE {
+        PENDING,
+        SENT,
+        ACKED,
+        FAILED,
+        TIMED_OUT
+    }
+
     public TYPE type;
     public String tid;
+    // the conversation this request belongs to, if any.
+    public String cid;
+    public volatile STATE state = STATE.PENDING;
+    // wheel tick at which this request expires.
+    public long deadlineTick;
 
     public Request(TYPE type, String tid) {
         this.type = type;
         this.tid = tid;
     }
 
+    /**
+     * The completion listener to be notified if the request fails or times out.
+     *
+     * @return The listener, or null if the request has none.
+     */
+    public ConversationGenericListener getListener() {
+        return null;
+    }
+
 }
@@ -11,7 +11,6 @@ import com.nexmo.sdk.conversation.client.event.CompletionListeners.ImageSendList
  * Send image request.
  */
 public class SendImageRequest  extends Request {
-    public String cid;
     public String message;
     public String filePath; // byte[] or multipart?
     public String memberId;
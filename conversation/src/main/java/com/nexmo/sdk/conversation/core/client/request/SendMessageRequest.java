@@ -8,12 +8,12 @@ package com.nexmo.sdk.conversation.core.client.request;
 import com.nexmo.sdk.conversation.client.ImageRepresentation;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.ImageSendListener;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.TextSendListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  * Send text request.
  */
 public class SendMessageRequest extends Request {
-    public String cid;
     public String message;
     public String memberId;
     public byte[] imageData;
@@ -21,6 +21,10 @@ public class SendMessageRequest extends Request {
     public ImageSendListener imageSendListener;
 
     public ImageRepresentation original,medium,thumbnail;
+    // the uploaded image representations, as sent to the Conversation service.
+    public String representations;
+    // the number of times the event was sent by this process.
+    public int attempts;
 
     public SendMessageRequest(TYPE type, String tid) {
         super(type, tid);
@@ -50,4 +54,11 @@ public class SendMessageRequest extends Request {
         this.imageData = imageData;
         this.imageSendListener = listener;
     }
+
+    @Override
+    public ConversationGenericListener getListener() {
+        if (this.type == TYPE.SEND_IMAGE)
+            return this.imageSendListener;
+        return this.textSendListener;
+    }
 }
@@ -7,12 +7,12 @@ package com.nexmo.sdk.conversation.core.client.request;
 
 import com.nexmo.sdk.conversation.client.Member;
 import com.nexmo.sdk.conversation.client.event.CompletionListeners.TypingSendListener;
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
 
 /**
  *
  */
 public class TypingIndicatorRequest extends Request {
-    public String cid;
     public String memberId;
     public Member.TYPING_INDICATOR typingIndicator;
     public TypingSendListener typingSendListener;
@@ -29,4 +29,8 @@ public class TypingIndicatorRequest extends Request {
         this.typingSendListener = listener;
     }
 
+    @Override
+    public ConversationGenericListener getListener() {
+        return this.typingSendListener;
+    }
 }
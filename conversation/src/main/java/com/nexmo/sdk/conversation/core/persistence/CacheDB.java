@@ -9,32 +9,63 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 import android.util.Log;
 
 import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.ImageRepresentation;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.SeenReceipt;
+import com.nexmo.sdk.conversation.client.Text;
 import com.nexmo.sdk.conversation.common.util.DateUtil;
+import com.nexmo.sdk.conversation.config.Defaults;
+import com.nexmo.sdk.conversation.core.client.request.Request;
+import com.nexmo.sdk.conversation.core.client.request.SendMessageRequest;
 import com.nexmo.sdk.conversation.core.persistence.contract.ConversationContract.*;
 import com.nexmo.sdk.conversation.core.persistence.contract.MemberContract.*;
 import com.nexmo.sdk.conversation.core.persistence.contract.TextEventContract.*;
 import com.nexmo.sdk.conversation.core.persistence.contract.ImageEventContract.*;
+import com.nexmo.sdk.conversation.core.persistence.contract.OutboxContract.*;
+import com.nexmo.sdk.conversation.core.persistence.contract.SeenReceiptContract.*;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Database helper for updating and accessing the cached conversations.
+ *
+ * <p>The database is opened once and kept open for the lifetime of the process: callers should not close it,
+ * a closed database is opened again by the next call.
+ * It runs in write-ahead logging mode, so reads are served from their own connections while a transaction is written:
+ * writes are meant to come from a single thread, reads from any other.</p>
  */
 public class CacheDB extends SQLiteOpenHelper {
     public static final String TAG = CacheDB.class.getSimpleName();
     private static CacheDB sInstance;
-    public static final int DATABASE_VERSION = 1;
+    public static final int DATABASE_VERSION = 9;
     public static final String DATABASE_NAME = "ConversationCache.db";
     private static final String TEXT_TYPE = " TEXT";
+    private static final String INTEGER_TYPE = " INTEGER";
     private static final String COMMA_SEP = ",";
 
     private static final String SQL_CREATE_CONVERSATION_ENTRIES =
@@ -49,28 +80,116 @@ public class CacheDB extends SQLiteOpenHelper {
     private static final String SQL_CREATE_MEMBER_ENTRIES =
             "CREATE TABLE " + MemberEntry.TABLE_NAME + " (" +
                     MemberEntry.COLUMN_MEMBER_ID + TEXT_TYPE + " PRIMARY KEY," +
+                    MemberEntry.COLUMN_CID + TEXT_TYPE + COMMA_SEP +
                     MemberEntry.COLUMN_USERNAME + TEXT_TYPE + COMMA_SEP +
-                    MemberEntry.COLUMN_USER_ID + TEXT_TYPE +
+                    MemberEntry.COLUMN_USER_ID + TEXT_TYPE + COMMA_SEP +
                     MemberEntry.COLUMN_STATE + TEXT_TYPE + COMMA_SEP +
                     MemberEntry.COLUMN_INVITEDAT + TEXT_TYPE + COMMA_SEP +
                     MemberEntry.COLUMN_JOINEDAT + TEXT_TYPE + COMMA_SEP +
                     MemberEntry.COLUMN_LEFTAT + TEXT_TYPE +
                     " )";
 
+    // the members are read per conversation.
+    private static final String SQL_CREATE_MEMBER_CID_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + MemberEntry.TABLE_NAME + "_" + MemberEntry.COLUMN_CID +
+                    " ON " + MemberEntry.TABLE_NAME + " (" + MemberEntry.COLUMN_CID + ")";
+
     private static final String SQL_CREATE_TEXT_EVENT_ENTRIES =
             "CREATE TABLE " + TextEntry.TABLE_NAME + " (" +
                     TextEntry.COLUMN_EVENT_ID + TEXT_TYPE + " PRIMARY KEY," +
                     TextEntry.COLUMN_CID + TEXT_TYPE + COMMA_SEP +
-                    TextEntry.COLUMN_PAYLOAD + TEXT_TYPE +
+                    TextEntry.COLUMN_PAYLOAD + TEXT_TYPE + COMMA_SEP +
+                    TextEntry.COLUMN_MEMBER + TEXT_TYPE + COMMA_SEP +
+                    TextEntry.COLUMN_TIMESTAMP + INTEGER_TYPE +
                     " )";
 
     private static final String SQL_CREATE_IMAGE_EVENT_ENTRIES =
             "CREATE TABLE " + ImageEntry.TABLE_NAME + " (" +
                     ImageEntry.COLUMN_EVENT_ID + TEXT_TYPE + " PRIMARY KEY," +
                     ImageEntry.COLUMN_CID + TEXT_TYPE + COMMA_SEP +
-                    ImageEntry.COLUMN_NAME + TEXT_TYPE +
+                    ImageEntry.COLUMN_NAME + TEXT_TYPE + COMMA_SEP +
+                    ImageEntry.COLUMN_MEMBER + TEXT_TYPE + COMMA_SEP +
+                    ImageEntry.COLUMN_TIMESTAMP + INTEGER_TYPE + COMMA_SEP +
+                    ImageEntry.COLUMN_REPRESENTATIONS + TEXT_TYPE +
+                    " )";
+
+    // the events of a conversation are read in time order, by position or around a known event.
+    private static final String SQL_CREATE_TEXT_EVENT_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + TextEntry.TABLE_NAME + "_" + TextEntry.COLUMN_CID + "_" + TextEntry.COLUMN_TIMESTAMP +
+                    " ON " + TextEntry.TABLE_NAME + " (" + TextEntry.COLUMN_CID + COMMA_SEP +
+                    TextEntry.COLUMN_TIMESTAMP + COMMA_SEP + TextEntry.COLUMN_EVENT_ID + ")";
+
+    private static final String SQL_CREATE_IMAGE_EVENT_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + ImageEntry.TABLE_NAME + "_" + ImageEntry.COLUMN_CID + "_" + ImageEntry.COLUMN_TIMESTAMP +
+                    " ON " + ImageEntry.TABLE_NAME + " (" + ImageEntry.COLUMN_CID + COMMA_SEP +
+                    ImageEntry.COLUMN_TIMESTAMP + COMMA_SEP + ImageEntry.COLUMN_EVENT_ID + ")";
+
+    // the text payloads are indexed for search, and the index is kept in sync with the text table by triggers.
+    // a text keeps its rowid when it is written again, see insertTextEvents.
+    private static final String SQL_CREATE_TEXT_SEARCH_ENTRIES =
+            "CREATE VIRTUAL TABLE " + TextSearchEntry.TABLE_NAME + " USING fts4(" + TextSearchEntry.COLUMN_PAYLOAD + ")";
+
+    private static final String[] SQL_CREATE_TEXT_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER " + TextSearchEntry.TABLE_NAME + "_insert AFTER INSERT ON " + TextEntry.TABLE_NAME + " BEGIN" +
+                    " INSERT INTO " + TextSearchEntry.TABLE_NAME + " (" + TextSearchEntry.COLUMN_DOCID + COMMA_SEP + TextSearchEntry.COLUMN_PAYLOAD + ")" +
+                    " VALUES (new.rowid, new." + TextEntry.COLUMN_PAYLOAD + "); END",
+            "CREATE TRIGGER " + TextSearchEntry.TABLE_NAME + "_update AFTER UPDATE OF " + TextEntry.COLUMN_PAYLOAD + " ON " + TextEntry.TABLE_NAME + " BEGIN" +
+                    " DELETE FROM " + TextSearchEntry.TABLE_NAME + " WHERE " + TextSearchEntry.COLUMN_DOCID + " = old.rowid;" +
+                    " INSERT INTO " + TextSearchEntry.TABLE_NAME + " (" + TextSearchEntry.COLUMN_DOCID + COMMA_SEP + TextSearchEntry.COLUMN_PAYLOAD + ")" +
+                    " VALUES (new.rowid, new." + TextEntry.COLUMN_PAYLOAD + "); END",
+            "CREATE TRIGGER " + TextSearchEntry.TABLE_NAME + "_delete AFTER DELETE ON " + TextEntry.TABLE_NAME + " BEGIN" +
+                    " DELETE FROM " + TextSearchEntry.TABLE_NAME + " WHERE " + TextSearchEntry.COLUMN_DOCID + " = old.rowid; END"
+    };
+
+    // events are ordered by timestamp, then by id, so a page boundary is a (timestamp, id) key that does not move.
+    private static final String EVENTS_ASC = "timestamp ASC, event_id ASC";
+    private static final String EVENTS_DESC = "timestamp DESC, event_id DESC";
+    // the events of a conversation before, or after, a (timestamp, id) key. The timestamp range alone bounds the index scan.
+    private static final String EVENTS_BEFORE = "conversation_id = ? AND timestamp <= ? AND (timestamp < ? OR event_id < ?)";
+    private static final String EVENTS_AFTER = "conversation_id = ? AND timestamp >= ? AND (timestamp > ? OR event_id > ?)";
+
+    // a member has seen an event once, whether it is a text or an image.
+    private static final String SQL_CREATE_SEEN_RECEIPT_ENTRIES =
+            "CREATE TABLE " + SeenReceiptEntry.TABLE_NAME + " (" +
+                    SeenReceiptEntry.COLUMN_EVENT_ID + TEXT_TYPE + COMMA_SEP +
+                    SeenReceiptEntry.COLUMN_MEMBER_ID + TEXT_TYPE + COMMA_SEP +
+                    SeenReceiptEntry.COLUMN_TIMESTAMP + INTEGER_TYPE + COMMA_SEP +
+                    "PRIMARY KEY (" + SeenReceiptEntry.COLUMN_EVENT_ID + COMMA_SEP + SeenReceiptEntry.COLUMN_MEMBER_ID + ")" +
+                    " )";
+
+    private static final String SQL_CREATE_OUTBOX_ENTRIES =
+            "CREATE TABLE " + OutboxEntry.TABLE_NAME + " (" +
+                    OutboxEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    OutboxEntry.COLUMN_TID + TEXT_TYPE + " UNIQUE NOT NULL," +
+                    OutboxEntry.COLUMN_TYPE + TEXT_TYPE + COMMA_SEP +
+                    OutboxEntry.COLUMN_CID + TEXT_TYPE + COMMA_SEP +
+                    OutboxEntry.COLUMN_MEMBER_ID + TEXT_TYPE + COMMA_SEP +
+                    OutboxEntry.COLUMN_PAYLOAD + TEXT_TYPE + COMMA_SEP +
+                    OutboxEntry.COLUMN_REPRESENTATIONS + TEXT_TYPE +
                     " )";
 
+    private static final String SQL_ADD_OUTBOX_USER_ID =
+            "ALTER TABLE " + OutboxEntry.TABLE_NAME + " ADD COLUMN " + OutboxEntry.COLUMN_USER_ID + TEXT_TYPE;
+
+    private static final String[] CONVERSATION_PROJECTION = {
+            ConversationEntry.COLUMN_CID,
+            ConversationEntry.COLUMN_NAME,
+            ConversationEntry.COLUMN_CREATED,
+            ConversationEntry.COLUMN_LAST_EVENT_ID,
+            ConversationEntry.COLUMN_MEMBER_ID
+    };
+
+    private static final String[] MEMBER_PROJECTION = {
+            MemberEntry.COLUMN_MEMBER_ID,
+            MemberEntry.COLUMN_CID,
+            MemberEntry.COLUMN_USERNAME,
+            MemberEntry.COLUMN_USER_ID,
+            MemberEntry.COLUMN_STATE,
+            MemberEntry.COLUMN_INVITEDAT,
+            MemberEntry.COLUMN_JOINEDAT,
+            MemberEntry.COLUMN_LEFTAT
+    };
+
     private static final String SQL_DELETE_CONVERSATION_ENTRIES =
             "DROP TABLE IF EXISTS " + ConversationEntry.TABLE_NAME;
     private static final String SQL_DELETE_MEMBER_ENTRIES =
@@ -79,11 +198,38 @@ public class CacheDB extends SQLiteOpenHelper {
             "DROP TABLE IF EXISTS " + TextEntry.TABLE_NAME;
     private static final String SQL_DELETE_IMAGE_ENTRIES =
             "DROP TABLE IF EXISTS " + ImageEntry.TABLE_NAME;
+    private static final String SQL_DELETE_TEXT_SEARCH_ENTRIES =
+            "DROP TABLE IF EXISTS " + TextSearchEntry.TABLE_NAME;
+    private static final String SQL_DELETE_SEEN_RECEIPT_ENTRIES =
+            "DROP TABLE IF EXISTS " + SeenReceiptEntry.TABLE_NAME;
+    private static final String SQL_DELETE_OUTBOX_ENTRIES =
+            "DROP TABLE IF EXISTS " + OutboxEntry.TABLE_NAME;
+
+    // maximum number of events whose receipts are read with one query.
+    private static final int SEEN_RECEIPT_BATCH = 500;
+    // maximum number of texts of a search page read with one query, within the bound parameters limit.
+    private static final int SEARCH_READ_BATCH = 500;
+    // number of searches kept ranked, for their following pages.
+    private static final int RANKED_SEARCHES = 8;
+
+    // the compiled statements of the bulk writes, shared by the writes and guarded by this lock.
+    private final Object statementsLock = new Object();
+    private Statements statements;
+
+    // changes on every write of the texts, a ranked search of a previous version is stale.
+    private final AtomicLong textsVersion = new AtomicLong();
+    @SuppressWarnings("serial")
+    private final Map<String, RankedSearch> rankedSearches = new LinkedHashMap<String, RankedSearch>(RANKED_SEARCHES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RankedSearch> eldest) {
+            return size() > RANKED_SEARCHES;
+        }
+    };
 
     CacheDB(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
-        //hasConversations();
-        //checkDataBase();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            setWriteAheadLoggingEnabled(true);
     }
 
     public static synchronized CacheDB getInstance(Context context) {
@@ -93,254 +239,1275 @@ public class CacheDB extends SQLiteOpenHelper {
         return sInstance;
     }
 
-    private boolean checkDataBase(){
-        SQLiteDatabase checkDB = null;
-        try{
-            checkDB = SQLiteDatabase.openDatabase("data/data/com.nexmo.sdk.conversation/databases/ConversationCache.db", null, SQLiteDatabase.OPEN_READONLY);
-            //SQLiteDatabase: /data/data/com.nexmo.sdk.conversation/databases/ConversationCache.db
-        }catch(SQLiteException e){
-            //database does't exist yet.
-            Log.d(TAG, "database cannot be created");
-
-        }
-
-        if(checkDB != null){
-            Log.d(TAG, "database is created");
-            checkDB.close();
-        }
-
-        return checkDB != null;
-    }
-
     @Override
     public void onCreate(SQLiteDatabase db) {
         Log.d(TAG, "ConversationCache.db onCreate");
         db.execSQL(SQL_CREATE_CONVERSATION_ENTRIES);
         db.execSQL(SQL_CREATE_MEMBER_ENTRIES);
+        db.execSQL(SQL_CREATE_MEMBER_CID_INDEX);
         db.execSQL(SQL_CREATE_TEXT_EVENT_ENTRIES);
+        db.execSQL(SQL_CREATE_TEXT_EVENT_INDEX);
+        createTextSearch(db);
         db.execSQL(SQL_CREATE_IMAGE_EVENT_ENTRIES);
+        db.execSQL(SQL_CREATE_IMAGE_EVENT_INDEX);
+        db.execSQL(SQL_CREATE_SEEN_RECEIPT_ENTRIES);
+        db.execSQL(SQL_CREATE_OUTBOX_ENTRIES);
+        db.execSQL(SQL_ADD_OUTBOX_USER_ID);
 
         //hasConversations();
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // before Jelly Bean the helper cannot enable it, the connection has to.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly())
+            db.enableWriteAheadLogging();
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d(TAG, "ConversationCache.db onUpgrade Old version: " + oldVersion + " to new version: " + newVersion);
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        switch(oldVersion) {
+        // the cache is kept across upgrades: each migration brings the schema of one version to the next one.
+        // The helper runs the upgrade in a transaction, a cache that cannot be migrated is rebuilt empty instead.
+        try {
+            for (int version = oldVersion; version < newVersion; version++)
+                migrate(db, version);
+        } catch (SQLException e) {
+            Log.d(TAG, "onUpgrade failed from version " + oldVersion + ", rebuilding the cache: " + e.toString());
+            dropTables(db);
+            onCreate(db);
+        }
+    }
+
+    // the schema changes from this version to the next one.
+    private static void migrate(SQLiteDatabase db, int version) {
+        switch(version) {
             case 1:
-                //fall through
-            default:
-                db.execSQL(SQL_DELETE_CONVERSATION_ENTRIES);
+                db.execSQL(SQL_CREATE_OUTBOX_ENTRIES);
+                break;
+            case 2:
+                db.execSQL("ALTER TABLE " + TextEntry.TABLE_NAME + " ADD COLUMN " + TextEntry.COLUMN_MEMBER + TEXT_TYPE);
+                db.execSQL("ALTER TABLE " + TextEntry.TABLE_NAME + " ADD COLUMN " + TextEntry.COLUMN_TIMESTAMP + INTEGER_TYPE);
+                db.execSQL("ALTER TABLE " + ImageEntry.TABLE_NAME + " ADD COLUMN " + ImageEntry.COLUMN_MEMBER + TEXT_TYPE);
+                db.execSQL("ALTER TABLE " + ImageEntry.TABLE_NAME + " ADD COLUMN " + ImageEntry.COLUMN_TIMESTAMP + INTEGER_TYPE);
+                db.execSQL("ALTER TABLE " + ImageEntry.TABLE_NAME + " ADD COLUMN " + ImageEntry.COLUMN_REPRESENTATIONS + TEXT_TYPE);
+                break;
+            case 3:
+                // the member table was created without a comma between the user id and the state, so it has no state column,
+                // and it has no conversation id either. Members were never written to it: it is recreated.
                 db.execSQL(SQL_DELETE_MEMBER_ENTRIES);
-                db.execSQL(SQL_DELETE_TEXT_ENTRIES);
-                db.execSQL(SQL_DELETE_IMAGE_ENTRIES);
-                onCreate(db);
+                db.execSQL(SQL_CREATE_MEMBER_ENTRIES);
+                break;
+            case 4:
+                db.execSQL(SQL_CREATE_MEMBER_CID_INDEX);
+                break;
+            case 5:
+                db.execSQL(SQL_CREATE_TEXT_EVENT_INDEX);
+                db.execSQL(SQL_CREATE_IMAGE_EVENT_INDEX);
+                break;
+            case 6:
+                createTextSearch(db);
+                db.execSQL("INSERT INTO " + TextSearchEntry.TABLE_NAME + " (" + TextSearchEntry.COLUMN_DOCID + COMMA_SEP + TextSearchEntry.COLUMN_PAYLOAD + ")" +
+                        " SELECT rowid, " + TextEntry.COLUMN_PAYLOAD + " FROM " + TextEntry.TABLE_NAME);
+                break;
+            case 7:
+                db.execSQL(SQL_CREATE_SEEN_RECEIPT_ENTRIES);
+                break;
+            case 8:
+                db.execSQL(SQL_ADD_OUTBOX_USER_ID);
+                // whoever sent the queued events is not known: they are dropped rather than sent by the next user.
+                db.delete(OutboxEntry.TABLE_NAME, null, null);
                 break;
+            default:
+                throw new SQLException("No migration from version " + version);
         }
     }
 
+    private static void dropTables(SQLiteDatabase db) {
+        db.execSQL(SQL_DELETE_CONVERSATION_ENTRIES);
+        db.execSQL(SQL_DELETE_MEMBER_ENTRIES);
+        db.execSQL(SQL_DELETE_TEXT_ENTRIES);
+        db.execSQL(SQL_DELETE_TEXT_SEARCH_ENTRIES);
+        db.execSQL(SQL_DELETE_IMAGE_ENTRIES);
+        db.execSQL(SQL_DELETE_SEEN_RECEIPT_ENTRIES);
+        db.execSQL(SQL_DELETE_OUTBOX_ENTRIES);
+    }
+
+    private static void createTextSearch(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_TEXT_SEARCH_ENTRIES);
+        for (String trigger : SQL_CREATE_TEXT_SEARCH_TRIGGERS)
+            db.execSQL(trigger);
+    }
+
+    /**
+     * Close the database and release the compiled statements. The next call opens the database again.
+     */
+    @Override
+    public synchronized void close() {
+        synchronized(this.statementsLock) {
+            if (this.statements != null)
+                this.statements.close();
+            this.statements = null;
+        }
+        super.close();
+    }
+
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d(TAG, "ConversationCache.db onDowngrade from new version: " + newVersion + " to Old version: " + oldVersion);
-        //onUpgrade(db, oldVersion, newVersion);
+        // the schema of a later release is not known here, the cache is rebuilt empty.
+        dropTables(db);
+        onCreate(db);
     }
 
     public void insertConversations(List<Conversation> conversationList) {
-        for (Conversation conversation : conversationList)
-            insertConversation(conversation);
+        ingestConversations(conversationList, false);
+    }
+
+    /**
+     * Persist a page of conversations along with the members they carry, in one transaction.
+     * The members are added or updated: a conversation list carries only the self member, the other cached members are kept.
+     */
+    public void ingestConversations(List<Conversation> conversationList) {
+        ingestConversations(conversationList, true);
+    }
+
+    private void ingestConversations(List<Conversation> conversationList, boolean withMembers) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized(this.statementsLock) {
+            Statements statements = statements(db);
+            db.beginTransaction();
+            try {
+                for (Conversation conversation : conversationList) {
+                    bindConversation(statements.insertConversation, conversation);
+                    statements.insertConversation.executeInsert();
+                    if (withMembers)
+                        bindMembers(statements, conversation.getConversationId(), conversation.getMembers(), false);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
     }
 
     public void insertConversation(Conversation conversation) {
-        Log.d(TAG, "insertConversation " + conversation.toString());
+        insertConversations(Collections.singletonList(conversation));
+    }
+
+    private static void bindConversation(SQLiteStatement statement, Conversation conversation) {
+        statement.clearBindings();
+        bind(statement, 1, conversation.getConversationId());
+        bind(statement, 2, conversation.getName());
+        bind(statement, 3, DateUtil.formatIso8601DateString(conversation.getCreationDate()));
+        bind(statement, 4, conversation.getLastEventId());
+        bind(statement, 5, conversation.getMemberId());
+    }
+
+    public void insertConversationDetailed(Conversation conversation) {
+
+    }
+
+    public boolean hasConversations() {
+        return DatabaseUtils.queryNumEntries(this.getReadableDatabase(), ConversationEntry.TABLE_NAME) > 0;
+    }
+
+    public boolean hasConversation(final String cid) {
+        return DatabaseUtils.queryNumEntries(this.getReadableDatabase(), ConversationEntry.TABLE_NAME,
+                ConversationEntry.COLUMN_CID + " = ?", new String[] { cid }) > 0;
+    }
+
+    public void updateConversation(Conversation conversation){
         // Gets the data repository in write mode
         SQLiteDatabase db = this.getWritableDatabase();
 
+        //get conversation.getCid() row
+        Conversation oldConversation = readConversationInfo(conversation.getConversationId());
+
+
         // Create a new map of values, where column names are the keys
         ContentValues values = new ContentValues();
         values.put(ConversationEntry.COLUMN_CID, conversation.getConversationId());
         values.put(ConversationEntry.COLUMN_NAME, conversation.getName());
-        values.put(ConversationEntry.COLUMN_CREATED,
-                   DateUtil.formatIso8601DateString(conversation.getCreationDate()));
-        values.put(ConversationEntry.COLUMN_LAST_EVENT_ID, conversation.getLastEventId());
-        values.put(ConversationEntry.COLUMN_MEMBER_ID, conversation.getSelf().getMemberId());
+        //values.put(ConversationEntry.COLUMN_NAME_CONTENT, content);
 
         // Insert the new row, returning the primary key value of the new row
-        long pk = db.insertWithOnConflict(
+        long newRowId;
+        newRowId = db.insert(
                 ConversationEntry.TABLE_NAME,
-                null,
-                values,
-                SQLiteDatabase.CONFLICT_REPLACE);
-        Log.d(TAG, "insertConversation: row id " + pk);
-    }
+                ConversationEntry.COLUMN_CID,
+                values);
 
-    public void insertConversationDetailed(Conversation conversation) {
+        Log.d(TAG, "new id " + newRowId);
 
     }
 
-    public boolean hasConversations() {
-        //try
+    /**
+     * Read the last known conversation list, for instance to render it before the server responds.
+     * The conversations, all their members and their event counts are read with four queries, whatever the number of conversations.
+     *
+     * @return The cached conversations with their members. Their cached events are counted as archived, they are read on demand.
+     */
+    public List<Conversation> getCachedConversations() {
         SQLiteDatabase db = this.getReadableDatabase();
+        List<Conversation> conversations = new ArrayList<>();
+        Map<String, List<Member>> members = new HashMap<>();
 
+        Cursor c = db.query(ConversationEntry.TABLE_NAME, CONVERSATION_PROJECTION, null, null, null, null, "rowid ASC");
+        if (c != null) {
+            while (c.moveToNext())
+                conversations.add(readConversation(c));
+            c.close();
+        }
+        if (conversations.isEmpty())
+            return conversations;
 
-        Log.d(TAG, db.getPath());
-        long count = DatabaseUtils.queryNumEntries(db, ConversationEntry.TABLE_NAME);
+        c = db.query(MemberEntry.TABLE_NAME, MEMBER_PROJECTION, null, null, null, null, "rowid ASC");
+        if (c != null) {
+            int cidColumn = c.getColumnIndex(MemberEntry.COLUMN_CID);
+            while (c.moveToNext()) {
+                String cid = c.getString(cidColumn);
+                List<Member> conversationMembers = members.get(cid);
+                if (conversationMembers == null) {
+                    conversationMembers = new ArrayList<>();
+                    members.put(cid, conversationMembers);
+                }
+                conversationMembers.add(readMember(c));
+            }
+            c.close();
+        }
 
-        db.close();
-        return (count > 0);
+        Map<String, Integer> texts = countEvents(db, TextEntry.TABLE_NAME);
+        Map<String, Integer> images = countEvents(db, ImageEntry.TABLE_NAME);
+        for (Conversation conversation : conversations) {
+            List<Member> conversationMembers = members.get(conversation.getConversationId());
+            attachMembers(conversation, conversationMembers != null ? conversationMembers : Collections.<Member>emptyList());
+            // none of the events is read, they are all read on demand.
+            Integer textCount = texts.get(conversation.getConversationId());
+            Integer imageCount = images.get(conversation.getConversationId());
+            conversation.setArchivedEvents(textCount != null ? textCount : 0, imageCount != null ? imageCount : 0);
+        }
+        return conversations;
     }
 
-    public boolean hasConversation(final String cid) {
-        SQLiteDatabase db = this.getReadableDatabase();
+    // the number of cached events per conversation, in one pass over the (conversation_id, timestamp, event_id) index.
+    private static Map<String, Integer> countEvents(SQLiteDatabase db, String table) {
+        Map<String, Integer> counts = new HashMap<>();
+        Cursor c = db.rawQuery("SELECT conversation_id, COUNT(*) FROM " + table + " GROUP BY conversation_id", null);
+        try {
+            while (c.moveToNext())
+                counts.put(c.getString(0), c.getInt(1));
+        } finally {
+            c.close();
+        }
+        return counts;
+    }
 
-        // Define a projection that specifies which columns from the database
-        // you will actually use after this query.
-        String[] projection = {
-                ConversationEntry.COLUMN_CID
-        };
+    /**
+     * Read a cached conversation, for instance to render it before the server responds.
+     * The older cached events are counted as archived, they are read on demand.
+     *
+     * @param limit The maximum number of the most recent texts, and of images, to read.
+     * @return The cached conversation with its members and its most recent events, or null if it is not cached.
+     */
+    public Conversation getCachedConversation(final String cid, int limit) {
+        Conversation info = readConversationInfo(cid);
+        if (info == null)
+            return null;
 
-        // Which row to update, based on the ID
-        String selection = ConversationEntry.COLUMN_CID + " LIKE ?";
+        List<Text> texts = readTextEvents(cid, limit);
+        List<Image> images = readImageEvents(cid, limit);
+        Conversation conversation = new Conversation(info.getName(), cid, info.getSelf(), texts, images,
+                info.getMembers(), info.getCreationDate(), info.getLastEventId());
+        conversation.setArchivedEvents((int) countEvents(TextEntry.TABLE_NAME, cid) - texts.size(),
+                (int) countEvents(ImageEntry.TABLE_NAME, cid) - images.size());
+        return conversation;
+    }
+
+    // counted on the (conversation_id, timestamp, event_id) index.
+    private long countEvents(String table, final String cid) {
+        return DatabaseUtils.queryNumEntries(this.getReadableDatabase(), table, "conversation_id = ?", new String[] { cid });
+    }
+
+    // only members, no events.
+    public Conversation readConversationInfo(final String cid){
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        // Which row to read, based on the ID
+        String selection = ConversationEntry.COLUMN_CID + " = ?";
         String[] selectionArgs = { String.valueOf(cid) };
 
         Cursor c = db.query(
                 ConversationEntry.TABLE_NAME,  // The table to query
-                projection,                               // The columns to return
+                CONVERSATION_PROJECTION,                  // The columns to return
                 selection,                                // The columns for the WHERE clause
                 selectionArgs,                            // The values for the WHERE clause
                 null,                                     // don't group the rows
                 null,                                     // don't filter by row groups
-                null                                 // The sort order
+                null                                      // The sort order
         );
 
-        int count=0;
+        Conversation conversation = null;
         if (c != null) {
-            count = c.getCount();
+            if (c.moveToFirst())
+                conversation = readConversation(c);
             c.close();
         }
 
-        db.close();
-        return (count > 0);
+        if (conversation != null)
+            attachMembers(conversation, readMembers(cid));
+        return conversation;
     }
 
-    public void updateConversation(Conversation conversation){
-        // Gets the data repository in write mode
-        SQLiteDatabase db = this.getWritableDatabase();
+    private static void attachMembers(Conversation conversation, List<Member> members) {
+        conversation.setMembers(members);
+        Member self = conversation.getMember(conversation.getMemberId());
+        if (self != null)
+            conversation.setSelf(self);
+    }
 
-        //get conversation.getCid() row
-        Conversation oldConversation = readConversationInfo(conversation.getConversationId());
+    private static Conversation readConversation(Cursor c) {
+        return new Conversation(
+                c.getString(c.getColumnIndex(ConversationEntry.COLUMN_NAME)),
+                c.getString(c.getColumnIndex(ConversationEntry.COLUMN_CID)),
+                c.getString(c.getColumnIndex(ConversationEntry.COLUMN_MEMBER_ID)),
+                readIso8601Date(c.getString(c.getColumnIndex(ConversationEntry.COLUMN_CREATED))),
+                c.getString(c.getColumnIndex(ConversationEntry.COLUMN_LAST_EVENT_ID)));
+    }
 
+    /**
+     * Add or update members of a conversation.
+     */
+    public void insertMembers(final String cid, List<Member> members) {
+        writeMembers(cid, members, false);
+    }
 
-        // Create a new map of values, where column names are the keys
-        ContentValues values = new ContentValues();
-        values.put(ConversationEntry.COLUMN_CID, conversation.getConversationId());
-        values.put(ConversationEntry.COLUMN_NAME, conversation.getName());
-        //values.put(ConversationEntry.COLUMN_NAME_CONTENT, content);
+    /**
+     * Replace all the members of a conversation.
+     */
+    public void replaceMembers(final String cid, List<Member> members) {
+        writeMembers(cid, members, true);
+    }
 
-        // Insert the new row, returning the primary key value of the new row
-        long newRowId;
-        newRowId = db.insert(
-                ConversationEntry.TABLE_NAME,
-                ConversationEntry.COLUMN_CID,
-                values);
+    private void writeMembers(final String cid, List<Member> members, boolean replace) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized(this.statementsLock) {
+            Statements statements = statements(db);
+            db.beginTransaction();
+            try {
+                bindMembers(statements, cid, members, replace);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
 
-        Log.d(TAG, "new id " + newRowId);
+    // within the transaction of the caller.
+    private static void bindMembers(Statements statements, final String cid, List<Member> members, boolean replace) {
+        if (replace) {
+            statements.deleteMembers.clearBindings();
+            bind(statements.deleteMembers, 1, cid);
+            statements.deleteMembers.executeUpdateDelete();
+        }
+        SQLiteStatement statement = statements.insertMember;
+        for (Member member : members) {
+            statement.clearBindings();
+            bind(statement, 1, member.getMemberId());
+            bind(statement, 2, cid);
+            bind(statement, 3, member.getName());
+            bind(statement, 4, member.getUser_id());
+            bind(statement, 5, Member.valueOf(member.getState()));
+            bind(statement, 6, DateUtil.formatIso8601DateString(member.getInvitedAt()));
+            bind(statement, 7, DateUtil.formatIso8601DateString(member.getJoinedAt()));
+            bind(statement, 8, DateUtil.formatIso8601DateString(member.getLeftAt()));
+            statement.executeInsert();
+        }
+    }
 
+    public List<Member> readMembers(final String cid) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        List<Member> members = new ArrayList<>();
+
+        Cursor c = db.query(
+                MemberEntry.TABLE_NAME,
+                MEMBER_PROJECTION,
+                MemberEntry.COLUMN_CID + " = ?",
+                new String[] { cid },
+                null,
+                null,
+                "rowid ASC");
+
+        if (c != null) {
+            while (c.moveToNext())
+                members.add(readMember(c));
+            c.close();
+        }
+        return members;
     }
 
-    public ArrayList<Conversation> readConversationsList(){
+    private static Member readMember(Cursor c) {
+        String state = c.getString(c.getColumnIndex(MemberEntry.COLUMN_STATE));
+        return new Member(
+                c.getString(c.getColumnIndex(MemberEntry.COLUMN_USER_ID)),
+                c.getString(c.getColumnIndex(MemberEntry.COLUMN_USERNAME)),
+                c.getString(c.getColumnIndex(MemberEntry.COLUMN_MEMBER_ID)),
+                readIso8601Date(c.getString(c.getColumnIndex(MemberEntry.COLUMN_JOINEDAT))),
+                readIso8601Date(c.getString(c.getColumnIndex(MemberEntry.COLUMN_INVITEDAT))),
+                readIso8601Date(c.getString(c.getColumnIndex(MemberEntry.COLUMN_LEFTAT))),
+                (state != null ? Member.state(state) : Member.STATE.UNKNOWN));
+    }
+
+    /**
+     * Persist an outgoing text or image event until the Conversation service acknowledges it.
+     * The tid is the client generated id of the event, so queueing the same event twice is ignored.
+     *
+     * @param userId The user who sent the event.
+     */
+    public void insertOutboxEntry(SendMessageRequest request, final String userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(OutboxEntry.COLUMN_TID, request.tid);
+        values.put(OutboxEntry.COLUMN_TYPE, request.type.name());
+        values.put(OutboxEntry.COLUMN_CID, request.cid);
+        values.put(OutboxEntry.COLUMN_MEMBER_ID, request.memberId);
+        values.put(OutboxEntry.COLUMN_PAYLOAD, request.message);
+        values.put(OutboxEntry.COLUMN_REPRESENTATIONS, request.representations);
+        values.put(OutboxEntry.COLUMN_USER_ID, userId);
 
-        return null;
+        long pk = db.insertWithOnConflict(
+                OutboxEntry.TABLE_NAME,
+                null,
+                values,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        Log.d(TAG, "insertOutboxEntry: row id " + pk);
     }
 
-    //the text and images events.
-    public Conversation readConversationEvents(final String cid) {
-        return null;
+    public void deleteOutboxEntry(final String tid) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(OutboxEntry.TABLE_NAME, OutboxEntry.COLUMN_TID + " = ?", new String[] { tid });
     }
 
-    // only members, no events.
-    public Conversation readConversationInfo(final String cid){
+    /**
+     * Delete the outgoing events of a user.
+     */
+    public void deleteOutboxEntries(final String userId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(OutboxEntry.TABLE_NAME, OutboxEntry.COLUMN_USER_ID + " = ?", new String[] { userId });
+    }
+
+    /**
+     * Read the outgoing events of a user that survived a disconnect or a process restart, in the order they were sent.
+     * The restored requests have no completion listener attached.
+     */
+    public List<SendMessageRequest> readOutbox(final String userId) {
         SQLiteDatabase db = this.getReadableDatabase();
+        List<SendMessageRequest> outbox = new ArrayList<>();
 
-        // Define a projection that specifies which columns from the database
-        // you will actually use after this query.
         String[] projection = {
-                ConversationEntry.COLUMN_CID,
-                ConversationEntry.COLUMN_NAME,
-                ConversationEntry.COLUMN_CREATED,
-                ConversationEntry.COLUMN_LAST_EVENT_ID,
-                ConversationEntry.COLUMN_MEMBER_ID
+                OutboxEntry.COLUMN_TID,
+                OutboxEntry.COLUMN_TYPE,
+                OutboxEntry.COLUMN_CID,
+                OutboxEntry.COLUMN_MEMBER_ID,
+                OutboxEntry.COLUMN_PAYLOAD,
+                OutboxEntry.COLUMN_REPRESENTATIONS
         };
 
-        // How you want the results sorted in the resulting Cursor
-        String sortOrder =
-                ConversationEntry.COLUMN_NAME + " DESC";
+        Cursor c = db.query(
+                OutboxEntry.TABLE_NAME,
+                projection,
+                OutboxEntry.COLUMN_USER_ID + " = ?",
+                new String[] { userId },
+                null,
+                null,
+                OutboxEntry._ID + " ASC"
+        );
+
+        if (c != null) {
+            while (c.moveToNext()) {
+                SendMessageRequest request = new SendMessageRequest(
+                        Request.TYPE.valueOf(c.getString(c.getColumnIndex(OutboxEntry.COLUMN_TYPE))),
+                        c.getString(c.getColumnIndex(OutboxEntry.COLUMN_TID)));
+                request.cid = c.getString(c.getColumnIndex(OutboxEntry.COLUMN_CID));
+                request.memberId = c.getString(c.getColumnIndex(OutboxEntry.COLUMN_MEMBER_ID));
+                request.message = c.getString(c.getColumnIndex(OutboxEntry.COLUMN_PAYLOAD));
+                request.representations = c.getString(c.getColumnIndex(OutboxEntry.COLUMN_REPRESENTATIONS));
+                outbox.add(request);
+            }
+            c.close();
+        }
 
-        // Which row to update, based on the ID
-        String selection = ConversationEntry.COLUMN_CID + " LIKE ?";
-        String[] selectionArgs = { String.valueOf(cid) };
+        return outbox;
+    }
+
+    /**
+     * Add or update text events, with their seen receipts.
+     */
+    public void insertTextEvents(final String cid, List<Text> texts) {
+        ingestEvents(cid, texts, Collections.<Image>emptyList());
+    }
+
+    /**
+     * Add or update image events, with their seen receipts. Only the representations are kept, the downloaded bitmaps are not.
+     */
+    public void insertImageEvents(final String cid, List<Image> images) {
+        ingestEvents(cid, Collections.<Text>emptyList(), images);
+    }
+
+    /**
+     * Persist a page of events of a conversation: the texts, the images and their seen receipts, in one transaction.
+     * Events are kept with their payload, sender and timestamp.
+     */
+    public void ingestEvents(final String cid, List<Text> texts, List<Image> images) {
+        if (texts.isEmpty() && images.isEmpty())
+            return;
+
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized(this.statementsLock) {
+            Statements statements = statements(db);
+            db.beginTransaction();
+            try {
+                for (Text text : texts) {
+                    // a known text is updated in place rather than replaced, so it keeps the rowid its search entry refers to.
+                    // The update comes first: the row id an ignored insert reports is not -1 on every runtime.
+                    bindText(statements.updateText, cid, text, true);
+                    if (statements.updateText.executeUpdateDelete() == 0) {
+                        bindText(statements.insertText, cid, text, false);
+                        statements.insertText.executeInsert();
+                    }
+                    bindSeenReceipts(statements.insertSeenReceipt, text.getSeenReceipts());
+                }
+                for (Image image : images) {
+                    SQLiteStatement statement = statements.insertImage;
+                    statement.clearBindings();
+                    bind(statement, 1, image.getId());
+                    bind(statement, 2, cid);
+                    bind(statement, 3, (image.getMember() != null ? image.getMember().getMemberId() : null));
+                    bind(statement, 4, image.getTimestamp());
+                    bind(statement, 5, encodeRepresentations(image));
+                    statement.executeInsert();
+                    bindSeenReceipts(statements.insertSeenReceipt, image.getSeenReceipts());
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                if (!texts.isEmpty())
+                    invalidateSearches();
+            }
+        }
+    }
+
+    /**
+     * Add seen receipts to cached events.
+     */
+    public void insertSeenReceipts(List<SeenReceipt> seenReceipts) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized(this.statementsLock) {
+            Statements statements = statements(db);
+            db.beginTransaction();
+            try {
+                bindSeenReceipts(statements.insertSeenReceipt, seenReceipts);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    // the insert binds the event id first, the update binds it last, in its WHERE clause.
+    private static void bindText(SQLiteStatement statement, final String cid, Text text, boolean update) {
+        statement.clearBindings();
+        int column = (update ? 0 : 1);
+        if (!update)
+            bind(statement, 1, text.getId());
+        bind(statement, column + 1, cid);
+        bind(statement, column + 2, text.getPayload());
+        bind(statement, column + 3, (text.getMember() != null ? text.getMember().getMemberId() : null));
+        bind(statement, column + 4, text.getTimestamp());
+        if (update)
+            bind(statement, 5, text.getId());
+    }
+
+    private static void bindSeenReceipts(SQLiteStatement statement, List<SeenReceipt> seenReceipts) {
+        for (SeenReceipt seenReceipt : seenReceipts) {
+            statement.clearBindings();
+            bind(statement, 1, seenReceipt.getEvent_id());
+            bind(statement, 2, seenReceipt.getMember_id());
+            bind(statement, 3, seenReceipt.getTimestamp());
+            statement.executeInsert();
+        }
+    }
+
+    private static void bind(SQLiteStatement statement, int index, String value) {
+        if (value != null)
+            statement.bindString(index, value);
+        else
+            statement.bindNull(index);
+    }
+
+    private static void bind(SQLiteStatement statement, int index, Date value) {
+        if (value != null)
+            statement.bindLong(index, value.getTime());
+        else
+            statement.bindNull(index);
+    }
+
+    // compiled once against the writable database, on the first bulk write.
+    // compiled again once the database was closed and opened again.
+    private Statements statements(SQLiteDatabase db) {
+        if (this.statements != null && this.statements.db != db) {
+            this.statements.close();
+            this.statements = null;
+        }
+        if (this.statements == null)
+            this.statements = new Statements(db);
+        return this.statements;
+    }
+
+    private static final class Statements {
+        final SQLiteStatement insertConversation;
+        final SQLiteStatement deleteMembers;
+        final SQLiteStatement insertMember;
+        final SQLiteStatement insertText;
+        final SQLiteStatement updateText;
+        final SQLiteStatement insertImage;
+        final SQLiteStatement insertSeenReceipt;
+        final SQLiteDatabase db;
+
+        Statements(SQLiteDatabase db) {
+            this.db = db;
+            this.insertConversation = db.compileStatement("INSERT OR REPLACE INTO " + ConversationEntry.TABLE_NAME + " (" +
+                    ConversationEntry.COLUMN_CID + COMMA_SEP + ConversationEntry.COLUMN_NAME + COMMA_SEP +
+                    ConversationEntry.COLUMN_CREATED + COMMA_SEP + ConversationEntry.COLUMN_LAST_EVENT_ID + COMMA_SEP +
+                    ConversationEntry.COLUMN_MEMBER_ID + ") VALUES (?,?,?,?,?)");
+            this.deleteMembers = db.compileStatement("DELETE FROM " + MemberEntry.TABLE_NAME +
+                    " WHERE " + MemberEntry.COLUMN_CID + " = ?");
+            this.insertMember = db.compileStatement("INSERT OR REPLACE INTO " + MemberEntry.TABLE_NAME + " (" +
+                    MemberEntry.COLUMN_MEMBER_ID + COMMA_SEP + MemberEntry.COLUMN_CID + COMMA_SEP +
+                    MemberEntry.COLUMN_USERNAME + COMMA_SEP + MemberEntry.COLUMN_USER_ID + COMMA_SEP +
+                    MemberEntry.COLUMN_STATE + COMMA_SEP + MemberEntry.COLUMN_INVITEDAT + COMMA_SEP +
+                    MemberEntry.COLUMN_JOINEDAT + COMMA_SEP + MemberEntry.COLUMN_LEFTAT + ") VALUES (?,?,?,?,?,?,?,?)");
+            this.insertText = db.compileStatement("INSERT INTO " + TextEntry.TABLE_NAME + " (" +
+                    TextEntry.COLUMN_EVENT_ID + COMMA_SEP + TextEntry.COLUMN_CID + COMMA_SEP +
+                    TextEntry.COLUMN_PAYLOAD + COMMA_SEP + TextEntry.COLUMN_MEMBER + COMMA_SEP +
+                    TextEntry.COLUMN_TIMESTAMP + ") VALUES (?,?,?,?,?)");
+            this.updateText = db.compileStatement("UPDATE " + TextEntry.TABLE_NAME + " SET " +
+                    TextEntry.COLUMN_CID + " = ?, " + TextEntry.COLUMN_PAYLOAD + " = ?, " +
+                    TextEntry.COLUMN_MEMBER + " = ?, " + TextEntry.COLUMN_TIMESTAMP + " = ?" +
+                    " WHERE " + TextEntry.COLUMN_EVENT_ID + " = ?");
+            this.insertImage = db.compileStatement("INSERT OR REPLACE INTO " + ImageEntry.TABLE_NAME + " (" +
+                    ImageEntry.COLUMN_EVENT_ID + COMMA_SEP + ImageEntry.COLUMN_CID + COMMA_SEP +
+                    ImageEntry.COLUMN_MEMBER + COMMA_SEP + ImageEntry.COLUMN_TIMESTAMP + COMMA_SEP +
+                    ImageEntry.COLUMN_REPRESENTATIONS + ") VALUES (?,?,?,?,?)");
+            this.insertSeenReceipt = db.compileStatement("INSERT OR REPLACE INTO " + SeenReceiptEntry.TABLE_NAME + " (" +
+                    SeenReceiptEntry.COLUMN_EVENT_ID + COMMA_SEP + SeenReceiptEntry.COLUMN_MEMBER_ID + COMMA_SEP +
+                    SeenReceiptEntry.COLUMN_TIMESTAMP + ") VALUES (?,?,?)");
+        }
+
+        void close() {
+            this.insertConversation.close();
+            this.deleteMembers.close();
+            this.insertMember.close();
+            this.insertText.close();
+            this.updateText.close();
+            this.insertImage.close();
+            this.insertSeenReceipt.close();
+        }
+    }
+
+    /**
+     * @return The cached text event with this id, or null if it is not cached.
+     */
+    public Text readTextEvent(final String cid, final String eventId) {
+        return readTextEvent(TextEntry.COLUMN_CID + " = ? AND " + TextEntry.COLUMN_EVENT_ID + " = ?",
+                new String[] { cid, eventId }, null);
+    }
+
+    /**
+     * @return The cached text event at this position, oldest first, or null if it is out of range.
+     */
+    public Text readTextEvent(final String cid, int position) {
+        return readTextEvent(TextEntry.COLUMN_CID + " = ?", new String[] { cid }, position);
+    }
+
+    private Text readTextEvent(String selection, String[] selectionArgs, Integer position) {
+        List<Text> texts = readTextEvents(selection, selectionArgs, EVENTS_ASC,
+                (position != null ? position + ",1" : "1"));
+        return (texts.isEmpty() ? null : texts.get(0));
+    }
+
+    /**
+     * @return The most recent cached text events of the conversation, at most limit of them, oldest first.
+     */
+    public List<Text> readTextEvents(final String cid, int limit) {
+        List<Text> texts = readTextEvents(TextEntry.COLUMN_CID + " = ?", new String[] { cid },
+                EVENTS_DESC, String.valueOf(limit));
+        Collections.reverse(texts);
+        return texts;
+    }
+
+    /**
+     * @param eventId The text to page from, excluded, or null to read the most recent texts.
+     * @return At most limit cached texts of the conversation before this one, oldest first,
+     *         or an empty list if this text is not cached.
+     */
+    public List<Text> readTextEventsBefore(final String cid, final String eventId, int limit) {
+        if (eventId == null)
+            return readTextEvents(cid, limit);
+
+        String[] keyset = keyset(TextEntry.TABLE_NAME, cid, eventId);
+        if (keyset == null)
+            return new ArrayList<>();
+        List<Text> texts = readTextEvents(EVENTS_BEFORE, keyset, EVENTS_DESC, String.valueOf(limit));
+        Collections.reverse(texts);
+        return texts;
+    }
+
+    /**
+     * @param eventId The text to page from, excluded, or null to read the oldest texts.
+     * @return At most limit cached texts of the conversation after this one, oldest first,
+     *         or an empty list if this text is not cached.
+     */
+    public List<Text> readTextEventsAfter(final String cid, final String eventId, int limit) {
+        if (eventId == null)
+            return readTextEvents(TextEntry.COLUMN_CID + " = ?", new String[] { cid }, EVENTS_ASC, String.valueOf(limit));
+
+        String[] keyset = keyset(TextEntry.TABLE_NAME, cid, eventId);
+        if (keyset == null)
+            return new ArrayList<>();
+        return readTextEvents(EVENTS_AFTER, keyset, EVENTS_ASC, String.valueOf(limit));
+    }
+
+    private List<Text> readTextEvents(String selection, String[] selectionArgs, String orderBy, String limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String[] projection = {
+                TextEntry.COLUMN_EVENT_ID,
+                TextEntry.COLUMN_PAYLOAD,
+                TextEntry.COLUMN_MEMBER,
+                TextEntry.COLUMN_TIMESTAMP
+        };
 
         Cursor c = db.query(
-                ConversationEntry.TABLE_NAME,  // The table to query
-                projection,                               // The columns to return
-                selection,                                // The columns for the WHERE clause
-                selectionArgs,                            // The values for the WHERE clause
-                null,                                     // don't group the rows
-                null,                                     // don't filter by row groups
-                sortOrder                                 // The sort order
-        );
+                TextEntry.TABLE_NAME,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                orderBy,
+                limit);
+
+        List<Text> texts = new ArrayList<>();
+        if (c != null) {
+            while (c.moveToNext())
+                texts.add(new Text(
+                        c.getString(c.getColumnIndex(TextEntry.COLUMN_PAYLOAD)),
+                        c.getString(c.getColumnIndex(TextEntry.COLUMN_EVENT_ID)),
+                        readDate(c, c.getColumnIndex(TextEntry.COLUMN_TIMESTAMP)),
+                        new Member(c.getString(c.getColumnIndex(TextEntry.COLUMN_MEMBER)))));
+            c.close();
+        }
+        attachSeenReceipts(db, texts);
+        return texts;
+    }
+
+    /**
+     * @return The cached image event with this id, or null if it is not cached.
+     */
+    public Image readImageEvent(final String cid, final String eventId) {
+        return readImageEvent(ImageEntry.COLUMN_CID + " = ? AND " + ImageEntry.COLUMN_EVENT_ID + " = ?",
+                new String[] { cid, eventId }, null);
+    }
+
+    /**
+     * @return The cached image event at this position, oldest first, or null if it is out of range.
+     */
+    public Image readImageEvent(final String cid, int position) {
+        return readImageEvent(ImageEntry.COLUMN_CID + " = ?", new String[] { cid }, position);
+    }
+
+    private Image readImageEvent(String selection, String[] selectionArgs, Integer position) {
+        List<Image> images = readImageEvents(selection, selectionArgs, EVENTS_ASC,
+                (position != null ? position + ",1" : "1"));
+        return (images.isEmpty() ? null : images.get(0));
+    }
+
+    /**
+     * @return The most recent cached image events of the conversation, at most limit of them, oldest first.
+     */
+    public List<Image> readImageEvents(final String cid, int limit) {
+        List<Image> images = readImageEvents(ImageEntry.COLUMN_CID + " = ?", new String[] { cid },
+                EVENTS_DESC, String.valueOf(limit));
+        Collections.reverse(images);
+        return images;
+    }
+
+    /**
+     * Search the payloads of the cached texts.
+     *
+     * <p>Each word of the query has to match the start of a word of the text, in any order.
+     * The texts are ranked by relevance: how often the words appear in the text, weighted by how rare
+     * they are across the cached texts, then the most recent first. Only the ids of the matches are read
+     * to rank them, the texts are read for the requested page only.</p>
+     *
+     * <p>The best {@link Defaults#SEARCH_MAX_RESULTS} matches are kept ranked for the following pages of the same search,
+     * until the cached texts change: a page after the first one only reads its own texts.</p>
+     *
+     * @param cid    The conversation to search, or null to search all the cached conversations.
+     * @param offset The number of ranked results to skip.
+     * @param limit  The maximum number of results.
+     * @return The matching texts of the page, each one attached to a conversation that only has its id.
+     */
+    public List<Text> searchTextEvents(final String query, final String cid, int offset, int limit) {
+        String match = matchQuery(query);
+        if (match == null || limit <= 0)
+            return new ArrayList<>();
+
+        List<SearchMatch> ranked = rankedSearch(match, cid);
+        if (offset >= ranked.size())
+            return new ArrayList<>();
+        List<SearchMatch> matches = ranked.subList(Math.max(0, offset), Math.min(ranked.size(), Math.max(0, offset) + limit));
+
+        // read in batches, a page may hold more texts than a statement can bind.
+        Map<String, Text> texts = new HashMap<>(matches.size() * 2);
+        for (int from = 0; from < matches.size(); from += SEARCH_READ_BATCH) {
+            List<SearchMatch> batch = matches.subList(from, Math.min(matches.size(), from + SEARCH_READ_BATCH));
+            StringBuilder selection = new StringBuilder(TextEntry.COLUMN_EVENT_ID).append(" IN (");
+            String[] eventIds = new String[batch.size()];
+            for (int i = 0; i < eventIds.length; i++) {
+                eventIds[i] = batch.get(i).eventId;
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(")");
+            for (Text text : readTextEvents(selection.toString(), eventIds, null, null))
+                texts.put(text.getId(), text);
+        }
+
+        List<Text> page = new ArrayList<>(matches.size());
+        Map<String, Conversation> conversations = new HashMap<>();
+        for (SearchMatch searchMatch : matches) {
+            Text text = texts.get(searchMatch.eventId);
+            if (text == null)
+                continue;
+            Conversation conversation = conversations.get(searchMatch.cid);
+            if (conversation == null) {
+                conversation = new Conversation(null, searchMatch.cid);
+                conversations.put(searchMatch.cid, conversation);
+            }
+            text.setConversation(conversation);
+            page.add(text);
+        }
+        return page;
+    }
+
+    /**
+     * The cached texts changed: the ranked searches are read again.
+     * A change is reported once it starts, and once it is committed by a caller that wraps it in its own transaction.
+     */
+    public void invalidateSearches() {
+        this.textsVersion.incrementAndGet();
+    }
+
+    // the best matches in rank order, from the ranked searches if the texts did not change since.
+    private List<SearchMatch> rankedSearch(String match, final String cid) {
+        String key = (cid != null ? cid : "") + '\n' + match;
+        long version = this.textsVersion.get();
+        synchronized(this.rankedSearches) {
+            RankedSearch cached = this.rankedSearches.get(key);
+            if (cached != null && cached.version == version)
+                return cached.matches;
+        }
+
+        List<SearchMatch> ranked = rank(match, cid, Defaults.SEARCH_MAX_RESULTS);
+        synchronized(this.rankedSearches) {
+            this.rankedSearches.put(key, new RankedSearch(version, ranked));
+        }
+        return ranked;
+    }
+
+    // one pass over the matches, only the best ones are kept.
+    private List<SearchMatch> rank(String match, final String cid, int max) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String sql = "SELECT t." + TextEntry.COLUMN_EVENT_ID + COMMA_SEP + " t." + TextEntry.COLUMN_CID + COMMA_SEP +
+                " t." + TextEntry.COLUMN_TIMESTAMP + COMMA_SEP + " matchinfo(" + TextSearchEntry.TABLE_NAME + ", 'pcnx')" +
+                " FROM " + TextSearchEntry.TABLE_NAME + " JOIN " + TextEntry.TABLE_NAME + " t ON t.rowid = " +
+                TextSearchEntry.TABLE_NAME + "." + TextSearchEntry.COLUMN_DOCID +
+                " WHERE " + TextSearchEntry.TABLE_NAME + " MATCH ?" +
+                (cid != null ? " AND t." + TextEntry.COLUMN_CID + " = ?" : "");
+        Cursor c = db.rawQuery(sql, (cid != null ? new String[] { match, cid } : new String[] { match }));
 
+        // the worst of the kept matches first, to be replaced by a better one.
+        PriorityQueue<SearchMatch> best = new PriorityQueue<>(Math.min(max, 64) + 1, Collections.reverseOrder());
         if (c != null) {
-            c.moveToFirst();
-            String created = c.getString(c.getColumnIndex(ConversationEntry.COLUMN_CREATED));
-            Date timestamp = null;
             try {
-                timestamp = DateUtil.formatIso8601DateString(created);
-            } catch (ParseException e) {
+                while (c.moveToNext()) {
+                    best.add(new SearchMatch(c.getString(0), c.getString(1), (c.isNull(2) ? 0 : c.getLong(2)), rank(c.getBlob(3))));
+                    if (best.size() > max)
+                        best.poll();
+                }
+            } finally {
+                c.close();
+            }
+        }
+        List<SearchMatch> ranked = new ArrayList<>(best);
+        Collections.sort(ranked);
+        return Collections.unmodifiableList(ranked);
+    }
+
+    private static final class RankedSearch {
+        final long version;
+        final List<SearchMatch> matches;
+
+        RankedSearch(long version, List<SearchMatch> matches) {
+            this.version = version;
+            this.matches = matches;
+        }
+    }
+
+    // every word of the query, quoted so it is not read as an operator, as a prefix.
+    private static String matchQuery(String query) {
+        if (query == null)
+            return null;
+
+        StringBuilder match = new StringBuilder();
+        for (String word : query.replace('"', ' ').trim().split("\\s+")) {
+            if (word.isEmpty())
+                continue;
+            if (match.length() > 0)
+                match.append(' ');
+            match.append('"').append(word).append("*\"");
+        }
+        return (match.length() > 0 ? match.toString() : null);
+    }
+
+    // matchinfo 'pcnx': the phrase count, the column count, the row count, then for each phrase and column
+    // the hits in this row, the hits in all rows and the rows with hits, as native 32-bit integers.
+    private static double rank(byte[] matchinfo) {
+        if (matchinfo == null || matchinfo.length < 12)
+            return 0;
 
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        int rows = info.get(2);
+        double rank = 0;
+        for (int i = 0; i < phrases * columns && 3 + 3 * i + 2 < info.limit(); i++) {
+            int hits = info.get(3 + 3 * i);
+            int rowsWithHits = info.get(3 + 3 * i + 2);
+            if (hits > 0 && rowsWithHits > 0)
+                rank += hits * Math.log(1 + (double) rows / rowsWithHits);
+        }
+        return rank;
+    }
+
+    private static final class SearchMatch implements Comparable<SearchMatch> {
+        final String eventId;
+        final String cid;
+        final long timestamp;
+        final double rank;
+
+        SearchMatch(String eventId, String cid, long timestamp, double rank) {
+            this.eventId = eventId;
+            this.cid = cid;
+            this.timestamp = timestamp;
+            this.rank = rank;
+        }
+
+        // the most relevant first, then the most recent.
+        @Override
+        public int compareTo(SearchMatch other) {
+            if (this.rank != other.rank)
+                return (this.rank > other.rank ? -1 : 1);
+            return (this.timestamp > other.timestamp ? -1 : (this.timestamp < other.timestamp ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param eventId The image to page from, excluded, or null to read the most recent images.
+     * @return At most limit cached images of the conversation before this one, oldest first,
+     *         or an empty list if this image is not cached.
+     */
+    public List<Image> readImageEventsBefore(final String cid, final String eventId, int limit) {
+        if (eventId == null)
+            return readImageEvents(cid, limit);
+
+        String[] keyset = keyset(ImageEntry.TABLE_NAME, cid, eventId);
+        if (keyset == null)
+            return new ArrayList<>();
+        List<Image> images = readImageEvents(EVENTS_BEFORE, keyset, EVENTS_DESC, String.valueOf(limit));
+        Collections.reverse(images);
+        return images;
+    }
+
+    /**
+     * @param eventId The image to page from, excluded, or null to read the oldest images.
+     * @return At most limit cached images of the conversation after this one, oldest first,
+     *         or an empty list if this image is not cached.
+     */
+    public List<Image> readImageEventsAfter(final String cid, final String eventId, int limit) {
+        if (eventId == null)
+            return readImageEvents(ImageEntry.COLUMN_CID + " = ?", new String[] { cid }, EVENTS_ASC, String.valueOf(limit));
+
+        String[] keyset = keyset(ImageEntry.TABLE_NAME, cid, eventId);
+        if (keyset == null)
+            return new ArrayList<>();
+        return readImageEvents(EVENTS_AFTER, keyset, EVENTS_ASC, String.valueOf(limit));
+    }
+
+    // the arguments of EVENTS_BEFORE and EVENTS_AFTER around a cached event, or null if it is not cached or has no timestamp.
+    private String[] keyset(String table, final String cid, final String eventId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor c = db.query(table, new String[] { "timestamp" }, "conversation_id = ? AND event_id = ?",
+                new String[] { cid, eventId }, null, null, null, "1");
+        String timestamp = null;
+        if (c != null) {
+            if (c.moveToFirst() && !c.isNull(0))
+                timestamp = String.valueOf(c.getLong(0));
+            c.close();
+        }
+        return (timestamp != null ? new String[] { cid, timestamp, timestamp, eventId } : null);
+    }
+
+    private List<Image> readImageEvents(String selection, String[] selectionArgs, String orderBy, String limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String[] projection = {
+                ImageEntry.COLUMN_EVENT_ID,
+                ImageEntry.COLUMN_MEMBER,
+                ImageEntry.COLUMN_TIMESTAMP,
+                ImageEntry.COLUMN_REPRESENTATIONS
+        };
+
+        Cursor c = db.query(
+                ImageEntry.TABLE_NAME,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                orderBy,
+                limit);
+
+        List<Image> images = new ArrayList<>();
+        if (c != null) {
+            while (c.moveToNext()) {
+                Image image = new Image(null,
+                        c.getString(c.getColumnIndex(ImageEntry.COLUMN_EVENT_ID)),
+                        readDate(c, c.getColumnIndex(ImageEntry.COLUMN_TIMESTAMP)),
+                        null,
+                        new Member(c.getString(c.getColumnIndex(ImageEntry.COLUMN_MEMBER))));
+                decodeRepresentations(c.getString(c.getColumnIndex(ImageEntry.COLUMN_REPRESENTATIONS)), image);
+                images.add(image);
             }
-            Conversation conversation = new Conversation(
-                    c.getString(c.getColumnIndex(ConversationEntry.COLUMN_NAME)),
-                    c.getString(c.getColumnIndex(ConversationEntry.COLUMN_CID)),
-                    c.getString(c.getColumnIndex(ConversationEntry.COLUMN_MEMBER_ID)),
-                    timestamp,
-                    c.getString(c.getColumnIndex(ConversationEntry.COLUMN_LAST_EVENT_ID)));
             c.close();
         }
+        attachSeenReceipts(db, images);
+        return images;
+    }
+
+    // read the receipts of the events by batches of ids, within the SQLite limit of bound arguments.
+    private static void attachSeenReceipts(SQLiteDatabase db, List<? extends Text> events) {
+        for (int start = 0; start < events.size(); start += SEEN_RECEIPT_BATCH) {
+            List<? extends Text> batch = events.subList(start, Math.min(events.size(), start + SEEN_RECEIPT_BATCH));
+            Map<String, Text> eventsById = new HashMap<>(batch.size() * 2);
+            StringBuilder selection = new StringBuilder(SeenReceiptEntry.COLUMN_EVENT_ID).append(" IN (");
+            for (Text event : batch) {
+                if (event.getId() == null || eventsById.containsKey(event.getId()))
+                    continue;
+                selection.append(eventsById.isEmpty() ? "?" : ",?");
+                eventsById.put(event.getId(), event);
+            }
+            if (eventsById.isEmpty())
+                continue;
+            selection.append(")");
+
+            Cursor c = db.query(SeenReceiptEntry.TABLE_NAME,
+                    new String[] { SeenReceiptEntry.COLUMN_EVENT_ID, SeenReceiptEntry.COLUMN_MEMBER_ID, SeenReceiptEntry.COLUMN_TIMESTAMP },
+                    selection.toString(), eventsById.keySet().toArray(new String[eventsById.size()]),
+                    null, null, "rowid ASC");
+            // the receipts of an event are attached at once, so the event copies its receipt list once.
+            Map<String, List<SeenReceipt>> receiptsByEvent = new HashMap<>(eventsById.size() * 2);
+            if (c != null) {
+                while (c.moveToNext()) {
+                    List<SeenReceipt> receipts = receiptsByEvent.get(c.getString(0));
+                    if (receipts == null) {
+                        receipts = new ArrayList<>();
+                        receiptsByEvent.put(c.getString(0), receipts);
+                    }
+                    receipts.add(new SeenReceipt(c.getString(0), c.getString(1), readDate(c, 2)));
+                }
+                c.close();
+            }
+            for (Map.Entry<String, List<SeenReceipt>> receipts : receiptsByEvent.entrySet())
+                eventsById.get(receipts.getKey()).addSeenReceipts(receipts.getValue());
+        }
+    }
+
+    /**
+     * Update the payload of a cached text event, for instance when it gets deleted.
+     */
+    public void updateTextPayload(final String cid, final String eventId, final String payload) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(TextEntry.COLUMN_PAYLOAD, payload);
+        db.update(TextEntry.TABLE_NAME, values, TextEntry.COLUMN_CID + " = ? AND " + TextEntry.COLUMN_EVENT_ID + " = ?",
+                new String[] { cid, eventId });
+        invalidateSearches();
+    }
+
+    public void deleteTextEvents(final String cid) {
+        deleteEvents(TextEntry.TABLE_NAME, cid);
+    }
+
+    public void deleteImageEvents(final String cid) {
+        deleteEvents(ImageEntry.TABLE_NAME, cid);
+    }
 
+    // the events of a conversation along with their seen receipts.
+    private void deleteEvents(String table, final String cid) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(SeenReceiptEntry.TABLE_NAME, SeenReceiptEntry.COLUMN_EVENT_ID + " IN (SELECT event_id FROM " + table +
+                    " WHERE conversation_id = ?)", new String[] { cid });
+            db.delete(table, "conversation_id = ?", new String[] { cid });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            if (TextEntry.TABLE_NAME.equals(table))
+                invalidateSearches();
+        }
+    }
+
+    private static Date readDate(Cursor c, int column) {
+        return (c.isNull(column) ? null : new Date(c.getLong(column)));
+    }
+
+    private static Date readIso8601Date(String date) {
+        if (date == null)
+            return null;
+        try {
+            return DateUtil.formatIso8601DateString(date);
+        } catch (ParseException e) {
+            Log.d(TAG, "readIso8601Date failed: " + e.toString());
+            return null;
+        }
+    }
+
+    // same layout as the representations sent by the Conversation service.
+    private static String encodeRepresentations(Image image) {
+        JSONObject representations = new JSONObject();
+        try {
+            putRepresentation(representations, "original", image.getOriginal());
+            putRepresentation(representations, "medium", image.getMedium());
+            putRepresentation(representations, "thumbnail", image.getThumbnail());
+        } catch (JSONException e) {
+            Log.d(TAG, "encodeRepresentations failed: " + e.toString());
+        }
+        return representations.toString();
+    }
 
-        return null;
+    private static void putRepresentation(JSONObject representations, String name, ImageRepresentation representation) throws JSONException {
+        if (representation == null)
+            return;
+        JSONObject json = new JSONObject();
+        json.put("id", representation.id);
+        json.put("url", representation.url);
+        json.put("size", representation.size);
+        representations.put(name, json);
+    }
+
+    private static void decodeRepresentations(String representations, Image image) {
+        if (representations == null)
+            return;
+        try {
+            JSONObject json = new JSONObject(representations);
+            image.addRepresentations(
+                    decodeRepresentation(json.optJSONObject("original"), ImageRepresentation.TYPE.ORIGINAL),
+                    decodeRepresentation(json.optJSONObject("medium"), ImageRepresentation.TYPE.MEDIUM),
+                    decodeRepresentation(json.optJSONObject("thumbnail"), ImageRepresentation.TYPE.THUMBNAIL));
+        } catch (JSONException e) {
+            Log.d(TAG, "decodeRepresentations failed: " + e.toString());
+        }
+    }
+
+    private static ImageRepresentation decodeRepresentation(JSONObject json, ImageRepresentation.TYPE type) {
+        if (json == null)
+            return null;
+        return new ImageRepresentation(type, json.optString("id", null), json.optString("url", null), json.optLong("size"));
     }
 
     //app is closing, or use
 
     //clear cache manually or on explicit logout
+    /**
+     * Delete the cached conversations, members and events. The tables are kept, and so are the outgoing events.
+     */
     public void clearDb() {
+        clearDb(Collections.<String>emptySet(), Collections.<String>emptySet());
+    }
+
+    /**
+     * Delete the cached conversations, members and events, except the events of the given conversations and their seen receipts.
+     * The tables are kept, and so are the outgoing events.
+     *
+     * @param keepTextsOf  The conversations whose texts are kept.
+     * @param keepImagesOf The conversations whose images are kept.
+     */
+    public void clearDb(Collection<String> keepTextsOf, Collection<String> keepImagesOf) {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.execSQL("delete from "+ ConversationEntry.TABLE_NAME);
-        db.execSQL("delete from " + MemberEntry.TABLE_NAME);
-        db.execSQL("delete from " + TextEntry.TABLE_NAME);
-        db.execSQL("delete from " + ImageEntry.TABLE_NAME);
+        db.beginTransaction();
+        try {
+            db.delete(ConversationEntry.TABLE_NAME, null, null);
+            db.delete(MemberEntry.TABLE_NAME, null, null);
+            deleteEventsExcept(db, TextEntry.TABLE_NAME, keepTextsOf);
+            deleteEventsExcept(db, ImageEntry.TABLE_NAME, keepImagesOf);
+            if (keepTextsOf.isEmpty() && keepImagesOf.isEmpty())
+                db.delete(SeenReceiptEntry.TABLE_NAME, null, null);
+            else
+                db.delete(SeenReceiptEntry.TABLE_NAME, SeenReceiptEntry.COLUMN_EVENT_ID + " NOT IN (SELECT event_id FROM " + TextEntry.TABLE_NAME +
+                        ") AND " + SeenReceiptEntry.COLUMN_EVENT_ID + " NOT IN (SELECT event_id FROM " + ImageEntry.TABLE_NAME + ")", null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            invalidateSearches();
+        }
+    }
 
-        db.execSQL(SQL_DELETE_CONVERSATION_ENTRIES);
-        db.execSQL(SQL_DELETE_MEMBER_ENTRIES);
-        db.execSQL(SQL_DELETE_TEXT_ENTRIES);
-        db.execSQL(SQL_DELETE_IMAGE_ENTRIES);
+    // within the transaction of the caller, one conversation at a time so the number of bound parameters stays bounded.
+    private static void deleteEventsExcept(SQLiteDatabase db, String table, Collection<String> keep) {
+        if (keep.isEmpty()) {
+            db.delete(table, null, null);
+            return;
+        }
 
-        db.close();
+        List<String> cids = new ArrayList<>();
+        Cursor c = db.query(true, table, new String[] { "conversation_id" }, null, null, null, null, null, null);
+        try {
+            while (c.moveToNext())
+                cids.add(c.getString(0));
+        } finally {
+            c.close();
+        }
+        for (String cid : cids)
+            if (!keep.contains(cid))
+                db.delete(table, "conversation_id = ?", new String[] { cid });
     }
 
     public void dropDB() {
         Log.d(TAG, "dropDB");
         SQLiteDatabase db = this.getWritableDatabase();
 
-        db.execSQL(SQL_DELETE_CONVERSATION_ENTRIES);
-        db.execSQL(SQL_DELETE_MEMBER_ENTRIES);
-        db.execSQL(SQL_DELETE_TEXT_ENTRIES);
-        db.execSQL(SQL_DELETE_IMAGE_ENTRIES);
-
-        db.close();
+        dropTables(db);
+        synchronized(this.statementsLock) {
+            // compiled against the dropped tables.
+            if (this.statements != null)
+                this.statements.close();
+            this.statements = null;
+        }
+        onCreate(db);
+        invalidateSearches();
     }
 
 }
@@ -22,6 +22,9 @@ public final class ImageEventContract {
         public static final String COLUMN_CID = "conversation_id";
         public static final String COLUMN_NAME = "name";
         public static final String COLUMN_NAME_SUBTITLE = "subtitle";
+        public static final String COLUMN_MEMBER = "member_id";
+        public static final String COLUMN_TIMESTAMP = "timestamp";
+        public static final String COLUMN_REPRESENTATIONS = "representations";
 
     }
 
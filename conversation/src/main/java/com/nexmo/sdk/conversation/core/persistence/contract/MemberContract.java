@@ -18,6 +18,7 @@ public class MemberContract {
     public static abstract class MemberEntry implements BaseColumns {
         public static final String TABLE_NAME = "member";
         public static final String COLUMN_MEMBER_ID = "id";
+        public static final String COLUMN_CID = "cid";
         public static final String COLUMN_USERNAME = "username";
         public static final String COLUMN_USER_ID = "user_id";
         public static final String COLUMN_STATE = "state";
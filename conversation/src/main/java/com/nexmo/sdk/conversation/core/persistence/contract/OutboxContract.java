@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence.contract;
+
+import android.provider.BaseColumns;
+
+/**
+ * Contract for the outgoing text and image events that were not yet acknowledged.
+ */
+public final class OutboxContract {
+    // To prevent someone from accidentally instantiating the contract class,
+    // give it an empty constructor.
+    public OutboxContract() {}
+
+    /* Inner class that defines the table contents */
+    public static abstract class OutboxEntry implements BaseColumns {
+        public static final String TABLE_NAME = "outbox";
+        public static final String COLUMN_TID = "tid";
+        public static final String COLUMN_TYPE = "type";
+        public static final String COLUMN_CID = "conversation_id";
+        public static final String COLUMN_MEMBER_ID = "member_id";
+        public static final String COLUMN_PAYLOAD = "payload";
+        public static final String COLUMN_REPRESENTATIONS = "representations";
+        // the user who sent the event: only their session sends it.
+        public static final String COLUMN_USER_ID = "user_id";
+
+    }
+
+}
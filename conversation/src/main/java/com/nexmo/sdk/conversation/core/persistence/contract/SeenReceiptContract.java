@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence.contract;
+
+/**
+ * Contract for {@link com.nexmo.sdk.conversation.client.SeenReceipt} object.
+ */
+public final class SeenReceiptContract {
+    // To prevent someone from accidentally instantiating the contract class,
+    // give it an empty constructor.
+    public SeenReceiptContract() {}
+
+    /* Inner class that defines the table contents */
+    public static abstract class SeenReceiptEntry {
+        public static final String TABLE_NAME = "seen_receipt";
+        public static final String COLUMN_EVENT_ID = "event_id";
+        public static final String COLUMN_MEMBER_ID = "member_id";
+        public static final String COLUMN_TIMESTAMP = "timestamp";
+    }
+
+}
@@ -26,4 +26,11 @@ public final class TextEventContract {
 
     }
 
+    /* Full-text index of the text payloads, the docid of a row is the rowid of its text */
+    public static abstract class TextSearchEntry {
+        public static final String TABLE_NAME = "text_search";
+        public static final String COLUMN_DOCID = "docid";
+        public static final String COLUMN_PAYLOAD = "payload";
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the time and, on a HotSpot JVM, the bytes allocated per operation of a task run on the current thread.
+ * The task is run once to warm up, then measured over several runs.
+ */
+public final class Benchmark {
+    private static final int RUNS = 5;
+
+    public final String name;
+    public final long operations;
+    // best of the runs, the others are noise of the JIT or of the collector.
+    public final double nanosPerOperation;
+    // -1 if the JVM does not report the allocated bytes.
+    public final double bytesPerOperation;
+
+    private Benchmark(String name, long operations, double nanosPerOperation, double bytesPerOperation) {
+        this.name = name;
+        this.operations = operations;
+        this.nanosPerOperation = nanosPerOperation;
+        this.bytesPerOperation = bytesPerOperation;
+    }
+
+    /**
+     * @param task       The measured task.
+     * @param operations The number of operations the task performs, to report per operation costs.
+     */
+    public static Benchmark run(String name, long operations, Runnable task) {
+        return run(name, operations, RUNS, task);
+    }
+
+    /**
+     * @param runs The number of measured runs, fewer for the slow tasks.
+     */
+    public static Benchmark run(String name, long operations, int runs, Runnable task) {
+        task.run();
+
+        long bestNanos = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int run = 0; run < runs; run++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            task.run();
+            long nanos = System.nanoTime() - start;
+            bytes = (bytes >= 0 ? allocatedBytes() - bytes : -1);
+            bestNanos = Math.min(bestNanos, nanos);
+            bestBytes = Math.min(bestBytes, bytes);
+        }
+
+        Benchmark benchmark = new Benchmark(name, operations, (double) bestNanos / operations,
+                (bestBytes >= 0 ? (double) bestBytes / operations : -1));
+        System.out.println(benchmark);
+        return benchmark;
+    }
+
+    public boolean reportsAllocations() {
+        return this.bytesPerOperation >= 0;
+    }
+
+    /**
+     * @return The bytes retained by the objects the task returns, measured as the growth of the used heap
+     *         once collected, per object; the returned objects are kept reachable until then.
+     */
+    public static double retainedBytes(String name, int objects, Factory factory) {
+        long before = usedHeap();
+        Object retained = factory.create();
+        long after = usedHeap();
+        double bytes = (double) (after - before) / objects;
+        System.out.println(String.format("%s: %.1f bytes retained per object, %d objects (%s)", name, bytes, objects,
+                retained.getClass().getSimpleName()));
+        return bytes;
+    }
+
+    public interface Factory {
+        Object create();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int collection = 0; collection < 4; collection++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotSpot = (com.sun.management.ThreadMXBean) threads;
+            if (hotSpot.isThreadAllocatedMemorySupported() && hotSpot.isThreadAllocatedMemoryEnabled())
+                return hotSpot.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.1f ns/op, %s over %d ops", this.name, this.nanosPerOperation,
+                (reportsAllocations() ? String.format("%.1f bytes/op", this.bytesPerOperation) : "allocations not reported"),
+                this.operations);
+    }
+
+}
@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation;
+
+/**
+ * The category of the benchmarks and of the stress tests, which take minutes and report to the standard output.
+ * The unit test tasks exclude them, they are run on demand with the benchmarks property:
+ * <pre>./gradlew :conversation:testDebugUnitTest -Pbenchmarks</pre>
+ */
+public interface Benchmarks {
+}
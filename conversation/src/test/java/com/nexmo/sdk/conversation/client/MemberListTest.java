@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MemberListTest {
+
+    private static Member member(String userId, String memberId, Member.STATE state) {
+        return new Member(userId, "name of " + userId, memberId, state);
+    }
+
+    private static List<String> memberIds(List<Member> members) {
+        List<String> ids = new ArrayList<>();
+        for (Member member : members)
+            ids.add(member.getMemberId());
+        return ids;
+    }
+
+    @Test
+    public void testLookups() {
+        MemberList members = new MemberList();
+        Member alice = member("USR-1", "MEM-1", Member.STATE.JOINED);
+        members.add(alice);
+        members.add(null);
+
+        assertSame(alice, members.get("MEM-1"));
+        assertSame(alice, members.getByUserId("USR-1"));
+        assertNull(members.get("MEM-2"));
+        assertNull(members.get(null));
+        assertNull(members.getByUserId(null));
+        assertEquals(1, members.list().size());
+    }
+
+    @Test
+    public void testOneMemberPerId() {
+        MemberList members = new MemberList();
+        members.add(member("USR-1", "MEM-1", Member.STATE.INVITED));
+        members.add(member("USR-2", "MEM-2", Member.STATE.JOINED));
+        Member joined = member("USR-1", "MEM-1", Member.STATE.JOINED);
+        members.add(joined);
+
+        // replaced in place, as an update.
+        assertEquals(Arrays.asList("MEM-1", "MEM-2"), memberIds(members.list()));
+        assertSame(joined, members.get("MEM-1"));
+        assertSame(joined, members.getByUserId("USR-1"));
+
+        Member left = member("USR-2", "MEM-2", Member.STATE.LEFT);
+        members.update(left);
+        members.update(member("USR-3", "MEM-3", Member.STATE.JOINED));
+        assertEquals(Arrays.asList("MEM-1", "MEM-2", "MEM-3"), memberIds(members.list()));
+        assertSame(left, members.get("MEM-2"));
+    }
+
+    @Test
+    public void testReplaceAll() {
+        MemberList members = new MemberList();
+        members.add(member("USR-0", "MEM-0", Member.STATE.JOINED));
+
+        Member last = member("USR-1", "MEM-1", Member.STATE.LEFT);
+        members.replaceAll(Arrays.asList(member("USR-1", "MEM-1", Member.STATE.JOINED), null,
+                member("USR-2", "MEM-2", Member.STATE.JOINED), last));
+        assertEquals(Arrays.asList("MEM-1", "MEM-2"), memberIds(members.list()));
+        assertSame(last, members.get("MEM-1"));
+        assertNull(members.get("MEM-0"));
+
+        // a user who joined again keeps the member of the first lookup.
+        Member rejoined = member("USR-2", "MEM-3", Member.STATE.JOINED);
+        members.add(rejoined);
+        assertSame(members.get("MEM-2"), members.getByUserId("USR-2"));
+
+        members.replaceAll(null);
+        assertEquals(0, members.list().size());
+    }
+
+    @Test
+    public void testSnapshot() {
+        MemberList members = new MemberList();
+        members.add(member("USR-1", "MEM-1", Member.STATE.JOINED));
+        MemberList snapshot = new MemberList(members);
+        List<Member> before = members.list();
+
+        members.add(member("USR-2", "MEM-2", Member.STATE.JOINED));
+        snapshot.update(member("USR-1", "MEM-1", Member.STATE.LEFT));
+
+        assertEquals(1, before.size());
+        assertEquals(Arrays.asList("MEM-1"), memberIds(snapshot.list()));
+        assertEquals(Member.STATE.JOINED, members.get("MEM-1").getState());
+        assertEquals(Member.STATE.LEFT, snapshot.get("MEM-1").getState());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testListIsImmutable() {
+        MemberList members = new MemberList();
+        members.add(member("USR-1", "MEM-1", Member.STATE.JOINED));
+        members.list().clear();
+    }
+
+}
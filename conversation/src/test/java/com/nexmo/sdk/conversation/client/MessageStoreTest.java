@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MessageStoreTest {
+
+    private static Text text(String id, long timestamp) {
+        return new Text("payload " + id, id, new Date(timestamp));
+    }
+
+    private static List<String> ids(List<? extends Text> events) {
+        List<String> ids = new ArrayList<>();
+        for (Text event : events)
+            ids.add(event.getId());
+        return ids;
+    }
+
+    @Test
+    public void testAddKeepsTimestampOrder() {
+        MessageStore<Text> store = new MessageStore<>();
+        assertTrue(store.add(text("b", 20)));
+        assertTrue(store.add(text("c", 30)));
+        assertTrue(store.add(text("a", 10)));
+        assertTrue(store.add(text("d", 40)));
+
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(store.list()));
+        assertEquals("a", store.get(0).getId());
+        assertEquals("d", store.get(3).getId());
+        assertNull(store.get(4));
+        assertNull(store.get(-1));
+    }
+
+    @Test
+    public void testEqualTimestampsKeepArrivalOrder() {
+        MessageStore<Text> store = new MessageStore<>();
+        store.add(text("a", 10));
+        store.add(text("b", 10));
+        store.add(text("c", 5));
+        store.add(text("d", 10));
+
+        assertEquals(Arrays.asList("c", "a", "b", "d"), ids(store.list()));
+    }
+
+    @Test
+    public void testEventsWithoutTimestampAreLast() {
+        MessageStore<Text> store = new MessageStore<>();
+        store.add(new Text("payload", "none", null));
+        store.add(text("b", 20));
+        store.add(text("a", 10));
+
+        assertEquals(Arrays.asList("a", "b", "none"), ids(store.list()));
+    }
+
+    @Test
+    public void testDuplicateIdsAreIgnored() {
+        MessageStore<Text> store = new MessageStore<>();
+        Text first = text("a", 10);
+        assertTrue(store.add(first));
+        assertFalse(store.add(text("a", 20)));
+        assertFalse(store.add(null));
+
+        assertEquals(1, store.size());
+        assertSame(first, store.get("a"));
+        assertTrue(store.contains("a"));
+        assertFalse(store.contains("b"));
+        assertNull(store.get("b"));
+    }
+
+    @Test
+    public void testReplaceAllKeepsFirstOfSameId() {
+        MessageStore<Text> store = new MessageStore<>();
+        store.add(text("old", 1));
+        Text first = text("a", 10);
+        store.replaceAll(Arrays.asList(text("b", 20), first, text("a", 30)));
+
+        assertEquals(Arrays.asList("a", "b"), ids(store.list()));
+        assertSame(first, store.get("a"));
+        assertFalse(store.contains("old"));
+    }
+
+    @Test
+    public void testRange() {
+        MessageStore<Text> store = new MessageStore<>();
+        for (int i = 0; i < 10; i++)
+            store.add(text("e" + i, i * 10));
+
+        assertEquals(Arrays.asList("e2", "e3", "e4"), ids(store.range(new Date(20), new Date(50))));
+        assertEquals(Arrays.asList("e0", "e1"), ids(store.range(null, new Date(20))));
+        assertEquals(Arrays.asList("e8", "e9"), ids(store.range(new Date(75), null)));
+        assertTrue(store.range(new Date(50), new Date(20)).isEmpty());
+    }
+
+    @Test
+    public void testEvictOldest() {
+        MessageStore<Text> store = new MessageStore<>();
+        for (int i = 0; i < 10; i++)
+            store.add(text("e" + i, i));
+
+        assertEquals(Arrays.asList("e0", "e1", "e2"), ids(store.oldest(3)));
+        store.evictOldest(3);
+        assertEquals(7, store.size());
+        assertEquals("e3", store.get(0).getId());
+        assertFalse(store.contains("e0"));
+        assertTrue(store.contains("e9"));
+        // an evicted event may be added again.
+        assertTrue(store.add(text("e0", 0)));
+        assertEquals("e0", store.get(0).getId());
+    }
+
+    @Test
+    public void testListIsASnapshot() {
+        MessageStore<Text> store = new MessageStore<>();
+        store.add(text("a", 10));
+        List<Text> list = store.list();
+        store.add(text("b", 5));
+        store.add(text("c", 20));
+
+        assertEquals(Collections.singletonList("a"), ids(list));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void testSnapshotsDoNotSeeEachOther() {
+        MessageStore<Text> store = new MessageStore<>();
+        store.add(text("a", 10));
+        MessageStore<Text> snapshot = new MessageStore<>(store);
+
+        assertTrue(store.add(text("b", 20)));
+        assertFalse(snapshot.contains("b"));
+        assertTrue(snapshot.add(text("c", 30)));
+        assertFalse(store.contains("c"));
+        assertTrue(snapshot.add(text("b", 5)));
+
+        assertEquals(Arrays.asList("a", "b"), ids(store.list()));
+        assertEquals(Arrays.asList("b", "a", "c"), ids(snapshot.list()));
+        assertEquals(20, store.get("b").getTimestampMillis());
+        assertEquals(5, snapshot.get("b").getTimestampMillis());
+    }
+
+    @Test
+    public void testRandomInsertsMatchSortedOrder() {
+        Random random = new Random(42);
+        MessageStore<Text> store = new MessageStore<>();
+        List<Long> timestamps = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long timestamp = random.nextInt(500);
+            store.add(text("e" + i, timestamp));
+            timestamps.add(timestamp);
+        }
+        Collections.sort(timestamps);
+
+        List<Text> list = store.list();
+        assertEquals(timestamps.size(), list.size());
+        int position = 0;
+        for (Text event : list) {
+            assertEquals((long) timestamps.get(position), event.getTimestampMillis());
+            assertSame(event, store.get(position));
+            position++;
+        }
+        List<Text> range = store.range(new Date(100), new Date(200));
+        for (int i = 0; i < range.size(); i++)
+            assertSame(range.get(i), new ArrayList<>(range).get(i));
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.client;
+
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The heap retained by each cached text, against the former representation with a Date,
+ * an eagerly allocated receipt list and a receipt map per event.
+ * The ids and payloads exist before the events are created, only the events themselves are measured.
+ */
+@Category(Benchmarks.class)
+public class TextFootprintBenchmark {
+    private static final int EVENTS = 50000;
+
+    // the fields of a text before the compact representation.
+    @SuppressWarnings("unused")
+    private static final class FormerText {
+        private String payload;
+        protected String id;
+        protected String deleteEventId;
+        protected Date timestamp;
+        protected Member member;
+        protected List<SeenReceipt> seenReceiptList = new ArrayList<>();
+        private Map<Member, SeenReceipt> seenReceiptMap = new ConcurrentHashMap<>();
+        protected Conversation conversation;
+
+        FormerText(String payload, String id, Date timestamp, Member member) {
+            this.payload = payload;
+            this.id = id;
+            this.timestamp = timestamp;
+            this.member = member;
+        }
+    }
+
+    @Test
+    public void benchmarkRetainedHeap() {
+        final String[] ids = new String[EVENTS];
+        final String[] payloads = new String[EVENTS];
+        final long[] timestamps = new long[EVENTS];
+        final Member member = new Member("MEM-1");
+        for (int i = 0; i < EVENTS; i++) {
+            ids[i] = "EV-" + i;
+            payloads[i] = "message " + i;
+            timestamps[i] = 1480000000000L + i * 1000L;
+        }
+
+        double former = Benchmark.retainedBytes("former text", EVENTS, new Benchmark.Factory() {
+            @Override
+            public Object create() {
+                FormerText[] texts = new FormerText[EVENTS];
+                for (int i = 0; i < EVENTS; i++)
+                    texts[i] = new FormerText(payloads[i], ids[i], new Date(timestamps[i]), member);
+                return texts;
+            }
+        });
+        double compact = Benchmark.retainedBytes("text", EVENTS, new Benchmark.Factory() {
+            @Override
+            public Object create() {
+                Text[] texts = new Text[EVENTS];
+                for (int i = 0; i < EVENTS; i++)
+                    texts[i] = new Text(payloads[i], ids[i], new Date(timestamps[i]), member);
+                return texts;
+            }
+        });
+        assertTrue(compact < former);
+    }
+
+}
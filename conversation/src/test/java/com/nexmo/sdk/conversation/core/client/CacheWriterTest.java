@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.core.persistence.CacheDB;
+import com.nexmo.sdk.conversation.core.persistence.TestCacheDB;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CacheWriterTest {
+    private static final String CID = "CON-1";
+    // long enough for the queued writes to wait for a flush.
+    private static final long DELAY = 60 * 1000;
+
+    private CacheDB cacheDB;
+
+    @Before
+    public void setUp() {
+        this.cacheDB = TestCacheDB.create(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        TestCacheDB.delete(this.cacheDB, RuntimeEnvironment.application);
+    }
+
+    private static CacheWriter.Write insert(final String id) {
+        return new CacheWriter.Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                cacheDB.insertTextEvents(CID, Collections.singletonList(new Text("text " + id, id, new Date(), new Member("MEM-1"))));
+            }
+        };
+    }
+
+    // inserts a text, then fails: the text is rolled back with the failed write.
+    private static CacheWriter.Write failing(final String id) {
+        return new CacheWriter.Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                insert(id).apply(cacheDB);
+                throw new IllegalStateException("failed");
+            }
+        };
+    }
+
+    // a write that records whether it is committed.
+    private static CacheWriter.TrackedWrite tracked(final CacheWriter.Write write, final List<Boolean> completions) {
+        return new CacheWriter.TrackedWrite() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                write.apply(cacheDB);
+            }
+
+            @Override
+            public void completed(boolean committed) {
+                completions.add(committed);
+            }
+        };
+    }
+
+    private boolean cached(String id) {
+        return (this.cacheDB.readTextEvent(CID, id) != null);
+    }
+
+    @Test
+    public void testBatchesAreAppliedInOrder() {
+        final List<String> applied = Collections.synchronizedList(new ArrayList<String>());
+        CacheWriter cacheWriter = new CacheWriter(this.cacheDB, DELAY, 2);
+        for (int i = 0; i < 5; i++) {
+            final String id = "EV-" + i;
+            cacheWriter.enqueue(new CacheWriter.Write() {
+                @Override
+                public void apply(CacheDB cacheDB) {
+                    applied.add(id);
+                    insert(id).apply(cacheDB);
+                }
+            });
+        }
+        assertTrue(applied.isEmpty());
+
+        cacheWriter.flush();
+        assertEquals(5, applied.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("EV-" + i, applied.get(i));
+            assertTrue(cached("EV-" + i));
+        }
+    }
+
+    @Test
+    public void testAFailedWriteOnlyDropsItself() {
+        CacheWriter cacheWriter = new CacheWriter(this.cacheDB, DELAY, 10);
+        cacheWriter.enqueue(insert("1"));
+        cacheWriter.enqueue(failing("2"));
+        cacheWriter.enqueue(insert("3"));
+        cacheWriter.flush();
+
+        // the batch is rolled back, then applied write by write.
+        assertTrue(cached("1"));
+        assertFalse(cached("2"));
+        assertTrue(cached("3"));
+    }
+
+    @Test
+    public void testTrackedWritesAreToldWhetherCommitted() {
+        List<Boolean> completions = Collections.synchronizedList(new ArrayList<Boolean>());
+        CacheWriter cacheWriter = new CacheWriter(this.cacheDB, DELAY, 10);
+        cacheWriter.enqueue(tracked(insert("1"), completions));
+        cacheWriter.enqueue(tracked(failing("2"), completions));
+        assertTrue(completions.isEmpty());
+
+        cacheWriter.flush();
+        assertEquals(Arrays.asList(true, false), completions);
+        assertTrue(cached("1"));
+        assertFalse(cached("2"));
+
+        // dropped before it is applied.
+        cacheWriter.enqueue(tracked(insert("3"), completions));
+        cacheWriter.clear();
+        assertEquals(Arrays.asList(true, false, false), completions);
+        cacheWriter.flush();
+        assertFalse(cached("3"));
+    }
+
+    @Test
+    public void testClearKeepsTheDurableWrites() {
+        CacheWriter cacheWriter = new CacheWriter(this.cacheDB, DELAY, 10);
+        cacheWriter.enqueue(insert("1"));
+        cacheWriter.enqueue(new CacheWriter.DurableWrite() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                insert("2").apply(cacheDB);
+            }
+        });
+        cacheWriter.enqueue(insert("3"));
+
+        cacheWriter.clear();
+        cacheWriter.flush();
+        assertFalse(cached("1"));
+        assertTrue(cached("2"));
+        assertFalse(cached("3"));
+    }
+
+    @Test
+    public void testWritesFromTheWriterThread() throws InterruptedException {
+        final CacheWriter cacheWriter = new CacheWriter(this.cacheDB, DELAY, 10);
+        final AtomicBoolean flushed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+        cacheWriter.enqueue(insert("1"));
+        cacheWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                cacheWriter.enqueue(insert("2"));
+                // on the writer thread, the queued writes are applied here rather than by a task of the writer.
+                cacheWriter.flush();
+                flushed.set(cached("2"));
+                cacheWriter.enqueue(insert("3"));
+                cacheWriter.flush();
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(flushed.get());
+        assertTrue(cached("1"));
+        assertTrue(cached("3"));
+    }
+
+    @Test
+    public void testReadsSeeTheWritesQueuedBefore() throws InterruptedException {
+        CacheWriter cacheWriter = new CacheWriter(this.cacheDB, DELAY, 10);
+        final AtomicReference<Text> read = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        cacheWriter.enqueue(insert("1"));
+        cacheWriter.read(new Runnable() {
+            @Override
+            public void run() {
+                read.set(CacheWriterTest.this.cacheDB.readTextEvent(CID, "1"));
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(read.get());
+    }
+
+    @Test
+    public void testWritesAreScheduledAgainAfterAnAbortedDrain() throws InterruptedException {
+        // one write per batch, so the one queued after the error is left for another drain.
+        CacheWriter cacheWriter = new CacheWriter(this.cacheDB, 10, 1);
+        final CountDownLatch applied = new CountDownLatch(1);
+        cacheWriter.enqueue(new CacheWriter.Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                throw new AssertionError("not a RuntimeException: the drain is aborted");
+            }
+        });
+        cacheWriter.enqueue(new CacheWriter.Write() {
+            @Override
+            public void apply(CacheDB cacheDB) {
+                insert("1").apply(cacheDB);
+                applied.countDown();
+            }
+        });
+
+        assertTrue(applied.await(10, TimeUnit.SECONDS));
+        cacheWriter.flush();
+        assertTrue(cached("1"));
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Conversation;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * Resolving the conversation of an incoming event through the index, against the linear scan of the
+ * synchronized conversation list it replaced, at 10, 1k and 10k conversations.
+ */
+@Category(Benchmarks.class)
+public class ConversationIndexBenchmark {
+    private static final int LOOKUPS = 100000;
+
+    // the former findConversation.
+    private static Conversation scan(List<Conversation> conversationList, String cid) {
+        synchronized(conversationList) {
+            Iterator<Conversation> i = conversationList.iterator();
+            while (i.hasNext()) {
+                Conversation conversation = i.next();
+                if (conversation.getConversationId().equals(cid))
+                    return conversation;
+            }
+        }
+        return null;
+    }
+
+    private static void benchmark(int size) {
+        final List<Conversation> conversationList = Collections.synchronizedList(new ArrayList<Conversation>());
+        final ConversationIndex index = new ConversationIndex();
+        for (int i = 0; i < size; i++) {
+            Conversation conversation = new Conversation("conversation " + i, "CON-" + i);
+            conversationList.add(conversation);
+            index.put(conversation);
+        }
+        // every event looks up a new cid instance, as the decoded ones did before interning.
+        final String[] cids = new String[LOOKUPS];
+        Random random = new Random(size);
+        for (int i = 0; i < LOOKUPS; i++)
+            cids[i] = new String("CON-" + random.nextInt(size));
+        assertSame(scan(conversationList, cids[0]), index.get(cids[0]));
+
+        // a scan costs N, fewer lookups keep the run short at 10k conversations.
+        final int scans = (int) Math.min(LOOKUPS, 10000000L / size);
+        Benchmark.run("scan, " + size + " conversations", scans, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < scans; i++)
+                    scan(conversationList, cids[i]);
+            }
+        });
+        Benchmark.run("index, " + size + " conversations", LOOKUPS, new Runnable() {
+            @Override
+            public void run() {
+                for (String cid : cids)
+                    index.get(cid);
+            }
+        });
+    }
+
+    @Test
+    public void benchmark10() {
+        benchmark(10);
+    }
+
+    @Test
+    public void benchmark1k() {
+        benchmark(1000);
+    }
+
+    @Test
+    public void benchmark10k() {
+        benchmark(10000);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConversationIndexTest {
+
+    private static List<String> cids(List<Conversation> conversations) {
+        List<String> cids = new ArrayList<>();
+        for (Conversation conversation : conversations)
+            cids.add(conversation.getConversationId());
+        return cids;
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ConversationIndex index = new ConversationIndex();
+        Conversation first = new Conversation("first", "CON-1");
+        index.put(first);
+        index.put(new Conversation("second", "CON-2"));
+        index.put(new Conversation("no id", null));
+
+        assertSame(first, index.get("CON-1"));
+        assertNull(index.get("CON-3"));
+        assertNull(index.get(null));
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("CON-1", "CON-2"), cids(index.snapshot()));
+    }
+
+    @Test
+    public void testPutReplacesInPlace() {
+        ConversationIndex index = new ConversationIndex();
+        index.put(new Conversation("first", "CON-1"));
+        index.put(new Conversation("second", "CON-2"));
+        Conversation replacement = new Conversation("renamed", "CON-1");
+        index.put(replacement);
+
+        assertSame(replacement, index.get("CON-1"));
+        assertEquals(Arrays.asList("CON-1", "CON-2"), cids(index.snapshot()));
+        assertSame(replacement, index.snapshot().get(0));
+    }
+
+    @Test
+    public void testSyncKeepsKnownInstancesAndDropsUnlisted() {
+        ConversationIndex index = new ConversationIndex();
+        Conversation known = new Conversation("known", "CON-1");
+        index.put(known);
+        index.put(new Conversation("dropped", "CON-2"));
+
+        Conversation fresh = new Conversation("fresh", "CON-3", "MEM-3");
+        List<Conversation> listed = index.sync(Arrays.asList(fresh, new Conversation("known", "CON-1", "MEM-1"), fresh));
+
+        assertEquals(Arrays.asList("CON-3", "CON-1"), cids(listed));
+        assertSame(known, listed.get(1));
+        assertSame(known, index.get("CON-1"));
+        assertEquals("MEM-1", known.getSelf().getMemberId());
+        assertSame(fresh, index.get("CON-3"));
+        assertNull(index.get("CON-2"));
+        assertEquals(Arrays.asList("CON-3", "CON-1"), cids(index.snapshot()));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testClear() {
+        ConversationIndex index = new ConversationIndex();
+        index.put(new Conversation("first", "CON-1"));
+        index.clear();
+        assertNull(index.get("CON-1"));
+        assertEquals(0, index.snapshot().size());
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Member;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConversationListDiffTest {
+
+    private static Conversation conversation(String cid, String name, String lastEventId, Member.STATE selfState) {
+        Conversation conversation = new Conversation(name, cid, "MEM-" + cid, null, lastEventId);
+        conversation.addMember(new Member("USR-1", "self", "MEM-" + cid, selfState));
+        return conversation;
+    }
+
+    private static List<String> cids(List<Conversation> conversations) {
+        List<String> cids = new ArrayList<>();
+        for (Conversation conversation : conversations)
+            cids.add(conversation.getConversationId());
+        return cids;
+    }
+
+    @Test
+    public void testSameLists() {
+        ConversationListDiff diff = ConversationListDiff.compute(
+                Collections.singletonList(conversation("CON-1", "chat", "5", Member.STATE.JOINED)),
+                Collections.singletonList(conversation("CON-1", "chat", "5", Member.STATE.JOINED)));
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void testAddedUpdatedRemoved() {
+        List<Conversation> cached = Arrays.asList(
+                conversation("CON-1", "chat", "5", Member.STATE.JOINED),
+                conversation("CON-2", "gone", "1", Member.STATE.JOINED),
+                conversation("CON-3", "same", "2", Member.STATE.JOINED),
+                conversation("CON-4", "also gone", "1", Member.STATE.JOINED));
+        Conversation added = conversation("CON-5", "new", "1", Member.STATE.INVITED);
+        Conversation updated = conversation("CON-1", "chat", "6", Member.STATE.JOINED);
+        List<Conversation> fresh = Arrays.asList(added, conversation("CON-3", "same", "2", Member.STATE.JOINED), updated);
+
+        ConversationListDiff diff = ConversationListDiff.compute(cached, fresh);
+
+        assertFalse(diff.isEmpty());
+        assertEquals(Collections.singletonList(added), diff.added);
+        assertEquals(1, diff.updated.size());
+        assertSame(updated, diff.updated.get(0));
+        // in cached order.
+        assertEquals(Arrays.asList("CON-2", "CON-4"), cids(diff.removed));
+    }
+
+    @Test
+    public void testRenamed() {
+        ConversationListDiff diff = ConversationListDiff.compute(
+                Collections.singletonList(conversation("CON-1", "chat", "5", Member.STATE.JOINED)),
+                Collections.singletonList(conversation("CON-1", "renamed", "5", Member.STATE.JOINED)));
+        assertEquals(Collections.singletonList("CON-1"), cids(diff.updated));
+    }
+
+    @Test
+    public void testSelfStateChanged() {
+        ConversationListDiff diff = ConversationListDiff.compute(
+                Collections.singletonList(conversation("CON-1", "chat", "5", Member.STATE.INVITED)),
+                Collections.singletonList(conversation("CON-1", "chat", "5", Member.STATE.JOINED)));
+        assertEquals(Collections.singletonList("CON-1"), cids(diff.updated));
+    }
+
+    @Test
+    public void testOtherCachedMembersAreNotCompared() {
+        Conversation cached = conversation("CON-1", "chat", "5", Member.STATE.JOINED);
+        cached.addMember(new Member("USR-2", "other", "MEM-other", Member.STATE.JOINED));
+        ConversationListDiff diff = ConversationListDiff.compute(Collections.singletonList(cached),
+                Collections.singletonList(conversation("CON-1", "chat", "5", Member.STATE.JOINED)));
+        assertTrue(diff.isEmpty());
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Received texts applied to their conversations by worker threads, each worker owning a set of conversations
+ * as the per-conversation lanes do, while a reader iterates the messages without any lock.
+ *
+ * <p>Each text is attached under the lock of its conversation, as the signaling channel does now, or under one lock
+ * shared by all the conversations, as it did before. The throughput is reported for 1 to 8 workers, capped by the
+ * available processors, and for 1, 16 and 256 conversations: with a lock per conversation it grows with
+ * the workers once there are more conversations than workers, with the shared lock it does not.</p>
+ */
+@Category(Benchmarks.class)
+public class ConversationLockingStressTest {
+    private static final int EVENTS = 200000;
+
+    private static final class Run {
+        final List<Conversation> conversations = new ArrayList<>();
+        final List<List<Text>> texts = new ArrayList<>();
+
+        Run(int conversationCount) {
+            for (int c = 0; c < conversationCount; c++) {
+                Conversation conversation = new Conversation("conversation " + c, "CON-" + c, "MEM-self");
+                conversation.addMember(new Member("USR-" + c, "user " + c, "MEM-" + c));
+                this.conversations.add(conversation);
+                this.texts.add(new ArrayList<Text>());
+            }
+            for (int i = 0; i < EVENTS; i++)
+                this.texts.get(i % conversationCount).add(new Text("message " + i, "EV-" + i, new Date(i)));
+        }
+    }
+
+    // what onTextReceived does for a new text, under the given lock.
+    private static void apply(Object lock, Conversation conversation, Text text) {
+        synchronized(lock) {
+            text.setMember(conversation.getMember("MEM-" + conversation.getConversationId().substring(4)));
+            conversation.addMessage(text);
+            text.setConversation(conversation);
+            conversation.updateLastEventId(text.getId());
+        }
+    }
+
+    private static double eventsPerMillisecond(final Run run, int workers, final boolean sharedLock) throws InterruptedException {
+        final Object channelLock = new Object();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(workers);
+        final AtomicBoolean applying = new AtomicBoolean(true);
+        final AtomicReference<String> readError = new AtomicReference<>();
+        final AtomicInteger reads = new AtomicInteger();
+
+        for (int worker = 0; worker < workers; worker++) {
+            final int owner = worker;
+            final int workerCount = workers;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // round robin over the owned conversations, as their events arrive interleaved.
+                    int[] positions = new int[run.conversations.size()];
+                    boolean pending = true;
+                    while (pending) {
+                        pending = false;
+                        for (int c = owner; c < run.conversations.size(); c += workerCount) {
+                            List<Text> texts = run.texts.get(c);
+                            if (positions[c] < texts.size()) {
+                                Conversation conversation = run.conversations.get(c);
+                                apply(sharedLock ? channelLock : conversation, conversation, texts.get(positions[c]++));
+                                pending = true;
+                            }
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                while (applying.get()) {
+                    Conversation conversation = run.conversations.get(random.nextInt(run.conversations.size()));
+                    long previous = Long.MIN_VALUE;
+                    for (Text text : conversation.getMessages()) {
+                        long timestamp = text.getTimestamp().getTime();
+                        if (timestamp < previous)
+                            readError.compareAndSet(null, "out of order in " + conversation.getConversationId());
+                        previous = timestamp;
+                    }
+                    reads.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - begin;
+        applying.set(false);
+        reader.join();
+
+        assertNull(readError.get());
+        for (int c = 0; c < run.conversations.size(); c++) {
+            Conversation conversation = run.conversations.get(c);
+            List<Text> texts = run.texts.get(c);
+            assertEquals(texts.size(), conversation.getMessages().size());
+            assertEquals(texts.get(texts.size() - 1).getId(), conversation.getLastEventId());
+        }
+        return EVENTS / (elapsed / 1e6);
+    }
+
+    @Test
+    public void stressScaling() throws InterruptedException {
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("available processors: " + processors);
+        for (int conversations : new int[] { 1, 16, 256 }) {
+            for (int workers = 1; workers <= Math.min(8, Math.max(2, processors)); workers *= 2) {
+                double perConversation = eventsPerMillisecond(new Run(conversations), workers, false);
+                double shared = eventsPerMillisecond(new Run(conversations), workers, true);
+                System.out.println(String.format("%3d conversations, %d workers: %8.0f events/ms with a lock per conversation, %8.0f with a shared lock",
+                        conversations, workers, perConversation, shared));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.core.persistence.CacheDB;
+import com.nexmo.sdk.conversation.core.persistence.TestCacheDB;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class EventArchiveTest {
+    private static final String CID = "CON-1";
+    // long enough for the queued writes to wait for a flush.
+    private static final long DELAY = 60 * 1000;
+
+    private final List<Boolean> archived = Collections.synchronizedList(new ArrayList<Boolean>());
+    private final EventArchive.ArchiveListener listener = new EventArchive.ArchiveListener() {
+        @Override
+        public void onArchived(boolean committed) {
+            EventArchiveTest.this.archived.add(committed);
+        }
+    };
+    private CacheDB cacheDB;
+    private CacheWriter cacheWriter;
+    private EventArchive eventArchive;
+    private Conversation conversation;
+
+    @Before
+    public void setUp() {
+        this.cacheDB = TestCacheDB.create(RuntimeEnvironment.application);
+        this.cacheWriter = new CacheWriter(this.cacheDB, DELAY, 10);
+        this.eventArchive = new EventArchive(this.cacheDB, this.cacheWriter);
+        this.conversation = new Conversation("conversation", CID, "MEM-self");
+    }
+
+    @After
+    public void tearDown() {
+        TestCacheDB.delete(this.cacheDB, RuntimeEnvironment.application);
+    }
+
+    private static List<Text> texts(String... ids) {
+        List<Text> texts = new ArrayList<>();
+        for (String id : ids)
+            texts.add(new Text("text " + id, id, new Date(), new Member("MEM-1")));
+        return texts;
+    }
+
+    @Test
+    public void testArchiveDoesNotWait() {
+        this.eventArchive.archive(this.conversation, texts("EV-1", "EV-2"), Collections.<Image>emptyList(), this.listener);
+        assertTrue(this.archived.isEmpty());
+        assertTrue(this.eventArchive.getTextsArchived().isEmpty());
+
+        this.cacheWriter.flush();
+        assertEquals(Arrays.asList(true), this.archived);
+        assertTrue(this.eventArchive.getTextsArchived().contains(CID));
+
+        // once committed, the evicted texts are read without waiting for the queued writes.
+        Text text = this.eventArchive.readText(this.conversation, "EV-2");
+        assertNotNull(text);
+        assertEquals(CID, text.getConversation().getConversationId());
+        assertEquals("EV-1", this.eventArchive.readText(this.conversation, 0).getId());
+    }
+
+    @Test
+    public void testDroppedArchiveKeepsTheEvents() {
+        this.eventArchive.archive(this.conversation, texts("EV-1"), Collections.<Image>emptyList(), this.listener);
+        this.cacheWriter.clear();
+
+        // the texts are still to be kept in memory.
+        assertEquals(Arrays.asList(false), this.archived);
+        assertTrue(this.eventArchive.getTextsArchived().isEmpty());
+        this.cacheWriter.flush();
+        assertNull(this.eventArchive.readText(this.conversation, "EV-1"));
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.ImageRepresentation;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.common.util.DateUtil;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decoding the text and image signals from their parsed tree, against serializing each payload back to a string
+ * and parsing it again with Gson, as the signal handlers used to.
+ */
+@Category(Benchmarks.class)
+public class EventDecoderBenchmark {
+    private static final int EVENTS = 20000;
+    private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    private static List<JSONObject> textEvents() throws JSONException {
+        List<JSONObject> events = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++)
+            events.add(EventDecoderTest.textEvent("EV-" + i, "CON-1", "message number " + i, new Date(1480000000000L + i * 1000L)));
+        return events;
+    }
+
+    private static List<JSONObject> imageEvents() throws JSONException {
+        List<JSONObject> events = new ArrayList<>(EVENTS);
+        for (int i = 0; i < EVENTS; i++)
+            events.add(new JSONObject()
+                    .put("id", "EV-" + i)
+                    .put("timestamp", DateUtil.formatIso8601DateString(new Date(1480000000000L + i * 1000L)))
+                    .put("body", new JSONObject().put("representations", EventDecoderTest.representations())));
+        return events;
+    }
+
+    // the former onText: the body went through a string and Gson.
+    private static Text reparseText(JSONObject event) throws JSONException {
+        Text parsed = GSON.fromJson(event.getJSONObject("body").toString(), Text.class);
+        Date timestamp = null;
+        try {
+            timestamp = DateUtil.formatIso8601DateString(event.getString("timestamp"));
+        } catch (ParseException e) {
+            // as before, the text is kept without a timestamp.
+        }
+        return new Text(parsed.getPayload(), event.getString("id"), timestamp);
+    }
+
+    // the former onImage: every representation went through a string and Gson.
+    private static Image reparseImage(JSONObject event) throws JSONException {
+        JSONObject representations = event.getJSONObject("body").getJSONObject("representations");
+        Image image = new Image(event.getString("id"), EventDecoder.decodeTimestamp(event, "timestamp"));
+        ImageRepresentation original = GSON.fromJson(representations.getJSONObject("original").toString(), ImageRepresentation.class);
+        ImageRepresentation medium = GSON.fromJson(representations.getJSONObject("medium").toString(), ImageRepresentation.class);
+        ImageRepresentation thumbnail = GSON.fromJson(representations.getJSONObject("thumbnail").toString(), ImageRepresentation.class);
+        original.type = ImageRepresentation.TYPE.ORIGINAL;
+        medium.type = ImageRepresentation.TYPE.MEDIUM;
+        thumbnail.type = ImageRepresentation.TYPE.THUMBNAIL;
+        image.addRepresentations(original, medium, thumbnail);
+        return image;
+    }
+
+    @Test
+    public void benchmarkTexts() throws JSONException {
+        final List<JSONObject> events = textEvents();
+        final Member member = new Member("MEM-1");
+        assertEquals(reparseText(events.get(7)).getPayload(), EventDecoder.decodeText(events.get(7), member).getPayload());
+
+        Benchmark reparsed = Benchmark.run("text, toString and Gson", EVENTS, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (JSONObject event : events)
+                        reparseText(event);
+                } catch (JSONException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        Benchmark decoded = Benchmark.run("text, decoded from the tree", EVENTS, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (JSONObject event : events)
+                        EventDecoder.decodeText(event, member);
+                } catch (JSONException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        if (decoded.reportsAllocations())
+            assertTrue(decoded.bytesPerOperation < reparsed.bytesPerOperation);
+    }
+
+    @Test
+    public void benchmarkImages() throws JSONException {
+        final List<JSONObject> events = imageEvents();
+        Benchmark reparsed = Benchmark.run("image, toString and Gson", EVENTS, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (JSONObject event : events)
+                        reparseImage(event);
+                } catch (JSONException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        Benchmark decoded = Benchmark.run("image, decoded from the tree", EVENTS, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (JSONObject event : events) {
+                        Image image = new Image(event.getString("id"), EventDecoder.decodeTimestamp(event, "timestamp"));
+                        EventDecoder.decodeRepresentations(event.getJSONObject("body").getJSONObject("representations"), image);
+                    }
+                } catch (JSONException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        if (decoded.reportsAllocations())
+            assertTrue(decoded.bytesPerOperation < reparsed.bytesPerOperation);
+    }
+
+}
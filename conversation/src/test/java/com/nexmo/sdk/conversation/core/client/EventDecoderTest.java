@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.ImageRepresentation;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.client.User;
+import com.nexmo.sdk.conversation.common.util.DateUtil;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class EventDecoderTest {
+
+    static JSONObject textEvent(String id, String cid, String payload, Date timestamp) throws JSONException {
+        return new JSONObject()
+                .put("id", id)
+                .put("cid", cid)
+                .put("from", "MEM-1")
+                .put("timestamp", DateUtil.formatIso8601DateString(timestamp))
+                .put("body", new JSONObject().put("text", payload));
+    }
+
+    static JSONObject representations() throws JSONException {
+        return new JSONObject()
+                .put("original", new JSONObject().put("id", "o").put("url", "https://host/o").put("size", 300))
+                .put("medium", new JSONObject().put("id", "m").put("url", "https://host/m").put("size", 200))
+                .put("thumbnail", new JSONObject().put("id", "t").put("url", "https://host/t").put("size", 100));
+    }
+
+    @Test
+    public void testDecodeText() throws JSONException {
+        Date timestamp = new Date(1480000000000L);
+        Member member = new Member("MEM-1");
+        Text text = EventDecoder.decodeText(textEvent("EV-1", "CON-1", "hello", timestamp), member);
+
+        assertEquals("EV-1", text.getId());
+        assertEquals("hello", text.getPayload());
+        assertEquals(timestamp.getTime() / 1000, text.getTimestamp().getTime() / 1000);
+        assertSame(member, text.getMember());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testDecodeTextWithoutBody() throws JSONException {
+        EventDecoder.decodeText(new JSONObject().put("id", "EV-1"), null);
+    }
+
+    @Test
+    public void testDecodeTimestamp() throws JSONException {
+        assertNull(EventDecoder.decodeTimestamp(new JSONObject(), "timestamp"));
+        assertNull(EventDecoder.decodeTimestamp(new JSONObject().put("timestamp", "yesterday"), "timestamp"));
+        assertNotNull(EventDecoder.decodeTimestamp(new JSONObject().put("timestamp",
+                DateUtil.formatIso8601DateString(new Date())), "timestamp"));
+    }
+
+    @Test
+    public void testDecodeMemberAndUser() throws JSONException {
+        JSONObject json = new JSONObject().put("user_id", "USR-1").put("name", "alice").put("member_id", "MEM-1");
+        Member member = EventDecoder.decodeMember(json);
+        assertEquals("USR-1", member.getUser_id());
+        assertEquals("alice", member.getName());
+        assertEquals("MEM-1", member.getMemberId());
+
+        User user = EventDecoder.decodeUser(json);
+        assertEquals("USR-1", user.getUserId());
+        assertEquals("alice", user.getName());
+    }
+
+    @Test
+    public void testDecodeConversation() throws JSONException {
+        JSONObject json = new JSONObject().put("id", "CON-1").put("name", "chat").put("member_id", "MEM-1")
+                .put("sequence_number", "42").put("extra", JSONObject.NULL);
+        Conversation conversation = EventDecoder.decodeConversation(json, null);
+        assertEquals("CON-1", conversation.getConversationId());
+        assertEquals("chat", conversation.getName());
+        assertEquals("MEM-1", conversation.getMemberId());
+        assertEquals("42", conversation.getLastEventId());
+    }
+
+    @Test
+    public void testNullFieldsAreDecodedAsNull() throws JSONException {
+        JSONObject json = new JSONObject().put("id", "CON-1").put("name", JSONObject.NULL);
+        assertNull(EventDecoder.decodeConversation(json, null).getName());
+        assertNull(EventDecoder.optString(json, "missing"));
+    }
+
+    @Test
+    public void testDecodeRepresentations() throws JSONException {
+        Image image = new Image("EV-1", new Date());
+        EventDecoder.decodeRepresentations(representations(), image);
+
+        ImageRepresentation original = image.getOriginal();
+        assertEquals(ImageRepresentation.TYPE.ORIGINAL, original.type);
+        assertEquals("o", original.id);
+        assertEquals("https://host/o", original.url);
+        assertEquals(300, original.size);
+        assertEquals("m", image.getMedium().id);
+        assertEquals(100, image.getThumbnail().size);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testDecodeMissingRepresentation() throws JSONException {
+        JSONObject representations = representations();
+        representations.remove("medium");
+        EventDecoder.decodeRepresentations(representations, new Image("EV-1", new Date()));
+    }
+
+    @Test
+    public void testIdsAreShared() throws JSONException {
+        String first = EventDecoder.getId(new JSONObject().put("cid", new String("CON-shared")), "cid");
+        String second = EventDecoder.optId(new JSONObject().put("cid", new String("CON-shared")), "cid");
+        assertSame(first, second);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.event.ConversationListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventsSyncTest {
+    private final List<String> fetched = new ArrayList<>();
+    private final List<ConversationListener> listeners = new ArrayList<>();
+    private EventsSync eventsSync;
+
+    @Before
+    public void setUp() {
+        this.eventsSync = new EventsSync(new EventsSync.Fetcher() {
+            @Override
+            public String fetch(String cid, ConversationListener listener) {
+                EventsSyncTest.this.fetched.add(cid);
+                EventsSyncTest.this.listeners.add(listener);
+                return "TID-" + EventsSyncTest.this.fetched.size();
+            }
+        }, 2);
+    }
+
+    private static List<Conversation> conversations(String... cids) {
+        List<Conversation> conversations = new ArrayList<>();
+        for (String cid : cids)
+            conversations.add(new Conversation("conversation " + cid, cid, "MEM-self"));
+        return conversations;
+    }
+
+    @Test
+    public void testConcurrency() {
+        this.eventsSync.sync(conversations("1", "2", "3", "4"));
+        assertEquals(Arrays.asList("1", "2"), this.fetched);
+        assertEquals(2, this.eventsSync.inFlight());
+
+        // the next one starts as soon as one completes or fails.
+        this.listeners.get(0).onConversationUpdated(null);
+        assertEquals(Arrays.asList("1", "2", "3"), this.fetched);
+        this.listeners.get(1).onError(ConversationListener.MISSING_CONVERSATION, "Missing conversation");
+        assertEquals(Arrays.asList("1", "2", "3", "4"), this.fetched);
+
+        // a completion is counted once.
+        this.listeners.get(0).onConversationUpdated(null);
+        assertEquals(2, this.eventsSync.inFlight());
+        this.listeners.get(2).onConversationUpdated(null);
+        this.listeners.get(3).onConversationUpdated(null);
+        assertEquals(0, this.eventsSync.inFlight());
+    }
+
+    @Test
+    public void testQueuedOnce() {
+        this.eventsSync.sync(conversations("1", "2", "3", "4"));
+        this.eventsSync.sync(conversations("4", "3", "5"));
+        for (int i = 0; i < this.listeners.size(); i++)
+            this.listeners.get(i).onConversationUpdated(null);
+
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5"), this.fetched);
+
+        this.eventsSync.clear();
+        this.eventsSync.sync(conversations("6"));
+        assertEquals("6", this.fetched.get(5));
+    }
+
+    @Test
+    public void testReconnection() {
+        this.eventsSync.sync(conversations("1", "2", "3"));
+
+        // disconnected: the requests in flight are never answered.
+        assertEquals(Arrays.asList("TID-1", "TID-2"), sorted(this.eventsSync.reset()));
+        assertEquals(0, this.eventsSync.inFlight());
+        assertTrue(this.eventsSync.reset().isEmpty());
+
+        // the next session syncs right away, without waiting for the dropped requests.
+        this.eventsSync.sync(conversations("1", "2", "3"));
+        assertEquals(Arrays.asList("1", "2", "1", "2"), this.fetched);
+
+        // a late completion of a dropped sync does not start another one.
+        this.listeners.get(0).onError(ConversationListener.MISSING_CONVERSATION, "timeout");
+        assertEquals(4, this.fetched.size());
+        assertEquals(2, this.eventsSync.inFlight());
+
+        this.listeners.get(2).onConversationUpdated(null);
+        assertEquals(Arrays.asList("1", "2", "1", "2", "3"), this.fetched);
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+}
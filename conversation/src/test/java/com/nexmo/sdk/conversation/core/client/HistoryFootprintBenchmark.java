@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The heap retained by the texts of a 50k-event history sent by 50 members. Each frame is parsed again,
+ * so every event brings its own copy of the sender id, as received from the socket.
+ * A sender used to be a new member, with its own id, for every event; it is now one interned member per page.
+ */
+@Category(Benchmarks.class)
+public class HistoryFootprintBenchmark {
+    private static final int EVENTS = 50000;
+    private static final int MEMBERS = 50;
+
+    private static String[] frames() throws JSONException {
+        String[] frames = new String[EVENTS];
+        for (int i = 0; i < EVENTS; i++)
+            frames[i] = new JSONObject()
+                    .put("id", "EV-" + i)
+                    .put("from", "MEM-5c1d7a2e-" + (i % MEMBERS))
+                    .put("body", new JSONObject().put("text", "message " + i))
+                    .toString();
+        return frames;
+    }
+
+    @Test
+    public void benchmarkRetainedHeap() throws JSONException {
+        final String[] frames = frames();
+        Map<String, Member> check = new HashMap<>();
+        assertSame(SocketClient.historySender(check, new JSONObject(frames[0])),
+                SocketClient.historySender(check, new JSONObject(frames[MEMBERS])));
+
+        double former = Benchmark.retainedBytes("history, a member per event", EVENTS, new Benchmark.Factory() {
+            @Override
+            public Object create() {
+                List<Text> texts = new ArrayList<>(EVENTS);
+                try {
+                    for (String frame : frames) {
+                        JSONObject event = new JSONObject(frame);
+                        texts.add(new Text(event.getJSONObject("body").getString("text"), event.getString("id"), new Date(),
+                                new Member(event.getString("from"))));
+                    }
+                } catch (JSONException e) {
+                    throw new AssertionError(e);
+                }
+                return texts;
+            }
+        });
+        double interned = Benchmark.retainedBytes("history, interned senders", EVENTS, new Benchmark.Factory() {
+            @Override
+            public Object create() {
+                List<Text> texts = new ArrayList<>(EVENTS);
+                Map<String, Member> senders = new HashMap<>();
+                try {
+                    for (String frame : frames) {
+                        JSONObject event = new JSONObject(frame);
+                        texts.add(new Text(event.getJSONObject("body").getString("text"), event.getString("id"), new Date(),
+                                SocketClient.historySender(senders, event)));
+                    }
+                } catch (JSONException e) {
+                    throw new AssertionError(e);
+                }
+                return texts;
+            }
+        });
+        assertTrue(interned < former);
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IdInternerTest {
+
+    @Test
+    public void testEqualIdsShareOneInstance() {
+        IdInterner interner = new IdInterner(16);
+        String first = interner.intern(new String("CON-1"));
+        String second = interner.intern(new String("CON-1"));
+
+        assertSame(first, second);
+        assertNotSame(first, interner.intern(new String("CON-2")));
+        assertEquals(2, interner.size());
+    }
+
+    @Test
+    public void testNull() {
+        IdInterner interner = new IdInterner(16);
+        assertNull(interner.intern(null));
+        assertEquals(0, interner.size());
+    }
+
+    @Test
+    public void testTheTableIsBounded() {
+        IdInterner interner = new IdInterner(4);
+        String first = interner.intern(new String("ID-0"));
+        for (int i = 1; i < 100; i++) {
+            interner.intern("ID-" + i);
+            assertEquals(true, interner.size() <= 4);
+        }
+        // the ids interned before the table was emptied stay valid, and equal.
+        assertEquals("ID-0", first);
+        assertEquals(first, interner.intern(new String("ID-0")));
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void testTasksOfAKeyRunInOrder() throws InterruptedException {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(4);
+        final int keys = 8;
+        final int tasks = 500;
+        final Map<String, List<Integer>> runs = new HashMap<>();
+        final CountDownLatch done = new CountDownLatch(keys * tasks);
+        for (int key = 0; key < keys; key++)
+            runs.put("cid" + key, Collections.synchronizedList(new ArrayList<Integer>()));
+
+        for (int task = 0; task < tasks; task++)
+            for (int key = 0; key < keys; key++) {
+                final List<Integer> run = runs.get("cid" + key);
+                final int index = task;
+                executor.execute("cid" + key, new Runnable() {
+                    @Override
+                    public void run() {
+                        run.add(index);
+                        done.countDown();
+                    }
+                });
+            }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> run : runs.values()) {
+            assertEquals(tasks, run.size());
+            for (int index = 0; index < tasks; index++)
+                assertEquals(index, (int) run.get(index));
+        }
+    }
+
+    @Test
+    public void testTasksOfAKeyDoNotOverlap() throws InterruptedException {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(4);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(200);
+        for (int task = 0; task < 200; task++)
+            executor.execute("cid", new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1)
+                        overlaps.incrementAndGet();
+                    Thread.yield();
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void testKeysRunInParallel() throws InterruptedException {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(2);
+        // each task waits for the other one, which only completes if they run at the same time.
+        final CountDownLatch both = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        for (String key : new String[] { "a", "b" })
+            executor.execute(key, new Runnable() {
+                @Override
+                public void run() {
+                    both.countDown();
+                    try {
+                        if (both.await(5, TimeUnit.SECONDS))
+                            done.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAFailingTaskDoesNotStopItsKey() throws InterruptedException {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("cid", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        executor.execute("cid", new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownStopsTheWorkers() throws InterruptedException {
+        KeyedSerialExecutor executor = new KeyedSerialExecutor(1);
+        final AtomicReference<Thread> worker = new AtomicReference<>();
+        final AtomicReference<Thread> next = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        executor.execute("cid", new Runnable() {
+            @Override
+            public void run() {
+                worker.set(Thread.currentThread());
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        });
+        executor.execute("cid", new Runnable() {
+            @Override
+            public void run() {
+                next.set(Thread.currentThread());
+                done.countDown();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // the tasks executed before the shutdown still run on the same workers, then the workers end.
+        executor.shutdown();
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(worker.get(), next.get());
+        worker.get().join(5000);
+        assertFalse(worker.get().isAlive());
+
+        // the next session starts a new worker.
+        final CountDownLatch again = new CountDownLatch(1);
+        executor.execute("cid", new Runnable() {
+            @Override
+            public void run() {
+                again.countDown();
+            }
+        });
+        assertTrue(again.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+}
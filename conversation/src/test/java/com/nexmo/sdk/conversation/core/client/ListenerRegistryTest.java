@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerRegistryTest {
+
+    @Test
+    public void testListenersInRegistrationOrder() {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        registry.add("CON-1", "a", false);
+        registry.add("CON-1", "b", false);
+        registry.add("CON-2", "c", false);
+        registry.add(null, "d", false);
+        registry.add("CON-2", null, false);
+
+        assertEquals(Arrays.asList("a", "b"), registry.get("CON-1"));
+        assertEquals(Collections.singletonList("c"), registry.get("CON-2"));
+        assertTrue(registry.get("CON-3").isEmpty());
+        assertTrue(registry.get(null).isEmpty());
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testSnapshotsDoNotSeeLaterRegistrations() {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        registry.add("CON-1", "a", false);
+        List<String> snapshot = registry.get("CON-1");
+        registry.add("CON-1", "b", false);
+        registry.remove("CON-1", "a");
+
+        assertEquals(Collections.singletonList("a"), snapshot);
+        assertEquals(Collections.singletonList("b"), registry.get("CON-1"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotsAreImmutable() {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        registry.add("CON-1", "a", false);
+        registry.get("CON-1").add("b");
+    }
+
+    @Test
+    public void testRemoveTheFirstRegistration() {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        registry.add("CON-1", "a", false);
+        registry.add("CON-1", "b", false);
+        registry.add("CON-1", "a", false);
+        registry.remove("CON-1", "a");
+
+        assertEquals(Arrays.asList("b", "a"), registry.get("CON-1"));
+    }
+
+    @Test
+    public void testConversationIsForgottenWithItsLastListener() {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        registry.add("CON-1", "a", false);
+        registry.remove("CON-1", "a");
+        registry.remove("CON-2", "a");
+
+        assertEquals(0, registry.size());
+        assertTrue(registry.get("CON-1").isEmpty());
+    }
+
+    @Test
+    public void testCollectedWeakListenersArePruned() throws InterruptedException {
+        ListenerRegistry<Object> registry = new ListenerRegistry<>();
+        Object strong = new Object();
+        Object weak = new Object();
+        registry.add("CON-1", strong, false);
+        registry.add("CON-1", weak, true);
+        registry.add("CON-2", new Object(), true);
+        assertEquals(Arrays.asList(strong, weak), registry.get("CON-1"));
+
+        weak = null;
+        for (int attempt = 0; attempt < 50 && (registry.get("CON-1").size() > 1 || !registry.get("CON-2").isEmpty()); attempt++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(Collections.singletonList(strong), registry.get("CON-1"));
+        // dispatching to a conversation without any listener left forgets it.
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testClear() {
+        ListenerRegistry<String> registry = new ListenerRegistry<>();
+        registry.add("CON-1", "a", false);
+        registry.clear();
+        assertEquals(0, registry.size());
+    }
+
+}
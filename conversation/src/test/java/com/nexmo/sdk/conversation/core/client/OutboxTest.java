@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.event.CompletionListeners.TextSendListener;
+import com.nexmo.sdk.conversation.core.client.request.Request;
+import com.nexmo.sdk.conversation.core.client.request.SendMessageRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+    private Outbox outbox;
+
+    @Before
+    public void setUp() {
+        // in memory only.
+        this.outbox = new Outbox(null, null, 2);
+    }
+
+    private static SendMessageRequest text(String tid) {
+        return new SendMessageRequest(Request.TYPE.SEND_TEXT, tid, "cid", "member", "payload " + tid, (TextSendListener) null);
+    }
+
+    private static List<String> tids(List<SendMessageRequest> requests) {
+        List<String> tids = new ArrayList<>();
+        for (SendMessageRequest request : requests)
+            tids.add(request.tid);
+        return tids;
+    }
+
+    private void enqueue(String... tids) {
+        for (String tid : tids)
+            this.outbox.enqueue(text(tid));
+    }
+
+    @Test
+    public void testWindow() {
+        enqueue("1", "2", "3", "4");
+        assertEquals(Arrays.asList("1", "2"), tids(this.outbox.nextWindow()));
+        assertTrue(this.outbox.nextWindow().isEmpty());
+
+        assertEquals("1", this.outbox.complete("1").tid);
+        assertEquals(Arrays.asList("3"), tids(this.outbox.nextWindow()));
+        assertEquals(3, this.outbox.size());
+    }
+
+    @Test
+    public void testDuplicatesAreIgnored() {
+        SendMessageRequest first = text("1");
+        this.outbox.enqueue(first);
+        this.outbox.enqueue(text("1"));
+        assertEquals(1, this.outbox.size());
+        assertSame(first, this.outbox.get("1"));
+    }
+
+    @Test
+    public void testCompleteUnknownTid() {
+        enqueue("1");
+        assertNull(this.outbox.complete("unknown"));
+        assertEquals("1", this.outbox.complete("1").tid);
+        assertNull(this.outbox.complete("1"));
+        assertFalse(this.outbox.contains("1"));
+    }
+
+    @Test
+    public void testRequeueInFlightKeepsOrder() {
+        enqueue("1", "2", "3");
+        this.outbox.nextWindow();
+        assertEquals(Arrays.asList("1", "2"), tids(this.outbox.requeueInFlight()));
+        assertEquals(Arrays.asList("1", "2"), tids(this.outbox.nextWindow()));
+        this.outbox.complete("1");
+        assertEquals(Arrays.asList("3"), tids(this.outbox.nextWindow()));
+    }
+
+    @Test
+    public void testAttempts() {
+        enqueue("1", "2", "3");
+        this.outbox.nextWindow();
+        this.outbox.requeueInFlight();
+        this.outbox.nextWindow();
+        this.outbox.complete("1");
+        this.outbox.nextWindow();
+
+        // counted on every send, the events sent again keep their count.
+        assertEquals(2, this.outbox.get("2").attempts);
+        assertEquals(1, this.outbox.get("3").attempts);
+        assertEquals(Arrays.asList("2", "3"), tids(this.outbox.requeueInFlight()));
+        assertEquals(2, this.outbox.get("2").attempts);
+    }
+
+    @Test
+    public void testDiscard() {
+        enqueue("1", "2", "3");
+        this.outbox.nextWindow();
+        assertEquals(Arrays.asList("1", "2", "3"), tids(this.outbox.discard()));
+        assertEquals(0, this.outbox.size());
+        assertTrue(this.outbox.nextWindow().isEmpty());
+    }
+
+    @Test
+    public void testRestoreAnotherUserDropsTheEvents() {
+        assertTrue(this.outbox.restore("alice").isEmpty());
+        enqueue("1");
+        assertTrue(this.outbox.restore("alice").isEmpty());
+        assertEquals(1, this.outbox.size());
+
+        assertTrue(this.outbox.restore("bob").isEmpty());
+        assertEquals(0, this.outbox.size());
+    }
+
+    @Test
+    public void testEventsQueuedBeforeTheFirstSessionAreKept() {
+        enqueue("1", "2");
+        this.outbox.restore("alice");
+        assertEquals(Arrays.asList("1", "2"), tids(this.outbox.nextWindow()));
+    }
+
+}
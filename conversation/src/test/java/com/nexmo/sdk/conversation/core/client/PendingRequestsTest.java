@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.event.ConversationGenericListener;
+import com.nexmo.sdk.conversation.core.client.request.Request;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PendingRequestsTest {
+    private PendingRequests pendingRequests;
+
+    @Before
+    public void setUp() {
+        // expire after 50ms, on a 10ms wheel.
+        this.pendingRequests = new PendingRequests(new CallbackDispatcher(), 50, 10);
+    }
+
+    @After
+    public void tearDown() {
+        this.pendingRequests.clear();
+    }
+
+    private static Request request(String tid, final ConversationGenericListener listener) {
+        return new Request(Request.TYPE.TYPING, tid) {
+            @Override
+            public ConversationGenericListener getListener() {
+                return listener;
+            }
+        };
+    }
+
+    private static final class RecordingListener implements ConversationGenericListener {
+        final CountDownLatch failed = new CountDownLatch(1);
+        volatile int errCode;
+
+        @Override
+        public void onError(int errCode, String errMessage) {
+            this.errCode = errCode;
+            this.failed.countDown();
+        }
+    }
+
+    @Test
+    public void testAcknowledge() {
+        RecordingListener listener = new RecordingListener();
+        Request request = request("tid", listener);
+        this.pendingRequests.add(request);
+        this.pendingRequests.markSent("tid");
+        assertEquals(Request.STATE.SENT, request.state);
+        assertEquals(1, this.pendingRequests.count(Request.STATE.SENT));
+        assertEquals(1, this.pendingRequests.count(Request.TYPE.TYPING));
+
+        assertNull(this.pendingRequests.acknowledge("tid", TestRequest.class));
+        assertSame(request, this.pendingRequests.acknowledge("tid", Request.class));
+        assertNull(this.pendingRequests.acknowledge("tid", Request.class));
+        assertEquals(Request.STATE.ACKED, request.state);
+        assertEquals(0, this.pendingRequests.size());
+        assertEquals(1, listener.failed.getCount());
+    }
+
+    @Test
+    public void testFail() {
+        RecordingListener listener = new RecordingListener();
+        Request request = request("tid", listener);
+        this.pendingRequests.add(request);
+        this.pendingRequests.fail("tid", "rejected");
+
+        assertEquals(0, listener.failed.getCount());
+        assertEquals(ConversationGenericListener.GENERIC_ERR, listener.errCode);
+        assertEquals(Request.STATE.FAILED, request.state);
+        assertEquals(0, this.pendingRequests.size());
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        Request request = request("tid", listener);
+        this.pendingRequests.add(request);
+
+        assertTrue(listener.failed.await(2, TimeUnit.SECONDS));
+        assertEquals(ConversationGenericListener.REQUEST_TIMEOUT, listener.errCode);
+        assertEquals(Request.STATE.TIMED_OUT, request.state);
+        assertEquals(0, this.pendingRequests.size());
+    }
+
+    @Test
+    public void testTimeoutHandler() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        final CountDownLatch handled = new CountDownLatch(1);
+        this.pendingRequests.add(request("tid", listener), new Runnable() {
+            @Override
+            public void run() {
+                handled.countDown();
+                throw new IllegalStateException("the ticks go on");
+            }
+        });
+        RecordingListener other = new RecordingListener();
+        this.pendingRequests.add(request("other", other));
+
+        assertTrue(handled.await(2, TimeUnit.SECONDS));
+        assertTrue(other.failed.await(2, TimeUnit.SECONDS));
+        // the handler replaces the listener.
+        assertEquals(1, listener.failed.getCount());
+    }
+
+    @Test
+    public void testRemoveAndClearDoNotNotify() throws InterruptedException {
+        RecordingListener removed = new RecordingListener();
+        RecordingListener cleared = new RecordingListener();
+        this.pendingRequests.add(request("removed", removed));
+        this.pendingRequests.remove("removed");
+        assertEquals(0, this.pendingRequests.size());
+
+        this.pendingRequests.add(request("cleared", cleared));
+        this.pendingRequests.clear();
+        assertEquals(0, this.pendingRequests.size());
+
+        assertFalse(removed.failed.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, cleared.failed.getCount());
+    }
+
+    @Test
+    public void testMarkSentRestartsTheTimeout() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        this.pendingRequests.add(request("tid", listener));
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(30);
+            this.pendingRequests.markSent("tid");
+        }
+        assertEquals(1, this.pendingRequests.size());
+        assertTrue(listener.failed.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRegistriesShareOneThread() throws InterruptedException {
+        int before = tickerThreads();
+        PendingRequests[] registries = new PendingRequests[10];
+        final AtomicInteger timedOut = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(registries.length);
+        for (int i = 0; i < registries.length; i++) {
+            registries[i] = new PendingRequests(new CallbackDispatcher(), 20, 10);
+            registries[i].add(request("tid", new ConversationGenericListener() {
+                @Override
+                public void onError(int errCode, String errMessage) {
+                    timedOut.incrementAndGet();
+                    done.countDown();
+                }
+            }));
+        }
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(registries.length, timedOut.get());
+        assertTrue(tickerThreads() <= Math.max(1, before));
+    }
+
+    private static int tickerThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (PendingRequests.class.getSimpleName().equals(thread.getName()))
+                count++;
+        return count;
+    }
+
+    private static class TestRequest extends Request {
+        TestRequest(String tid) {
+            super(TYPE.GET, tid);
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.SeenReceipt;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Attaching the seen receipts of a history page to its events, on synthetic pages of 1k, 10k and 50k events.
+ * Half of the events are texts, half images.
+ *
+ * <p>The join by id is measured against the nested loops it replaced, over every receipt and every event.
+ * They are only measured up to 10k events: at 50k events a page takes minutes.
+ * Every run assembles a new page, so both also measure creating the events, the same for both.</p>
+ */
+@Category(Benchmarks.class)
+public class SeenReceiptJoinBenchmark {
+    private static final int RECEIPTS_PER_EVENT = 5;
+
+    private static final class Page {
+        final List<Text> messages = new ArrayList<>();
+        final List<Image> images = new ArrayList<>();
+
+        Page(int events) {
+            for (int i = 0; i < events; i++) {
+                if (i % 2 == 0)
+                    this.messages.add(new Text("message " + i, "EV-" + i, new Date(i)));
+                else
+                    this.images.add(new Image("EV-" + i, new Date(i)));
+            }
+        }
+    }
+
+    private static List<SeenReceipt> receipts(int events, int receiptsPerEvent) {
+        List<SeenReceipt> receipts = new ArrayList<>(events * receiptsPerEvent);
+        for (int member = 0; member < receiptsPerEvent; member++)
+            for (int i = 0; i < events; i++)
+                receipts.add(new SeenReceipt("EV-" + i, "MEM-" + member, new Date(i)));
+        Collections.shuffle(receipts, new Random(events));
+        return receipts;
+    }
+
+    // the former onEventsHistory.
+    private static void nestedLoops(List<Text> messages, List<Image> images, List<SeenReceipt> seenReceipts) {
+        for (SeenReceipt seenReceipt : seenReceipts) {
+            for (Text message : messages) {
+                if (message.getId().equals(seenReceipt.getEvent_id())) {
+                    message.addSeenReceipt(seenReceipt);
+                    break;
+                }
+            }
+            for (Image image : images) {
+                if (image.getId().equals(seenReceipt.getEvent_id())) {
+                    image.addSeenReceipt(seenReceipt);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void benchmark(final int events, boolean withNestedLoops) {
+        final List<SeenReceipt> receipts = receipts(events, RECEIPTS_PER_EVENT);
+        Page check = new Page(events);
+        ConversationSignalingChannel.attachSeenReceipts(check.messages, check.images, receipts);
+        assertEquals(RECEIPTS_PER_EVENT, check.messages.get(0).getSeenReceipts().size());
+        assertEquals(RECEIPTS_PER_EVENT, check.images.get(0).getSeenReceipts().size());
+
+        if (withNestedLoops)
+            Benchmark.run("nested loops, " + events + " events", receipts.size(), 1, new Runnable() {
+                @Override
+                public void run() {
+                    Page page = new Page(events);
+                    nestedLoops(page.messages, page.images, receipts);
+                }
+            });
+        Benchmark.run("join by id, " + events + " events", receipts.size(), new Runnable() {
+            @Override
+            public void run() {
+                Page page = new Page(events);
+                ConversationSignalingChannel.attachSeenReceipts(page.messages, page.images, receipts);
+            }
+        });
+    }
+
+    @Test
+    public void benchmark1k() {
+        benchmark(1000, true);
+    }
+
+    @Test
+    public void benchmark10k() {
+        benchmark(10000, true);
+    }
+
+    @Test
+    public void benchmark50k() {
+        benchmark(50000, false);
+    }
+
+    /**
+     * A busy group: every event of the page is seen by 500 members.
+     * The receipts of an event are attached at once, rather than copying its receipt list for each of them.
+     */
+    @Test
+    public void benchmarkBusyGroup() {
+        final int events = 200;
+        final List<SeenReceipt> receipts = receipts(events, 500);
+        Benchmark.run("one receipt at a time, " + events + " events seen by 500 members", receipts.size(), new Runnable() {
+            @Override
+            public void run() {
+                Page page = new Page(events);
+                for (SeenReceipt seenReceipt : receipts) {
+                    int index = Integer.parseInt(seenReceipt.getEvent_id().substring(3));
+                    (index % 2 == 0 ? page.messages.get(index / 2) : page.images.get(index / 2)).addSeenReceipt(seenReceipt);
+                }
+            }
+        });
+        Benchmark.run("join by id, " + events + " events seen by 500 members", receipts.size(), new Runnable() {
+            @Override
+            public void run() {
+                Page page = new Page(events);
+                ConversationSignalingChannel.attachSeenReceipts(page.messages, page.images, receipts);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.client;
+
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.SeenReceipt;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SeenReceiptJoinTest {
+
+    private static SeenReceipt receipt(String eventId, String memberId) {
+        return new SeenReceipt(eventId, memberId, new Date());
+    }
+
+    @Test
+    public void testReceiptsAreAttachedInOrder() {
+        Text first = new Text("first", "EV-1", new Date());
+        Text second = new Text("second", "EV-2", new Date());
+        Image image = new Image("EV-3", new Date());
+        SeenReceipt a = receipt("EV-1", "MEM-a");
+        SeenReceipt b = receipt("EV-3", "MEM-b");
+        SeenReceipt c = receipt("EV-1", "MEM-c");
+        SeenReceipt unknown = receipt("EV-9", "MEM-d");
+
+        ConversationSignalingChannel.attachSeenReceipts(Arrays.asList(first, second), Collections.singletonList(image),
+                Arrays.asList(a, b, unknown, c));
+
+        assertEquals(Arrays.asList(a, c), first.getSeenReceipts());
+        assertTrue(second.getSeenReceipts().isEmpty());
+        assertEquals(Collections.singletonList(b), image.getSeenReceipts());
+    }
+
+    @Test
+    public void testReceiptsGoToTheFirstEventWithTheirId() {
+        Text first = new Text("first", "EV-1", new Date());
+        Text duplicate = new Text("duplicate", "EV-1", new Date());
+        SeenReceipt a = receipt("EV-1", "MEM-a");
+
+        ConversationSignalingChannel.attachSeenReceipts(Arrays.asList(first, duplicate), Collections.<Image>emptyList(),
+                Collections.singletonList(a));
+
+        assertEquals(Collections.singletonList(a), first.getSeenReceipts());
+        assertTrue(duplicate.getSeenReceipts().isEmpty());
+    }
+
+    @Test
+    public void testReceiptsAreAddedToTheKnownOnes() {
+        SeenReceipt known = receipt("EV-1", "MEM-a");
+        Text text = new Text("text", "EV-1", new Date(), null, null, Collections.singletonList(known));
+        List<SeenReceipt> before = text.getSeenReceipts();
+        SeenReceipt added = receipt("EV-1", "MEM-b");
+
+        ConversationSignalingChannel.attachSeenReceipts(Collections.singletonList(text), Collections.<Image>emptyList(),
+                Collections.singletonList(added));
+
+        assertEquals(Arrays.asList(known, added), text.getSeenReceipts());
+        // the lists handed out before do not change.
+        assertEquals(Collections.singletonList(known), before);
+    }
+
+}
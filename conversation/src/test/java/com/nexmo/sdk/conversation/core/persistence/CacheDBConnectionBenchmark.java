@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import android.database.DatabaseUtils;
+
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A mix of reads and writes of the cache: for every page of 10 texts written, 4 reads of the conversation
+ * and of its 50 most recent texts.
+ *
+ * <p>The connection kept open is measured against closing the database after every call, as hasConversations
+ * and hasConversation did: the next call opens it again. Closing is only safe from a single thread,
+ * so that mix runs on one thread; the kept connection also runs it with the reads and the writes on two threads.</p>
+ *
+ * <p>The figures are those of the SQLite of the Robolectric runtime, on the JVM and on the processors of the machine
+ * running the tests, not of a device. On a single processor the two threads cannot overlap.</p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+@Category(Benchmarks.class)
+public class CacheDBConnectionBenchmark {
+    private static final String CID = "CON-1";
+    private static final int ROUNDS = 50;
+    private static final int READS_PER_WRITE = 4;
+    private static final int TEXTS_PER_WRITE = 10;
+
+    private CacheDB cacheDB;
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+        this.cacheDB = new CacheDB(RuntimeEnvironment.application);
+        this.cacheDB.insertConversation(new Conversation("chat", CID, "MEM-1", new Date(), "0"));
+        write();
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheDB.close();
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    private void write() {
+        List<Text> texts = new ArrayList<>(TEXTS_PER_WRITE);
+        Member member = new Member("MEM-1");
+        for (int i = 0; i < TEXTS_PER_WRITE; i++) {
+            int id = this.nextId.getAndIncrement();
+            texts.add(new Text("text number " + id, "EV-" + id, new Date(id), member));
+        }
+        this.cacheDB.insertTextEvents(CID, texts);
+    }
+
+    private void read() {
+        assertTrue(this.cacheDB.hasConversation(CID));
+        assertTrue(this.cacheDB.readTextEvents(CID, 50).size() >= TEXTS_PER_WRITE);
+    }
+
+    private void mix(boolean reopen) {
+        for (int round = 0; round < ROUNDS; round++) {
+            write();
+            if (reopen)
+                this.cacheDB.close();
+            for (int i = 0; i < READS_PER_WRITE; i++) {
+                read();
+                if (reopen)
+                    this.cacheDB.close();
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkMix() {
+        final int operations = ROUNDS * (1 + READS_PER_WRITE);
+        System.out.println("journal mode: " + DatabaseUtils.stringForQuery(this.cacheDB.getReadableDatabase(), "PRAGMA journal_mode", null));
+
+        Benchmark.run("mix, closed after every call", operations, 3, new Runnable() {
+            @Override
+            public void run() {
+                mix(true);
+            }
+        });
+        Benchmark.run("mix, connection kept open", operations, 3, new Runnable() {
+            @Override
+            public void run() {
+                mix(false);
+            }
+        });
+        Benchmark.run("mix, connection kept open, reads and writes on two threads", operations, 3, new Runnable() {
+            @Override
+            public void run() {
+                final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+                Thread writer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int round = 0; round < ROUNDS; round++)
+                                write();
+                        } catch (Throwable t) {
+                            failures.add(t);
+                        }
+                    }
+                });
+                writer.start();
+                for (int i = 0; i < ROUNDS * READS_PER_WRITE; i++)
+                    read();
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                assertTrue(failures.toString(), failures.isEmpty());
+            }
+        });
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.SeenReceipt;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Persisting a history page of 1000 texts, each with a seen receipt.
+ *
+ * <p>ingestEvents, which binds compiled statements and commits the page in one transaction, is measured against
+ * an insertWithOnConflict with a new ContentValues per row, as the cache used to write rows: every row in its own
+ * implicit transaction, then all of them in a single transaction.
+ * Every run writes new events, so each row is an insert.
+ * The figures are those of the SQLite of the Robolectric runtime, on the JVM and the disk of the machine
+ * running the tests, not of a device.</p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+@Category(Benchmarks.class)
+public class CacheDBIngestBenchmark {
+    private static final String CID = "CON-1";
+    private static final int PAGE = 1000;
+
+    private CacheDB cacheDB;
+    private int pages;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+        this.cacheDB = new CacheDB(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheDB.close();
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    private List<Text> nextPage() {
+        int page = this.pages++;
+        Member member = new Member("MEM-1");
+        List<Text> texts = new ArrayList<>(PAGE);
+        for (int i = 0; i < PAGE; i++) {
+            String id = "EV-" + page + "-" + i;
+            Date timestamp = new Date(page * PAGE + i);
+            texts.add(new Text("text number " + i + " of page " + page, id, timestamp, member, null,
+                    Collections.singletonList(new SeenReceipt(id, "MEM-2", timestamp))));
+        }
+        return texts;
+    }
+
+    // the former insertTextEvents, without its enclosing transaction when every row commits on its own.
+    private static void insertRows(SQLiteDatabase db, List<Text> texts) {
+        for (Text text : texts) {
+            ContentValues values = new ContentValues();
+            values.put("event_id", text.getId());
+            values.put("conversation_id", CID);
+            values.put("payload", text.getPayload());
+            values.put("member_id", text.getMember().getMemberId());
+            values.put("timestamp", text.getTimestamp().getTime());
+            db.insertWithOnConflict("text", null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            for (SeenReceipt seenReceipt : text.getSeenReceipts()) {
+                ContentValues receipt = new ContentValues();
+                receipt.put("event_id", seenReceipt.getEvent_id());
+                receipt.put("member_id", seenReceipt.getMember_id());
+                receipt.put("timestamp", seenReceipt.getTimestamp().getTime());
+                db.insertWithOnConflict("seen_receipt", null, receipt, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkPage() {
+        final SQLiteDatabase db = this.cacheDB.getWritableDatabase();
+
+        Benchmark.run("insertWithOnConflict, a transaction per row", PAGE, 1, new Runnable() {
+            @Override
+            public void run() {
+                insertRows(db, nextPage());
+            }
+        });
+        Benchmark.run("insertWithOnConflict, a transaction per page", PAGE, 3, new Runnable() {
+            @Override
+            public void run() {
+                List<Text> texts = nextPage();
+                db.beginTransaction();
+                try {
+                    insertRows(db, texts);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+        Benchmark.run("ingestEvents", PAGE, 3, new Runnable() {
+            @Override
+            public void run() {
+                CacheDBIngestBenchmark.this.cacheDB.ingestEvents(CID, nextPage(), Collections.<Image>emptyList());
+            }
+        });
+
+        // two runs of the first, four of the others, and every page persisted in full.
+        assertEquals(10 * PAGE, DatabaseUtils.queryNumEntries(db, "text"));
+        assertEquals(10 * PAGE, DatabaseUtils.queryNumEntries(db, "seen_receipt"));
+        assertEquals(Arrays.asList("EV-9-998", "EV-9-999"), Arrays.asList(
+                this.cacheDB.readTextEvents(CID, 2).get(0).getId(), this.cacheDB.readTextEvents(CID, 2).get(1).getId()));
+    }
+
+}
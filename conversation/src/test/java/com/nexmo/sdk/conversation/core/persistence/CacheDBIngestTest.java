@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import android.database.DatabaseUtils;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.SeenReceipt;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CacheDBIngestTest {
+    private CacheDB cacheDB;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+        this.cacheDB = new CacheDB(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheDB.close();
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    private long rows(String table) {
+        return DatabaseUtils.queryNumEntries(this.cacheDB.getReadableDatabase(), table);
+    }
+
+    private static Text text(String id, String payload, SeenReceipt... seenReceipts) {
+        return new Text(payload, id, new Date(1000), new Member("MEM-1"), null, Arrays.asList(seenReceipts));
+    }
+
+    @Test
+    public void testConversations() {
+        Conversation conversation = new Conversation("chat", "CON-1", "MEM-1", new Date(), "5");
+        conversation.addMember(new Member("USR-1", "alice", "MEM-1", Member.STATE.JOINED));
+        this.cacheDB.ingestConversations(Collections.singletonList(conversation));
+        this.cacheDB.insertMembers("CON-1", Collections.singletonList(new Member("USR-2", "bob", "MEM-2", Member.STATE.INVITED)));
+
+        // a conversation list carries the self member only, the other cached members are kept.
+        Conversation renamed = new Conversation("renamed", "CON-1", "MEM-1", new Date(), "6");
+        renamed.addMember(new Member("USR-1", "alice", "MEM-1", Member.STATE.LEFT));
+        this.cacheDB.ingestConversations(Collections.singletonList(renamed));
+
+        List<Conversation> conversations = this.cacheDB.getCachedConversations();
+        assertEquals(1, conversations.size());
+        assertEquals("renamed", conversations.get(0).getName());
+        assertEquals("6", conversations.get(0).getLastEventId());
+        assertEquals(Member.STATE.LEFT, conversations.get(0).getMember("MEM-1").getState());
+        assertEquals(Member.STATE.INVITED, conversations.get(0).getMember("MEM-2").getState());
+
+        this.cacheDB.replaceMembers("CON-1", Collections.singletonList(new Member("USR-1", "alice", "MEM-1", Member.STATE.JOINED)));
+        assertEquals(1, this.cacheDB.readMembers("CON-1").size());
+    }
+
+    @Test
+    public void testEvents() {
+        Image image = new Image("IMG-1", new Date(2000));
+        image.addSeenReceipt(new SeenReceipt("IMG-1", "MEM-2", new Date(2500)));
+        this.cacheDB.ingestEvents("CON-1",
+                Arrays.asList(text("1", "hello", new SeenReceipt("1", "MEM-2", new Date(1500))), text("2", "world")),
+                Collections.singletonList(image));
+
+        assertEquals(2, rows("text"));
+        assertEquals(1, rows("image"));
+        assertEquals(2, rows("seen_receipt"));
+        assertEquals(1, this.cacheDB.readTextEvent("CON-1", "1").getSeenReceipts().size());
+        assertEquals(1, this.cacheDB.readImageEvent("CON-1", "IMG-1").getSeenReceipts().size());
+
+        // written again: updated in place, with the receipts it did not have.
+        this.cacheDB.ingestEvents("CON-1",
+                Collections.singletonList(text("1", "edited", new SeenReceipt("1", "MEM-2", new Date(1500)),
+                        new SeenReceipt("1", "MEM-3", new Date(1600)))),
+                Collections.<Image>emptyList());
+        assertEquals(2, rows("text"));
+        assertEquals("edited", this.cacheDB.readTextEvent("CON-1", "1").getPayload());
+        assertEquals(2, this.cacheDB.readTextEvent("CON-1", "1").getSeenReceipts().size());
+
+        // the same text twice in a page is kept once.
+        this.cacheDB.insertTextEvents("CON-1", Arrays.asList(text("3", "first"), text("3", "second")));
+        assertEquals(3, rows("text"));
+        assertEquals("second", this.cacheDB.readTextEvent("CON-1", "3").getPayload());
+    }
+
+    @Test
+    public void testWritesAfterClose() {
+        this.cacheDB.insertTextEvents("CON-1", Collections.singletonList(text("1", "hello")));
+        this.cacheDB.close();
+
+        // the statements compiled against the closed database are compiled again.
+        this.cacheDB.insertTextEvents("CON-1", Collections.singletonList(text("2", "world")));
+        this.cacheDB.ingestConversations(Collections.singletonList(new Conversation("chat", "CON-1", "MEM-1", new Date(), "2")));
+        assertEquals(2, rows("text"));
+        assertEquals(1, this.cacheDB.getCachedConversations().size());
+
+        this.cacheDB.dropDB();
+        this.cacheDB.insertTextEvents("CON-1", Collections.singletonList(text("3", "again")));
+        assertNull(this.cacheDB.readTextEvent("CON-1", "1"));
+        assertEquals(1, rows("text"));
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.nexmo.sdk.conversation.client.Conversation;
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.core.client.request.Request;
+import com.nexmo.sdk.conversation.core.client.request.SendMessageRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upgrades a cache created by every previous version of the schema, and checks that it ends up with the schema
+ * of a new cache and keeps its data.
+ *
+ * <p>The schemas of the previous versions are written out as they were released, rather than built from
+ * the statements of {@link CacheDB}, so a change to the current schema cannot rewrite them.</p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CacheDBMigrationTest {
+    private static final String CID = "CON-1";
+
+    private Context context;
+    private CacheDB cacheDB;
+
+    @Before
+    public void setUp() {
+        this.context = RuntimeEnvironment.application;
+        this.context.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (this.cacheDB != null)
+            this.cacheDB.close();
+        this.context.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    // the schema a cache of this version was created with.
+    private static void createSchema(SQLiteDatabase db, int version) {
+        db.execSQL("CREATE TABLE conversation (cid TEXT PRIMARY KEY,name TEXT,created TEXT,sequence_number TEXT,member_id TEXT )");
+        if (version < 4)
+            // the missing comma of the released schema: there is a "user_id TEXTstate" column and no state.
+            db.execSQL("CREATE TABLE member (id TEXT PRIMARY KEY,username TEXT,user_id TEXTstate TEXT,invited_at TEXT," +
+                    "joined_at TEXT,left_at TEXT )");
+        else
+            db.execSQL("CREATE TABLE member (id TEXT PRIMARY KEY,cid TEXT,username TEXT,user_id TEXT,state TEXT,invited_at TEXT," +
+                    "joined_at TEXT,left_at TEXT )");
+        if (version < 3) {
+            db.execSQL("CREATE TABLE text (event_id TEXT PRIMARY KEY,conversation_id TEXT,payload TEXT )");
+            db.execSQL("CREATE TABLE image (event_id TEXT PRIMARY KEY,conversation_id TEXT,name TEXT )");
+        } else {
+            db.execSQL("CREATE TABLE text (event_id TEXT PRIMARY KEY,conversation_id TEXT,payload TEXT,member_id TEXT,timestamp INTEGER )");
+            db.execSQL("CREATE TABLE image (event_id TEXT PRIMARY KEY,conversation_id TEXT,name TEXT,member_id TEXT," +
+                    "timestamp INTEGER,representations TEXT )");
+        }
+        if (version >= 2)
+            db.execSQL("CREATE TABLE outbox (_id INTEGER PRIMARY KEY AUTOINCREMENT,tid TEXT UNIQUE NOT NULL,type TEXT," +
+                    "conversation_id TEXT,member_id TEXT,payload TEXT,representations TEXT )");
+        if (version >= 5)
+            db.execSQL("CREATE INDEX IF NOT EXISTS member_cid ON member (cid)");
+        if (version >= 6) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS text_conversation_id_timestamp ON text (conversation_id,timestamp,event_id)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS image_conversation_id_timestamp ON image (conversation_id,timestamp,event_id)");
+        }
+        if (version >= 7) {
+            db.execSQL("CREATE VIRTUAL TABLE text_search USING fts4(payload)");
+            db.execSQL("CREATE TRIGGER text_search_insert AFTER INSERT ON text BEGIN" +
+                    " INSERT INTO text_search (docid,payload) VALUES (new.rowid, new.payload); END");
+            db.execSQL("CREATE TRIGGER text_search_update AFTER UPDATE OF payload ON text BEGIN" +
+                    " DELETE FROM text_search WHERE docid = old.rowid;" +
+                    " INSERT INTO text_search (docid,payload) VALUES (new.rowid, new.payload); END");
+            db.execSQL("CREATE TRIGGER text_search_delete AFTER DELETE ON text BEGIN" +
+                    " DELETE FROM text_search WHERE docid = old.rowid; END");
+        }
+        if (version >= 8)
+            db.execSQL("CREATE TABLE seen_receipt (event_id TEXT,member_id TEXT,timestamp INTEGER,PRIMARY KEY (event_id,member_id) )");
+    }
+
+    // what a cache of this version holds: a conversation, two texts and an image, then the members,
+    // the outgoing events and the seen receipts once the version has them.
+    private static void insertData(SQLiteDatabase db, int version) {
+        db.execSQL("INSERT INTO conversation VALUES ('" + CID + "', 'chat', NULL, '3', 'MEM-1')");
+        if (version < 3) {
+            db.execSQL("INSERT INTO text VALUES ('1', '" + CID + "', 'hello world')");
+            db.execSQL("INSERT INTO text VALUES ('2', '" + CID + "', 'goodbye')");
+            db.execSQL("INSERT INTO image VALUES ('3', '" + CID + "', NULL)");
+        } else {
+            db.execSQL("INSERT INTO text VALUES ('1', '" + CID + "', 'hello world', 'MEM-1', 1000)");
+            db.execSQL("INSERT INTO text VALUES ('2', '" + CID + "', 'goodbye', 'MEM-2', 2000)");
+            db.execSQL("INSERT INTO image VALUES ('3', '" + CID + "', NULL, 'MEM-1', 3000," +
+                    " '{\"original\":{\"id\":\"IMG-1\",\"url\":\"https://example.com/IMG-1\",\"size\":10}}')");
+        }
+        if (version >= 4)
+            db.execSQL("INSERT INTO member VALUES ('MEM-1', '" + CID + "', 'alice', 'USR-1', 'JOINED', NULL, NULL, NULL)");
+        if (version >= 2)
+            db.execSQL("INSERT INTO outbox (tid, type, conversation_id, member_id, payload) VALUES ('TID-1', 'SEND_TEXT', '" + CID +
+                    "', 'MEM-1', 'pending')");
+        if (version >= 8)
+            db.execSQL("INSERT INTO seen_receipt VALUES ('1', 'MEM-2', 1500)");
+    }
+
+    private void createCache(int version) {
+        File path = this.context.getDatabasePath(CacheDB.DATABASE_NAME);
+        path.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+        try {
+            createSchema(db, version);
+            insertData(db, version);
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    // the tables, indexes and triggers, with the columns of the tables.
+    private static Map<String, String> schema(SQLiteDatabase db) {
+        Map<String, String> schema = new TreeMap<>();
+        Cursor c = db.rawQuery("SELECT type, name FROM sqlite_master WHERE name NOT LIKE 'sqlite_%' AND name NOT LIKE 'android_%'", null);
+        try {
+            while (c.moveToNext())
+                schema.put(c.getString(0) + " " + c.getString(1), ("table".equals(c.getString(0)) ? columns(db, c.getString(1)) : ""));
+        } finally {
+            c.close();
+        }
+        return schema;
+    }
+
+    private static String columns(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (c.moveToNext())
+                columns.add(c.getString(c.getColumnIndex("name")) + " " + c.getString(c.getColumnIndex("type")));
+        } finally {
+            c.close();
+        }
+        return columns.toString();
+    }
+
+    private static List<String> ids(List<Text> texts) {
+        List<String> ids = new ArrayList<>();
+        for (Text text : texts)
+            ids.add(text.getId());
+        return ids;
+    }
+
+    private void upgradeFrom(int version) {
+        createCache(version);
+        this.cacheDB = new CacheDB(this.context);
+        SQLiteDatabase db = this.cacheDB.getWritableDatabase();
+        assertEquals(CacheDB.DATABASE_VERSION, db.getVersion());
+
+        SQLiteDatabase created = SQLiteDatabase.create(null);
+        try {
+            this.cacheDB.onCreate(created);
+            assertEquals("from version " + version, schema(created), schema(db));
+        } finally {
+            created.close();
+        }
+
+        List<Conversation> conversations = this.cacheDB.getCachedConversations();
+        assertEquals(1, conversations.size());
+        Conversation conversation = conversations.get(0);
+        assertEquals(CID, conversation.getConversationId());
+        assertEquals("chat", conversation.getName());
+        assertEquals("3", conversation.getLastEventId());
+        // members were never written to the table of the first versions, it is recreated.
+        if (version >= 4) {
+            assertEquals(1, conversation.getMembers().size());
+            assertEquals(Member.STATE.JOINED, conversation.getMember("MEM-1").getState());
+        } else {
+            assertTrue(conversation.getMembers().isEmpty());
+        }
+
+        List<Text> texts = this.cacheDB.readTextEvents(CID, 10);
+        assertEquals(Arrays.asList("1", "2"), ids(texts));
+        assertEquals("hello world", texts.get(0).getPayload());
+        assertEquals((version >= 8 ? 1 : 0), texts.get(0).getSeenReceipts().size());
+        // the texts cached before the full-text index are indexed by the migration.
+        assertEquals(Arrays.asList("1"), ids(this.cacheDB.searchTextEvents("hel", null, 0, 10)));
+
+        Image image = this.cacheDB.readImageEvent(CID, "3");
+        assertNotNull(image);
+        if (version >= 3)
+            assertEquals("https://example.com/IMG-1", image.getOriginal().url);
+
+        // whoever sent the queued events is not known, they are dropped; the outbox takes new ones.
+        assertTrue(this.cacheDB.readOutbox("USR-1").isEmpty());
+        SendMessageRequest request = new SendMessageRequest(Request.TYPE.SEND_TEXT, "TID-2");
+        request.cid = CID;
+        request.message = "sent after the upgrade";
+        this.cacheDB.insertOutboxEntry(request, "USR-1");
+        assertEquals(1, this.cacheDB.readOutbox("USR-1").size());
+
+        // the migrated cache takes new events, and keeps them searchable.
+        this.cacheDB.insertTextEvents(CID, Arrays.asList(new Text("hello again", "4", null, new Member("MEM-1"))));
+        assertEquals(2, this.cacheDB.searchTextEvents("hello", CID, 0, 10).size());
+    }
+
+    @Test
+    public void testUpgradeFromVersion1() {
+        upgradeFrom(1);
+    }
+
+    @Test
+    public void testUpgradeFromVersion2() {
+        upgradeFrom(2);
+    }
+
+    @Test
+    public void testUpgradeFromVersion3() {
+        upgradeFrom(3);
+    }
+
+    @Test
+    public void testUpgradeFromVersion4() {
+        upgradeFrom(4);
+    }
+
+    @Test
+    public void testUpgradeFromVersion5() {
+        upgradeFrom(5);
+    }
+
+    @Test
+    public void testUpgradeFromVersion6() {
+        upgradeFrom(6);
+    }
+
+    @Test
+    public void testUpgradeFromVersion7() {
+        upgradeFrom(7);
+    }
+
+    @Test
+    public void testUpgradeFromVersion8() {
+        upgradeFrom(8);
+    }
+
+    @Test
+    public void testDowngradeRebuildsTheCache() {
+        createCache(CacheDB.DATABASE_VERSION - 1);
+        File path = this.context.getDatabasePath(CacheDB.DATABASE_NAME);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(path, null);
+        db.setVersion(CacheDB.DATABASE_VERSION + 1);
+        db.close();
+
+        this.cacheDB = new CacheDB(this.context);
+        assertEquals(CacheDB.DATABASE_VERSION, this.cacheDB.getReadableDatabase().getVersion());
+        assertTrue(this.cacheDB.getCachedConversations().isEmpty());
+        assertTrue(this.cacheDB.readTextEvents(CID, 10).isEmpty());
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import android.database.Cursor;
+
+import com.nexmo.sdk.conversation.Benchmark;
+import com.nexmo.sdk.conversation.Benchmarks;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reading a page of 50 texts from a cache of 100k and 1M texts, spread over 10 conversations.
+ *
+ * <p>The most recent page, and the pages before and after a text in the middle of its conversation, are read
+ * from the (conversation_id, timestamp, event_id) index. At 100k texts they are also measured without the index,
+ * as the cache was read before it: a scan of the table, then a sort.
+ * The figures are those of the SQLite of the Robolectric runtime, on the JVM, not of a device:
+ * every query of that runtime costs milliseconds, even one that reads no table, so that cost is measured first.
+ * A page takes three queries: the text it starts from, the texts and their seen receipts.</p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+@Category(Benchmarks.class)
+public class CacheDBPagingBenchmark {
+    private static final int CONVERSATIONS = 10;
+    private static final int PAGE = 50;
+    private static final int INSERT_BATCH = 5000;
+
+    private CacheDB cacheDB;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+        this.cacheDB = new CacheDB(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheDB.close();
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    // the conversations take turns, as they would in a cache filled over time.
+    private void insertTexts(int count) {
+        Member member = new Member("MEM-1");
+        for (int from = 0; from < count; from += INSERT_BATCH) {
+            List<List<Text>> batches = new ArrayList<>();
+            for (int conversation = 0; conversation < CONVERSATIONS; conversation++)
+                batches.add(new ArrayList<Text>());
+            for (int i = from; i < Math.min(count, from + INSERT_BATCH); i++)
+                batches.get(i % CONVERSATIONS).add(new Text("text number " + i, "EV-" + i, new Date(i), member));
+            for (int conversation = 0; conversation < CONVERSATIONS; conversation++)
+                this.cacheDB.insertTextEvents("CON-" + conversation, batches.get(conversation));
+        }
+    }
+
+    private void benchmark(int count, String suffix) {
+        // a text of CON-0 in the middle of its conversation.
+        final String middle = "EV-" + (count / 2 / CONVERSATIONS * CONVERSATIONS);
+        assertEquals(PAGE, this.cacheDB.readTextEventsBefore("CON-0", middle, PAGE).size());
+
+        final int pages = 100;
+        Benchmark.run("most recent page, " + count + " texts" + suffix, pages, 3, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < pages; i++)
+                    CacheDBPagingBenchmark.this.cacheDB.readTextEvents("CON-0", PAGE);
+            }
+        });
+        Benchmark.run("page before a text, " + count + " texts" + suffix, pages, 3, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < pages; i++)
+                    CacheDBPagingBenchmark.this.cacheDB.readTextEventsBefore("CON-0", middle, PAGE);
+            }
+        });
+        Benchmark.run("page after a text, " + count + " texts" + suffix, pages, 3, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < pages; i++)
+                    CacheDBPagingBenchmark.this.cacheDB.readTextEventsAfter("CON-0", middle, PAGE);
+            }
+        });
+    }
+
+    @Test
+    public void benchmark100k() {
+        insertTexts(100000);
+        final int queries = 100;
+        Benchmark.run("query of a constant", queries, 3, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < queries; i++) {
+                    Cursor c = CacheDBPagingBenchmark.this.cacheDB.getReadableDatabase().rawQuery("SELECT 1", null);
+                    c.moveToNext();
+                    c.close();
+                }
+            }
+        });
+        benchmark(100000, "");
+
+        this.cacheDB.getWritableDatabase().execSQL("DROP INDEX text_conversation_id_timestamp");
+        benchmark(100000, " without the index");
+    }
+
+    @Ignore("filling a cache of 1M texts takes close to an hour on the Robolectric runtime: run it on demand")
+    @Test
+    public void benchmark1M() {
+        insertTexts(1000000);
+        benchmark(1000000, "");
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import android.database.Cursor;
+
+import com.nexmo.sdk.conversation.client.Image;
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CacheDBPagingTest {
+    private CacheDB cacheDB;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+        this.cacheDB = new CacheDB(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheDB.close();
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    private static Text text(String id, long timestamp) {
+        return new Text("text " + id, id, new Date(timestamp), new Member("MEM-1"));
+    }
+
+    private static List<String> ids(List<? extends Text> events) {
+        List<String> ids = new ArrayList<>();
+        for (Text event : events)
+            ids.add(event.getId());
+        return ids;
+    }
+
+    // ten texts of CON-1, two at each timestamp and inserted out of order, and texts of CON-2 at the same times.
+    private List<String> insertTexts() {
+        List<Text> texts = new ArrayList<>();
+        List<Text> others = new ArrayList<>();
+        List<String> ordered = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String id = "EV-" + i;
+            texts.add(text(id, (i / 2) * 1000));
+            others.add(text("OTHER-" + i, (i / 2) * 1000));
+            ordered.add(id);
+        }
+        Collections.shuffle(texts, new Random(10));
+        this.cacheDB.insertTextEvents("CON-1", texts);
+        this.cacheDB.insertTextEvents("CON-2", others);
+        return ordered;
+    }
+
+    @Test
+    public void testMostRecent() {
+        List<String> ordered = insertTexts();
+        assertEquals(ordered.subList(7, 10), ids(this.cacheDB.readTextEvents("CON-1", 3)));
+        assertEquals(ordered.subList(7, 10), ids(this.cacheDB.readTextEventsBefore("CON-1", null, 3)));
+        assertEquals(ordered.subList(0, 3), ids(this.cacheDB.readTextEventsAfter("CON-1", null, 3)));
+    }
+
+    @Test
+    public void testPageForward() {
+        List<String> ordered = insertTexts();
+        List<String> read = new ArrayList<>();
+        List<Text> page = this.cacheDB.readTextEventsAfter("CON-1", null, 3);
+        while (!page.isEmpty()) {
+            assertTrue(page.size() <= 3);
+            read.addAll(ids(page));
+            page = this.cacheDB.readTextEventsAfter("CON-1", page.get(page.size() - 1).getId(), 3);
+        }
+        // the texts sharing a timestamp are neither skipped nor repeated across pages.
+        assertEquals(ordered, read);
+    }
+
+    @Test
+    public void testPageBackward() {
+        List<String> ordered = insertTexts();
+        List<String> read = new ArrayList<>();
+        List<Text> page = this.cacheDB.readTextEventsBefore("CON-1", null, 3);
+        while (!page.isEmpty()) {
+            read.addAll(0, ids(page));
+            page = this.cacheDB.readTextEventsBefore("CON-1", page.get(0).getId(), 3);
+        }
+        assertEquals(ordered, read);
+    }
+
+    @Test
+    public void testAroundAnEvent() {
+        List<String> ordered = insertTexts();
+        assertEquals(ordered.subList(2, 5), ids(this.cacheDB.readTextEventsBefore("CON-1", "EV-5", 3)));
+        assertEquals(ordered.subList(6, 9), ids(this.cacheDB.readTextEventsAfter("CON-1", "EV-5", 3)));
+    }
+
+    @Test
+    public void testUnknownEvent() {
+        insertTexts();
+        assertTrue(this.cacheDB.readTextEventsBefore("CON-1", "EV-42", 3).isEmpty());
+        // an event of another conversation is not a page boundary of this one.
+        assertTrue(this.cacheDB.readTextEventsAfter("CON-1", "OTHER-1", 3).isEmpty());
+    }
+
+    @Test
+    public void testImages() {
+        List<Image> images = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            images.add(new Image("IMG-" + i, new Date((i / 2) * 1000)));
+        this.cacheDB.insertImageEvents("CON-1", images);
+
+        assertEquals(Arrays.asList("IMG-4", "IMG-5"), ids(this.cacheDB.readImageEvents("CON-1", 2)));
+        assertEquals(Arrays.asList("IMG-1", "IMG-2"), ids(this.cacheDB.readImageEventsBefore("CON-1", "IMG-3", 2)));
+        assertEquals(Arrays.asList("IMG-4", "IMG-5"), ids(this.cacheDB.readImageEventsAfter("CON-1", "IMG-3", 2)));
+        assertTrue(this.cacheDB.readImageEventsAfter("CON-1", "IMG-5", 2).isEmpty());
+    }
+
+    /**
+     * A page is read from the (conversation_id, timestamp, event_id) index, in index order:
+     * neither a scan of the table nor a sort, whatever the number of cached events.
+     */
+    @Test
+    public void testPagesUseTheIndex() {
+        insertTexts();
+        String[] queries = {
+                "SELECT * FROM text WHERE conversation_id = 'CON-1' ORDER BY timestamp DESC, event_id DESC LIMIT 3",
+                "SELECT * FROM text WHERE conversation_id = 'CON-1' AND timestamp <= 2000 AND (timestamp < 2000 OR event_id < 'EV-5')" +
+                        " ORDER BY timestamp DESC, event_id DESC LIMIT 3",
+                "SELECT * FROM text WHERE conversation_id = 'CON-1' AND timestamp >= 2000 AND (timestamp > 2000 OR event_id > 'EV-5')" +
+                        " ORDER BY timestamp ASC, event_id ASC LIMIT 3"
+        };
+        for (String query : queries) {
+            StringBuilder plan = new StringBuilder();
+            Cursor c = this.cacheDB.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + query, null);
+            try {
+                while (c.moveToNext())
+                    plan.append(c.getString(c.getColumnIndex("detail"))).append('\n');
+            } finally {
+                c.close();
+            }
+            assertTrue(plan.toString(), plan.indexOf("USING INDEX text_conversation_id_timestamp") >= 0);
+            assertFalse(plan.toString(), plan.indexOf("TEMP B-TREE") >= 0);
+        }
+    }
+
+}
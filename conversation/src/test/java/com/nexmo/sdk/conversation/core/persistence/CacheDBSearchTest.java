@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import com.nexmo.sdk.conversation.client.Member;
+import com.nexmo.sdk.conversation.client.Text;
+import com.nexmo.sdk.conversation.config.Defaults;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class CacheDBSearchTest {
+    private CacheDB cacheDB;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+        this.cacheDB = new CacheDB(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        this.cacheDB.close();
+        RuntimeEnvironment.application.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+    private void insert(String cid, String id, long timestamp, String payload) {
+        this.cacheDB.insertTextEvents(cid, Collections.singletonList(new Text(payload, id, new Date(timestamp), new Member("MEM-1"))));
+    }
+
+    private List<String> search(String query, String cid) {
+        return ids(this.cacheDB.searchTextEvents(query, cid, 0, 100));
+    }
+
+    private static List<String> ids(List<Text> texts) {
+        List<String> ids = new ArrayList<>();
+        for (Text text : texts)
+            ids.add(text.getId());
+        return ids;
+    }
+
+    @Test
+    public void testPrefixOfWords() {
+        insert("CON-1", "1", 1000, "hello world");
+        insert("CON-1", "2", 2000, "can you help");
+        insert("CON-1", "3", 3000, "a shell script");
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), new HashSet<>(search("hel", null)));
+        // every word has to match, in any order.
+        assertEquals(Arrays.asList("1"), search("wor hel", null));
+        assertTrue(search("hello shell", null).isEmpty());
+    }
+
+    @Test
+    public void testQueryIsNotParsed() {
+        insert("CON-1", "1", 1000, "hello world");
+        // quotes and operators are plain words.
+        assertEquals(Arrays.asList("1"), search("\"hello\"", null));
+        assertTrue(search("hello OR goodbye", null).isEmpty());
+        assertTrue(search("hello NOT world", null).isEmpty());
+        assertTrue(search("  ", null).isEmpty());
+        assertTrue(search(null, null).isEmpty());
+    }
+
+    @Test
+    public void testRanking() {
+        insert("CON-1", "once", 3000, "the meeting is at noon");
+        insert("CON-1", "twice", 1000, "meeting about the meeting");
+        insert("CON-1", "older", 500, "the meeting is at ten");
+        insert("CON-1", "other", 4000, "lunch");
+
+        // the more hits the better, then the most recent first.
+        assertEquals(Arrays.asList("twice", "once", "older"), search("meeting", null));
+        // a rare word weighs more than a common one.
+        insert("CON-1", "rare", 200, "noon");
+        assertEquals("once", search("the noon", null).get(0));
+    }
+
+    @Test
+    public void testConversation() {
+        insert("CON-1", "1", 1000, "hello from one");
+        insert("CON-2", "2", 2000, "hello from two");
+
+        assertEquals(Arrays.asList("1"), search("hello", "CON-1"));
+        assertEquals(Arrays.asList("2", "1"), search("hello", null));
+        List<Text> results = this.cacheDB.searchTextEvents("hello", null, 0, 10);
+        assertEquals("CON-2", results.get(0).getConversation().getConversationId());
+        assertEquals("CON-1", results.get(1).getConversation().getConversationId());
+        assertTrue(search("hello", "CON-3").isEmpty());
+    }
+
+    @Test
+    public void testPages() {
+        List<Text> texts = new ArrayList<>();
+        for (int i = 0; i < Defaults.SEARCH_MAX_RESULTS + 100; i++)
+            texts.add(new Text("match " + i, "EV-" + i, new Date(i), new Member("MEM-1")));
+        this.cacheDB.insertTextEvents("CON-1", texts);
+
+        // equally relevant, the most recent first.
+        int last = Defaults.SEARCH_MAX_RESULTS + 99;
+        assertEquals(Arrays.asList("EV-" + last, "EV-" + (last - 1)), ids(this.cacheDB.searchTextEvents("match", null, 0, 2)));
+        assertEquals(Arrays.asList("EV-" + (last - 2), "EV-" + (last - 3)), ids(this.cacheDB.searchTextEvents("match", null, 2, 2)));
+
+        // a page larger than a query can bind.
+        List<Text> all = this.cacheDB.searchTextEvents("match", null, 0, Defaults.SEARCH_MAX_RESULTS);
+        assertEquals(Defaults.SEARCH_MAX_RESULTS, all.size());
+        assertEquals("EV-100", all.get(all.size() - 1).getId());
+        // the results are capped.
+        assertEquals(1, this.cacheDB.searchTextEvents("match", null, Defaults.SEARCH_MAX_RESULTS - 1, 10).size());
+        assertTrue(this.cacheDB.searchTextEvents("match", null, Defaults.SEARCH_MAX_RESULTS, 10).isEmpty());
+        assertTrue(this.cacheDB.searchTextEvents("match", null, 0, 0).isEmpty());
+    }
+
+    @Test
+    public void testWritesInvalidateSearches() {
+        insert("CON-1", "1", 1000, "hello world");
+        insert("CON-2", "2", 2000, "hello there");
+        assertEquals(Arrays.asList("2", "1"), search("hello", null));
+
+        insert("CON-1", "3", 3000, "hello again");
+        assertEquals(Arrays.asList("3", "2", "1"), search("hello", null));
+
+        // a text written again keeps a single entry in the index.
+        insert("CON-1", "3", 3000, "goodbye");
+        assertEquals(Arrays.asList("2", "1"), search("hello", null));
+        assertEquals(Arrays.asList("3"), search("goodbye", null));
+
+        this.cacheDB.updateTextPayload("CON-2", "2", "deleted");
+        assertEquals(Arrays.asList("1"), search("hello", null));
+
+        this.cacheDB.deleteTextEvents("CON-1");
+        assertTrue(search("hello", null).isEmpty());
+        assertTrue(search("goodbye", null).isEmpty());
+
+        insert("CON-1", "4", 4000, "hello once more");
+        this.cacheDB.clearDb();
+        assertTrue(search("hello", null).isEmpty());
+    }
+
+}
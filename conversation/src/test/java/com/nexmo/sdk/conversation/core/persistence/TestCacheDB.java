@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2016 Nexmo Inc
+ * All rights reserved.
+ *
+ */
+package com.nexmo.sdk.conversation.core.persistence;
+
+import android.content.Context;
+
+/**
+ * An empty cache of its own for the tests of the other packages, rather than the instance shared by the process.
+ */
+public final class TestCacheDB {
+
+    private TestCacheDB() {
+    }
+
+    public static CacheDB create(Context context) {
+        context.deleteDatabase(CacheDB.DATABASE_NAME);
+        return new CacheDB(context);
+    }
+
+    public static void delete(CacheDB cacheDB, Context context) {
+        cacheDB.close();
+        context.deleteDatabase(CacheDB.DATABASE_NAME);
+    }
+
+}